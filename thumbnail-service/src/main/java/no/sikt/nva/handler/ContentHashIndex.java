@@ -0,0 +1,87 @@
+package no.sikt.nva.handler;
+
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.Optional;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import software.amazon.awssdk.core.exception.SdkException;
+import software.amazon.awssdk.core.sync.RequestBody;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.HeadObjectRequest;
+import software.amazon.awssdk.services.s3.model.PutObjectRequest;
+
+/**
+ * Remembers which input the thumbnails of a given content were first made for, as one empty object per SHA-256 of
+ * the content, named by the hash. The entries are kept in a bucket of their own: thumbnails are stored under the key
+ * of their input, which can be anything, so no prefix of the thumbnail bucket is safe from them. An entry is only a
+ * hint: the thumbnails it points to may since have been replaced, so callers check the content hash stored with them
+ * before reusing them.
+ */
+public class ContentHashIndex {
+
+    public static final String THUMBNAIL_KEY_METADATA_KEY = "thumbnail-key";
+    public static final String INDEX_NOT_READABLE_LOG_MESSAGE = "Could not read content index entry %s: %s";
+    public static final String INDEX_NOT_WRITTEN_LOG_MESSAGE = "Could not write content index entry %s: %s";
+    private static final Logger logger = LoggerFactory.getLogger(ContentHashIndex.class);
+    private final S3Client s3Client;
+    private final String bucketName;
+
+    /**
+     * Create an index kept in the given bucket.
+     *
+     * @param s3Client   client used for reading and writing the entries.
+     * @param bucketName bucket holding nothing but the entries of the index.
+     */
+    public ContentHashIndex(S3Client s3Client, String bucketName) {
+        this.s3Client = s3Client;
+        this.bucketName = bucketName;
+    }
+
+    /**
+     * Look up the input whose thumbnails were made from content with the given hash.
+     *
+     * @param contentHash hex encoded SHA-256 of the content.
+     * @return key of the input the thumbnails were stored for, or empty if the content has not been seen.
+     */
+    public Optional<String> find(String contentHash) {
+        try {
+            var metadata = s3Client.headObject(HeadObjectRequest.builder()
+                                                   .bucket(bucketName)
+                                                   .key(contentHash)
+                                                   .build())
+                               .metadata();
+            return Optional.ofNullable(metadata.get(THUMBNAIL_KEY_METADATA_KEY))
+                       .map(thumbnailKey -> URLDecoder.decode(thumbnailKey, StandardCharsets.UTF_8));
+        } catch (SdkException e) {
+            logger.debug(String.format(INDEX_NOT_READABLE_LOG_MESSAGE, contentHash, e.getMessage()));
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * Point the entry of the given content at the thumbnails of an input. The thumbnails are already stored, so a
+     * failure to write the entry is logged and only costs a render of the next copy of the content.
+     *
+     * @param contentHash hex encoded SHA-256 of the content.
+     * @param objectKey   key of the input the thumbnails were stored for.
+     */
+    public void record(String contentHash, String objectKey) {
+        try {
+            s3Client.putObject(PutObjectRequest.builder()
+                                   .bucket(bucketName)
+                                   .key(contentHash)
+                                   .metadata(Map.of(THUMBNAIL_KEY_METADATA_KEY, encodeMetadataValue(objectKey)))
+                                   .build(), RequestBody.empty());
+        } catch (SdkException e) {
+            logger.warn(String.format(INDEX_NOT_WRITTEN_LOG_MESSAGE, contentHash, e.getMessage()));
+        }
+    }
+
+    // User metadata travels in HTTP headers, which only take ASCII, while object keys are any UTF-8.
+    private static String encodeMetadataValue(String value) {
+        return URLEncoder.encode(value, StandardCharsets.UTF_8);
+    }
+}
@@ -1,17 +1,46 @@
 package no.sikt.nva.handler;
 
+import static no.sikt.nva.thumbnail.ThumbnailerManager.NOT_SUPPORTED_MIMETYPE_S;
 import static nva.commons.core.attempt.Try.attempt;
 import com.amazonaws.services.lambda.runtime.Context;
 import com.amazonaws.services.lambda.runtime.RequestHandler;
 import com.amazonaws.services.lambda.runtime.events.S3Event;
+import com.amazonaws.services.lambda.runtime.events.models.s3.S3EventNotification.S3EventNotificationRecord;
+import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.IOException;
+import java.io.SequenceInputStream;
+import java.math.BigInteger;
 import java.net.URL;
-import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+import no.sikt.nva.thumbnail.ColdStartPrimer;
+import no.sikt.nva.thumbnail.ThumbnailSize;
 import no.sikt.nva.thumbnail.ThumbnailerException;
 import no.sikt.nva.thumbnail.ThumbnailerManager;
 import no.sikt.nva.thumbnail.thumbnailer.ThumbnailerInitializer;
+import no.sikt.nva.thumbnail.util.MediaTypeSniffer;
+import no.sikt.nva.thumbnail.util.OutputFormat;
+import no.sikt.nva.thumbnail.util.ScratchSpace;
+import no.sikt.nva.thumbnail.util.ScratchWorkspace;
+import no.sikt.nva.thumbnail.util.StageMetrics;
+import no.sikt.nva.thumbnail.util.StreamingDownloader;
+import no.sikt.nva.thumbnail.util.ThumbnailCache;
 import no.unit.nva.s3.S3Driver;
 import nva.commons.core.Environment;
 import nva.commons.core.JacocoGenerated;
@@ -20,14 +49,21 @@ import nva.commons.core.attempt.Failure;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import software.amazon.awssdk.core.ResponseInputStream;
+import software.amazon.awssdk.core.exception.SdkException;
 import software.amazon.awssdk.core.sync.RequestBody;
 import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.CopyObjectRequest;
 import software.amazon.awssdk.services.s3.model.GetObjectRequest;
 import software.amazon.awssdk.services.s3.model.GetObjectResponse;
 import software.amazon.awssdk.services.s3.model.GetUrlRequest;
+import software.amazon.awssdk.services.s3.model.HeadObjectRequest;
+import software.amazon.awssdk.services.s3.model.HeadObjectResponse;
+import software.amazon.awssdk.services.s3.model.MetadataDirective;
 import software.amazon.awssdk.services.s3.model.PutObjectRequest;
+import software.amazon.awssdk.services.s3.presigner.S3Presigner;
+import software.amazon.awssdk.services.s3.presigner.model.GetObjectPresignRequest;
 
-public class ThumbnailRequestHandler implements RequestHandler<S3Event, URL> {
+public class ThumbnailRequestHandler implements RequestHandler<S3Event, List<ThumbnailResult>> {
 
     public static final String COULD_NOT_CREATE_THUMBNAIL_LOG_MESSAGE = "Could not create thumbnail";
     public static final String CURRENTLY_SUPPORTING_THE_FOLLOWING_MIME_TYPES_LOG_MESSAGE = "Currently Supporting the "
@@ -35,19 +71,79 @@ public class ThumbnailRequestHandler implements RequestHandler<S3Event, URL> {
     public static final String FILENAME_PREFIX = "filename=\"";
     public static final String FILENAME_POSTFIX = "\"";
     public static final String DELIMITER = ", ";
-    public static final String IMAGE_PNG_MIME_TYPE = "image/png";
     public static final String DEFAULT_FILENAME = "thumbnailinput";
+    public static final String COULD_NOT_CREATE_THUMBNAILS_FOR_RECORDS_MESSAGE =
+        "Could not create thumbnails for %d of %d records: %s";
+    public static final String RECORD_FAILURE_TEMPLATE = "%s (%s)";
+    public static final String DOWNLOADED_BYTES_LOG_MESSAGE = "Downloaded %d bytes to %s";
+    public static final String THUMBNAILS_UP_TO_DATE_LOG_MESSAGE =
+        "Thumbnails of %s were already made from content with ETag %s, skipping it";
+    public static final String THUMBNAIL_NOT_READABLE_LOG_MESSAGE = "Could not read metadata of thumbnail %s: %s";
+    public static final String COPIED_THUMBNAILS_LOG_MESSAGE = "Copied thumbnails of %s from those of %s";
+    public static final String THUMBNAILS_NOT_COPIED_LOG_MESSAGE = "Could not copy thumbnails of %s: %s";
+    public static final String CACHED_THUMBNAILS_LOG_MESSAGE = "Uploading cached thumbnails of %s";
+    public static final String THUMBNAIL_CACHE_LOG_MESSAGE = "Thumbnail cache: %d hits, %d misses, %d of %d bytes";
+    public static final String SCRATCH_SPACE_IN_USE_LOG_MESSAGE = "Scratch space in use: %d bytes";
+    public static final String READING_FROM_URL_LOG_MESSAGE = "Reading %d bytes of %s from a presigned URL";
+    // Smaller inputs are downloaded, which takes well under a second and saves the thumbnailer a few round trips.
+    public static final long DEFAULT_URL_INPUT_THRESHOLD_BYTES = 32L * 1024 * 1024;
+    // Reserved by every job on top of its input for the thumbnails and the intermediate files of the thumbnailers,
+    // such as video frames or the first slide of a presentation, which are at most a few megabytes.
+    public static final long OUTPUT_RESERVE_BYTES = 16L * 1024 * 1024;
     private static final Logger logger = LoggerFactory.getLogger(ThumbnailRequestHandler.class);
-    // protects against overwriting existing files in
-    // directory, plus it's the only place aws allows filewriting; To view thumbnails created locally: replace with
-    // "" and comment out outputFile.deleteOnExit() / inputFile.deleteOnExit();
-    private static final String INPUT_FILE_NAME_PREFIX = "/tmp/";
-    private static final String OUTPUT_FILE_NAME = "thumbnail.png";
+    // every job gets its own workspace below the scratch directory. The prefixes keep the input file, which is
+    // named after the content-disposition, from ever colliding with the output file.
+    private static final String INPUT_FILE_NAME_PREFIX = "input-";
+    private static final String OUTPUT_FILE_NAME_TEMPLATE = "output-thumbnail-%d";
+    // Named renditions are stored under a prefix, so each size can have its own cache and lifecycle rules.
+    private static final String RENDITION_KEY_TEMPLATE = "%s/%s";
     private static final String THUMBNAIL_BUCKET_ENVIRONMENT_FIELD = "THUMBNAIL_BUCKET";
+    private static final String CONTENT_INDEX_BUCKET_ENVIRONMENT_FIELD = "CONTENT_INDEX_BUCKET";
+    private static final String WORKER_COUNT_ENVIRONMENT_FIELD = "THUMBNAIL_WORKER_COUNT";
+    private static final String DOWNLOAD_BUFFER_SIZE_ENVIRONMENT_FIELD = "DOWNLOAD_BUFFER_SIZE";
+    private static final String SCRATCH_DIRECTORY_ENVIRONMENT_FIELD = "SCRATCH_DIRECTORY";
+    private static final String SCRATCH_QUOTA_BYTES_ENVIRONMENT_FIELD = "SCRATCH_QUOTA_BYTES";
+    private static final String THUMBNAIL_SIZES_ENVIRONMENT_FIELD = "THUMBNAIL_SIZES";
+    private static final String URL_INPUT_THRESHOLD_BYTES_ENVIRONMENT_FIELD = "URL_INPUT_THRESHOLD_BYTES";
+    private static final String PRIME_ON_INIT_ENVIRONMENT_FIELD = "PRIME_ON_INIT";
+    private static final String HEAD_RANGE_TEMPLATE = "bytes=0-%d";
+    // User metadata of every thumbnail, identifying the source content and the size it was made from.
+    private static final String SOURCE_ETAG_METADATA_KEY = "source-etag";
+    private static final String SOURCE_VERSION_ID_METADATA_KEY = "source-version-id";
+    private static final String RENDITION_METADATA_KEY = "rendition";
+    private static final String CONTENT_HASH_METADATA_KEY = "content-sha256";
+    // bucket/key/ETag of the input, the entry holds all of its sizes.
+    private static final String CACHE_KEY_TEMPLATE = "%s/%s/%s";
+    private static final String THUMBNAIL_CACHE_BYTES_ENVIRONMENT_FIELD = "THUMBNAIL_CACHE_BYTES";
+    private static final String THUMBNAIL_CACHE_DIRECTORY = "cache";
+    private static final String CACHE_EXCEEDS_SCRATCH_QUOTA_MESSAGE =
+        "%s (%d bytes) must be less than %s (%d bytes), the cache is taken out of the scratch quota";
+    // Where the thumbnails of a record came from, as reported in its metrics.
+    private static final String CACHE_THUMBNAIL_SOURCE = "Cache";
+    private static final String COPY_THUMBNAIL_SOURCE = "Copy";
+    private static final String RENDER_THUMBNAIL_SOURCE = "Render";
+    private static final String CONTENT_HASH_ALGORITHM = "SHA-256";
+    private static final String HEX_DIGEST_TEMPLATE = "%064x";
+    private static final int POSITIVE = 1;
+    // Long enough for ffmpeg to finish its range requests, short enough to be of little use if it leaks.
+    private static final Duration PRESIGNED_URL_DURATION = Duration.ofMinutes(15);
+    private static final int SINGLE_RECORD = 1;
+    private static final long UNKNOWN_SIZE = 0L;
+    private static final File NO_FILE = null;
+    private static final URL NO_URL = null;
+    // Inputs read from a URL are never read in full, so their content cannot be hashed.
+    private static final String NO_CONTENT_HASH = null;
     private final String thumbnailBucketName;
     private final S3Client s3Client;
-    private final ThumbnailerInitializer thumbnailerInitializer;
-    private String mimeTypeFromS3Response;
+    private final ThumbnailerManager thumbnailerManager;
+    private final int workerCount;
+    private final StreamingDownloader streamingDownloader;
+    private final ScratchSpace scratchSpace;
+    private final List<ThumbnailSize> thumbnailSizes;
+    private final S3Presigner s3Presigner;
+    private final long urlInputThresholdBytes;
+    private final ContentHashIndex contentHashIndex;
+    private final ThumbnailCache thumbnailCache;
 
     @JacocoGenerated
     public ThumbnailRequestHandler() {
@@ -58,21 +154,452 @@ public class ThumbnailRequestHandler implements RequestHandler<S3Event, URL> {
     }
 
     public ThumbnailRequestHandler(S3Client s3Client, ThumbnailerInitializer thumbnailerInitializer) {
+        this(s3Client, thumbnailerInitializer, readWorkerCount());
+    }
+
+    /**
+     * Creates a handler processing the records of an S3Event with a bounded number of concurrent workers.
+     *
+     * @param s3Client               client used for reading input files and writing thumbnails.
+     * @param thumbnailerInitializer shared thumbnailer configuration.
+     * @param workerCount            maximum number of records processed concurrently.
+     */
+    public ThumbnailRequestHandler(S3Client s3Client, ThumbnailerInitializer thumbnailerInitializer,
+                                   int workerCount) {
+        this(s3Client, thumbnailerInitializer, workerCount, createScratchSpace());
+    }
+
+    /**
+     * Creates a handler processing the records of an S3Event with a bounded number of concurrent workers, each
+     * record in its own workspace of the given scratch space.
+     *
+     * @param s3Client               client used for reading input files and writing thumbnails.
+     * @param thumbnailerInitializer shared thumbnailer configuration.
+     * @param workerCount            maximum number of records processed concurrently.
+     * @param scratchSpace           disk area for input files and intermediate results.
+     */
+    public ThumbnailRequestHandler(S3Client s3Client, ThumbnailerInitializer thumbnailerInitializer,
+                                   int workerCount, ScratchSpace scratchSpace) {
+        this(s3Client, thumbnailerInitializer, workerCount, scratchSpace, readThumbnailSizes());
+    }
+
+    /**
+     * Creates a handler that renders every input once and stores one thumbnail per requested size. The rendition
+     * without a name is stored under the key of the input object, named renditions under "name/key".
+     *
+     * @param s3Client               client used for reading input files and writing thumbnails.
+     * @param thumbnailerInitializer shared thumbnailer configuration.
+     * @param workerCount            maximum number of records processed concurrently.
+     * @param scratchSpace           disk area for input files and intermediate results.
+     * @param thumbnailSizes         renditions to create for every input.
+     */
+    public ThumbnailRequestHandler(S3Client s3Client, ThumbnailerInitializer thumbnailerInitializer,
+                                   int workerCount, ScratchSpace scratchSpace, List<ThumbnailSize> thumbnailSizes) {
+        this(s3Client, thumbnailerInitializer, workerCount, scratchSpace, thumbnailSizes, S3Presigner.create());
+    }
+
+    /**
+     * Creates a handler that lets thumbnailers able to read URLs, such as the one for video, read large inputs with
+     * range requests on a presigned URL instead of downloading them. Inputs of at least URL_INPUT_THRESHOLD_BYTES,
+     * by default 32 MiB, are read this way.
+     *
+     * @param s3Client               client used for reading input files and writing thumbnails.
+     * @param thumbnailerInitializer shared thumbnailer configuration.
+     * @param workerCount            maximum number of records processed concurrently.
+     * @param scratchSpace           disk area for input files and intermediate results.
+     * @param thumbnailSizes         renditions to create for every input.
+     * @param s3Presigner            presigner creating the URLs large inputs are read from.
+     */
+    public ThumbnailRequestHandler(S3Client s3Client, ThumbnailerInitializer thumbnailerInitializer,
+                                   int workerCount, ScratchSpace scratchSpace, List<ThumbnailSize> thumbnailSizes,
+                                   S3Presigner s3Presigner) {
         this.thumbnailBucketName = new Environment().readEnv(THUMBNAIL_BUCKET_ENVIRONMENT_FIELD);
         this.s3Client = s3Client;
-        this.thumbnailerInitializer = thumbnailerInitializer;
+        // Built once per container, the thumbnailers themselves are created when the first input of their type comes.
+        this.thumbnailerManager = new ThumbnailerManager(thumbnailerInitializer);
+        this.workerCount = Math.max(SINGLE_RECORD, workerCount);
+        this.streamingDownloader = new StreamingDownloader(readDownloadBufferSize());
+        this.scratchSpace = scratchSpace;
+        this.thumbnailSizes = List.copyOf(thumbnailSizes);
+        this.s3Presigner = s3Presigner;
+        this.urlInputThresholdBytes = readUrlInputThresholdBytes();
+        this.contentHashIndex = new ContentHashIndex(s3Client,
+                                                     new Environment().readEnv(CONTENT_INDEX_BUCKET_ENVIRONMENT_FIELD));
+        this.thumbnailCache = createThumbnailCache(scratchSpace);
+        logger.debug(CURRENTLY_SUPPORTING_THE_FOLLOWING_MIME_TYPES_LOG_MESSAGE + thumbnailerManager.getRoutingTable());
+        if (readPrimeOnInit()) {
+            // Lambda runs the constructor in the init phase, so the first request does not pay for the warm-up.
+            new ColdStartPrimer(s3Client, thumbnailBucketName).prime();
+        }
     }
 
     @Override
-    public URL handleRequest(S3Event s3Event, Context context) {
-        var objectKey = getObjectKey(s3Event);
-        var inputFile = readFile(s3Event, objectKey);
-        var outputFile = generateThumbnail(inputFile);
+    public List<ThumbnailResult> handleRequest(S3Event s3Event, Context context) {
+        var results = processRecords(s3Event.getRecords());
+        logger.info(String.format(THUMBNAIL_CACHE_LOG_MESSAGE, thumbnailCache.getHitCount(),
+                                  thumbnailCache.getMissCount(), thumbnailCache.getBytesInUse(),
+                                  thumbnailCache.getBudgetBytes()));
+        throwExceptionIfAnyRecordFailed(results);
+        return results;
+    }
 
-        writeThumbnailToS3(outputFile, objectKey);
-        outputFile.deleteOnExit();
-        inputFile.deleteOnExit();
-        return getThumbnailUrl(objectKey);
+    private static int readWorkerCount() {
+        return new Environment().readEnvOpt(WORKER_COUNT_ENVIRONMENT_FIELD)
+                   .map(Integer::parseInt)
+                   .orElse(Runtime.getRuntime().availableProcessors());
+    }
+
+    private static List<ThumbnailSize> readThumbnailSizes() {
+        return new Environment().readEnvOpt(THUMBNAIL_SIZES_ENVIRONMENT_FIELD)
+                   .map(ThumbnailSize::parseList)
+                   .orElse(List.of(ThumbnailSize.DEFAULT));
+    }
+
+    private static ScratchSpace createScratchSpace() {
+        var environment = new Environment();
+        var root = environment.readEnvOpt(SCRATCH_DIRECTORY_ENVIRONMENT_FIELD).orElse(ScratchSpace.DEFAULT_ROOT);
+        var quotaBytes = environment.readEnvOpt(SCRATCH_QUOTA_BYTES_ENVIRONMENT_FIELD)
+                             .map(Long::parseLong)
+                             .orElse(ScratchSpace.DEFAULT_QUOTA_BYTES);
+        // The quota covers the thumbnail cache kept below the scratch directory as well.
+        var thumbnailCacheBytes = readThumbnailCacheBytes();
+        if (thumbnailCacheBytes >= quotaBytes) {
+            throw new IllegalStateException(String.format(CACHE_EXCEEDS_SCRATCH_QUOTA_MESSAGE,
+                                                          THUMBNAIL_CACHE_BYTES_ENVIRONMENT_FIELD,
+                                                          thumbnailCacheBytes,
+                                                          SCRATCH_QUOTA_BYTES_ENVIRONMENT_FIELD, quotaBytes));
+        }
+        var scratchSpace = new ScratchSpace(Path.of(root), quotaBytes - thumbnailCacheBytes);
+        try {
+            scratchSpace.deleteStaleWorkspaces();
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        return scratchSpace;
+    }
+
+    private static long readThumbnailCacheBytes() {
+        return new Environment().readEnvOpt(THUMBNAIL_CACHE_BYTES_ENVIRONMENT_FIELD)
+                   .map(Long::parseLong)
+                   .orElse(ThumbnailCache.DEFAULT_BUDGET_BYTES);
+    }
+
+    private static ThumbnailCache createThumbnailCache(ScratchSpace scratchSpace) {
+        try {
+            return new ThumbnailCache(scratchSpace.getRoot().resolve(THUMBNAIL_CACHE_DIRECTORY),
+                                      readThumbnailCacheBytes());
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static int readDownloadBufferSize() {
+        return new Environment().readEnvOpt(DOWNLOAD_BUFFER_SIZE_ENVIRONMENT_FIELD)
+                   .map(Integer::parseInt)
+                   .orElse(StreamingDownloader.DEFAULT_BUFFER_SIZE);
+    }
+
+    private static long readUrlInputThresholdBytes() {
+        return new Environment().readEnvOpt(URL_INPUT_THRESHOLD_BYTES_ENVIRONMENT_FIELD)
+                   .map(Long::parseLong)
+                   .orElse(DEFAULT_URL_INPUT_THRESHOLD_BYTES);
+    }
+
+    private static boolean readPrimeOnInit() {
+        return new Environment().readEnvOpt(PRIME_ON_INIT_ENVIRONMENT_FIELD)
+                   .map(Boolean::parseBoolean)
+                   .orElse(false);
+    }
+
+    private List<ThumbnailResult> processRecords(List<S3EventNotificationRecord> records) {
+        if (records.size() <= SINGLE_RECORD) {
+            return records.stream().map(this::processRecord).collect(Collectors.toList());
+        }
+        var executor = Executors.newFixedThreadPool(Math.min(workerCount, records.size()));
+        try {
+            return collectResults(submitRecords(records, executor));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private List<Future<ThumbnailResult>> submitRecords(List<S3EventNotificationRecord> records,
+                                                        ExecutorService executor) {
+        var tasks = records.stream()
+                        .map(record -> (Callable<ThumbnailResult>) () -> processRecord(record))
+                        .collect(Collectors.toList());
+        try {
+            return executor.invokeAll(tasks);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        }
+    }
+
+    private List<ThumbnailResult> collectResults(List<Future<ThumbnailResult>> futures) {
+        var results = new ArrayList<ThumbnailResult>(futures.size());
+        for (var future : futures) {
+            results.add(awaitResult(future));
+        }
+        return results;
+    }
+
+    private ThumbnailResult awaitResult(Future<ThumbnailResult> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        } catch (ExecutionException e) {
+            throw new RuntimeException(e.getCause());
+        }
+    }
+
+    // One metrics line per record, so a slow invocation can be traced to the record and the stage it was spent in.
+    private ThumbnailResult processRecord(S3EventNotificationRecord record) {
+        var metrics = StageMetrics.start();
+        var startTime = System.nanoTime();
+        var result = createResult(record);
+        metrics.addDurationSince(StageMetrics.TOTAL_TIME, startTime);
+        metrics.set(StageMetrics.SOURCE_BYTES, getObjectSize(record), StageMetrics.BYTES);
+        metrics.setProperty(StageMetrics.OBJECT_KEY_PROPERTY, result.getObjectKey());
+        metrics.setProperty(StageMetrics.STATUS_PROPERTY, result.getStatus().name());
+        // Written to standard output rather than logged, CloudWatch only extracts metrics from lines of plain JSON.
+        metrics.finish(System.out);
+        return result;
+    }
+
+    private ThumbnailResult createResult(S3EventNotificationRecord record) {
+        var objectKey = getObjectKey(record);
+        try {
+            var sourceMetadata = createSourceMetadata(record);
+            if (hasUpToDateThumbnails(objectKey, sourceMetadata)) {
+                logger.info(String.format(THUMBNAILS_UP_TO_DATE_LOG_MESSAGE, objectKey,
+                                          sourceMetadata.get(SOURCE_ETAG_METADATA_KEY)));
+                return ThumbnailResult.unchanged(objectKey, getThumbnailUrls(objectKey));
+            }
+            return ThumbnailResult.success(objectKey, createThumbnail(getBucketName(record), objectKey,
+                                                                      getObjectSize(record), sourceMetadata));
+        } catch (RuntimeException e) {
+            return ThumbnailResult.failure(objectKey, e);
+        }
+    }
+
+    // The thumbnails remember the ETag of the content they were made from, so a duplicate delivery or a re-upload of
+    // the same file costs one HEAD request per size instead of a download and a render. A thumbnail that is missing
+    // or cannot be read counts as outdated.
+    private boolean hasUpToDateThumbnails(String objectKey, Map<String, String> sourceMetadata) {
+        var sourceETag = sourceMetadata.get(SOURCE_ETAG_METADATA_KEY);
+        return Objects.nonNull(sourceETag)
+               && thumbnailSizes.stream().allMatch(size -> isUpToDate(objectKey, size, sourceETag));
+    }
+
+    private boolean isUpToDate(String objectKey, ThumbnailSize thumbnailSize, String sourceETag) {
+        var thumbnailKey = createThumbnailKey(objectKey, thumbnailSize);
+        try {
+            var metadata = headThumbnail(thumbnailKey).metadata();
+            return sourceETag.equals(metadata.get(SOURCE_ETAG_METADATA_KEY))
+                   && thumbnailSize.toString().equals(metadata.get(RENDITION_METADATA_KEY));
+        } catch (SdkException e) {
+            logger.debug(String.format(THUMBNAIL_NOT_READABLE_LOG_MESSAGE, thumbnailKey, e.getMessage()));
+            return false;
+        }
+    }
+
+    private static Map<String, String> createSourceMetadata(S3EventNotificationRecord record) {
+        var sourceMetadata = new LinkedHashMap<String, String>();
+        var sourceObject = record.getS3().getObject();
+        Optional.ofNullable(sourceObject.geteTag())
+            .ifPresent(eTag -> sourceMetadata.put(SOURCE_ETAG_METADATA_KEY, eTag));
+        Optional.ofNullable(sourceObject.getVersionId())
+            .ifPresent(versionId -> sourceMetadata.put(SOURCE_VERSION_ID_METADATA_KEY, versionId));
+        return sourceMetadata;
+    }
+
+    private static Map<String, String> createThumbnailMetadata(Map<String, String> sourceMetadata,
+                                                               ThumbnailSize thumbnailSize) {
+        var metadata = new LinkedHashMap<>(sourceMetadata);
+        metadata.put(RENDITION_METADATA_KEY, thumbnailSize.toString());
+        return metadata;
+    }
+
+    private List<URL> getThumbnailUrls(String objectKey) {
+        return thumbnailSizes.stream()
+                   .map(thumbnailSize -> getThumbnailUrl(createThumbnailKey(objectKey, thumbnailSize)))
+                   .collect(Collectors.toList());
+    }
+
+    private List<URL> createThumbnail(String bucketName, String objectKey, long objectSize,
+                                      Map<String, String> sourceMetadata) {
+        try (var workspace = scratchSpace.createWorkspace()) {
+            workspace.reserve(OUTPUT_RESERVE_BYTES);
+            var cacheKey = createCacheKey(bucketName, objectKey, sourceMetadata);
+            var cachedThumbnails = createOutputFiles(workspace);
+            var cachedMetadata = readCachedThumbnails(cacheKey, cachedThumbnails);
+            if (cachedMetadata.isPresent()) {
+                logger.info(String.format(CACHED_THUMBNAILS_LOG_MESSAGE, objectKey));
+                StageMetrics.current().setProperty(StageMetrics.THUMBNAIL_SOURCE_PROPERTY, CACHE_THUMBNAIL_SOURCE);
+                var contentHash = Optional.ofNullable(cachedMetadata.get().get(CONTENT_HASH_METADATA_KEY));
+                var thumbnailUrls = uploadThumbnails(cachedThumbnails, objectKey,
+                                                     addContentHash(sourceMetadata, contentHash));
+                contentHash.ifPresent(hash -> contentHashIndex.record(hash, objectKey));
+                return thumbnailUrls;
+            }
+            var urlInput = findUrlInput(bucketName, objectKey, objectSize);
+            var inputObject = urlInput.isPresent()
+                                  ? urlInput.get()
+                                  : downloadFile(bucketName, objectKey, objectSize, workspace);
+            StageMetrics.current().setProperty(StageMetrics.MIME_TYPE_PROPERTY, inputObject.getMimeType());
+            var contentHash = inputObject.getContentHash();
+            var thumbnailSourceMetadata = addContentHash(sourceMetadata, contentHash);
+            var copiedThumbnailUrls = contentHash.flatMap(
+                hash -> copyKnownThumbnails(hash, objectKey, thumbnailSourceMetadata));
+            if (copiedThumbnailUrls.isPresent()) {
+                StageMetrics.current().setProperty(StageMetrics.THUMBNAIL_SOURCE_PROPERTY, COPY_THUMBNAIL_SOURCE);
+                return copiedThumbnailUrls.get();
+            }
+            StageMetrics.current().setProperty(StageMetrics.THUMBNAIL_SOURCE_PROPERTY, RENDER_THUMBNAIL_SOURCE);
+            var outputFiles = generateThumbnails(inputObject, workspace);
+            // Cached before the upload, so a retry after a failed upload finds them.
+            cacheKey.ifPresent(key -> writeCachedThumbnails(key, outputFiles, contentHash));
+            var thumbnailUrls = uploadThumbnails(outputFiles, objectKey, thumbnailSourceMetadata);
+            contentHash.ifPresent(hash -> contentHashIndex.record(hash, objectKey));
+            return thumbnailUrls;
+        } catch (IOException e) {
+            logger.warn(e.getMessage());
+            throw new RuntimeException(e);
+        }
+    }
+
+    private List<URL> uploadThumbnails(Map<ThumbnailSize, File> outputFiles, String objectKey,
+                                       Map<String, String> sourceMetadata) throws IOException {
+        var thumbnailUrls = new ArrayList<URL>(outputFiles.size());
+        for (var output : outputFiles.entrySet()) {
+            var thumbnailKey = createThumbnailKey(objectKey, output.getKey());
+            writeThumbnailToS3(output.getValue(), thumbnailKey,
+                               createThumbnailMetadata(sourceMetadata, output.getKey()));
+            thumbnailUrls.add(getThumbnailUrl(thumbnailKey));
+        }
+        logger.debug(String.format(SCRATCH_SPACE_IN_USE_LOG_MESSAGE, scratchSpace.getBytesInUse()));
+        return thumbnailUrls;
+    }
+
+    // Only inputs with an ETag are cached, the key has to change when their content does.
+    private static Optional<String> createCacheKey(String bucketName, String objectKey,
+                                                   Map<String, String> sourceMetadata) {
+        return Optional.ofNullable(sourceMetadata.get(SOURCE_ETAG_METADATA_KEY))
+                   .map(eTag -> String.format(CACHE_KEY_TEMPLATE, bucketName, objectKey, eTag));
+    }
+
+    // All sizes of an input are cached as one entry, along with the content hash the thumbnails were uploaded with,
+    // so the upload of a hit carries the same metadata as the one of a render. Inputs read from a URL have no hash.
+    private Optional<Map<String, String>> readCachedThumbnails(Optional<String> cacheKey,
+                                                               Map<ThumbnailSize, File> outputFiles)
+        throws IOException {
+        if (cacheKey.isEmpty()) {
+            return Optional.empty();
+        }
+        var destinations = new LinkedHashMap<String, Path>();
+        outputFiles.forEach((thumbnailSize, outputFile) -> destinations.put(thumbnailSize.toString(),
+                                                                            outputFile.toPath()));
+        return thumbnailCache.read(cacheKey.get(), destinations);
+    }
+
+    private void writeCachedThumbnails(String cacheKey, Map<ThumbnailSize, File> outputFiles,
+                                       Optional<String> contentHash) {
+        var files = new LinkedHashMap<String, Path>();
+        outputFiles.forEach((thumbnailSize, outputFile) -> files.put(thumbnailSize.toString(), outputFile.toPath()));
+        thumbnailCache.write(cacheKey, files, addContentHash(Map.of(), contentHash));
+    }
+
+    private static Map<String, String> addContentHash(Map<String, String> sourceMetadata,
+                                                      Optional<String> contentHash) {
+        var metadata = new LinkedHashMap<>(sourceMetadata);
+        contentHash.ifPresent(hash -> metadata.put(CONTENT_HASH_METADATA_KEY, hash));
+        return metadata;
+    }
+
+    // The same file is often deposited under many keys. Copying the thumbnails of an earlier copy within the bucket
+    // is a few requests, where rendering them again can take seconds. All of them are checked before the first copy,
+    // so if any thumbnail of the earlier copy is missing or made from other content by now, the input is rendered.
+    private Optional<List<URL>> copyKnownThumbnails(String contentHash, String objectKey,
+                                                    Map<String, String> sourceMetadata) {
+        var knownObjectKey = contentHashIndex.find(contentHash);
+        if (knownObjectKey.isEmpty()) {
+            return Optional.empty();
+        }
+        try {
+            var knownThumbnails = new LinkedHashMap<ThumbnailSize, HeadObjectResponse>();
+            for (var thumbnailSize : thumbnailSizes) {
+                var knownThumbnail = headThumbnail(createThumbnailKey(knownObjectKey.get(), thumbnailSize));
+                var metadata = createThumbnailMetadata(sourceMetadata, thumbnailSize);
+                if (!isSameRendition(knownThumbnail.metadata(), metadata)) {
+                    return Optional.empty();
+                }
+                knownThumbnails.put(thumbnailSize, knownThumbnail);
+            }
+            var thumbnailUrls = new ArrayList<URL>(knownThumbnails.size());
+            for (var knownThumbnail : knownThumbnails.entrySet()) {
+                var thumbnailKey = createThumbnailKey(objectKey, knownThumbnail.getKey());
+                copyThumbnail(createThumbnailKey(knownObjectKey.get(), knownThumbnail.getKey()),
+                              knownThumbnail.getValue(), thumbnailKey,
+                              createThumbnailMetadata(sourceMetadata, knownThumbnail.getKey()));
+                thumbnailUrls.add(getThumbnailUrl(thumbnailKey));
+            }
+            logger.info(String.format(COPIED_THUMBNAILS_LOG_MESSAGE, objectKey, knownObjectKey.get()));
+            return Optional.of(thumbnailUrls);
+        } catch (SdkException e) {
+            logger.debug(String.format(THUMBNAILS_NOT_COPIED_LOG_MESSAGE, knownObjectKey.get(), e.getMessage()));
+            return Optional.empty();
+        }
+    }
+
+    private HeadObjectResponse headThumbnail(String thumbnailKey) {
+        return s3Client.headObject(HeadObjectRequest.builder()
+                                       .bucket(thumbnailBucketName)
+                                       .key(thumbnailKey)
+                                       .build());
+    }
+
+    // The metadata is replaced to describe the new input, the content type has to be given along with it. The copy
+    // only succeeds if the known thumbnail is still the one that was checked.
+    private void copyThumbnail(String knownThumbnailKey, HeadObjectResponse knownThumbnail, String thumbnailKey,
+                               Map<String, String> metadata) {
+        s3Client.copyObject(CopyObjectRequest.builder()
+                                .sourceBucket(thumbnailBucketName)
+                                .sourceKey(knownThumbnailKey)
+                                .copySourceIfMatch(knownThumbnail.eTag())
+                                .destinationBucket(thumbnailBucketName)
+                                .destinationKey(thumbnailKey)
+                                .metadataDirective(MetadataDirective.REPLACE)
+                                .contentType(knownThumbnail.contentType())
+                                .metadata(metadata)
+                                .build());
+    }
+
+    private static boolean isSameRendition(Map<String, String> existingMetadata, Map<String, String> metadata) {
+        return Objects.equals(existingMetadata.get(CONTENT_HASH_METADATA_KEY), metadata.get(CONTENT_HASH_METADATA_KEY))
+               && Objects.equals(existingMetadata.get(RENDITION_METADATA_KEY), metadata.get(RENDITION_METADATA_KEY));
+    }
+
+    private void throwExceptionIfAnyRecordFailed(List<ThumbnailResult> results) {
+        var failures = results.stream()
+                           .filter(ThumbnailResult::isFailure)
+                           .map(result -> String.format(RECORD_FAILURE_TEMPLATE, result.getObjectKey(),
+                                                        result.getErrorMessage()))
+                           .collect(Collectors.toList());
+        if (!failures.isEmpty()) {
+            throw new RuntimeException(String.format(COULD_NOT_CREATE_THUMBNAILS_FOR_RECORDS_MESSAGE,
+                                                     failures.size(),
+                                                     results.size(),
+                                                     String.join(DELIMITER, failures)));
+        }
+    }
+
+    private static String createThumbnailKey(String objectKey, ThumbnailSize thumbnailSize) {
+        return thumbnailSize.isNamed()
+                   ? String.format(RENDITION_KEY_TEMPLATE, thumbnailSize.getName(), objectKey)
+                   : objectKey;
     }
 
     private URL getThumbnailUrl(String objectKey) {
@@ -80,71 +607,188 @@ public class ThumbnailRequestHandler implements RequestHandler<S3Event, URL> {
         return s3Client.utilities().getUrl(request);
     }
 
-    private void writeThumbnailToS3(File outputFile, String objectKey) {
+    private void writeThumbnailToS3(File outputFile, String objectKey, Map<String, String> metadata)
+        throws IOException {
+        // The encoder picks the format per image, so the content type is read back from the written file.
+        var contentType = OutputFormat.detect(outputFile).orElse(OutputFormat.PNG).getMimeType();
+        var startTime = System.nanoTime();
         try {
             s3Client.putObject(PutObjectRequest.builder()
                                    .bucket(thumbnailBucketName)
                                    .key(objectKey)
-                                   .contentType(IMAGE_PNG_MIME_TYPE)
+                                   .contentType(contentType)
+                                   .metadata(metadata)
                                    .build(), RequestBody.fromFile(outputFile));
+            var metrics = StageMetrics.current();
+            metrics.addDurationSince(StageMetrics.UPLOAD_TIME, startTime);
+            metrics.add(StageMetrics.UPLOADED_BYTES, outputFile.length(), StageMetrics.BYTES);
         } catch (RuntimeException e) {
             logger.warn(e.getMessage());
             throw new RuntimeException(e);
         }
     }
 
-    private File generateThumbnail(File inputFile) {
+    private Map<ThumbnailSize, File> createOutputFiles(ScratchWorkspace workspace) {
+        var outputFiles = new LinkedHashMap<ThumbnailSize, File>();
+        for (var thumbnailSize : thumbnailSizes) {
+            var outputFileName = String.format(OUTPUT_FILE_NAME_TEMPLATE, outputFiles.size());
+            outputFiles.put(thumbnailSize, workspace.newFile(outputFileName));
+        }
+        return outputFiles;
+    }
+
+    private Map<ThumbnailSize, File> generateThumbnails(InputObject inputObject, ScratchWorkspace workspace) {
         try {
-            var thumbnailerManager = new ThumbnailerManager(thumbnailerInitializer);
-            var supportedMimeTypes = String.join(DELIMITER, thumbnailerManager.getAcceptedMimeTypes());
-            logCurrentSupportedMimeTypes(supportedMimeTypes);
-            var outPutFile = new File(INPUT_FILE_NAME_PREFIX + OUTPUT_FILE_NAME);
-            thumbnailerManager.generateThumbnail(inputFile, outPutFile, mimeTypeFromS3Response);
-            return outPutFile;
+            var outputFiles = createOutputFiles(workspace);
+            if (inputObject.isUrl()) {
+                thumbnailerManager.generateThumbnails(inputObject.getUrl(), outputFiles, inputObject.getMimeType());
+            } else {
+                thumbnailerManager.generateThumbnails(inputObject.getFile(), outputFiles,
+                                                      inputObject.getMimeType());
+            }
+            return outputFiles;
         } catch (IOException | ThumbnailerException e) {
             logger.warn(COULD_NOT_CREATE_THUMBNAIL_LOG_MESSAGE);
             throw new RuntimeException(e);
         }
     }
 
-    private void logCurrentSupportedMimeTypes(String supportedMimeTypes) {
-        logger.debug(CURRENTLY_SUPPORTING_THE_FOLLOWING_MIME_TYPES_LOG_MESSAGE + supportedMimeTypes);
+    // Only the type is needed up front, the thumbnailer fetches the parts of the input it reads itself: ffmpeg the
+    // container index and a few keyframes, OpenOfficeThumbnailer the central directory and the preview. Smaller
+    // inputs are downloaded whatever their type, since the event does not tell the type and finding it would cost
+    // every input a request.
+    private Optional<InputObject> findUrlInput(String bucketName, String objectKey, long objectSize) {
+        if (objectSize < urlInputThresholdBytes) {
+            return Optional.empty();
+        }
+        var mimeType = sniffMimeType(bucketName, objectKey);
+        if (!thumbnailerManager.supportsUrlInput(mimeType)) {
+            return Optional.empty();
+        }
+        logger.debug(String.format(READING_FROM_URL_LOG_MESSAGE, objectSize, objectKey));
+        return Optional.of(new InputObject(NO_FILE, presignUrl(bucketName, objectKey), mimeType, NO_CONTENT_HASH));
+    }
+
+    // Reads the head of a large input with a range request and resolves its type from it and the declared content
+    // type, as for downloaded inputs. That is cheaper than downloading all of it only to find that no thumbnailer
+    // takes it, and keeps a wrong declared type from sending it to a thumbnailer that reads URLs.
+    private String sniffMimeType(String bucketName, String objectKey) {
+        var headRequest = GetObjectRequest.builder()
+                              .bucket(bucketName)
+                              .key(objectKey)
+                              .range(String.format(HEAD_RANGE_TEMPLATE, MediaTypeSniffer.SNIFF_LENGTH - 1))
+                              .build();
+        try (var response = s3Client.getObject(headRequest)) {
+            var mimeType = thumbnailerManager.resolveMimeType(response.response().contentType(),
+                                                              response.readNBytes(MediaTypeSniffer.SNIFF_LENGTH));
+            if (!thumbnailerManager.supports(mimeType)) {
+                throw rejectUnsupportedMimeType(mimeType);
+            }
+            return mimeType;
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static RuntimeException rejectUnsupportedMimeType(String mimeType) {
+        logger.warn(COULD_NOT_CREATE_THUMBNAIL_LOG_MESSAGE);
+        StageMetrics.current().setProperty(StageMetrics.MIME_TYPE_PROPERTY, String.valueOf(mimeType));
+        return new RuntimeException(new ThumbnailerException(String.format(NOT_SUPPORTED_MIMETYPE_S, mimeType)));
+    }
+
+    private URL presignUrl(String bucketName, String objectKey) {
+        var presignRequest = GetObjectPresignRequest.builder()
+                                 .signatureDuration(PRESIGNED_URL_DURATION)
+                                 .getObjectRequest(createObjectRequest(objectKey, bucketName))
+                                 .build();
+        return s3Presigner.presignGetObject(presignRequest).url();
     }
 
-    private File readFile(S3Event s3Event, String objectKey) {
-        var bucketName = getBucketName(s3Event);
+    private InputObject downloadFile(String bucketName, String objectKey, long objectSize,
+                                     ScratchWorkspace workspace) throws IOException {
+        workspace.reserve(objectSize);
+        return readFile(bucketName, objectKey, objectSize, workspace);
+    }
+
+    private InputObject readFile(String bucketName, String objectKey, long reservedBytes,
+                                 ScratchWorkspace workspace) {
         var objectRequest = createObjectRequest(objectKey, bucketName);
         return attempt(() -> s3Client.getObject(objectRequest))
-                   .map(this::readResponseAndRetrieveMimeType)
+                   .map(response -> readResponseAndRetrieveMimeType(response, reservedBytes, workspace))
                    .orElseThrow(this::logFailureAndThrowException);
     }
 
-    private RuntimeException logFailureAndThrowException(Failure<File> failure) {
+    private RuntimeException logFailureAndThrowException(Failure<InputObject> failure) {
         logger.warn(failure.getException().getMessage());
         throw new RuntimeException(failure.getException());
     }
 
-    private File readResponseAndRetrieveMimeType(ResponseInputStream<GetObjectResponse> response) {
-        mimeTypeFromS3Response = response.response().contentType();
-        String inputFileName = determineFileName(response);
-        File inputFile = new File(inputFileName);
-        try (var fileOutputStream = Files.newOutputStream(inputFile.toPath())) {
-            fileOutputStream.write(response.readAllBytes());
-        } catch (Exception e) {
+    private InputObject readResponseAndRetrieveMimeType(ResponseInputStream<GetObjectResponse> response,
+                                                        long reservedBytes, ScratchWorkspace workspace) {
+        File inputFile = workspace.newFile(INPUT_FILE_NAME_PREFIX + determineFileName(response));
+        var startTime = System.nanoTime();
+        try (response) {
+            reserveRemainingContentLength(response, reservedBytes, workspace);
+            var head = response.readNBytes(MediaTypeSniffer.SNIFF_LENGTH);
+            var mimeType = thumbnailerManager.resolveMimeType(response.response().contentType(), head);
+            if (!thumbnailerManager.supports(mimeType)) {
+                // Closing the stream would read the rest of the object to reuse the connection.
+                response.abort();
+                throw rejectUnsupportedMimeType(mimeType);
+            }
+            // The content is hashed on its way to disk, so recognizing a known file costs no extra pass over it.
+            var digest = createContentDigest();
+            var downloadedBytes = streamingDownloader.download(
+                new DigestInputStream(new SequenceInputStream(new ByteArrayInputStream(head), response), digest),
+                inputFile.toPath());
+            logger.debug(String.format(DOWNLOADED_BYTES_LOG_MESSAGE, downloadedBytes, inputFile));
+            var metrics = StageMetrics.current();
+            metrics.addDurationSince(StageMetrics.DOWNLOAD_TIME, startTime);
+            metrics.set(StageMetrics.DOWNLOADED_BYTES, downloadedBytes, StageMetrics.BYTES);
+            return new InputObject(inputFile, NO_URL, mimeType, toHex(digest.digest()));
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    // The size in the event is missing for some event sources and stale if the object has been replaced since, so
+    // what the response is about to deliver beyond the reservation is reserved before any of it is written.
+    private static void reserveRemainingContentLength(ResponseInputStream<GetObjectResponse> response,
+                                                      long reservedBytes, ScratchWorkspace workspace) {
+        var contentLength = Optional.ofNullable(response.response().contentLength()).orElse(UNKNOWN_SIZE);
+        if (contentLength <= reservedBytes) {
+            return;
+        }
+        try {
+            workspace.reserve(contentLength - reservedBytes);
+        } catch (IOException e) {
+            // Closing the stream would read the rest of the object to reuse the connection.
+            response.abort();
             throw new RuntimeException(e);
         }
-        return inputFile;
+    }
+
+    private static MessageDigest createContentDigest() {
+        try {
+            return MessageDigest.getInstance(CONTENT_HASH_ALGORITHM);
+        } catch (NoSuchAlgorithmException e) {
+            // Every Java platform is required to implement SHA-256.
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String toHex(byte[] digest) {
+        return String.format(HEX_DIGEST_TEMPLATE, new BigInteger(POSITIVE, digest));
     }
 
     private String determineFileName(ResponseInputStream<GetObjectResponse> responseInputStream) {
         return Objects.nonNull(responseInputStream.response().contentDisposition())
-                   ? INPUT_FILE_NAME_PREFIX
-                     + responseInputStream
-                           .response()
-                           .contentDisposition()
-                           .replace(FILENAME_PREFIX, StringUtils.EMPTY_STRING)
-                           .replace(FILENAME_POSTFIX, StringUtils.EMPTY_STRING)
-                   : INPUT_FILE_NAME_PREFIX + DEFAULT_FILENAME;
+                   ? responseInputStream
+                         .response()
+                         .contentDisposition()
+                         .replace(FILENAME_PREFIX, StringUtils.EMPTY_STRING)
+                         .replace(FILENAME_POSTFIX, StringUtils.EMPTY_STRING)
+                   : DEFAULT_FILENAME;
     }
 
     private GetObjectRequest createObjectRequest(String objectKey, String bucketName) {
@@ -155,11 +799,51 @@ public class ThumbnailRequestHandler implements RequestHandler<S3Event, URL> {
                    .build();
     }
 
-    private String getBucketName(S3Event s3Event) {
-        return s3Event.getRecords().get(0).getS3().getBucket().getName();
+    private String getBucketName(S3EventNotificationRecord record) {
+        return record.getS3().getBucket().getName();
+    }
+
+    private String getObjectKey(S3EventNotificationRecord record) {
+        return record.getS3().getObject().getKey();
+    }
+
+    private long getObjectSize(S3EventNotificationRecord record) {
+        var size = record.getS3().getObject().getSizeAsLong();
+        return Objects.nonNull(size) ? size : UNKNOWN_SIZE;
     }
 
-    private String getObjectKey(S3Event s3Event) {
-        return s3Event.getRecords().get(0).getS3().getObject().getKey();
+    private static final class InputObject {
+
+        private final File file;
+        private final URL url;
+        private final String mimeType;
+        private final String contentHash;
+
+        private InputObject(File file, URL url, String mimeType, String contentHash) {
+            this.file = file;
+            this.url = url;
+            this.mimeType = mimeType;
+            this.contentHash = contentHash;
+        }
+
+        public File getFile() {
+            return file;
+        }
+
+        public URL getUrl() {
+            return url;
+        }
+
+        public boolean isUrl() {
+            return Objects.nonNull(url);
+        }
+
+        public String getMimeType() {
+            return mimeType;
+        }
+
+        public Optional<String> getContentHash() {
+            return Optional.ofNullable(contentHash);
+        }
     }
 }
@@ -0,0 +1,74 @@
+package no.sikt.nva.handler;
+
+import java.net.URL;
+import java.util.List;
+
+public final class ThumbnailResult {
+
+    private final String objectKey;
+    private final List<URL> thumbnailUrls;
+    private final Status status;
+    private final String errorMessage;
+
+    private ThumbnailResult(String objectKey, List<URL> thumbnailUrls, Status status, String errorMessage) {
+        this.objectKey = objectKey;
+        this.thumbnailUrls = thumbnailUrls;
+        this.status = status;
+        this.errorMessage = errorMessage;
+    }
+
+    public static ThumbnailResult success(String objectKey, List<URL> thumbnailUrls) {
+        return new ThumbnailResult(objectKey, List.copyOf(thumbnailUrls), Status.SUCCESS, null);
+    }
+
+    /**
+     * Create the result of a record whose thumbnails were already made from the same source content, which is
+     * what duplicate deliveries and re-uploads of an identical file lead to.
+     *
+     * @param objectKey     key of the source object.
+     * @param thumbnailUrls URLs of the existing thumbnails.
+     * @return result with status UNCHANGED.
+     */
+    public static ThumbnailResult unchanged(String objectKey, List<URL> thumbnailUrls) {
+        return new ThumbnailResult(objectKey, List.copyOf(thumbnailUrls), Status.UNCHANGED, null);
+    }
+
+    public static ThumbnailResult failure(String objectKey, Exception exception) {
+        return new ThumbnailResult(objectKey, List.of(), Status.FAILURE, exception.getMessage());
+    }
+
+    public String getObjectKey() {
+        return objectKey;
+    }
+
+    /**
+     * Get the URL of the first rendition.
+     *
+     * @return thumbnail URL, or null if no thumbnail was created.
+     */
+    public URL getThumbnailUrl() {
+        return thumbnailUrls.isEmpty() ? null : thumbnailUrls.get(0);
+    }
+
+    public List<URL> getThumbnailUrls() {
+        return thumbnailUrls;
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    public String getErrorMessage() {
+        return errorMessage;
+    }
+
+    public boolean isFailure() {
+        return Status.FAILURE == status;
+    }
+
+    public enum Status {
+        SUCCESS,
+        UNCHANGED,
+        FAILURE
+    }
+}
@@ -0,0 +1,109 @@
+package no.sikt.nva.thumbnail;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.net.URL;
+import java.util.Map;
+import java.util.Objects;
+import no.sikt.nva.thumbnail.util.StageMetrics;
+import nva.commons.core.JacocoGenerated;
+
+/**
+ * Base class for thumbnailers that rasterize their input. The rendered image is passed to the ImageResizer in
+ * memory, so the full-resolution image is never encoded and decoded again.
+ */
+public abstract class AbstractImageRenderingThumbnailer extends AbstractThumbnailer implements ImageRenderer {
+
+
+    @Override
+    public void generateThumbnail(File input, File output) throws IOException, ThumbnailerException {
+        generateThumbnails(input, Map.of(getCurrentSize(), output), null);
+    }
+
+    @Override
+    public void generateThumbnail(URL input, File output) throws IOException, ThumbnailerException {
+        generateThumbnails(input, Map.of(getCurrentSize(), output), null);
+    }
+
+    /**
+     * Render the input once, at the bounding box of all renditions, and derive every rendition from the rendered
+     * image.
+     *
+     * @param input    Input file that should be processed.
+     * @param outputs  File each thumbnail size should be written to.
+     * @param mimeType MIME-Type of input file (null if unknown).
+     * @throws IOException          If file cannot be read/written.
+     * @throws ThumbnailerException If the thumbnailing process failed.
+     */
+    @Override
+    public void generateThumbnails(File input, Map<ThumbnailSize, File> outputs, String mimeType)
+        throws IOException, ThumbnailerException {
+        var bounds = findBoundingSize(outputs);
+        var startTime = System.nanoTime();
+        var image = renderImage(input, bounds.getWidth(), bounds.getHeight());
+        recordRender(image, startTime);
+        writeThumbnails(image, outputs, input.getName());
+    }
+
+    /**
+     * Render the input, read directly from the URL, once at the bounding box of all renditions, and derive every
+     * rendition from the rendered image.
+     *
+     * @param input    Input URL that should be processed.
+     * @param outputs  File each thumbnail size should be written to.
+     * @param mimeType MIME-Type of input file (null if unknown).
+     * @throws IOException          If the URL cannot be read or a file cannot be written.
+     * @throws ThumbnailerException If the thumbnailing process failed.
+     */
+    @Override
+    public void generateThumbnails(URL input, Map<ThumbnailSize, File> outputs, String mimeType)
+        throws IOException, ThumbnailerException {
+        var bounds = findBoundingSize(outputs);
+        var startTime = System.nanoTime();
+        var image = renderImage(input, outputs.values().iterator().next(), bounds.getWidth(), bounds.getHeight());
+        recordRender(image, startTime);
+        // The query string of a presigned URL holds its signature, so only the path is used in messages.
+        writeThumbnails(image, outputs, input.getPath());
+    }
+
+    /**
+     * Render an input read from a URL. Thumbnailers that override this method also override supportsUrlInput.
+     *
+     * @param input        Input URL that should be processed.
+     * @param output       Output file of the current job, intermediate files are created next to it.
+     * @param targetWidth  Width in Pixel of the thumbnail the image will be scaled to.
+     * @param targetHeight Height in Pixel of the thumbnail the image will be scaled to.
+     * @return the rendered image.
+     * @throws IOException          If the URL cannot be read.
+     * @throws ThumbnailerException If the rendering process failed.
+     */
+    @JacocoGenerated
+    protected BufferedImage renderImage(URL input, File output, int targetWidth, int targetHeight)
+        throws IOException, ThumbnailerException {
+        throw new ThumbnailerException("This Thumbnailer doesn't support URL!");
+    }
+
+    private static void recordRender(BufferedImage image, long startTime) {
+        var metrics = StageMetrics.current();
+        metrics.addDurationSince(StageMetrics.RENDER_TIME, startTime);
+        if (Objects.nonNull(image)) {
+            metrics.set(StageMetrics.RENDERED_WIDTH, image.getWidth(), StageMetrics.COUNT);
+            metrics.set(StageMetrics.RENDERED_HEIGHT, image.getHeight(), StageMetrics.COUNT);
+        }
+    }
+
+    /**
+     * Check whether a ready-made preview image can be used without enlarging it. Previews keep the aspect ratio of
+     * the document, so a preview is large enough when it fills the target box in at least one dimension.
+     *
+     * @param imageWidth   width of the preview in pixels.
+     * @param imageHeight  height of the preview in pixels.
+     * @param targetWidth  thumbnail width in pixels.
+     * @param targetHeight thumbnail height in pixels.
+     * @return true if the preview can replace a full render.
+     */
+    public static boolean isLargeEnough(int imageWidth, int imageHeight, int targetWidth, int targetHeight) {
+        return imageWidth >= targetWidth || imageHeight >= targetHeight;
+    }
+}
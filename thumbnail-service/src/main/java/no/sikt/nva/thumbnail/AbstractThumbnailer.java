@@ -2,19 +2,37 @@ package no.sikt.nva.thumbnail;
 
 import static no.sikt.nva.thumbnail.ThumbnailerConstants.THUMBNAIL_DEFAULT_HEIGHT;
 import static no.sikt.nva.thumbnail.ThumbnailerConstants.THUMBNAIL_DEFAULT_WIDTH;
+import java.awt.image.BufferedImage;
 import java.io.File;
 import java.io.IOException;
 import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.stream.Collectors;
+import no.sikt.nva.thumbnail.util.ImageResizer;
+import no.sikt.nva.thumbnail.util.ImageScaler;
+import no.sikt.nva.thumbnail.util.ThumbnailEncoder;
 import nva.commons.core.JacocoGenerated;
+import nva.commons.core.StringUtils;
 
 public abstract class AbstractThumbnailer implements Thumbnailer {
 
+    public static final String COULD_NOT_RENDER_IMAGE_MESSAGE = "Could not render an image from %s";
+    public static final String FILE_NOT_SUPPORTED_MESSAGE = "This Thumbnailer doesn't support File/file!";
+    public static final String URL_NOT_SUPPORTED_MESSAGE = "This Thumbnailer doesn't support URL!";
+    private static final String PARTIAL_RESULT_PREFIX = "partial-";
+    private static final String CURRENT_DIRECTORY = ".";
+
     protected int thumbHeight;
 
     protected int thumbWidth;
 
+    protected ThumbnailEncoder thumbnailEncoder;
 
+    private final ImageScaler imageScaler = new ImageScaler();
 
     /**
      * Initialize the thumbnail size from default constants.
@@ -22,6 +40,7 @@ public abstract class AbstractThumbnailer implements Thumbnailer {
     public AbstractThumbnailer() {
         this.thumbHeight = THUMBNAIL_DEFAULT_HEIGHT;
         this.thumbWidth = THUMBNAIL_DEFAULT_WIDTH;
+        this.thumbnailEncoder = new ThumbnailEncoder();
     }
 
     /**
@@ -40,6 +59,25 @@ public abstract class AbstractThumbnailer implements Thumbnailer {
         generateThumbnail(input, output);
     }
 
+    /**
+     * Generate thumbnails of several sizes. This fallback processes the input once per size, passing the size along
+     * instead of setting it on the thumbnailer, which may be shared by concurrent jobs. Thumbnailers that can derive
+     * all sizes from one rendering should override it.
+     *
+     * @param input    Input file that should be processed.
+     * @param outputs  File each thumbnail size should be written to.
+     * @param mimeType MIME-Type of input file (null if unknown).
+     * @throws IOException          If file cannot be read/written.
+     * @throws ThumbnailerException If the thumbnailing process failed.
+     */
+    @Override
+    public void generateThumbnails(File input, Map<ThumbnailSize, File> outputs, String mimeType)
+        throws IOException, ThumbnailerException {
+        for (var output : outputs.entrySet()) {
+            generateThumbnail(input, output.getValue(), mimeType, output.getKey());
+        }
+    }
+
     /**
      * Generate a Thumbnail of the input file. (You can override this method if you want to handle the different
      * MIME-Types).
@@ -56,20 +94,81 @@ public abstract class AbstractThumbnailer implements Thumbnailer {
         generateThumbnail(input, output);
     }
 
+    /**
+     * Generate thumbnails of several sizes from a URL. This fallback processes the input once per size like the one
+     * for files, and fails unless the thumbnailer supports URL inputs.
+     *
+     * @param input    Input URL that should be processed.
+     * @param outputs  File each thumbnail size should be written to.
+     * @param mimeType MIME-Type of input file (null if unknown).
+     * @throws IOException          If the URL cannot be read or a file cannot be written.
+     * @throws ThumbnailerException If the thumbnailing process failed.
+     */
+    @Override
+    public void generateThumbnails(URL input, Map<ThumbnailSize, File> outputs, String mimeType)
+        throws IOException, ThumbnailerException {
+        for (var output : outputs.entrySet()) {
+            generateThumbnail(input, output.getValue(), mimeType, output.getKey());
+        }
+    }
+
     @JacocoGenerated
     @Override
     public void generateThumbnail(File input, File output) throws IOException, ThumbnailerException {
-        throw new ThumbnailerException("This Thumbnailer doesn't support File/file!");
+        generateThumbnail(input, output, null, getCurrentSize());
     }
 
     @JacocoGenerated
     @Override
     public void generateThumbnail(URL input, File output) throws IOException, ThumbnailerException {
-        throw new ThumbnailerException("This Thumbnailer doesn't support URL!");
+        generateThumbnail(input, output, null, getCurrentSize());
     }
 
     /**
-     * Set a new Thumbnail size. All following thumbnails will be generated in this size.
+     * Generate a thumbnail of the given size. The fallbacks generating several sizes call this once per size. Override
+     * it to generate thumbnails one size at a time.
+     *
+     * @param input    Input file that should be processed.
+     * @param output   File in which should be written.
+     * @param mimeType MIME-Type of input file (null if unknown).
+     * @param size     size of the thumbnail.
+     * @throws IOException          If file cannot be read/written.
+     * @throws ThumbnailerException If the thumbnailing process failed.
+     */
+    protected void generateThumbnail(File input, File output, String mimeType, ThumbnailSize size)
+        throws IOException, ThumbnailerException {
+        throw new ThumbnailerException(FILE_NOT_SUPPORTED_MESSAGE);
+    }
+
+    /**
+     * Generate a thumbnail of the given size from a URL. The fallbacks generating several sizes call this once per
+     * size. Override it to generate thumbnails one size at a time from URLs.
+     *
+     * @param input    Input URL that should be processed.
+     * @param output   File in which should be written.
+     * @param mimeType MIME-Type of input file (null if unknown).
+     * @param size     size of the thumbnail.
+     * @throws IOException          If the URL cannot be read or a file cannot be written.
+     * @throws ThumbnailerException If the thumbnailing process failed.
+     */
+    protected void generateThumbnail(URL input, File output, String mimeType, ThumbnailSize size)
+        throws IOException, ThumbnailerException {
+        throw new ThumbnailerException(URL_NOT_SUPPORTED_MESSAGE);
+    }
+
+    /**
+     * Thumbnailers read local files unless they override this method.
+     *
+     * @return false.
+     */
+    @Override
+    public boolean supportsUrlInput() {
+        return false;
+    }
+
+    /**
+     * Set a new Thumbnail size. All following thumbnails made with the single-size methods will be generated in this
+     * size, so do not call it on a thumbnailer shared by concurrent jobs.
      *
      * @param thumbWidth  Width in Pixel.
      * @param thumbHeight Height in Pixel.
@@ -81,6 +180,16 @@ public abstract class AbstractThumbnailer implements Thumbnailer {
         this.thumbWidth = thumbWidth;
     }
 
+    /**
+     * Set the encoder that writes the thumbnails. All following thumbnails will be written by this encoder.
+     *
+     * @param thumbnailEncoder encoder choosing the output format and quality.
+     */
+    @Override
+    public void setThumbnailEncoder(ThumbnailEncoder thumbnailEncoder) {
+        this.thumbnailEncoder = thumbnailEncoder;
+    }
+
     /**
      * Get the currently set Image Width of this Thumbnailer.
      *
@@ -103,6 +212,73 @@ public abstract class AbstractThumbnailer implements Thumbnailer {
         return thumbHeight;
     }
 
+    /**
+     * Get the size the single-size methods generate thumbnails in.
+     *
+     * @return the currently set size.
+     */
+    protected ThumbnailSize getCurrentSize() {
+        return new ThumbnailSize(StringUtils.EMPTY_STRING, thumbWidth, thumbHeight);
+    }
+
+    /**
+     * Write every thumbnail size of an image. A size is scaled down from the thumbnail written just before it when
+     * that one is at least as wide and as high, and from the image otherwise, so no size is ever enlarged from a
+     * smaller one when the sizes have different aspect ratios.
+     *
+     * @param image     input rendered to fit the bounding box of all sizes, or null if nothing could be rendered.
+     * @param outputs   File each thumbnail size should be written to.
+     * @param inputName name of the input used in messages.
+     * @throws IOException          If a file cannot be written.
+     * @throws ThumbnailerException If there is no image.
+     */
+    protected void writeThumbnails(BufferedImage image, Map<ThumbnailSize, File> outputs, String inputName)
+        throws IOException, ThumbnailerException {
+        if (Objects.isNull(image)) {
+            throw new ThumbnailerException(String.format(COULD_NOT_RENDER_IMAGE_MESSAGE, inputName));
+        }
+        var sizes = outputs.keySet().stream().sorted(ThumbnailSize.LARGEST_FIRST).collect(Collectors.toList());
+        ThumbnailSize previousSize = null;
+        ImageResizer previousResizer = null;
+        for (var size : sizes) {
+            var source = Objects.nonNull(previousSize) && previousSize.contains(size)
+                             ? previousResizer.getScaledImage()
+                             : image;
+            var imageResizer = new ImageResizer(size.getWidth(), size.getHeight(), source, imageScaler,
+                                                thumbnailEncoder);
+            imageResizer.writeThumbnailToFile(outputs.get(size));
+            previousSize = size;
+            previousResizer = imageResizer;
+        }
+    }
+
+    /**
+     * Get the size to render at, so that the rendered image is large enough for every one of the sizes.
+     *
+     * @param outputs File each thumbnail size should be written to.
+     * @return the bounding box of all sizes.
+     */
+    protected static ThumbnailSize findBoundingSize(Map<ThumbnailSize, File> outputs) {
+        return ThumbnailSize.boundingBox(outputs.keySet());
+    }
+
+    /**
+     * Create an empty file for intermediate results in the same directory as the input or output file. Both are
+     * placed in the workspace of the current job, so intermediate results of concurrent jobs do not overwrite each
+     * other and are deleted together with the workspace.
+     *
+     * @param sibling Input or output file of the current job.
+     * @param suffix  Suffix of the temporary file, for instance ".png".
+     * @return an empty file the caller is responsible for deleting.
+     * @throws IOException If the file cannot be created.
+     */
+    protected static File createTemporaryFileNextTo(File sibling, String suffix) throws IOException {
+        var directory = Objects.requireNonNullElse(sibling.getAbsoluteFile().getParentFile(),
+                                                   new File(CURRENT_DIRECTORY));
+        Path temporaryFile = Files.createTempFile(directory.toPath(), PARTIAL_RESULT_PREFIX, suffix);
+        return temporaryFile.toFile();
+    }
+
     /**
      * Get a list of all MIME Types that this Thumbnailer is ready to process. You should override this method in order
      * to give hints when which Thumbnailer is most appropriate. If you do not override this method, the Thumbnailer
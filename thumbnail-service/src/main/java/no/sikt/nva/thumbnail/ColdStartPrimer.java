@@ -0,0 +1,120 @@
+package no.sikt.nva.thumbnail;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import javax.imageio.ImageIO;
+import no.sikt.nva.thumbnail.util.OutputFormat;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.PDPageContentStream;
+import org.apache.pdfbox.pdmodel.font.PDType1Font;
+import org.apache.pdfbox.rendering.ImageType;
+import org.apache.pdfbox.rendering.PDFRenderer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import software.amazon.awssdk.core.exception.SdkException;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.HeadObjectRequest;
+
+/**
+ * Does the one-off work of the first request while the Lambda container initializes: loading the ImageIO plugins,
+ * building the PDFBox font cache, which scans every font installed on the system, and setting up the S3 client with
+ * its credentials and a pooled connection to the thumbnail bucket. Each step is timed and logged, and a failing step
+ * only costs the time it would otherwise have cost the first request.
+ */
+public class ColdStartPrimer {
+
+    public static final String PRIMED_LOG_MESSAGE = "Primed %s in %d ms";
+    public static final String PRIMING_FAILED_LOG_MESSAGE = "Could not prime %s: %s";
+    public static final String IMAGE_IO_STEP = "ImageIO";
+    public static final String PDFBOX_STEP = "PDFBox";
+    public static final String S3_CLIENT_STEP = "S3 client";
+    // Never written, looking it up only warms the client, so a 403 or 404 is the expected answer.
+    public static final String PRIMING_OBJECT_KEY = "cold-start-priming";
+    private static final Logger logger = LoggerFactory.getLogger(ColdStartPrimer.class);
+    private static final int PRIMING_IMAGE_SIZE = 8;
+    private static final float PRIMING_RENDER_SCALE = 0.1f;
+    private static final float PRIMING_FONT_SIZE = 12f;
+    private static final float PRIMING_TEXT_OFFSET = 72f;
+    private static final String PRIMING_TEXT = "Thumbnail";
+    private static final long NANOS_PER_MILLI = 1_000_000L;
+    private final S3Client s3Client;
+    private final String bucketName;
+
+    public ColdStartPrimer(S3Client s3Client, String bucketName) {
+        this.s3Client = s3Client;
+        this.bucketName = bucketName;
+    }
+
+    /**
+     * Run every priming step.
+     *
+     * @return the steps that completed.
+     */
+    public List<String> prime() {
+        var primedSteps = new ArrayList<String>();
+        runStep(IMAGE_IO_STEP, ColdStartPrimer::primeImageIo, primedSteps);
+        runStep(PDFBOX_STEP, ColdStartPrimer::primePdfBox, primedSteps);
+        runStep(S3_CLIENT_STEP, this::primeS3Client, primedSteps);
+        return primedSteps;
+    }
+
+    private static void runStep(String step, Runnable priming, List<String> primedSteps) {
+        var start = System.nanoTime();
+        try {
+            priming.run();
+            primedSteps.add(step);
+            logger.info(String.format(PRIMED_LOG_MESSAGE, step, (System.nanoTime() - start) / NANOS_PER_MILLI));
+        } catch (RuntimeException e) {
+            logger.warn(String.format(PRIMING_FAILED_LOG_MESSAGE, step, e.getMessage()));
+        }
+    }
+
+    private static void primeImageIo() {
+        ImageIO.getReaderMIMETypes();
+        var image = new BufferedImage(PRIMING_IMAGE_SIZE, PRIMING_IMAGE_SIZE, BufferedImage.TYPE_INT_RGB);
+        try {
+            for (var format : OutputFormat.values()) {
+                if (format.hasWriter()) {
+                    var encoded = new ByteArrayOutputStream();
+                    ImageIO.write(image, format.getFormatName(), encoded);
+                    ImageIO.read(new ByteArrayInputStream(encoded.toByteArray()));
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // Rendering text in one of the standard 14 fonts makes PDFBox look up a system font to substitute it with,
+    // which is when the font cache is built.
+    private static void primePdfBox() {
+        try (var document = new PDDocument()) {
+            var page = new PDPage();
+            document.addPage(page);
+            try (var contentStream = new PDPageContentStream(document, page)) {
+                contentStream.beginText();
+                contentStream.setFont(PDType1Font.HELVETICA, PRIMING_FONT_SIZE);
+                contentStream.newLineAtOffset(PRIMING_TEXT_OFFSET, PRIMING_TEXT_OFFSET);
+                contentStream.showText(PRIMING_TEXT);
+                contentStream.endText();
+            }
+            new PDFRenderer(document).renderImage(0, PRIMING_RENDER_SCALE, ImageType.RGB);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void primeS3Client() {
+        try {
+            s3Client.headObject(HeadObjectRequest.builder().bucket(bucketName).key(PRIMING_OBJECT_KEY).build());
+        } catch (SdkException e) {
+            logger.debug(String.format(PRIMING_FAILED_LOG_MESSAGE, S3_CLIENT_STEP, e.getMessage()));
+        }
+    }
+}
@@ -0,0 +1,21 @@
+package no.sikt.nva.thumbnail;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+
+public interface ImageRenderer {
+
+    /**
+     * Render the input file to an image that can be handed directly to the ImageResizer, without encoding it to an
+     * intermediate file.
+     *
+     * @param input        Input file that should be processed.
+     * @param targetWidth  Width in Pixel of the thumbnail the image will be scaled to.
+     * @param targetHeight Height in Pixel of the thumbnail the image will be scaled to.
+     * @return the rendered image.
+     * @throws IOException          If file cannot be read.
+     * @throws ThumbnailerException If the rendering process failed.
+     */
+    BufferedImage renderImage(File input, int targetWidth, int targetHeight) throws IOException, ThumbnailerException;
+}
@@ -0,0 +1,9 @@
+package no.sikt.nva.thumbnail;
+
+/**
+ * How a thumbnailer got its image, logged so the hit rate of the preview fast paths can be followed.
+ */
+public enum RenderPath {
+    EMBEDDED_THUMBNAIL,
+    FULL_RENDER
+}
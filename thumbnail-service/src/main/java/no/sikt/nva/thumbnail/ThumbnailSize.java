@@ -0,0 +1,166 @@
+package no.sikt.nva.thumbnail;
+
+import static no.sikt.nva.thumbnail.ThumbnailerConstants.THUMBNAIL_DEFAULT_HEIGHT;
+import static no.sikt.nva.thumbnail.ThumbnailerConstants.THUMBNAIL_DEFAULT_WIDTH;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import nva.commons.core.StringUtils;
+
+/**
+ * One rendition of a thumbnail. Renditions are written as "name:WIDTHxHEIGHT", or "WIDTHxHEIGHT" for the rendition
+ * that is stored under the key of the source object itself.
+ */
+public final class ThumbnailSize {
+
+    public static final ThumbnailSize DEFAULT = new ThumbnailSize(StringUtils.EMPTY_STRING,
+                                                                  THUMBNAIL_DEFAULT_WIDTH,
+                                                                  THUMBNAIL_DEFAULT_HEIGHT);
+    public static final String INVALID_SIZE_MESSAGE = "Not a valid thumbnail size: %s";
+    public static final String DUPLICATE_SIZE_MESSAGE = "Thumbnail size listed more than once: %s";
+    public static final String RESERVED_NAME_MESSAGE = "Thumbnail size name is reserved: %s";
+    /**
+     * Orders renditions from the largest to the smallest area.
+     */
+    public static final Comparator<ThumbnailSize> LARGEST_FIRST =
+        Comparator.comparingLong(ThumbnailSize::getArea).reversed();
+    private static final Pattern SIZE_PATTERN = Pattern.compile("(?:([\\w-]+):)?(\\d+)x(\\d+)");
+    private static final String LIST_DELIMITER = ",";
+    // Earlier versions kept the content index under this prefix of the thumbnail bucket, and their entries may still
+    // be there, so no rendition may be stored under it.
+    private static final List<String> RESERVED_NAMES = List.of("content-index");
+    private static final int NAME_GROUP = 1;
+    private static final int WIDTH_GROUP = 2;
+    private static final int HEIGHT_GROUP = 3;
+    private final String name;
+    private final int width;
+    private final int height;
+
+    public ThumbnailSize(String name, int width, int height) {
+        if (width <= 0 || height <= 0) {
+            throw new IllegalArgumentException(String.format(INVALID_SIZE_MESSAGE, width + "x" + height));
+        }
+        this.name = name;
+        this.width = width;
+        this.height = height;
+    }
+
+    /**
+     * Parse a comma separated list of renditions, for instance "400x300,small:160x120,large:1200x900". Every
+     * rendition is stored under a key made from its name, so each name may only be listed once.
+     *
+     * @param sizes list of renditions.
+     * @return the renditions in the order they were listed.
+     */
+    public static List<ThumbnailSize> parseList(String sizes) {
+        var renditions = Arrays.stream(sizes.split(LIST_DELIMITER))
+                             .map(String::strip)
+                             .map(ThumbnailSize::parse)
+                             .collect(Collectors.toList());
+        var names = new HashSet<String>();
+        for (var rendition : renditions) {
+            if (!names.add(rendition.getName())) {
+                throw new IllegalArgumentException(String.format(DUPLICATE_SIZE_MESSAGE, rendition));
+            }
+        }
+        return renditions;
+    }
+
+    /**
+     * Get the smallest box every one of the renditions fits in, which is the size to render at when the renditions
+     * have different aspect ratios.
+     *
+     * @param sizes renditions, at least one.
+     * @return an unnamed rendition as wide as the widest and as high as the highest of the renditions.
+     */
+    public static ThumbnailSize boundingBox(Collection<ThumbnailSize> sizes) {
+        var width = sizes.stream().mapToInt(ThumbnailSize::getWidth).max().orElseThrow();
+        var height = sizes.stream().mapToInt(ThumbnailSize::getHeight).max().orElseThrow();
+        return new ThumbnailSize(StringUtils.EMPTY_STRING, width, height);
+    }
+
+    /**
+     * Parse a single rendition.
+     *
+     * @param size rendition written as "name:WIDTHxHEIGHT" or "WIDTHxHEIGHT".
+     * @return the rendition.
+     */
+    public static ThumbnailSize parse(String size) {
+        var matcher = SIZE_PATTERN.matcher(size);
+        if (!matcher.matches()) {
+            throw new IllegalArgumentException(String.format(INVALID_SIZE_MESSAGE, size));
+        }
+        var name = StringUtils.isBlank(matcher.group(NAME_GROUP))
+                       ? StringUtils.EMPTY_STRING
+                       : matcher.group(NAME_GROUP);
+        if (RESERVED_NAMES.contains(name)) {
+            throw new IllegalArgumentException(String.format(RESERVED_NAME_MESSAGE, size));
+        }
+        return new ThumbnailSize(name,
+                                 Integer.parseInt(matcher.group(WIDTH_GROUP)),
+                                 Integer.parseInt(matcher.group(HEIGHT_GROUP)));
+    }
+
+    /**
+     * Get the rendition name, which is empty for the rendition stored under the key of the source object.
+     *
+     * @return rendition name.
+     */
+    public String getName() {
+        return name;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public boolean isNamed() {
+        return !name.isEmpty();
+    }
+
+    /**
+     * Check whether another rendition fits inside this one. An image scaled to fit this rendition is then at least as
+     * large as the other rendition needs, so the other rendition can be scaled down from it.
+     *
+     * @param other rendition to compare with.
+     * @return true if the other rendition is neither wider nor higher than this one.
+     */
+    public boolean contains(ThumbnailSize other) {
+        return width >= other.width && height >= other.height;
+    }
+
+    private long getArea() {
+        return (long) width * height;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof ThumbnailSize)) {
+            return false;
+        }
+        var that = (ThumbnailSize) o;
+        return width == that.width && height == that.height && name.equals(that.name);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(name, width, height);
+    }
+
+    @Override
+    public String toString() {
+        return isNamed() ? name + ":" + width + "x" + height : width + "x" + height;
+    }
+}
@@ -4,6 +4,8 @@ import java.io.File;
 import java.io.IOException;
 import java.net.URL;
 import java.util.List;
+import java.util.Map;
+import no.sikt.nva.thumbnail.util.ThumbnailEncoder;
 
 public interface Thumbnailer  {
 
@@ -18,6 +20,18 @@ public interface Thumbnailer  {
      */
     void generateThumbnail(File input, File output, String mimeType) throws IOException, ThumbnailerException;
 
+    /**
+     * Generate thumbnails of several sizes from a single rendering of the input file.
+     *
+     * @param input    Input file that should be processed
+     * @param outputs  File each thumbnail size should be written to
+     * @param mimeType MIME-Type of input file (null if unknown)
+     * @throws IOException          If file cannot be read/written
+     * @throws ThumbnailerException If the thumbnailing process failed.
+     */
+    void generateThumbnails(File input, Map<ThumbnailSize, File> outputs, String mimeType)
+        throws IOException, ThumbnailerException;
+
     /**
      * Generate a Thumbnail of the input file.
      *
@@ -29,6 +43,18 @@ public interface Thumbnailer  {
      */
     void generateThumbnail(URL input, File output, String mimeType) throws IOException, ThumbnailerException;
 
+    /**
+     * Generate thumbnails of several sizes from a single rendering of the input, read directly from the URL.
+     *
+     * @param input    Input URL that should be processed
+     * @param outputs  File each thumbnail size should be written to
+     * @param mimeType MIME-Type of input file (null if unknown)
+     * @throws IOException          If the URL cannot be read or a file cannot be written
+     * @throws ThumbnailerException If the thumbnailing process failed.
+     */
+    void generateThumbnails(URL input, Map<ThumbnailSize, File> outputs, String mimeType)
+        throws IOException, ThumbnailerException;
+
     /**
      * Generate a Thumbnail of the input file.
      *
@@ -57,6 +83,13 @@ public interface Thumbnailer  {
      */
     void setImageSize(int width, int height);
 
+    /**
+     * Set the encoder that writes the thumbnails. All following thumbnails will be written by this encoder.
+     *
+     * @param thumbnailEncoder encoder choosing the output format and quality.
+     */
+    void setThumbnailEncoder(ThumbnailEncoder thumbnailEncoder);
+
     /**
      * Get the currently set Image Width of this Thumbnailer.
      *
@@ -71,6 +104,14 @@ public interface Thumbnailer  {
      */
     int getCurrentImageHeight();
 
+    /**
+     * Check whether this Thumbnailer reads URLs itself, fetching only the parts of the input it needs, so the input
+     * does not have to be downloaded first.
+     *
+     * @return true if URL inputs are supported.
+     */
+    boolean supportsUrlInput();
+
     /**
      * Get a list of all MIME Types that this Thumbnailer is ready to process.
      *
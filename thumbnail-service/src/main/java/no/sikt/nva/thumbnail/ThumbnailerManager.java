@@ -2,47 +2,218 @@ package no.sikt.nva.thumbnail;
 
 import java.io.File;
 import java.io.IOException;
-import java.util.Collection;
+import java.net.URL;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.stream.Collectors;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.function.Supplier;
 import no.sikt.nva.thumbnail.thumbnailer.FFMpegThumbnailer;
 import no.sikt.nva.thumbnail.thumbnailer.MsOfficeThumbnailer;
 import no.sikt.nva.thumbnail.thumbnailer.NativeImageThumbnailer;
 import no.sikt.nva.thumbnail.thumbnailer.OpenOfficeThumbnailer;
 import no.sikt.nva.thumbnail.thumbnailer.PdfThumbnailer;
 import no.sikt.nva.thumbnail.thumbnailer.ThumbnailerInitializer;
+import no.sikt.nva.thumbnail.util.MediaTypeSniffer;
+import no.sikt.nva.thumbnail.util.StageMetrics;
+import no.sikt.nva.thumbnail.util.ThumbnailEncoder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
+/**
+ * Routes inputs to the thumbnailer accepting their MIME type. The manager is meant to live as long as the container:
+ * the routing table is built once from the MIME types the thumbnailers declare, and each thumbnailer is created the
+ * first time an input of one of its types arrives, so a container that only sees images never sets up ffmpeg, PDFBox
+ * or POI. Thumbnailers are shared by concurrent jobs. Their encoder is set once, before a thumbnailer is handed out,
+ * and the manager passes the sizes of a job with each call instead of setting them on the thumbnailer, so one job
+ * never changes the thumbnails of another.
+ */
 public class ThumbnailerManager {
 
     public static final String NOT_SUPPORTED_MIMETYPE_S = "Not supported mimetype %s";
-    private final List<Thumbnailer> thumbnailers;
+    public static final String THUMBNAILER_CREATED_LOG_MESSAGE = "Created %s on first use";
+    public static final String SNIFFED_MIME_TYPE_LOG_MESSAGE = "Input declared as %s is %s by its content";
+    private static final Logger logger = LoggerFactory.getLogger(ThumbnailerManager.class);
+    private final Map<String, Registration> registrationsByMimeType;
+    private final MediaTypeSniffer mediaTypeSniffer = new MediaTypeSniffer();
 
     public ThumbnailerManager(ThumbnailerInitializer thumbnailerInitializer) {
-        this.thumbnailers = List.of(new NativeImageThumbnailer(),
-                                    new FFMpegThumbnailer(thumbnailerInitializer),
-                                    new PdfThumbnailer(thumbnailerInitializer),
-                                    new MsOfficeThumbnailer(),
-                                    new OpenOfficeThumbnailer());
-    }
-
-    public void generateThumbnail(File input, File output, String mimeType) throws IOException, ThumbnailerException {
-        var correctThumbnailer =
-            thumbnailers.stream()
-                .filter(thumbnailer -> thumbnailer.getAcceptedMimeTypes().contains(mimeType))
-                .findFirst();
-        if (correctThumbnailer.isPresent()) {
-            var something = correctThumbnailer.get();
-            something.generateThumbnail(input, output, mimeType);
-        } else {
-            throw new ThumbnailerException(String.format(NOT_SUPPORTED_MIMETYPE_S, mimeType));
+        this(List.of(new Registration(NativeImageThumbnailer.class, NativeImageThumbnailer.ACCEPTED_MIME_TYPES,
+                                      NativeImageThumbnailer::new),
+                     new Registration(FFMpegThumbnailer.class, FFMpegThumbnailer.ACCEPTED_MIME_TYPES,
+                                      () -> new FFMpegThumbnailer(thumbnailerInitializer)),
+                     new Registration(PdfThumbnailer.class, PdfThumbnailer.ACCEPTED_MIME_TYPES,
+                                      PdfThumbnailer::new),
+                     new Registration(MsOfficeThumbnailer.class, MsOfficeThumbnailer.ACCEPTED_MIME_TYPES,
+                                      () -> new MsOfficeThumbnailer(thumbnailerInitializer.getMaxPreviewUpscale())),
+                     new Registration(OpenOfficeThumbnailer.class, OpenOfficeThumbnailer.ACCEPTED_MIME_TYPES,
+                                      OpenOfficeThumbnailer::new)),
+             thumbnailerInitializer.getThumbnailEncoder());
+    }
+
+    /**
+     * Creates a manager routing to the given thumbnailers. When several accept a MIME type, the first one gets it.
+     *
+     * @param registrations    thumbnailers in order of precedence.
+     * @param thumbnailEncoder encoder every thumbnailer writes its thumbnails with.
+     */
+    ThumbnailerManager(List<Registration> registrations, ThumbnailEncoder thumbnailEncoder) {
+        var routingTable = new LinkedHashMap<String, Registration>();
+        for (var registration : registrations) {
+            registration.setThumbnailEncoder(thumbnailEncoder);
+            registration.getAcceptedMimeTypes().forEach(mimeType -> routingTable.putIfAbsent(mimeType, registration));
         }
+        this.registrationsByMimeType = Collections.unmodifiableMap(routingTable);
+    }
+
+    /**
+     * Generate one thumbnail per requested size with the thumbnailer that accepts the MIME type.
+     *
+     * @param input    Input file that should be processed.
+     * @param outputs  File each thumbnail size should be written to.
+     * @param mimeType MIME-Type of input file.
+     * @throws IOException          If file cannot be read/written.
+     * @throws ThumbnailerException If no thumbnailer accepts the MIME type, or the thumbnailing process failed.
+     */
+    public void generateThumbnails(File input, Map<ThumbnailSize, File> outputs, String mimeType)
+        throws IOException, ThumbnailerException {
+        var thumbnailer = getThumbnailer(mimeType);
+        var startTime = startTimer(thumbnailer);
+        thumbnailer.generateThumbnails(input, outputs, mimeType);
+        StageMetrics.current().addDurationSince(StageMetrics.GENERATE_TIME, startTime);
+    }
+
+    /**
+     * Generate one thumbnail per requested size from an input the thumbnailer reads directly from the URL.
+     *
+     * @param input    URL of the input, readable with HTTP range requests.
+     * @param outputs  File each thumbnail size should be written to.
+     * @param mimeType MIME-Type of input file.
+     * @throws IOException          If the URL cannot be read or a file cannot be written.
+     * @throws ThumbnailerException If no thumbnailer accepts the MIME type, or the thumbnailing process failed.
+     */
+    public void generateThumbnails(URL input, Map<ThumbnailSize, File> outputs, String mimeType)
+        throws IOException, ThumbnailerException {
+        var thumbnailer = getThumbnailer(mimeType);
+        var startTime = startTimer(thumbnailer);
+        thumbnailer.generateThumbnails(input, outputs, mimeType);
+        StageMetrics.current().addDurationSince(StageMetrics.GENERATE_TIME, startTime);
+    }
+
+    /**
+     * Check whether the thumbnailer for a MIME type reads its input from a URL, so it need not be downloaded.
+     *
+     * @param mimeType MIME-Type of input file.
+     * @return true if the input can be passed as a URL.
+     */
+    public boolean supportsUrlInput(String mimeType) {
+        return findRegistration(mimeType).map(Registration::getThumbnailer)
+                   .map(Thumbnailer::supportsUrlInput)
+                   .orElse(false);
+    }
+
+    /**
+     * Check whether a thumbnailer accepts a MIME type, without creating it.
+     *
+     * @param mimeType MIME-Type of input file.
+     * @return true if inputs of the type can be thumbnailed.
+     */
+    public boolean supports(String mimeType) {
+        return findRegistration(mimeType).isPresent();
+    }
+
+    /**
+     * Decide which MIME type to route an input as. The type identified from the first bytes of the input wins over
+     * the declared one when a thumbnailer accepts it, so inputs stored as application/octet-stream or with a wrong
+     * type still reach the right thumbnailer. Inputs whose type cannot be identified keep the declared one.
+     *
+     * @param declaredMimeType MIME-Type the input was stored with, may be null.
+     * @param head             the first bytes of the input, up to MediaTypeSniffer.SNIFF_LENGTH of them.
+     * @return the MIME-Type to pass on to generateThumbnails.
+     */
+    public String resolveMimeType(String declaredMimeType, byte[] head) {
+        var sniffedMimeType = mediaTypeSniffer.sniff(head)
+                                  .filter(mimeType -> !mimeType.equals(declaredMimeType))
+                                  .filter(this::supports);
+        sniffedMimeType.ifPresent(mimeType -> logger.info(String.format(SNIFFED_MIME_TYPE_LOG_MESSAGE,
+                                                                        declaredMimeType, mimeType)));
+        return sniffedMimeType.orElse(declaredMimeType);
     }
 
     public List<String> getAcceptedMimeTypes() {
-        return thumbnailers
-                   .stream()
-                   .map(Thumbnailer::getAcceptedMimeTypes)
-                   .flatMap(Collection::stream)
-                   .collect(Collectors.toList());
+        return List.copyOf(registrationsByMimeType.keySet());
+    }
+
+    /**
+     * Get the routing table for diagnostics, without creating any thumbnailer.
+     *
+     * @return the simple class name of the thumbnailer handling each accepted MIME type, in order of registration.
+     */
+    public Map<String, String> getRoutingTable() {
+        var routingTable = new LinkedHashMap<String, String>();
+        registrationsByMimeType.forEach((mimeType, registration) -> routingTable.put(mimeType,
+                                                                                     registration.getName()));
+        return routingTable;
+    }
+
+    // The engine is the dimension of every metric of the job, so time spent in it can be told apart per engine.
+    private static long startTimer(Thumbnailer thumbnailer) {
+        StageMetrics.current().setEngine(thumbnailer.getClass().getSimpleName());
+        return System.nanoTime();
+    }
+
+    private Thumbnailer getThumbnailer(String mimeType) throws ThumbnailerException {
+        return findRegistration(mimeType)
+                   .map(Registration::getThumbnailer)
+                   .orElseThrow(() -> new ThumbnailerException(String.format(NOT_SUPPORTED_MIMETYPE_S, mimeType)));
+    }
+
+    private Optional<Registration> findRegistration(String mimeType) {
+        return Optional.ofNullable(mimeType).map(registrationsByMimeType::get);
+    }
+
+    /**
+     * A thumbnailer known by the MIME types it accepts, and created the first time one of them is routed to it.
+     */
+    static final class Registration {
+
+        private final String name;
+        private final List<String> acceptedMimeTypes;
+        private final Supplier<? extends Thumbnailer> factory;
+        private final Object lock = new Object();
+        private ThumbnailEncoder thumbnailEncoder;
+        private Thumbnailer thumbnailer;
+
+        Registration(Class<? extends Thumbnailer> type, List<String> acceptedMimeTypes,
+                     Supplier<? extends Thumbnailer> factory) {
+            this.name = type.getSimpleName();
+            this.acceptedMimeTypes = List.copyOf(acceptedMimeTypes);
+            this.factory = factory;
+        }
+
+        String getName() {
+            return name;
+        }
+
+        List<String> getAcceptedMimeTypes() {
+            return acceptedMimeTypes;
+        }
+
+        void setThumbnailEncoder(ThumbnailEncoder thumbnailEncoder) {
+            this.thumbnailEncoder = thumbnailEncoder;
+        }
+
+        Thumbnailer getThumbnailer() {
+            synchronized (lock) {
+                if (Objects.isNull(thumbnailer)) {
+                    thumbnailer = factory.get();
+                    thumbnailer.setThumbnailEncoder(thumbnailEncoder);
+                    logger.debug(String.format(THUMBNAILER_CREATED_LOG_MESSAGE, name));
+                }
+                return thumbnailer;
+            }
+        }
     }
 }
@@ -11,83 +11,316 @@ import static no.sikt.nva.thumbnail.util.MediaType.VIDEO_WEBM;
 import static no.sikt.nva.thumbnail.util.MediaType.VIDEO_X_FLV;
 import static no.sikt.nva.thumbnail.util.MediaType.VIDEO_X_M4V;
 import static no.sikt.nva.thumbnail.util.MediaType.VIDEO_X_MATROSKA;
+import java.awt.image.BufferedImage;
+import java.io.BufferedInputStream;
 import java.io.File;
 import java.io.IOException;
+import java.net.URL;
+import java.nio.file.Files;
+import java.time.Duration;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Locale;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.regex.Pattern;
 import net.bramp.ffmpeg.FFmpeg;
-import net.bramp.ffmpeg.FFmpegExecutor;
 import net.bramp.ffmpeg.FFprobe;
-import net.bramp.ffmpeg.builder.FFmpegBuilder;
-import no.sikt.nva.thumbnail.AbstractThumbnailer;
-import no.sikt.nva.thumbnail.util.ImageResizer;
+import net.bramp.ffmpeg.probe.FFmpegProbeResult;
+import net.bramp.ffmpeg.probe.FFmpegStream;
+import net.bramp.ffmpeg.probe.FFmpegStream.CodecType;
+import no.sikt.nva.thumbnail.AbstractImageRenderingThumbnailer;
+import no.sikt.nva.thumbnail.util.KeyframeSelector;
+import no.sikt.nva.thumbnail.util.PpmReader;
+import no.sikt.nva.thumbnail.util.StageMetrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
-public class FFMpegThumbnailer extends AbstractThumbnailer {
+/**
+ * Extracts a video frame with a single ffmpeg run. The video is probed first, and ffmpeg then seeks on the input side
+ * to a point relative to the duration, decodes only the next few keyframes, scales them in its filter graph and writes
+ * them as raw PPM to a pipe. The least dark of these keyframes becomes the thumbnail.
+ *
+ * <p>Videos can also be read from a URL, typically a presigned S3 URL. ffprobe and ffmpeg then fetch the container
+ * index and the few keyframes they need with HTTP range requests, instead of the whole video being downloaded first.
+ * A stalled read would then block the job for as long as the connection stays open, so both processes are given a
+ * time limit, after which the input fails.
+ */
+public class FFMpegThumbnailer extends AbstractImageRenderingThumbnailer {
 
-    public static final boolean OVERRIDE_OUTPUT = true;
-    private final File temporaryFileForPartiallyGeneratedResults;
+    public static final String FFMPEG_FAILED_MESSAGE = "ffmpeg exited with code %d: %s";
+    public static final String TIMED_OUT_MESSAGE = "%s did not finish within %d ms";
+    public static final String NO_VIDEO_STREAM_LOG_MESSAGE = "No video stream found in %s";
+    public static final String FRAME_SELECTED_LOG_MESSAGE = "Selected keyframe %d of %d at %.3f seconds";
+    // Far enough in to pass opening titles and fade-ins, near enough the start to be representative.
+    public static final double SEEK_FRACTION = 0.1;
+    public static final int CANDIDATE_KEYFRAMES = 4;
+    // ffmpeg does not work with MIME types but with formats, these are some of the formats as MIME types.
+    public static final List<String> ACCEPTED_MIME_TYPES = List.of(
+        APPLICATION_MS_ADVANCED_SYSTEMS_FORMAT.getValue(),
+        APPLICATION_FF_MPEG.getValue(),
+        VIDEO_MS_VIDEO.getValue(),
+        VIDEO_X_FLV.getValue(),
+        VIDEO_WEBM.getValue(),
+        VIDEO_MPEG.getValue(),
+        VIDEO_X_M4V.getValue(),
+        VIDEO_MP4.getValue(),
+        VIDEO_OGG.getValue(),
+        VIDEO_X_MATROSKA.getValue(),
+        VIDEO_QUICKTIME.getValue());
+    private static final Logger logger = LoggerFactory.getLogger(FFMpegThumbnailer.class);
+    private static final double START_OF_VIDEO = 0;
+    private static final String SECONDS_FORMAT = "%.3f";
+    private static final String LOG_SUFFIX = ".log";
+    private static final int SUCCESS = 0;
+    private static final String FFMPEG = "ffmpeg";
+    private static final String FFPROBE = "ffprobe";
+    // Kills ffmpeg processes that run too long. The frames are read from the pipe on the job's own thread, which
+    // stays blocked for as long as ffmpeg writes nothing, so the limit has to be enforced from another thread.
+    private static final ScheduledExecutorService WATCHDOG =
+        Executors.newSingleThreadScheduledExecutor(daemonThreads("ffmpeg-watchdog"));
+    // Runs ffprobe, whose process is started by the ffmpeg library and cannot be stopped from here. A probe that
+    // times out is abandoned and its thread released once the connection is closed.
+    private static final ExecutorService PROBES = Executors.newCachedThreadPool(daemonThreads("ffprobe"));
+    private static final Pattern HTTP_URL = Pattern.compile("^https?://.*", Pattern.CASE_INSENSITIVE);
+    // Seek with range requests even if the server does not announce support for them, and keep the connection open
+    // between the requests, so every seek does not pay for a new TLS handshake.
+    private static final List<String> HTTP_INPUT_OPTIONS = List.of("-seekable", "1",
+                                                                   "-multiple_requests", "1");
+    // Never enlarge the frame, the white padding around small frames is added when the thumbnail is written.
+    private static final String SCALE_FILTER_TEMPLATE =
+        "scale='min(iw,%d)':'min(ih,%d)':force_original_aspect_ratio=decrease:flags=area";
     private final FFmpeg ffmpeg;
     private final FFprobe ffprobe;
+    private final PpmReader ppmReader;
+    private final KeyframeSelector keyframeSelector;
+    private final Duration processTimeout;
 
     public FFMpegThumbnailer(ThumbnailerInitializer thumbnailerInitializer) {
         super();
         this.ffmpeg = thumbnailerInitializer.getFFmpeg();
         this.ffprobe = thumbnailerInitializer.getFFprobe();
-        this.temporaryFileForPartiallyGeneratedResults = new File(
-            thumbnailerInitializer.getPartiallyProcessedFilename());
+        this.processTimeout = thumbnailerInitializer.getProcessTimeout();
+        this.ppmReader = new PpmReader();
+        this.keyframeSelector = new KeyframeSelector();
     }
 
     @Override
-    public void generateThumbnail(File input, File output) throws IOException {
+    public BufferedImage renderImage(File input, int targetWidth, int targetHeight) throws IOException {
+        var errorLog = createTemporaryFileNextTo(input, LOG_SUFFIX);
+        try {
+            return renderFrame(input.getAbsolutePath(), input.getName(), targetWidth, targetHeight, errorLog);
+        } finally {
+            Files.deleteIfExists(errorLog.toPath());
+        }
+    }
+
+    /**
+     * Extract a frame of a video read directly from the URL. Nothing but the ffmpeg error log is written to disk.
+     *
+     * @param input        URL of the video, readable with HTTP range requests.
+     * @param output       Output file of the current job, the error log is created next to it.
+     * @param targetWidth  maximum frame width in pixels.
+     * @param targetHeight maximum frame height in pixels.
+     * @return the frame, or null if the video has no video stream or no frame could be extracted.
+     * @throws IOException If the video cannot be read.
+     */
+    @Override
+    protected BufferedImage renderImage(URL input, File output, int targetWidth, int targetHeight)
+        throws IOException {
+        var errorLog = createTemporaryFileNextTo(output, LOG_SUFFIX);
+        try {
+            // The query string of a presigned URL holds its signature, so only the path is logged.
+            return renderFrame(input.toString(), input.getPath(), targetWidth, targetHeight, errorLog);
+        } finally {
+            Files.deleteIfExists(errorLog.toPath());
+        }
+    }
 
-        encodeInput(input);
-        resizeToThumbnailSpecs(output);
-        temporaryFileForPartiallyGeneratedResults.deleteOnExit();
+    @Override
+    public boolean supportsUrlInput() {
+        return true;
+    }
+
+    /**
+     * Create the ffmpeg arguments extracting the candidate keyframes. The seek comes before the input, which makes
+     * ffmpeg jump to the keyframe in front of the seek position instead of decoding every frame up to it. That
+     * keyframe is kept rather than dropped for lying before the position, so even a clip with a single keyframe
+     * yields a frame. The decoder skips all frames that are not keyframes. HTTP inputs are read with range requests
+     * over a single connection.
+     *
+     * @param input          file name or URL of the video.
+     * @param seekPosition   position in seconds to look for keyframes from.
+     * @param targetWidth    maximum frame width in pixels.
+     * @param targetHeight   maximum frame height in pixels.
+     * @return arguments for ffmpeg, without the path of the executable.
+     */
+    public static List<String> createArguments(String input, double seekPosition, int targetWidth,
+                                               int targetHeight) {
+        var arguments = new ArrayList<>(List.of("-nostdin", "-loglevel", "error"));
+        if (isHttpUrl(input)) {
+            arguments.addAll(HTTP_INPUT_OPTIONS);
+        }
+        arguments.addAll(List.of("-skip_frame", "nokey",
+                                 "-noaccurate_seek",
+                                 "-ss", String.format(Locale.ROOT, SECONDS_FORMAT, seekPosition),
+                                 "-i", input,
+                                 "-an", "-sn",
+                                 "-vsync", "vfr",
+                                 "-frames:v", String.valueOf(CANDIDATE_KEYFRAMES),
+                                 "-vf", String.format(SCALE_FILTER_TEMPLATE, targetWidth, targetHeight),
+                                 "-pix_fmt", "rgb24",
+                                 "-c:v", "ppm",
+                                 "-f", "image2pipe",
+                                 "-"));
+        return arguments;
     }
 
-    //ffmpeg doesn't operate with mimetypes but with formats.
-    //Here are some of the formats converted to mimetypes:
     @Override
     public List<String> getAcceptedMimeTypes() {
-        return List.of(APPLICATION_MS_ADVANCED_SYSTEMS_FORMAT.getValue(),
-                       APPLICATION_FF_MPEG.getValue(),
-                       VIDEO_MS_VIDEO.getValue(),
-                       VIDEO_X_FLV.getValue(),
-                       VIDEO_WEBM.getValue(),
-                       VIDEO_MPEG.getValue(),
-                       VIDEO_X_M4V.getValue(),
-                       VIDEO_MP4.getValue(),
-                       VIDEO_OGG.getValue(),
-                       VIDEO_X_MATROSKA.getValue(),
-                       VIDEO_QUICKTIME.getValue()
-        );
-    }
-
-    private FFmpegBuilder setupEncodingConfiguration(File input) {
-        var fileOrFFmpegProbeResult = input.getAbsolutePath();
-        var destinationFilename = temporaryFileForPartiallyGeneratedResults.getAbsolutePath();
-        return new FFmpegBuilder()
-                   .setInput(fileOrFFmpegProbeResult)
-                   .overrideOutputFiles(OVERRIDE_OUTPUT)
-                   .addOutput(destinationFilename)
-                   .setStartOffset(3, TimeUnit.SECONDS)
-                   .setFrames(1)
-                   .done();
-    }
-
-    private void encodeInput(File input) {
-        var config = setupEncodingConfiguration(input);
-        runOnePassEncode(config);
-    }
-
-    private void runOnePassEncode(FFmpegBuilder builder) {
-        var executor = new FFmpegExecutor(ffmpeg, ffprobe);
-        executor.createJob(builder).run();
-    }
-
-    private void resizeToThumbnailSpecs(File output) throws IOException {
-        ImageResizer imageResizer = new ImageResizer(thumbWidth, thumbHeight,
-                                                     temporaryFileForPartiallyGeneratedResults);
-        imageResizer.writeThumbnailToFile(output);
+        return ACCEPTED_MIME_TYPES;
+    }
+
+    /**
+     * Calculate where to look for keyframes.
+     *
+     * @param duration duration of the video in seconds, or 0 if it is unknown.
+     * @return seek position in seconds.
+     */
+    public static double calculateSeekPosition(double duration) {
+        return duration > START_OF_VIDEO ? duration * SEEK_FRACTION : START_OF_VIDEO;
+    }
+
+    private static boolean isHttpUrl(String input) {
+        return HTTP_URL.matcher(input).matches();
+    }
+
+    private BufferedImage renderFrame(String input, String inputName, int targetWidth, int targetHeight,
+                                      File errorLog) throws IOException {
+        var metrics = StageMetrics.current();
+        var probeStartTime = System.nanoTime();
+        var probeResult = probe(input);
+        metrics.addDurationSince(StageMetrics.PROBE_TIME, probeStartTime);
+        var videoStream = findVideoStream(probeResult);
+        if (videoStream.isEmpty()) {
+            logger.warn(String.format(NO_VIDEO_STREAM_LOG_MESSAGE, inputName));
+            return null;
+        }
+        metrics.set(StageMetrics.SOURCE_WIDTH, videoStream.get().width, StageMetrics.COUNT);
+        metrics.set(StageMetrics.SOURCE_HEIGHT, videoStream.get().height, StageMetrics.COUNT);
+        var seekPosition = calculateSeekPosition(readDuration(probeResult, videoStream.get()));
+        var ffmpegStartTime = System.nanoTime();
+        var candidates = extractFrames(input, seekPosition, targetWidth, targetHeight, errorLog);
+        metrics.addDurationSince(StageMetrics.FFMPEG_TIME, ffmpegStartTime);
+        var frame = keyframeSelector.select(candidates);
+        frame.ifPresent(selected -> logger.debug(String.format(Locale.ROOT, FRAME_SELECTED_LOG_MESSAGE,
+                                                               candidates.indexOf(selected) + 1,
+                                                               candidates.size(),
+                                                               seekPosition)));
+        return frame.orElse(null);
+    }
+
+    private static Optional<FFmpegStream> findVideoStream(FFmpegProbeResult probeResult) {
+        return Optional.ofNullable(probeResult.getStreams())
+                   .flatMap(streams -> streams.stream()
+                                           .filter(stream -> stream.codec_type == CodecType.VIDEO)
+                                           .findFirst());
+    }
+
+    // Some containers only report the duration per stream.
+    private static double readDuration(FFmpegProbeResult probeResult, FFmpegStream videoStream) {
+        var format = probeResult.getFormat();
+        if (Objects.nonNull(format) && format.duration > START_OF_VIDEO) {
+            return format.duration;
+        }
+        return Math.max(START_OF_VIDEO, videoStream.duration);
+    }
+
+    private FFmpegProbeResult probe(String input) throws IOException {
+        var probe = PROBES.submit(() -> ffprobe.probe(input));
+        try {
+            return probe.get(processTimeout.toMillis(), TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            probe.cancel(true);
+            throw new IOException(createTimedOutMessage(FFPROBE), e);
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof IOException
+                      ? (IOException) e.getCause()
+                      : new IOException(e.getCause());
+        } catch (InterruptedException e) {
+            probe.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new IOException(e);
+        }
+    }
+
+    private List<BufferedImage> extractFrames(String input, double seekPosition, int targetWidth, int targetHeight,
+                                              File errorLog) throws IOException {
+        // Errors go to a file, a full stderr pipe would block ffmpeg while the frames are read from stdout.
+        var arguments = createArguments(input, seekPosition, targetWidth, targetHeight);
+        var process = new ProcessBuilder(ffmpeg.path(arguments))
+                          .redirectError(errorLog)
+                          .start();
+        var timedOut = new AtomicBoolean();
+        // Killing the process closes the pipe, which ends the read of the frames.
+        var watchdog = WATCHDOG.schedule(() -> kill(process, timedOut), processTimeout.toMillis(),
+                                         TimeUnit.MILLISECONDS);
+        try (var stream = new BufferedInputStream(process.getInputStream())) {
+            var frames = new ArrayList<BufferedImage>(CANDIDATE_KEYFRAMES);
+            for (var frame = ppmReader.read(stream); Objects.nonNull(frame); frame = ppmReader.read(stream)) {
+                frames.add(frame);
+            }
+            waitForSuccess(process, errorLog);
+            return frames;
+        } catch (IOException e) {
+            throw timedOut.get() ? new IOException(createTimedOutMessage(FFMPEG), e) : e;
+        } finally {
+            watchdog.cancel(false);
+            process.destroy();
+        }
+    }
+
+    private void waitForSuccess(Process process, File errorLog) throws IOException {
+        try {
+            if (!process.waitFor(processTimeout.toMillis(), TimeUnit.MILLISECONDS)) {
+                process.destroyForcibly();
+                throw new IOException(createTimedOutMessage(FFMPEG));
+            }
+            var exitCode = process.exitValue();
+            if (exitCode != SUCCESS) {
+                throw new IOException(String.format(FFMPEG_FAILED_MESSAGE, exitCode,
+                                                    Files.readString(errorLog.toPath()).strip()));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException(e);
+        }
+    }
+
+    private String createTimedOutMessage(String program) {
+        return String.format(TIMED_OUT_MESSAGE, program, processTimeout.toMillis());
+    }
+
+    private static void kill(Process process, AtomicBoolean timedOut) {
+        if (process.isAlive()) {
+            timedOut.set(true);
+            process.destroyForcibly();
+        }
+    }
+
+    private static ThreadFactory daemonThreads(String name) {
+        return runnable -> {
+            var thread = new Thread(runnable, name);
+            thread.setDaemon(true);
+            return thread;
+        };
     }
 }
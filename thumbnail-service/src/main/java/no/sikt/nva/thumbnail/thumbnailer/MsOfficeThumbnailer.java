@@ -1,6 +1,6 @@
 package no.sikt.nva.thumbnail.thumbnailer;
 
-import static no.sikt.nva.thumbnail.util.ImageResizer.PNG;
+import static no.sikt.nva.thumbnail.AbstractImageRenderingThumbnailer.isLargeEnough;
 import co.elastic.thumbnails4j.core.Dimensions;
 import co.elastic.thumbnails4j.core.Thumbnailer;
 import co.elastic.thumbnails4j.core.ThumbnailingException;
@@ -8,30 +8,210 @@ import co.elastic.thumbnails4j.doc.DOCThumbnailer;
 import co.elastic.thumbnails4j.docx.DOCXThumbnailer;
 import co.elastic.thumbnails4j.pptx.PPTXThumbnailer;
 import co.elastic.thumbnails4j.xls.XLSThumbnailer;
-import co.elastic.thumbnails4j.xlsx.XLSXThumbnailer;
 import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.IOException;
-import java.util.Collections;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Collectors;
 import javax.imageio.ImageIO;
+import javax.imageio.stream.MemoryCacheImageInputStream;
 import no.sikt.nva.thumbnail.AbstractThumbnailer;
+import no.sikt.nva.thumbnail.RenderPath;
+import no.sikt.nva.thumbnail.ThumbnailSize;
 import no.sikt.nva.thumbnail.ThumbnailerException;
+import no.sikt.nva.thumbnail.util.CellGridRenderer;
 import no.sikt.nva.thumbnail.util.MediaType;
+import no.sikt.nva.thumbnail.util.OoxmlPreviewExtractor;
+import no.sikt.nva.thumbnail.util.PptxSlideTrimmer;
+import no.sikt.nva.thumbnail.util.XlsxSheetReader;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
+/**
+ * Creates thumbnails of Word, Excel and PowerPoint documents. Office Open XML documents often carry a preview saved
+ * by the application, which makes every thumbnail size it can fill without being enlarged more than the configured
+ * factor when it is a raster image. The document is only rendered for the sizes the preview is too small for, and
+ * for documents without one. XLSX workbooks are rendered from the cells in the top left corner of the first
+ * worksheet, which are streamed from the workbook. Other documents are rendered by thumbnails4j, which loads the whole
+ * document into POI. For PPTX presentations that is a copy holding only the first slide, so the media of the other
+ * slides is never read.
+ */
 public class MsOfficeThumbnailer extends AbstractThumbnailer {
 
+    public static final String RENDER_PATH_LOG_MESSAGE = "Office thumbnail created from %s";
+    // Office saves previews about 256 pixels wide, which this lets fill the default thumbnail size.
+    public static final double DEFAULT_MAX_PREVIEW_UPSCALE = 2.0;
+    public static final String COULD_NOT_READ_EMBEDDED_THUMBNAIL_LOG_MESSAGE =
+        "Could not read embedded preview, rendering document instead: %s";
+    public static final List<String> ACCEPTED_MIME_TYPES = List.of(
+        MediaType.APPLICATION_MS_WORD.getValue(),
+        MediaType.APPLICATION_OPEN_XML_OFFICE_WORD_DOC.getValue(),
+        MediaType.APPLICATION_OPEN_XML_OFFICE_WORD.getValue(),
+        MediaType.APPLICATION_MS_EXCEL.getValue(),
+        MediaType.APPLICATION_OPEN_XML_OFFICE_SPREADSHEET.getValue(),
+        MediaType.APPLICATION_OPEN_XML_OFFICE_SPREADSHEET_SHEET.getValue(),
+        MediaType.APPLICATION_OPEN_XML_OFFICE_PRESENTATION.getValue(),
+        MediaType.APPLICATION_OPEN_XML_OFFICE_PRESENTATION_PRESENTATION.getValue());
+    private static final Logger logger = LoggerFactory.getLogger(MsOfficeThumbnailer.class);
+    private static final Set<MediaType> OFFICE_OPEN_XML_TYPES = EnumSet.of(
+        MediaType.APPLICATION_OPEN_XML_OFFICE_WORD,
+        MediaType.APPLICATION_OPEN_XML_OFFICE_WORD_DOC,
+        MediaType.APPLICATION_OPEN_XML_OFFICE_SPREADSHEET,
+        MediaType.APPLICATION_OPEN_XML_OFFICE_SPREADSHEET_SHEET,
+        MediaType.APPLICATION_OPEN_XML_OFFICE_PRESENTATION,
+        MediaType.APPLICATION_OPEN_XML_OFFICE_PRESENTATION_PRESENTATION);
+    private static final Set<MediaType> WORKBOOK_TYPES = EnumSet.of(
+        MediaType.APPLICATION_OPEN_XML_OFFICE_SPREADSHEET,
+        MediaType.APPLICATION_OPEN_XML_OFFICE_SPREADSHEET_SHEET);
+    private static final Set<MediaType> PRESENTATION_TYPES = EnumSet.of(
+        MediaType.APPLICATION_OPEN_XML_OFFICE_PRESENTATION,
+        MediaType.APPLICATION_OPEN_XML_OFFICE_PRESENTATION_PRESENTATION);
+    private static final String PRESENTATION_SUFFIX = ".pptx";
+    // Rendering at twice the thumbnail size leaves the scaler enough pixels for legible cell text.
+    private static final int OVERSAMPLING_FACTOR = 2;
+    private final OoxmlPreviewExtractor previewExtractor = new OoxmlPreviewExtractor();
+    private final XlsxSheetReader sheetReader = new XlsxSheetReader();
+    private final CellGridRenderer cellGridRenderer = new CellGridRenderer();
+    private final PptxSlideTrimmer slideTrimmer = new PptxSlideTrimmer();
+    private final double maxPreviewUpscale;
+
+    public MsOfficeThumbnailer() {
+        this(DEFAULT_MAX_PREVIEW_UPSCALE);
+    }
+
+    /**
+     * Create a thumbnailer that enlarges embedded previews at most by the given factor.
+     *
+     * @param maxPreviewUpscale how many times larger than the preview a thumbnail made from it may be, 1 to never
+     *                          enlarge previews.
+     */
+    public MsOfficeThumbnailer(double maxPreviewUpscale) {
+        this.maxPreviewUpscale = maxPreviewUpscale;
+    }
+
     @Override
     public void generateThumbnail(File input, File output, String mimeType) throws IOException, ThumbnailerException {
+        generateThumbnails(input, Map.of(getCurrentSize(), output), mimeType);
+    }
+
+    /**
+     * Generate the sizes the embedded preview of the document can fill from the preview, and the others by rendering
+     * the document once, with a single call to thumbnails4j that scales the result to every remaining dimension.
+     *
+     * @param input    Input file that should be processed.
+     * @param outputs  File each thumbnail size should be written to.
+     * @param mimeType MIME-Type of input file.
+     * @throws IOException          If file cannot be read/written.
+     * @throws ThumbnailerException If the thumbnailing process failed.
+     */
+    @Override
+    public void generateThumbnails(File input, Map<ThumbnailSize, File> outputs, String mimeType)
+        throws IOException, ThumbnailerException {
         final MediaType mediaType = MediaType.fromValue(mimeType);
 
+        var renderedOutputs = new LinkedHashMap<>(outputs);
+        var embeddedThumbnail = readEmbeddedThumbnail(input, mediaType);
+        if (embeddedThumbnail.isPresent()) {
+            var previewOutputs = selectSizesFilledBy(embeddedThumbnail.get(), outputs);
+            if (!previewOutputs.isEmpty()) {
+                logger.info(String.format(RENDER_PATH_LOG_MESSAGE, RenderPath.EMBEDDED_THUMBNAIL));
+                writeThumbnails(embeddedThumbnail.get(), previewOutputs, input.getName());
+                renderedOutputs.keySet().removeAll(previewOutputs.keySet());
+            }
+        }
+        if (renderedOutputs.isEmpty()) {
+            return;
+        }
+        logger.info(String.format(RENDER_PATH_LOG_MESSAGE, RenderPath.FULL_RENDER));
+        renderDocument(input, mediaType, renderedOutputs);
+    }
+
+    private void renderDocument(File input, MediaType mediaType, Map<ThumbnailSize, File> outputs)
+        throws IOException, ThumbnailerException {
+        if (WORKBOOK_TYPES.contains(mediaType)) {
+            writeThumbnails(renderFirstSheet(input, findBoundingSize(outputs)), outputs, input.getName());
+            return;
+        }
+
         final Thumbnailer thumbnailer = resolveThumbnailer(mediaType);
+        if (PRESENTATION_TYPES.contains(mediaType)) {
+            renderFirstSlide(thumbnailer, input, outputs);
+            return;
+        }
+        render(thumbnailer, input, outputs);
+    }
 
+    private Map<ThumbnailSize, File> selectSizesFilledBy(BufferedImage preview, Map<ThumbnailSize, File> outputs) {
+        var enlargedWidth = (int) Math.floor(preview.getWidth() * maxPreviewUpscale);
+        var enlargedHeight = (int) Math.floor(preview.getHeight() * maxPreviewUpscale);
+        var previewOutputs = new LinkedHashMap<ThumbnailSize, File>();
+        outputs.forEach((size, output) -> {
+            if (isLargeEnough(enlargedWidth, enlargedHeight, size.getWidth(), size.getHeight())) {
+                previewOutputs.put(size, output);
+            }
+        });
+        return previewOutputs;
+    }
+
+    // The preview is saved at a fixed, small size, but reading it is far cheaper than loading the document into POI.
+    // Callers check which sizes it is large enough for. WMF and EMF previews cannot be decoded by ImageIO, so those
+    // documents are rendered.
+    private Optional<BufferedImage> readEmbeddedThumbnail(File input, MediaType mediaType) throws IOException {
+        if (!OFFICE_OPEN_XML_TYPES.contains(mediaType)) {
+            return Optional.empty();
+        }
+        var encodedThumbnail = previewExtractor.extract(input);
+        if (encodedThumbnail.isEmpty()) {
+            return Optional.empty();
+        }
         try {
-            List<Dimensions> dimensions = Collections.singletonList(
-                new Dimensions(thumbWidth, thumbHeight));
+            var imageInputStream = new MemoryCacheImageInputStream(new ByteArrayInputStream(encodedThumbnail.get()));
+            return Optional.ofNullable(ImageIO.read(imageInputStream));
+        } catch (IOException e) {
+            logger.warn(String.format(COULD_NOT_READ_EMBEDDED_THUMBNAIL_LOG_MESSAGE, e.getMessage()));
+            return Optional.empty();
+        }
+    }
+
+    // Only the cells visible in the thumbnail are read, so large data exports take no longer than small workbooks.
+    private BufferedImage renderFirstSheet(File input, ThumbnailSize size) throws IOException {
+        var width = size.getWidth() * OVERSAMPLING_FACTOR;
+        var height = size.getHeight() * OVERSAMPLING_FACTOR;
+        var cells = sheetReader.read(input, CellGridRenderer.rowsToFill(height), CellGridRenderer.columnsToFill(width));
+        return cellGridRenderer.render(cells, width, height);
+    }
+
+    // PPTXThumbnailer only draws the first slide, but POI still loads every slide and its images to get there.
+    private void renderFirstSlide(Thumbnailer thumbnailer, File input, Map<ThumbnailSize, File> outputs)
+        throws IOException, ThumbnailerException {
+        var firstSlide = createTemporaryFileNextTo(input, PRESENTATION_SUFFIX);
+        try {
+            slideTrimmer.copyFirstSlide(input, firstSlide);
+            render(thumbnailer, firstSlide, outputs);
+        } finally {
+            Files.deleteIfExists(firstSlide.toPath());
+        }
+    }
+
+    private void render(Thumbnailer thumbnailer, File input, Map<ThumbnailSize, File> outputs)
+        throws IOException, ThumbnailerException {
+        try {
+            var sizes = new ArrayList<>(outputs.keySet());
+            List<Dimensions> dimensions = sizes.stream()
+                                              .map(size -> new Dimensions(size.getWidth(), size.getHeight()))
+                                              .collect(Collectors.toList());
             List<BufferedImage> thumbnails = thumbnailer.getThumbnails(input, dimensions);
-            ImageIO.write(thumbnails.get(0), PNG, output);
+            for (var i = 0; i < sizes.size(); i++) {
+                thumbnailEncoder.write(thumbnails.get(i), outputs.get(sizes.get(i)));
+            }
         } catch (ThumbnailingException e) {
             throw new ThumbnailerException("Failed to generate thumbnail!", e);
         }
@@ -50,10 +230,6 @@ public class MsOfficeThumbnailer extends AbstractThumbnailer {
             case APPLICATION_MS_EXCEL:
                 thumbnailer = new XLSThumbnailer();
                 break;
-            case APPLICATION_OPEN_XML_OFFICE_SPREADSHEET:
-            case APPLICATION_OPEN_XML_OFFICE_SPREADSHEET_SHEET:
-                thumbnailer = new XLSXThumbnailer();
-                break;
             case APPLICATION_OPEN_XML_OFFICE_PRESENTATION:
             case APPLICATION_OPEN_XML_OFFICE_PRESENTATION_PRESENTATION:
                 thumbnailer = new PPTXThumbnailer();
@@ -66,15 +242,6 @@ public class MsOfficeThumbnailer extends AbstractThumbnailer {
 
     @Override
     public List<String> getAcceptedMimeTypes() {
-        return List.of(
-            MediaType.APPLICATION_MS_WORD.getValue(),
-            MediaType.APPLICATION_OPEN_XML_OFFICE_WORD_DOC.getValue(),
-            MediaType.APPLICATION_OPEN_XML_OFFICE_WORD.getValue(),
-            MediaType.APPLICATION_MS_EXCEL.getValue(),
-            MediaType.APPLICATION_OPEN_XML_OFFICE_SPREADSHEET.getValue(),
-            MediaType.APPLICATION_OPEN_XML_OFFICE_SPREADSHEET_SHEET.getValue(),
-            MediaType.APPLICATION_OPEN_XML_OFFICE_PRESENTATION.getValue(),
-            MediaType.APPLICATION_OPEN_XML_OFFICE_PRESENTATION_PRESENTATION.getValue()
-        );
+        return ACCEPTED_MIME_TYPES;
     }
 }
@@ -1,20 +1,39 @@
 package no.sikt.nva.thumbnail.thumbnailer;
 
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.IOException;
-import java.util.Arrays;
 import java.util.List;
+import java.util.Optional;
 import javax.imageio.ImageIO;
-import no.sikt.nva.thumbnail.AbstractThumbnailer;
-import no.sikt.nva.thumbnail.ThumbnailerException;
-import no.sikt.nva.thumbnail.util.ImageResizer;
+import javax.imageio.stream.MemoryCacheImageInputStream;
+import no.sikt.nva.thumbnail.AbstractImageRenderingThumbnailer;
+import no.sikt.nva.thumbnail.RenderPath;
+import no.sikt.nva.thumbnail.util.ExifThumbnailExtractor;
+import no.sikt.nva.thumbnail.util.SubsamplingImageDecoder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
-public class NativeImageThumbnailer extends AbstractThumbnailer {
+public class NativeImageThumbnailer extends AbstractImageRenderingThumbnailer {
+
+    public static final String RENDER_PATH_LOG_MESSAGE = "Image thumbnail created from %s";
+    public static final String COULD_NOT_READ_EMBEDDED_THUMBNAIL_LOG_MESSAGE =
+        "Could not read embedded preview, decoding image instead: %s";
+    public static final List<String> ACCEPTED_MIME_TYPES = List.of(ImageIO.getReaderMIMETypes());
+    private static final Logger logger = LoggerFactory.getLogger(NativeImageThumbnailer.class);
+    private final ExifThumbnailExtractor thumbnailExtractor = new ExifThumbnailExtractor();
+    private final SubsamplingImageDecoder imageDecoder = new SubsamplingImageDecoder();
 
     @Override
-    public void generateThumbnail(File input, File output) throws IOException, ThumbnailerException {
-        ImageResizer resizer = new ImageResizer(thumbWidth, thumbHeight, input);
-        resizer.writeThumbnailToFile(output);
+    public BufferedImage renderImage(File input, int targetWidth, int targetHeight) throws IOException {
+        var embeddedThumbnail = readEmbeddedThumbnail(input, targetWidth, targetHeight);
+        if (embeddedThumbnail.isPresent()) {
+            logger.info(String.format(RENDER_PATH_LOG_MESSAGE, RenderPath.EMBEDDED_THUMBNAIL));
+            return embeddedThumbnail.get();
+        }
+        logger.info(String.format(RENDER_PATH_LOG_MESSAGE, RenderPath.FULL_RENDER));
+        return imageDecoder.decode(input, targetWidth, targetHeight);
     }
 
     /**
@@ -25,6 +44,25 @@ public class NativeImageThumbnailer extends AbstractThumbnailer {
      */
     @Override
     public List<String> getAcceptedMimeTypes() {
-        return Arrays.asList(ImageIO.getReaderMIMETypes());
+        return ACCEPTED_MIME_TYPES;
+    }
+
+    // Camera images carry a JPEG preview in their metadata, which is far cheaper to decode than the photo itself.
+    private Optional<BufferedImage> readEmbeddedThumbnail(File input, int targetWidth, int targetHeight)
+        throws IOException {
+        var encodedThumbnail = thumbnailExtractor.extract(input);
+        if (encodedThumbnail.isEmpty()) {
+            return Optional.empty();
+        }
+        try {
+            // ImageIO.read closes the stream, and the in-memory stream avoids ImageIO's temporary cache file.
+            var imageInputStream = new MemoryCacheImageInputStream(new ByteArrayInputStream(encodedThumbnail.get()));
+            return Optional.ofNullable(ImageIO.read(imageInputStream))
+                       .filter(image -> isLargeEnough(image.getWidth(), image.getHeight(), targetWidth,
+                                                      targetHeight));
+        } catch (IOException e) {
+            logger.warn(String.format(COULD_NOT_READ_EMBEDDED_THUMBNAIL_LOG_MESSAGE, e.getMessage()));
+            return Optional.empty();
+        }
     }
 }
@@ -27,67 +27,96 @@ import static no.sikt.nva.thumbnail.util.MediaType.APPLICATION_SUN_XML_MATH;
 import static no.sikt.nva.thumbnail.util.MediaType.APPLICATION_SUN_XML_WRITER;
 import static no.sikt.nva.thumbnail.util.MediaType.APPLICATION_SUN_XML_WRITER_GLOBAL;
 import static no.sikt.nva.thumbnail.util.MediaType.APPLICATION_SUN_XML_WRITER_TEMPLATE;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.net.URL;
 import java.util.List;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipException;
 import java.util.zip.ZipFile;
-import no.sikt.nva.thumbnail.AbstractThumbnailer;
+import javax.imageio.ImageIO;
+import no.sikt.nva.thumbnail.AbstractImageRenderingThumbnailer;
 import no.sikt.nva.thumbnail.ThumbnailerException;
-import no.sikt.nva.thumbnail.util.ImageResizer;
+import no.sikt.nva.thumbnail.util.RemoteZipReader;
 
-public class OpenOfficeThumbnailer extends AbstractThumbnailer {
+/**
+ * Uses the preview every OpenOffice and LibreOffice document stores in its ZIP container. Documents read from a URL
+ * are not downloaded, only the central directory and the preview entry are fetched with range requests.
+ */
+public class OpenOfficeThumbnailer extends AbstractImageRenderingThumbnailer {
+
+    public static final String THUMBNAIL_ENTRY_NAME = "Thumbnails/thumbnail.png";
+    public static final String MISSING_THUMBNAIL_MESSAGE =
+        "Zip file does not contain 'Thumbnails/thumbnail.png' . Is this really an OpenOffice-File?";
+    public static final String NOT_ZIPPED_MESSAGE = "This is not a zipped file. Is this really an OpenOffice-File?";
+    public static final List<String> ACCEPTED_MIME_TYPES = List.of(
+        APPLICATION_SUN_XML_WRITER.getValue(),
+        APPLICATION_SUN_XML_WRITER_TEMPLATE.getValue(),
+        APPLICATION_SUN_XML_WRITER_GLOBAL.getValue(),
+        APPLICATION_SUN_XML_CALC.getValue(),
+        APPLICATION_SUN_XML_CALC_TEMPLATE.getValue(),
+        APPLICATION_STARDIVISION_CALC.getValue(),
+        APPLICATION_SUN_XML_IMPRESS.getValue(),
+        APPLICATION_SUN_XML_IMPRESS_TEMPLATE.getValue(),
+        APPLICATION_STARDIVISION_IMPRESS.getValue(),
+        APPLICATION_SUN_XML_DRAW.getValue(),
+        APPLICATION_SUN_XML_DRAW_TEMPLATE.getValue(),
+        APPLICATION_STARDIVISION_DRAW.getValue(),
+        APPLICATION_SUN_XML_MATH.getValue(),
+        APPLICATION_STARDIVISION_MATH.getValue(),
+        APPLICATION_OASIS_OPENDOCUMENT_TEXT.getValue(),
+        APPLICATION_OASIS_OPENDOCUMENT_TEXT_TEMPLATE.getValue(),
+        APPLICATION_OASIS_OPENDOCUMENT_TEXT_WEB.getValue(),
+        APPLICATION_OASIS_OPENDOCUMENT_TEXT_MASTER.getValue(),
+        APPLICATION_OASIS_OPENDOCUMENT_GRAPHICS.getValue(),
+        APPLICATION_OASIS_OPENDOCUMENT_GRAPHICS_TEMPLATE.getValue(),
+        APPLICATION_OASIS_OPENDOCUMENT_PRESENTATION.getValue(),
+        APPLICATION_OASIS_OPENDOCUMENT_PRESENTATION_TEMPLATE.getValue(),
+        APPLICATION_OASIS_OPENDOCUMENT_SPREADSHEET.getValue(),
+        APPLICATION_OASIS_OPENDOCUMENT_SPREADSHEET_TEMPLATE.getValue(),
+        APPLICATION_OASIS_OPENDOCUMENT_SPREADSHEET_TEMPLATE.getValue(),
+        APPLICATION_OASIS_OPENDOCUMENT_FORMULA.getValue(),
+        APPLICATION_OASIS_OPENDOCUMENT_DATABASE.getValue(),
+        APPLICATION_OASIS_OPENDOCUMENT_IMAGE.getValue());
 
     @Override
-    public void generateThumbnail(File input, File output) throws IOException, ThumbnailerException {
+    public BufferedImage renderImage(File input, int targetWidth, int targetHeight)
+        throws IOException, ThumbnailerException {
         try (ZipFile zipFile = new ZipFile(input)) {
-            final ZipEntry entry = zipFile.getEntry("Thumbnails/thumbnail.png");
+            final ZipEntry entry = zipFile.getEntry(THUMBNAIL_ENTRY_NAME);
             if (entry == null) {
-                throw new ThumbnailerException(
-                    "Zip file does not contain 'Thumbnails/thumbnail.png' . Is this really an OpenOffice-File?");
+                throw new ThumbnailerException(MISSING_THUMBNAIL_MESSAGE);
             }
             try (InputStream in = zipFile.getInputStream(entry)) {
-                final ImageResizer resizer = new ImageResizer(thumbWidth, thumbHeight, in);
-                resizer.writeThumbnailToFile(output);
+                return ImageIO.read(in);
             }
         } catch (ZipException e) {
-            throw new ThumbnailerException("This is not a zipped file. Is this really an OpenOffice-File?", e);
+            throw new ThumbnailerException(NOT_ZIPPED_MESSAGE, e);
         }
     }
 
+    @Override
+    protected BufferedImage renderImage(URL input, File output, int targetWidth, int targetHeight)
+        throws IOException, ThumbnailerException {
+        try {
+            var thumbnail = new RemoteZipReader(input).readEntry(THUMBNAIL_ENTRY_NAME)
+                                .orElseThrow(() -> new ThumbnailerException(MISSING_THUMBNAIL_MESSAGE));
+            return ImageIO.read(new ByteArrayInputStream(thumbnail));
+        } catch (ZipException e) {
+            throw new ThumbnailerException(NOT_ZIPPED_MESSAGE, e);
+        }
+    }
+
+    @Override
+    public boolean supportsUrlInput() {
+        return true;
+    }
+
     @Override
     public List<String> getAcceptedMimeTypes() {
-        return List.of(
-            APPLICATION_SUN_XML_WRITER.getValue(),
-            APPLICATION_SUN_XML_WRITER_TEMPLATE.getValue(),
-            APPLICATION_SUN_XML_WRITER_GLOBAL.getValue(),
-            APPLICATION_SUN_XML_CALC.getValue(),
-            APPLICATION_SUN_XML_CALC_TEMPLATE.getValue(),
-            APPLICATION_STARDIVISION_CALC.getValue(),
-            APPLICATION_SUN_XML_IMPRESS.getValue(),
-            APPLICATION_SUN_XML_IMPRESS_TEMPLATE.getValue(),
-            APPLICATION_STARDIVISION_IMPRESS.getValue(),
-            APPLICATION_SUN_XML_DRAW.getValue(),
-            APPLICATION_SUN_XML_DRAW_TEMPLATE.getValue(),
-            APPLICATION_STARDIVISION_DRAW.getValue(),
-            APPLICATION_SUN_XML_MATH.getValue(),
-            APPLICATION_STARDIVISION_MATH.getValue(),
-            APPLICATION_OASIS_OPENDOCUMENT_TEXT.getValue(),
-            APPLICATION_OASIS_OPENDOCUMENT_TEXT_TEMPLATE.getValue(),
-            APPLICATION_OASIS_OPENDOCUMENT_TEXT_WEB.getValue(),
-            APPLICATION_OASIS_OPENDOCUMENT_TEXT_MASTER.getValue(),
-            APPLICATION_OASIS_OPENDOCUMENT_GRAPHICS.getValue(),
-            APPLICATION_OASIS_OPENDOCUMENT_GRAPHICS_TEMPLATE.getValue(),
-            APPLICATION_OASIS_OPENDOCUMENT_PRESENTATION.getValue(),
-            APPLICATION_OASIS_OPENDOCUMENT_PRESENTATION_TEMPLATE.getValue(),
-            APPLICATION_OASIS_OPENDOCUMENT_SPREADSHEET.getValue(),
-            APPLICATION_OASIS_OPENDOCUMENT_SPREADSHEET_TEMPLATE.getValue(),
-            APPLICATION_OASIS_OPENDOCUMENT_SPREADSHEET_TEMPLATE.getValue(),
-            APPLICATION_OASIS_OPENDOCUMENT_FORMULA.getValue(),
-            APPLICATION_OASIS_OPENDOCUMENT_DATABASE.getValue(),
-            APPLICATION_OASIS_OPENDOCUMENT_IMAGE.getValue()
-        );
+        return ACCEPTED_MIME_TYPES;
     }
 }
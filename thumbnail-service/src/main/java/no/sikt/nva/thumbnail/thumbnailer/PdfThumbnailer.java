@@ -4,59 +4,119 @@ import java.awt.image.BufferedImage;
 import java.io.File;
 import java.io.IOException;
 import java.util.List;
-import javax.imageio.ImageIO;
-import no.sikt.nva.thumbnail.AbstractThumbnailer;
-import no.sikt.nva.thumbnail.util.ImageResizer;
+import java.util.Optional;
+import no.sikt.nva.thumbnail.AbstractImageRenderingThumbnailer;
+import no.sikt.nva.thumbnail.RenderPath;
+import no.sikt.nva.thumbnail.util.StageMetrics;
+import org.apache.pdfbox.cos.COSName;
+import org.apache.pdfbox.cos.COSStream;
 import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.common.PDStream;
+import org.apache.pdfbox.pdmodel.graphics.image.PDImageXObject;
 import org.apache.pdfbox.rendering.ImageType;
 import org.apache.pdfbox.rendering.PDFRenderer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
-public class PdfThumbnailer extends AbstractThumbnailer {
+public class PdfThumbnailer extends AbstractImageRenderingThumbnailer {
 
+    // Rendering at twice the thumbnail size leaves the scaler enough pixels for a sharp result.
+    public static final float OVERSAMPLING_FACTOR = 2.0f;
+    // Upper bound for tiny page boxes, equivalent to 288 DPI.
+    public static final float MAX_SCALE = 4.0f;
+    // Scale used when the page box is degenerate, equivalent to 100 DPI.
+    public static final float FALLBACK_SCALE = 100f / 72f;
+    public static final String RENDER_PATH_LOG_MESSAGE = "PDF thumbnail created from %s";
+    public static final String COULD_NOT_READ_EMBEDDED_THUMBNAIL_LOG_MESSAGE =
+        "Could not read embedded page thumbnail, rendering page instead: %s";
+    public static final List<String> ACCEPTED_MIME_TYPES = List.of("application/pdf");
+    private static final Logger logger = LoggerFactory.getLogger(PdfThumbnailer.class);
+    private static final COSName THUMB = COSName.getPDFName("Thumb");
     private static final int FIRST_PAGE_INDEX = 0;
-    //Out of heap memory? decrease DPI might solve the problem.
-    private static final int DPI = 100;
-    private static final String PNG_FILE_FORMAT = "PNG";
-    private final File temporaryFileForPartiallyGeneratedResults;
-
-    public PdfThumbnailer(ThumbnailerInitializer thumbnailerInitializer) {
-        super();
-        this.temporaryFileForPartiallyGeneratedResults = new File(
-            thumbnailerInitializer.getPartiallyProcessedFilename());
-    }
-
-    @Override
-    public void generateThumbnail(File input, File output) throws IOException {
-        encodeInput(input);
-        resizeToThumbnailSpecs(output);
-        temporaryFileForPartiallyGeneratedResults.deleteOnExit();
-    }
+    private static final int QUARTER_TURN = 90;
+    private static final int HALF_TURN = 180;
 
     @Override
     public List<String> getAcceptedMimeTypes() {
-        return List.of("application/pdf");
+        return ACCEPTED_MIME_TYPES;
     }
 
-    private static BufferedImage writeImageFirstPage(File input) throws IOException {
+    @Override
+    public BufferedImage renderImage(File input, int targetWidth, int targetHeight) throws IOException {
         try (var document = PDDocument.load(input)) {
+            var firstPage = document.getPage(FIRST_PAGE_INDEX);
+            recordPageSize(firstPage);
+            var embeddedThumbnail = readEmbeddedThumbnail(firstPage, targetWidth, targetHeight);
+            if (embeddedThumbnail.isPresent()) {
+                logger.info(String.format(RENDER_PATH_LOG_MESSAGE, RenderPath.EMBEDDED_THUMBNAIL));
+                return embeddedThumbnail.get();
+            }
+            logger.info(String.format(RENDER_PATH_LOG_MESSAGE, RenderPath.FULL_RENDER));
             var pdfRenderer = new PDFRenderer(document);
-            return pdfRenderer.renderImageWithDPI(FIRST_PAGE_INDEX,
-                                                  DPI,
-                                                  ImageType.RGB);
+            pdfRenderer.setSubsamplingAllowed(true);
+            var scale = calculateRenderScale(firstPage, targetWidth, targetHeight);
+            return pdfRenderer.renderImage(FIRST_PAGE_INDEX,
+                                           scale,
+                                           ImageType.RGB);
+        }
+    }
+
+    /**
+     * Calculate the scale (pixels per PDF point) that renders a page just large enough for a thumbnail of the given
+     * size, so render time and memory follow the thumbnail size instead of the paper size.
+     *
+     * @param pageWidth    width of the visible page area in points.
+     * @param pageHeight   height of the visible page area in points.
+     * @param rotation     page rotation in degrees.
+     * @param targetWidth  thumbnail width in pixels.
+     * @param targetHeight thumbnail height in pixels.
+     * @return scale to pass to the PDFRenderer.
+     */
+    public static float calculateRenderScale(float pageWidth, float pageHeight, int rotation, int targetWidth,
+                                             int targetHeight) {
+        if (pageWidth <= 0 || pageHeight <= 0) {
+            return FALLBACK_SCALE;
+        }
+        var rotated = Math.floorMod(rotation, HALF_TURN) == QUARTER_TURN;
+        var renderedWidth = rotated ? pageHeight : pageWidth;
+        var renderedHeight = rotated ? pageWidth : pageHeight;
+        var fittingScale = Math.min(targetWidth / renderedWidth, targetHeight / renderedHeight);
+        return Math.min(fittingScale * OVERSAMPLING_FACTOR, MAX_SCALE);
+    }
+
+    // Scanners and publishing tools often store a ready-made image of the page in its /Thumb entry.
+    private static Optional<BufferedImage> readEmbeddedThumbnail(PDPage page, int targetWidth, int targetHeight) {
+        var thumbnail = page.getCOSObject().getDictionaryObject(THUMB);
+        if (!(thumbnail instanceof COSStream)) {
+            return Optional.empty();
+        }
+        try {
+            var image = new PDImageXObject(new PDStream((COSStream) thumbnail), page.getResources());
+            if (!isLargeEnough(image.getWidth(), image.getHeight(), targetWidth, targetHeight)) {
+                return Optional.empty();
+            }
+            return Optional.ofNullable(image.getImage());
+        } catch (IOException e) {
+            logger.warn(String.format(COULD_NOT_READ_EMBEDDED_THUMBNAIL_LOG_MESSAGE, e.getMessage()));
+            return Optional.empty();
         }
     }
 
-    private void resizeToThumbnailSpecs(File output) throws IOException {
-        var imageResizer = new ImageResizer(thumbWidth,
-                                            thumbHeight,
-                                            temporaryFileForPartiallyGeneratedResults);
-        imageResizer.writeThumbnailToFile(output);
+    // The crop box is the visible area of the page and falls back to the media box when it is not set.
+    // In points, a render at 72 dpi is as many pixels.
+    private static void recordPageSize(PDPage page) {
+        var metrics = StageMetrics.current();
+        metrics.set(StageMetrics.SOURCE_WIDTH, page.getCropBox().getWidth(), StageMetrics.NO_UNIT);
+        metrics.set(StageMetrics.SOURCE_HEIGHT, page.getCropBox().getHeight(), StageMetrics.NO_UNIT);
     }
 
-    private void encodeInput(File input) throws IOException {
-        var bufferedImage = writeImageFirstPage(input);
-        ImageIO.write(bufferedImage,
-                      PNG_FILE_FORMAT,
-                      temporaryFileForPartiallyGeneratedResults);
+    private static float calculateRenderScale(PDPage page, int targetWidth, int targetHeight) {
+        var visibleArea = page.getCropBox();
+        return calculateRenderScale(visibleArea.getWidth(),
+                                    visibleArea.getHeight(),
+                                    page.getRotation(),
+                                    targetWidth,
+                                    targetHeight);
     }
 }
@@ -3,42 +3,106 @@ package no.sikt.nva.thumbnail.thumbnailer;
 import static no.sikt.nva.thumbnail.ThumbnailerConstants.FFMPEG_PATH_ON_AWS_LAYER;
 import static no.sikt.nva.thumbnail.ThumbnailerConstants.FFPROBE_PATH_ON_AWS_LAYER;
 import java.io.IOException;
+import java.time.Duration;
 import java.util.Objects;
-import java.util.UUID;
 import net.bramp.ffmpeg.FFmpeg;
 import net.bramp.ffmpeg.FFprobe;
+import no.sikt.nva.thumbnail.util.ThumbnailEncoder;
+import nva.commons.core.Environment;
 import nva.commons.core.JacocoGenerated;
-import nva.commons.core.StringUtils;
 
+/**
+ * Shared configuration of the thumbnailers. The ffmpeg and ffprobe binaries on the Lambda layer are only located,
+ * which runs each of them once, when the video thumbnailer first asks for them.
+ */
 public class ThumbnailerInitializer {
 
-    private final FFmpeg ffmpeg;
-    private final FFprobe ffprobe;
-    private final String partiallyProcessedFilename;
+    // A keyframe search reads a few megabytes, which takes seconds even over a slow connection.
+    public static final Duration DEFAULT_PROCESS_TIMEOUT = Duration.ofMinutes(2);
+    private static final String PROCESS_TIMEOUT_SECONDS_ENVIRONMENT_FIELD = "FFMPEG_TIMEOUT_SECONDS";
+    private static final String MAX_PREVIEW_UPSCALE_ENVIRONMENT_FIELD = "OFFICE_PREVIEW_MAX_UPSCALE";
+    private final Object binariesLock = new Object();
+    private final ThumbnailEncoder thumbnailEncoder;
+    private final Duration processTimeout;
+    private final double maxPreviewUpscale;
+    private FFmpeg ffmpeg;
+    private FFprobe ffprobe;
 
     public ThumbnailerInitializer(Builder builder) {
         this.ffprobe = builder.getFFprobe();
         this.ffmpeg = builder.getFFmpeg();
-        this.partiallyProcessedFilename = builder.getPartiallyProcessedFilename();
+        this.thumbnailEncoder = builder.getThumbnailEncoder();
+        this.processTimeout = builder.getProcessTimeout();
+        this.maxPreviewUpscale = Objects.requireNonNullElse(builder.getMaxPreviewUpscale(),
+                                                            MsOfficeThumbnailer.DEFAULT_MAX_PREVIEW_UPSCALE);
     }
 
     public FFmpeg getFFmpeg() {
-        return ffmpeg;
+        synchronized (binariesLock) {
+            if (Objects.isNull(ffmpeg)) {
+                ffmpeg = createDefaultFFmpeg();
+            }
+            return ffmpeg;
+        }
     }
 
     public FFprobe getFFprobe() {
-        return ffprobe;
+        synchronized (binariesLock) {
+            if (Objects.isNull(ffprobe)) {
+                ffprobe = createDefaultFFprobe();
+            }
+            return ffprobe;
+        }
+    }
+
+    public ThumbnailEncoder getThumbnailEncoder() {
+        return thumbnailEncoder;
     }
 
-    public String getPartiallyProcessedFilename() {
-        return partiallyProcessedFilename;
+    /**
+     * Get how long ffprobe and ffmpeg may run for a single input before they are stopped and the input fails.
+     *
+     * @return the time limit of each process.
+     */
+    public Duration getProcessTimeout() {
+        return processTimeout;
+    }
+
+    /**
+     * Get how many times larger than the preview embedded in an Office document a thumbnail made from it may be.
+     * Larger thumbnails are rendered from the document.
+     *
+     * @return the largest factor previews are enlarged by.
+     */
+    public double getMaxPreviewUpscale() {
+        return maxPreviewUpscale;
+    }
+
+    @JacocoGenerated
+    private static FFmpeg createDefaultFFmpeg() {
+        try {
+            return new FFmpeg(FFMPEG_PATH_ON_AWS_LAYER);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    @JacocoGenerated
+    private static FFprobe createDefaultFFprobe() {
+        try {
+            return new FFprobe(FFPROBE_PATH_ON_AWS_LAYER);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
     }
 
     public static class Builder {
 
         private FFmpeg ffmpeg;
         private FFprobe ffprobe;
-        private String partiallyProcessedFilename;
+        private ThumbnailEncoder thumbnailEncoder;
+        private Duration processTimeout;
+        private Double maxPreviewUpscale;
 
         public Builder withFFmpeg(FFmpeg ffmpeg) {
             this.ffmpeg = ffmpeg;
@@ -50,8 +114,18 @@ public class ThumbnailerInitializer {
             return this;
         }
 
-        public Builder withPartiallyProcessedFilename(String partiallyProcessedFilename) {
-            this.partiallyProcessedFilename = partiallyProcessedFilename;
+        public Builder withThumbnailEncoder(ThumbnailEncoder thumbnailEncoder) {
+            this.thumbnailEncoder = thumbnailEncoder;
+            return this;
+        }
+
+        public Builder withProcessTimeout(Duration processTimeout) {
+            this.processTimeout = processTimeout;
+            return this;
+        }
+
+        public Builder withMaxPreviewUpscale(double maxPreviewUpscale) {
+            this.maxPreviewUpscale = maxPreviewUpscale;
             return this;
         }
 
@@ -63,41 +137,45 @@ public class ThumbnailerInitializer {
             return ffprobe;
         }
 
-        public String getPartiallyProcessedFilename() {
-            return partiallyProcessedFilename;
+        public ThumbnailEncoder getThumbnailEncoder() {
+            return thumbnailEncoder;
         }
 
-        @JacocoGenerated
-        public ThumbnailerInitializer build() {
-            try {
-                if (Objects.isNull(ffmpeg)) {
-                    setDefaultFFmpeg();
-                }
-                if (Objects.isNull(ffprobe)) {
-                    setDefaultFFprobe();
-                }
-                if (StringUtils.isBlank(partiallyProcessedFilename)) {
-                    setDefaultPartiallyProcessedFileName();
-                }
-                return new ThumbnailerInitializer(this);
-            } catch (IOException e) {
-                throw new RuntimeException(e);
-            }
+        public Duration getProcessTimeout() {
+            return processTimeout;
+        }
+
+        public Double getMaxPreviewUpscale() {
+            return maxPreviewUpscale;
         }
 
         @JacocoGenerated
-        private void setDefaultPartiallyProcessedFileName() {
-            this.partiallyProcessedFilename = String.format("/tmp/%s.png", UUID.randomUUID());
+        public ThumbnailerInitializer build() {
+            if (Objects.isNull(thumbnailEncoder)) {
+                thumbnailEncoder = ThumbnailEncoder.fromEnvironment();
+            }
+            if (Objects.isNull(processTimeout)) {
+                processTimeout = readProcessTimeout();
+            }
+            if (Objects.isNull(maxPreviewUpscale)) {
+                maxPreviewUpscale = readMaxPreviewUpscale();
+            }
+            return new ThumbnailerInitializer(this);
         }
 
         @JacocoGenerated
-        private void setDefaultFFmpeg() throws IOException {
-            this.ffmpeg = new FFmpeg(FFMPEG_PATH_ON_AWS_LAYER);
+        private static Duration readProcessTimeout() {
+            return new Environment().readEnvOpt(PROCESS_TIMEOUT_SECONDS_ENVIRONMENT_FIELD)
+                       .map(Long::parseLong)
+                       .map(Duration::ofSeconds)
+                       .orElse(DEFAULT_PROCESS_TIMEOUT);
         }
 
         @JacocoGenerated
-        private void setDefaultFFprobe() throws IOException {
-            this.ffprobe = new FFprobe(FFPROBE_PATH_ON_AWS_LAYER);
+        private static double readMaxPreviewUpscale() {
+            return new Environment().readEnvOpt(MAX_PREVIEW_UPSCALE_ENVIRONMENT_FIELD)
+                       .map(Double::parseDouble)
+                       .orElse(MsOfficeThumbnailer.DEFAULT_MAX_PREVIEW_UPSCALE);
         }
     }
 }
@@ -0,0 +1,93 @@
+package no.sikt.nva.thumbnail.util;
+
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.util.Objects;
+
+/**
+ * Draws a window of spreadsheet cells the way spreadsheet applications show a worksheet: on white with light grid
+ * lines, and with text running on into the cells to its right as long as they are empty.
+ */
+public class CellGridRenderer {
+
+    public static final int COLUMN_WIDTH = 64;
+    public static final int ROW_HEIGHT = 20;
+    private static final Color GRID_COLOR = new Color(0xD4, 0xD4, 0xD4);
+    private static final Color TEXT_COLOR = Color.BLACK;
+    private static final Font FONT = new Font(Font.SANS_SERIF, Font.PLAIN, 11);
+    private static final int TEXT_PADDING = 3;
+    private static final int LEFT = 0;
+    private static final int TOP = 0;
+
+    /**
+     * Calculate the number of columns needed to fill an image.
+     *
+     * @param width image width in pixels.
+     * @return the number of columns, the last one can be partly visible.
+     */
+    public static int columnsToFill(int width) {
+        return (width + COLUMN_WIDTH - 1) / COLUMN_WIDTH;
+    }
+
+    /**
+     * Calculate the number of rows needed to fill an image.
+     *
+     * @param height image height in pixels.
+     * @return the number of rows, the last one can be partly visible.
+     */
+    public static int rowsToFill(int height) {
+        return (height + ROW_HEIGHT - 1) / ROW_HEIGHT;
+    }
+
+    /**
+     * Draw the cells from the top left corner of the image.
+     *
+     * @param cells  text of the cells by row and column, null for empty cells.
+     * @param width  image width in pixels.
+     * @param height image height in pixels.
+     * @return the image.
+     */
+    public BufferedImage render(String[][] cells, int width, int height) {
+        var image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        var graphics = image.createGraphics();
+        try {
+            graphics.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+            graphics.setBackground(Color.WHITE);
+            graphics.clearRect(LEFT, TOP, width, height);
+            graphics.setColor(GRID_COLOR);
+            for (var x = COLUMN_WIDTH - 1; x < width; x += COLUMN_WIDTH) {
+                graphics.drawLine(x, TOP, x, height - 1);
+            }
+            for (var y = ROW_HEIGHT - 1; y < height; y += ROW_HEIGHT) {
+                graphics.drawLine(LEFT, y, width - 1, y);
+            }
+            graphics.setColor(TEXT_COLOR);
+            graphics.setFont(FONT);
+            var metrics = graphics.getFontMetrics();
+            var baselineOffset = (ROW_HEIGHT - metrics.getHeight()) / 2 + metrics.getAscent();
+            for (var row = 0; row < cells.length; row++) {
+                for (var column = 0; column < cells[row].length; column++) {
+                    if (Objects.nonNull(cells[row][column])) {
+                        var x = column * COLUMN_WIDTH;
+                        var y = row * ROW_HEIGHT;
+                        graphics.setClip(x, y, overflowColumns(cells[row], column) * COLUMN_WIDTH, ROW_HEIGHT);
+                        graphics.drawString(cells[row][column], x + TEXT_PADDING, y + baselineOffset);
+                    }
+                }
+            }
+        } finally {
+            graphics.dispose();
+        }
+        return image;
+    }
+
+    private static int overflowColumns(String[] row, int column) {
+        var next = column + 1;
+        while (next < row.length && Objects.isNull(row[next])) {
+            next++;
+        }
+        return next - column;
+    }
+}
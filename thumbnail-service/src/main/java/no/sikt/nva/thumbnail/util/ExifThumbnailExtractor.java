@@ -0,0 +1,184 @@
+package no.sikt.nva.thumbnail.util;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.Optional;
+
+/**
+ * Extracts the JPEG preview that cameras and phones store in the EXIF metadata of JPEG and TIFF files, or in the
+ * JFIF extension segment of JPEG files. Only the segments in front of the image data and the TIFF directories are
+ * read, never the main image.
+ */
+public class ExifThumbnailExtractor {
+
+    // A preview inside a JPEG must fit in one APP1 segment, TIFF files have no such limit.
+    public static final int MAX_THUMBNAIL_BYTES = 4 * 1024 * 1024;
+    private static final String READ_ONLY = "r";
+    private static final int JPEG_START_OF_IMAGE = 0xFFD8;
+    private static final int TIFF_LITTLE_ENDIAN = 0x4949;
+    private static final int TIFF_BIG_ENDIAN = 0x4D4D;
+    private static final int TIFF_MAGIC_NUMBER = 42;
+    private static final int MARKER_PREFIX = 0xFF;
+    private static final int APP0_MARKER = 0xE0;
+    private static final int APP1_MARKER = 0xE1;
+    private static final int START_OF_SCAN_MARKER = 0xDA;
+    private static final int END_OF_IMAGE_MARKER = 0xD9;
+    private static final int SEGMENT_LENGTH_BYTES = 2;
+    private static final byte[] EXIF_IDENTIFIER = {'E', 'x', 'i', 'f', 0, 0};
+    private static final byte[] JFIF_EXTENSION_IDENTIFIER = {'J', 'F', 'X', 'X', 0};
+    private static final int JFIF_JPEG_THUMBNAIL_CODE = 0x10;
+    private static final long FIRST_IFD_POINTER = 4;
+    private static final int JPEG_INTERCHANGE_FORMAT_TAG = 0x0201;
+    private static final int JPEG_INTERCHANGE_FORMAT_LENGTH_TAG = 0x0202;
+    private static final int SHORT_TYPE = 3;
+    private static final int IFD_ENTRY_BYTES = 12;
+    private static final int NO_NEXT_IFD = 0;
+    private static final long UNSIGNED_INT_MASK = 0xFFFF_FFFFL;
+    private static final int UNSIGNED_SHORT_MASK = 0xFFFF;
+
+    /**
+     * Read the embedded EXIF preview of an image file.
+     *
+     * @param input JPEG or TIFF file.
+     * @return the encoded JPEG preview, or empty if the file has none or its metadata is malformed.
+     * @throws IOException If the file cannot be read.
+     */
+    public Optional<byte[]> extract(File input) throws IOException {
+        try (var file = new RandomAccessFile(input, READ_ONLY)) {
+            var header = file.readUnsignedShort();
+            if (header == JPEG_START_OF_IMAGE) {
+                return extractFromJpeg(file);
+            }
+            if (header == TIFF_LITTLE_ENDIAN || header == TIFF_BIG_ENDIAN) {
+                return extractFromTiff(file, 0, file.length());
+            }
+            return Optional.empty();
+        } catch (EOFException e) {
+            return Optional.empty();
+        }
+    }
+
+    private static Optional<byte[]> extractFromJpeg(RandomAccessFile file) throws IOException {
+        while (file.readUnsignedByte() == MARKER_PREFIX) {
+            var marker = file.readUnsignedByte();
+            if (marker == START_OF_SCAN_MARKER || marker == END_OF_IMAGE_MARKER) {
+                return Optional.empty();
+            }
+            var segmentStart = file.getFilePointer();
+            var segmentEnd = segmentStart + file.readUnsignedShort();
+            if (marker == APP1_MARKER && hasIdentifier(file, EXIF_IDENTIFIER)) {
+                return extractFromTiff(file, file.getFilePointer(), segmentEnd);
+            }
+            file.seek(segmentStart + SEGMENT_LENGTH_BYTES);
+            if (marker == APP0_MARKER && hasIdentifier(file, JFIF_EXTENSION_IDENTIFIER)
+                && file.readUnsignedByte() == JFIF_JPEG_THUMBNAIL_CODE) {
+                return readJfifThumbnail(file, segmentEnd);
+            }
+            file.seek(segmentEnd);
+        }
+        return Optional.empty();
+    }
+
+    private static boolean hasIdentifier(RandomAccessFile file, byte[] expected) throws IOException {
+        var identifier = new byte[expected.length];
+        file.readFully(identifier);
+        return Arrays.equals(identifier, expected);
+    }
+
+    // A JFIF extension with code 0x10 holds a complete JPEG stream for the rest of the segment.
+    private static Optional<byte[]> readJfifThumbnail(RandomAccessFile file, long segmentEnd) throws IOException {
+        var length = segmentEnd - file.getFilePointer();
+        if (length <= 0) {
+            return Optional.empty();
+        }
+        var thumbnail = new byte[(int) length];
+        file.readFully(thumbnail);
+        return Optional.of(thumbnail);
+    }
+
+    // The preview is described by the second image file directory (IFD1) of the TIFF structure.
+    private static Optional<byte[]> extractFromTiff(RandomAccessFile file, long tiffStart, long tiffEnd)
+        throws IOException {
+        var tiff = new TiffReader(file, tiffStart, tiffEnd);
+        if (!tiff.readHeader()) {
+            return Optional.empty();
+        }
+        var firstDirectory = tiff.readUnsignedInt(FIRST_IFD_POINTER);
+        var entryCount = tiff.readUnsignedShort(firstDirectory);
+        var secondDirectory = tiff.readUnsignedInt(firstDirectory + Short.BYTES + entryCount * IFD_ENTRY_BYTES);
+        if (secondDirectory == NO_NEXT_IFD) {
+            return Optional.empty();
+        }
+        long thumbnailOffset = 0;
+        long thumbnailLength = 0;
+        var thumbnailEntryCount = tiff.readUnsignedShort(secondDirectory);
+        for (var i = 0; i < thumbnailEntryCount; i++) {
+            var entry = secondDirectory + Short.BYTES + (long) i * IFD_ENTRY_BYTES;
+            var tag = tiff.readUnsignedShort(entry);
+            if (tag == JPEG_INTERCHANGE_FORMAT_TAG) {
+                thumbnailOffset = tiff.readEntryValue(entry);
+            } else if (tag == JPEG_INTERCHANGE_FORMAT_LENGTH_TAG) {
+                thumbnailLength = tiff.readEntryValue(entry);
+            }
+        }
+        return tiff.readBytes(thumbnailOffset, thumbnailLength);
+    }
+
+    private static final class TiffReader {
+
+        private static final int ENTRY_TYPE_OFFSET = 2;
+        private static final int ENTRY_VALUE_OFFSET = 8;
+        private final RandomAccessFile file;
+        private final long start;
+        private final long end;
+        private ByteOrder byteOrder = ByteOrder.BIG_ENDIAN;
+
+        private TiffReader(RandomAccessFile file, long start, long end) {
+            this.file = file;
+            this.start = start;
+            this.end = Math.min(end, start + UNSIGNED_INT_MASK);
+        }
+
+        private boolean readHeader() throws IOException {
+            var orderMark = readUnsignedShort(0);
+            byteOrder = orderMark == TIFF_LITTLE_ENDIAN ? ByteOrder.LITTLE_ENDIAN : ByteOrder.BIG_ENDIAN;
+            return (orderMark == TIFF_LITTLE_ENDIAN || orderMark == TIFF_BIG_ENDIAN)
+                   && readUnsignedShort(Short.BYTES) == TIFF_MAGIC_NUMBER;
+        }
+
+        private int readUnsignedShort(long offset) throws IOException {
+            return read(offset, Short.BYTES).getShort() & UNSIGNED_SHORT_MASK;
+        }
+
+        private long readUnsignedInt(long offset) throws IOException {
+            return read(offset, Integer.BYTES).getInt() & UNSIGNED_INT_MASK;
+        }
+
+        // Values of type SHORT are stored left-justified in the four byte value field.
+        private long readEntryValue(long entry) throws IOException {
+            return readUnsignedShort(entry + ENTRY_TYPE_OFFSET) == SHORT_TYPE
+                       ? readUnsignedShort(entry + ENTRY_VALUE_OFFSET)
+                       : readUnsignedInt(entry + ENTRY_VALUE_OFFSET);
+        }
+
+        private Optional<byte[]> readBytes(long offset, long length) throws IOException {
+            if (length <= 0 || length > MAX_THUMBNAIL_BYTES || offset < 0 || start + offset + length > end) {
+                return Optional.empty();
+            }
+            var bytes = new byte[(int) length];
+            file.seek(start + offset);
+            file.readFully(bytes);
+            return Optional.of(bytes);
+        }
+
+        private ByteBuffer read(long offset, int length) throws IOException {
+            var bytes = readBytes(offset, length).orElseThrow(EOFException::new);
+            return ByteBuffer.wrap(bytes).order(byteOrder);
+        }
+    }
+}
@@ -2,54 +2,86 @@ package no.sikt.nva.thumbnail.util;
 
 import java.awt.Color;
 import java.awt.Graphics2D;
-import java.awt.RenderingHints;
 import java.awt.image.BufferedImage;
 import java.io.File;
 import java.io.IOException;
-import java.io.InputStream;
-import javax.imageio.ImageIO;
+import java.util.Objects;
 
 public class ImageResizer {
 
-    public static final String PNG = "PNG";
     public static final int LEFT = 0;
     public static final int TOP = 0;
     private final int thumbWidth;
     private final int thumbHeight;
     private final BufferedImage inputImage;
+    private final ImageScaler imageScaler;
+    private final ThumbnailEncoder thumbnailEncoder;
+    private BufferedImage scaledImage;
 
-    public ImageResizer(int thumbWidth, int thumbHeight, File inputFile) throws IOException {
-        this.thumbWidth = thumbWidth;
-        this.thumbHeight = thumbHeight;
-        this.inputImage = ImageIO.read(inputFile);
+    public ImageResizer(int thumbWidth, int thumbHeight, BufferedImage inputImage) {
+        this(thumbWidth, thumbHeight, inputImage, new ImageScaler());
+    }
+
+    public ImageResizer(int thumbWidth, int thumbHeight, BufferedImage inputImage, ImageScaler imageScaler) {
+        this(thumbWidth, thumbHeight, inputImage, imageScaler, new ThumbnailEncoder());
     }
 
-    public ImageResizer(int thumbWidth, int thumbHeight, InputStream inputStream) throws IOException {
+    public ImageResizer(int thumbWidth, int thumbHeight, BufferedImage inputImage, ImageScaler imageScaler,
+                        ThumbnailEncoder thumbnailEncoder) {
         this.thumbWidth = thumbWidth;
         this.thumbHeight = thumbHeight;
-        this.inputImage = ImageIO.read(inputStream);
+        this.inputImage = inputImage;
+        this.imageScaler = imageScaler;
+        this.thumbnailEncoder = thumbnailEncoder;
     }
 
-    public void writeThumbnailToFile(File output) throws IOException {
+    /**
+     * Write the thumbnail in the output format the encoder picks for the image content.
+     *
+     * @param output file the thumbnail is written to.
+     * @return the format the thumbnail was written in.
+     * @throws IOException If the file cannot be written.
+     */
+    public OutputFormat writeThumbnailToFile(File output) throws IOException {
         var originalWidth = inputImage.getWidth();
         var originalHeight = inputImage.getHeight();
         if (imageIsAlreadyScaled(originalWidth, originalHeight)) {
-            writeInputToOutput(inputImage, output);
+            return writeInputToOutput(inputImage, output);
         } else {
-            processImage(
-                inputImage,
+            return processImage(
                 originalWidth,
                 originalHeight, output);
         }
     }
 
-    private void processImage(BufferedImage bufferedImage, int originalWidth, int originalHeight, File output)
-        throws IOException {
-        paint(Scale.fromOriginalSize(originalWidth, originalHeight, thumbWidth, thumbHeight), bufferedImage, output);
+    /**
+     * Get the input image scaled to fit the thumbnail, without the white border. Images smaller than the thumbnail
+     * are returned as they are.
+     *
+     * @return the scaled image, which can be the input for a smaller thumbnail.
+     */
+    public BufferedImage getScaledImage() {
+        if (Objects.isNull(scaledImage)) {
+            var scale = Scale.fromOriginalSize(inputImage.getWidth(), inputImage.getHeight(), thumbWidth, thumbHeight);
+            var startTime = System.nanoTime();
+            scaledImage = imageScaler.scale(inputImage, scale.getScaledWidth(), scale.getScaledHeight());
+            StageMetrics.current().addDurationSince(StageMetrics.RESIZE_TIME, startTime);
+        }
+        return scaledImage;
+    }
+
+    private OutputFormat processImage(int originalWidth, int originalHeight, File output) throws IOException {
+        return paint(Scale.fromOriginalSize(originalWidth, originalHeight, thumbWidth, thumbHeight), output);
     }
 
-    private void paint(Scale scale, BufferedImage bufferedImage, File output) throws IOException {
-        var outputImage = new BufferedImage(thumbWidth, thumbHeight, BufferedImage.TYPE_INT_ARGB);
+    private OutputFormat paint(Scale scale, File output) throws IOException {
+        var image = getScaledImage();
+        if (fillsThumbnail(scale) && !image.getColorModel().hasAlpha()) {
+            return writeToOutput(image, image, output);
+        }
+
+        // The white background makes every thumbnail opaque, so the canvas needs no alpha channel.
+        var outputImage = new BufferedImage(thumbWidth, thumbHeight, BufferedImage.TYPE_INT_RGB);
 
         Graphics2D graphics2D = outputImage.createGraphics();
 
@@ -58,25 +90,30 @@ public class ImageResizer {
         graphics2D.setPaint(Color.WHITE);
         graphics2D.fillRect(LEFT, TOP, thumbWidth, thumbHeight);
 
-        // Enable smooth, high-quality resampling
-        graphics2D.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
-
-        graphics2D.drawImage(bufferedImage,
+        // The image is already scaled, so this is a plain copy
+        graphics2D.drawImage(image,
                              scale.getOffsetX(),
                              scale.getOffsetY(),
-                             scale.getScaledWidth(),
-                             scale.getScaledHeight(),
                              null);
         graphics2D.dispose();
-        writeToOutput(outputImage, output);
+        // The format is chosen from the image alone, so the white padding does not make a photo look like a page.
+        return writeToOutput(outputImage, image, output);
     }
 
-    private void writeInputToOutput(BufferedImage bufferedImage, File output) throws IOException {
-        writeToOutput(bufferedImage, output);
+    private boolean fillsThumbnail(Scale scale) {
+        return scale.getScaledWidth() == thumbWidth && scale.getScaledHeight() == thumbHeight;
     }
 
-    private void writeToOutput(BufferedImage bufferedImage, File output) throws IOException {
-        ImageIO.write(bufferedImage, PNG, output);
+    private OutputFormat writeInputToOutput(BufferedImage bufferedImage, File output) throws IOException {
+        return writeToOutput(bufferedImage, bufferedImage, output);
+    }
+
+    private OutputFormat writeToOutput(BufferedImage bufferedImage, BufferedImage content, File output)
+        throws IOException {
+        var startTime = System.nanoTime();
+        var format = thumbnailEncoder.write(bufferedImage, content, output);
+        StageMetrics.current().addDurationSince(StageMetrics.ENCODE_TIME, startTime);
+        return format;
     }
 
     private boolean imageIsAlreadyScaled(int originalWidth, int originalHeight) {
@@ -86,6 +123,7 @@ public class ImageResizer {
     private static final  class Scale {
 
         private static final double SAME_SCALE = 1.0;
+        private static final int MIN_SIZE = 1;
         private final int scaledWidth;
         private final int scaledHeight;
         private final int offsetX;
@@ -106,8 +144,9 @@ public class ImageResizer {
                 resizeRatio = SAME_SCALE;
             }
 
-            var scaledWidth = (int) Math.round(originalWidth * resizeRatio);
-            var scaledHeight = (int) Math.round(originalHeight * resizeRatio);
+            // Very narrow images must keep at least one pixel in each direction
+            var scaledWidth = Math.max(MIN_SIZE, (int) Math.round(originalWidth * resizeRatio));
+            var scaledHeight = Math.max(MIN_SIZE, (int) Math.round(originalHeight * resizeRatio));
 
             // Center:
             var offsetX = (thumbWidth - scaledWidth) / 2;
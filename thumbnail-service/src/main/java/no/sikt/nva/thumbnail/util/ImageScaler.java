@@ -0,0 +1,401 @@
+package no.sikt.nva.thumbnail.util;
+
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.Arrays;
+
+/**
+ * Scales images on primitive int arrays. Every source image type is normalized to ARGB pixels up front, so the
+ * cost of a scale operation only depends on the source and target sizes, not on which Java2D loop the image type
+ * happens to hit. Images without alpha are returned as TYPE_INT_RGB, images with alpha as TYPE_INT_ARGB.
+ */
+public class ImageScaler {
+
+    public static final Algorithm DEFAULT_ALGORITHM = Algorithm.AREA_AVERAGING;
+    public static final String INVALID_SIZE_MESSAGE = "Target size must be positive, was %dx%d";
+    private static final int CHANNELS = 4;
+    private static final int ALPHA_SHIFT = 24;
+    private static final int RED_SHIFT = 16;
+    private static final int GREEN_SHIFT = 8;
+    private static final int CHANNEL_MASK = 0xFF;
+    private static final int MAX_CHANNEL_VALUE = 255;
+    private static final int OPAQUE = 0xFF00_0000;
+    private static final int NO_FORCED_ALPHA = 0;
+    private static final int ALTERNATE_CHANNELS = 0x00FF_00FF;
+    private static final int HALVING_FACTOR = 2;
+    private static final int HALVING_SHIFT = 2;
+    private static final int HALVING_ROUNDING = 0x0002_0002;
+    // Weights are stored as fixed point numbers, 255 * 2^14 * the sum of the absolute weights fits in an int.
+    private static final int PRECISION_BITS = 14;
+    private static final int ONE = 1 << PRECISION_BITS;
+    private static final int ROUNDING = ONE / 2;
+    private static final int ORIGIN = 0;
+    private static final double PIXEL_CENTER = 0.5;
+    private final Algorithm algorithm;
+
+    public ImageScaler() {
+        this(DEFAULT_ALGORITHM);
+    }
+
+    public ImageScaler(Algorithm algorithm) {
+        this.algorithm = algorithm;
+    }
+
+    /**
+     * Scale an image to exactly the given size. The aspect ratio is not preserved, callers decide the target size.
+     *
+     * @param source image to scale.
+     * @param width  target width in pixels.
+     * @param height target height in pixels.
+     * @return the scaled image, or the source itself when it already has the target size.
+     */
+    public BufferedImage scale(BufferedImage source, int width, int height) {
+        if (width <= 0 || height <= 0) {
+            throw new IllegalArgumentException(String.format(INVALID_SIZE_MESSAGE, width, height));
+        }
+        if (source.getWidth() == width && source.getHeight() == height) {
+            return source;
+        }
+        var hasAlpha = source.getColorModel().hasAlpha();
+        if (algorithm == Algorithm.JAVA2D_BILINEAR) {
+            return scaleWithJava2d(source, width, height, hasAlpha);
+        }
+        var pixels = readPixels(source, hasAlpha);
+        var forcedAlpha = hasAlpha ? NO_FORCED_ALPHA : OPAQUE;
+        var scaled = scalePixels(pixels, source.getWidth(), source.getHeight(), width, height, forcedAlpha);
+        if (hasAlpha) {
+            for (var i = 0; i < scaled.length; i++) {
+                scaled[i] = unpremultiply(scaled[i]);
+            }
+        }
+        return toImage(scaled, width, height, hasAlpha);
+    }
+
+    public Algorithm getAlgorithm() {
+        return algorithm;
+    }
+
+    private int[] scalePixels(int[] pixels, int sourceWidth, int sourceHeight, int width, int height,
+                              int forcedAlpha) {
+        switch (algorithm) {
+            case PROGRESSIVE_HALVING:
+                return scaleByHalving(pixels, sourceWidth, sourceHeight, width, height, forcedAlpha);
+            case LANCZOS:
+                return resample(pixels, sourceWidth, sourceHeight, width, height, Kernel.LANCZOS3, forcedAlpha);
+            case AREA_AVERAGING:
+            default:
+                return resample(pixels, sourceWidth, sourceHeight, width, height, Kernel.BOX, forcedAlpha);
+        }
+    }
+
+    // Halve with 2x2 box averages while the image is at least twice the target size, then finish bilinearly.
+    private static int[] scaleByHalving(int[] pixels, int sourceWidth, int sourceHeight, int width, int height,
+                                        int forcedAlpha) {
+        var current = pixels;
+        var currentWidth = sourceWidth;
+        var currentHeight = sourceHeight;
+        while (currentWidth >= width * HALVING_FACTOR && currentHeight >= height * HALVING_FACTOR) {
+            current = halve(current, currentWidth, currentHeight, forcedAlpha);
+            currentWidth /= HALVING_FACTOR;
+            currentHeight /= HALVING_FACTOR;
+        }
+        return resample(current, currentWidth, currentHeight, width, height, Kernel.TRIANGLE, forcedAlpha);
+    }
+
+    private static int[] halve(int[] pixels, int width, int height, int forcedAlpha) {
+        var halfWidth = width / HALVING_FACTOR;
+        var halfHeight = height / HALVING_FACTOR;
+        var halved = new int[halfWidth * halfHeight];
+        for (var y = 0; y < halfHeight; y++) {
+            var top = y * HALVING_FACTOR * width;
+            var bottom = top + width;
+            var target = y * halfWidth;
+            for (var x = 0; x < halfWidth; x++) {
+                var left = x * HALVING_FACTOR;
+                halved[target + x] = average(pixels[top + left], pixels[top + left + 1],
+                                             pixels[bottom + left], pixels[bottom + left + 1]) | forcedAlpha;
+            }
+        }
+        return halved;
+    }
+
+    // Averages two channels at once: red and blue, then alpha and green, each in its own 16-bit lane.
+    private static int average(int first, int second, int third, int fourth) {
+        var redBlue = (first & ALTERNATE_CHANNELS) + (second & ALTERNATE_CHANNELS)
+                      + (third & ALTERNATE_CHANNELS) + (fourth & ALTERNATE_CHANNELS);
+        var alphaGreen = (first >>> Byte.SIZE & ALTERNATE_CHANNELS) + (second >>> Byte.SIZE & ALTERNATE_CHANNELS)
+                         + (third >>> Byte.SIZE & ALTERNATE_CHANNELS) + (fourth >>> Byte.SIZE & ALTERNATE_CHANNELS);
+        redBlue = (redBlue + HALVING_ROUNDING) >>> HALVING_SHIFT & ALTERNATE_CHANNELS;
+        alphaGreen = (alphaGreen + HALVING_ROUNDING) >>> HALVING_SHIFT & ALTERNATE_CHANNELS;
+        return alphaGreen << Byte.SIZE | redBlue;
+    }
+
+    // Separable resampling in fixed point: filter the rows, then the columns of the result.
+    private static int[] resample(int[] pixels, int sourceWidth, int sourceHeight, int width, int height,
+                                  Kernel kernel, int forcedAlpha) {
+        var horizontal = sourceWidth == width
+                             ? pixels
+                             : resampleRows(pixels, sourceWidth, sourceHeight, width, kernel, forcedAlpha);
+        return sourceHeight == height
+                   ? horizontal
+                   : resampleColumns(horizontal, width, sourceHeight, height, kernel, forcedAlpha);
+    }
+
+    private static int[] resampleRows(int[] pixels, int sourceWidth, int sourceHeight, int width, Kernel kernel,
+                                      int forcedAlpha) {
+        var contributions = Contribution.forAxis(sourceWidth, width, kernel);
+        var scaled = new int[width * sourceHeight];
+        for (var y = 0; y < sourceHeight; y++) {
+            var rowStart = y * sourceWidth;
+            var target = y * width;
+            for (var x = 0; x < width; x++) {
+                var contribution = contributions[x];
+                var weights = contribution.weights;
+                var offset = rowStart + contribution.start;
+                var alpha = ROUNDING;
+                var red = ROUNDING;
+                var green = ROUNDING;
+                var blue = ROUNDING;
+                for (var i = 0; i < weights.length; i++) {
+                    var pixel = pixels[offset + i];
+                    var weight = weights[i];
+                    alpha += (pixel >>> ALPHA_SHIFT) * weight;
+                    red += (pixel >>> RED_SHIFT & CHANNEL_MASK) * weight;
+                    green += (pixel >>> GREEN_SHIFT & CHANNEL_MASK) * weight;
+                    blue += (pixel & CHANNEL_MASK) * weight;
+                }
+                scaled[target + x] = pack(alpha, red, green, blue) | forcedAlpha;
+            }
+        }
+        return scaled;
+    }
+
+    // Accumulates whole source rows at a time, so the source is read sequentially.
+    private static int[] resampleColumns(int[] pixels, int width, int sourceHeight, int height, Kernel kernel,
+                                         int forcedAlpha) {
+        var contributions = Contribution.forAxis(sourceHeight, height, kernel);
+        var scaled = new int[width * height];
+        var sums = new int[width * CHANNELS];
+        for (var y = 0; y < height; y++) {
+            var contribution = contributions[y];
+            Arrays.fill(sums, ROUNDING);
+            for (var i = 0; i < contribution.weights.length; i++) {
+                var rowStart = (contribution.start + i) * width;
+                var weight = contribution.weights[i];
+                for (var x = 0; x < width; x++) {
+                    var pixel = pixels[rowStart + x];
+                    var sum = x * CHANNELS;
+                    sums[sum] += (pixel >>> ALPHA_SHIFT) * weight;
+                    sums[sum + 1] += (pixel >>> RED_SHIFT & CHANNEL_MASK) * weight;
+                    sums[sum + 2] += (pixel >>> GREEN_SHIFT & CHANNEL_MASK) * weight;
+                    sums[sum + 3] += (pixel & CHANNEL_MASK) * weight;
+                }
+            }
+            var target = y * width;
+            for (var x = 0; x < width; x++) {
+                var sum = x * CHANNELS;
+                scaled[target + x] = pack(sums[sum], sums[sum + 1], sums[sum + 2], sums[sum + 3]) | forcedAlpha;
+            }
+        }
+        return scaled;
+    }
+
+    private static int pack(int alpha, int red, int green, int blue) {
+        return clamp(alpha) << ALPHA_SHIFT | clamp(red) << RED_SHIFT | clamp(green) << GREEN_SHIFT | clamp(blue);
+    }
+
+    private static int clamp(int fixedPoint) {
+        return Math.max(0, Math.min(MAX_CHANNEL_VALUE, fixedPoint >> PRECISION_BITS));
+    }
+
+    private static int[] readPixels(BufferedImage source, boolean hasAlpha) {
+        if (!hasAlpha && source.getType() == BufferedImage.TYPE_INT_RGB) {
+            return pixelsOf(source);
+        }
+        var pixels = source.getType() == BufferedImage.TYPE_INT_ARGB && hasAlpha
+                         ? pixelsOf(source).clone()
+                         : pixelsOf(normalize(source, hasAlpha));
+        if (hasAlpha) {
+            for (var i = 0; i < pixels.length; i++) {
+                pixels[i] = premultiply(pixels[i]);
+            }
+        }
+        return pixels;
+    }
+
+    // A one-to-one drawImage uses Java2D's native conversion loops for the common image types.
+    private static BufferedImage normalize(BufferedImage source, boolean hasAlpha) {
+        var normalized = new BufferedImage(source.getWidth(), source.getHeight(),
+                                           hasAlpha ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB);
+        var graphics = normalized.createGraphics();
+        graphics.drawImage(source, ORIGIN, ORIGIN, null);
+        graphics.dispose();
+        return normalized;
+    }
+
+    // Reads the backing array when the raster is not a view into a larger image, and copies it otherwise.
+    private static int[] pixelsOf(BufferedImage image) {
+        var raster = image.getRaster();
+        var width = image.getWidth();
+        var height = image.getHeight();
+        var dataBuffer = raster.getDataBuffer();
+        if (raster.getParent() == null && dataBuffer instanceof DataBufferInt
+            && dataBuffer.getOffset() == 0 && dataBuffer.getSize() == width * height) {
+            return ((DataBufferInt) dataBuffer).getData();
+        }
+        return (int[]) raster.getDataElements(ORIGIN, ORIGIN, width, height, null);
+    }
+
+    // Filtering premultiplied colors keeps transparent pixels from bleeding their color into opaque neighbours.
+    private static int premultiply(int pixel) {
+        var alpha = pixel >>> ALPHA_SHIFT;
+        if (alpha == MAX_CHANNEL_VALUE) {
+            return pixel;
+        }
+        var red = (pixel >>> RED_SHIFT & CHANNEL_MASK) * alpha / MAX_CHANNEL_VALUE;
+        var green = (pixel >>> GREEN_SHIFT & CHANNEL_MASK) * alpha / MAX_CHANNEL_VALUE;
+        var blue = (pixel & CHANNEL_MASK) * alpha / MAX_CHANNEL_VALUE;
+        return alpha << ALPHA_SHIFT | red << RED_SHIFT | green << GREEN_SHIFT | blue;
+    }
+
+    private static int unpremultiply(int pixel) {
+        var alpha = pixel >>> ALPHA_SHIFT;
+        if (alpha == 0) {
+            return 0;
+        }
+        if (alpha == MAX_CHANNEL_VALUE) {
+            return pixel;
+        }
+        var red = unpremultiplyChannel(pixel >>> RED_SHIFT & CHANNEL_MASK, alpha);
+        var green = unpremultiplyChannel(pixel >>> GREEN_SHIFT & CHANNEL_MASK, alpha);
+        var blue = unpremultiplyChannel(pixel & CHANNEL_MASK, alpha);
+        return alpha << ALPHA_SHIFT | red << RED_SHIFT | green << GREEN_SHIFT | blue;
+    }
+
+    private static int unpremultiplyChannel(int channel, int alpha) {
+        return Math.min(MAX_CHANNEL_VALUE, channel * MAX_CHANNEL_VALUE / alpha);
+    }
+
+    private static BufferedImage toImage(int[] pixels, int width, int height, boolean hasAlpha) {
+        var image = new BufferedImage(width, height,
+                                      hasAlpha ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB);
+        image.getRaster().setDataElements(ORIGIN, ORIGIN, width, height, pixels);
+        return image;
+    }
+
+    // The implementation ImageResizer used before the scaler existed, kept as a baseline for benchmarks.
+    private static BufferedImage scaleWithJava2d(BufferedImage source, int width, int height, boolean hasAlpha) {
+        var image = new BufferedImage(width, height,
+                                      hasAlpha ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB);
+        var graphics = image.createGraphics();
+        graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+        graphics.drawImage(source, ORIGIN, ORIGIN, width, height, null);
+        graphics.dispose();
+        return image;
+    }
+
+    public enum Algorithm {
+        /**
+         * A single bilinear Java2D drawImage, aliased at large downscale ratios.
+         */
+        JAVA2D_BILINEAR,
+        /**
+         * Repeated 2x2 averaging followed by one bilinear step. Cheapest, slightly soft.
+         */
+        PROGRESSIVE_HALVING,
+        /**
+         * Every target pixel is the average of the source pixels it covers. Good quality at a cost linear in the
+         * source size.
+         */
+        AREA_AVERAGING,
+        /**
+         * Separable Lanczos filter with three lobes. Sharpest, but reads about six times as many source pixels per
+         * target pixel as area averaging.
+         */
+        LANCZOS
+    }
+
+    private enum Kernel {
+        BOX(0.5) {
+            @Override
+            double weight(double distance) {
+                return distance > -0.5 && distance <= 0.5 ? 1 : 0;
+            }
+        },
+        TRIANGLE(1.0) {
+            @Override
+            double weight(double distance) {
+                var absolute = Math.abs(distance);
+                return absolute < 1 ? 1 - absolute : 0;
+            }
+        },
+        LANCZOS3(3.0) {
+            @Override
+            double weight(double distance) {
+                if (distance == 0) {
+                    return 1;
+                }
+                if (Math.abs(distance) >= support) {
+                    return 0;
+                }
+                var x = Math.PI * distance;
+                return support * Math.sin(x) * Math.sin(x / support) / (x * x);
+            }
+        };
+
+        /* default */ final double support;
+
+        Kernel(double support) {
+            this.support = support;
+        }
+
+        abstract double weight(double distance);
+    }
+
+    // The source pixels, and their weights, that make up one target pixel along one axis.
+    private static final class Contribution {
+
+        private final int start;
+        private final int[] weights;
+
+        private Contribution(int[] weights, int start) {
+            this.start = start;
+            this.weights = weights;
+        }
+
+        private static Contribution[] forAxis(int sourceSize, int targetSize, Kernel kernel) {
+            var scale = (double) targetSize / sourceSize;
+            // When shrinking, the kernel is stretched to cover every source pixel that falls into a target pixel.
+            var filterScale = Math.max(1.0, 1.0 / scale);
+            var support = kernel.support * filterScale;
+            var contributions = new Contribution[targetSize];
+            for (var i = 0; i < targetSize; i++) {
+                var center = (i + PIXEL_CENTER) / scale;
+                var first = Math.max(0, (int) Math.floor(center - support));
+                var last = Math.min(sourceSize - 1, (int) Math.ceil(center + support));
+                contributions[i] = create(first, last, center, filterScale, kernel);
+            }
+            return contributions;
+        }
+
+        private static Contribution create(int first, int last, double center, double filterScale, Kernel kernel) {
+            var rawWeights = new double[last - first + 1];
+            double total = 0;
+            for (var j = first; j <= last; j++) {
+                var weight = kernel.weight((j + PIXEL_CENTER - center) / filterScale);
+                rawWeights[j - first] = weight;
+                total += weight;
+            }
+            if (total == 0) {
+                var nearest = Math.min(last, Math.max(first, (int) center));
+                return new Contribution(new int[]{ONE}, nearest);
+            }
+            var weights = new int[rawWeights.length];
+            for (var j = 0; j < weights.length; j++) {
+                weights[j] = (int) Math.round(rawWeights[j] / total * ONE);
+            }
+            return new Contribution(weights, first);
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package no.sikt.nva.thumbnail.util;
+
+import java.awt.image.BufferedImage;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Picks the video frame to use as thumbnail among a few candidate keyframes. Fade-ins, title cards on black and
+ * dark opening shots make the first keyframe a poor thumbnail, so dark candidates are passed over.
+ */
+public class KeyframeSelector {
+
+    // Mean luma, from 0 to 255, below which a frame is considered too dark to show what the video is about.
+    public static final double DARK_FRAME_THRESHOLD = 40;
+    private static final int MAX_SAMPLES_PER_DIMENSION = 32;
+    private static final int RED_SHIFT = 16;
+    private static final int GREEN_SHIFT = 8;
+    private static final int CHANNEL_MASK = 0xFF;
+    // ITU-R BT.601 luma weights, scaled by 1024.
+    private static final int RED_WEIGHT = 306;
+    private static final int GREEN_WEIGHT = 601;
+    private static final int BLUE_WEIGHT = 117;
+    private static final int WEIGHT_SHIFT = 10;
+
+    /**
+     * Choose the earliest candidate that is not dark, or the least dark candidate if all of them are.
+     *
+     * @param candidates frames in presentation order.
+     * @return the chosen frame, or empty if there are no candidates.
+     */
+    public Optional<BufferedImage> select(List<BufferedImage> candidates) {
+        var firstBrightFrame = candidates.stream()
+                                   .filter(frame -> meanLuma(frame) >= DARK_FRAME_THRESHOLD)
+                                   .findFirst();
+        if (firstBrightFrame.isPresent()) {
+            return firstBrightFrame;
+        }
+        return candidates.stream().max(Comparator.comparingDouble(KeyframeSelector::meanLuma));
+    }
+
+    /**
+     * Calculate the mean luma of a grid of sample pixels.
+     *
+     * @param frame video frame.
+     * @return mean luma from 0 (black) to 255 (white).
+     */
+    public static double meanLuma(BufferedImage frame) {
+        var stepX = Math.max(1, frame.getWidth() / MAX_SAMPLES_PER_DIMENSION);
+        var stepY = Math.max(1, frame.getHeight() / MAX_SAMPLES_PER_DIMENSION);
+        long lumaSum = 0;
+        var samples = 0;
+        for (var y = stepY / 2; y < frame.getHeight(); y += stepY) {
+            for (var x = stepX / 2; x < frame.getWidth(); x += stepX) {
+                var rgb = frame.getRGB(x, y);
+                lumaSum += (RED_WEIGHT * (rgb >> RED_SHIFT & CHANNEL_MASK)
+                            + GREEN_WEIGHT * (rgb >> GREEN_SHIFT & CHANNEL_MASK)
+                            + BLUE_WEIGHT * (rgb & CHANNEL_MASK)) >> WEIGHT_SHIFT;
+                samples++;
+            }
+        }
+        return (double) lumaSum / samples;
+    }
+}
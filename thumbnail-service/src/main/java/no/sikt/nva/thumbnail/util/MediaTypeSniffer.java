@@ -0,0 +1,283 @@
+package no.sikt.nva.thumbnail.util;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.regex.Pattern;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Identifies the type of an input from its first bytes, for uploads stored without a content type or with a wrong
+ * one. Only types a thumbnailer could take are recognized: PDF, the raster formats ImageIO reads, the common video
+ * containers and ZIP based documents. OpenDocument files name their type in the "mimetype" entry, which the format
+ * requires to be the first one and stored uncompressed; OOXML files name the content type of their main part in
+ * "[Content_Types].xml", which is usually first and small enough to inflate from the first few KB.
+ */
+public class MediaTypeSniffer {
+
+    // Enough for the local headers of the first ZIP entries and the EBML header of Matroska files.
+    public static final int SNIFF_LENGTH = 8 * 1024;
+    // Readers accept a PDF header anywhere in the first KB, after whatever a producer wrote before it.
+    private static final int PDF_HEADER_SEARCH_LENGTH = 1024;
+    private static final byte[] PDF_HEADER = ascii("%PDF-");
+    private static final String PDF = "application/pdf";
+    private static final List<Signature> SIGNATURES = List.of(
+        new Signature(bytes(0x89, 'P', 'N', 'G', 0x0D, 0x0A, 0x1A, 0x0A), "image/png"),
+        new Signature(bytes(0xFF, 0xD8, 0xFF), "image/jpeg"),
+        new Signature(ascii("GIF87a"), "image/gif"),
+        new Signature(ascii("GIF89a"), "image/gif"),
+        new Signature(bytes('I', 'I', 0x2A, 0x00), "image/tiff"),
+        new Signature(bytes('M', 'M', 0x00, 0x2A), "image/tiff"),
+        new Signature(bytes('F', 'L', 'V', 0x01), "video/x-flv"),
+        new Signature(bytes(0x00, 0x00, 0x01, 0xBA), "video/mpeg"),
+        new Signature(bytes(0x00, 0x00, 0x01, 0xB3), "video/mpeg"),
+        new Signature(ascii("OggS"), "video/ogg"),
+        new Signature(bytes(0x30, 0x26, 0xB2, 0x75, 0x8E, 0x66, 0xCF, 0x11), "application/vnd.ms-asf"));
+    // "BM" is too short to tell bitmaps from text, so the fields of the file header after it have to be valid too: the
+    // reserved bytes are zero, the known sizes of the info header and the pixel data start after both headers and
+    // within the file.
+    private static final byte[] BITMAP = ascii("BM");
+    private static final String BMP = "image/bmp";
+    private static final int BITMAP_FILE_SIZE_OFFSET = 2;
+    private static final int BITMAP_RESERVED_OFFSET = 6;
+    private static final int BITMAP_PIXEL_OFFSET_OFFSET = 10;
+    private static final int BITMAP_FILE_HEADER_LENGTH = 14;
+    private static final int BITMAP_INFO_HEADER_SIZE_LENGTH = 4;
+    private static final List<Integer> BITMAP_INFO_HEADER_SIZES = List.of(12, 16, 40, 52, 56, 64, 108, 124);
+    private static final int RIFF_FORM_TYPE_OFFSET = 8;
+    private static final byte[] RIFF = ascii("RIFF");
+    private static final Map<String, String> RIFF_FORM_TYPES = Map.of("AVI ", "video/x-msvideo",
+                                                                      "WEBP", "image/webp");
+    private static final byte[] EBML = bytes(0x1A, 0x45, 0xDF, 0xA3);
+    private static final byte[] WEBM_DOC_TYPE = ascii("webm");
+    private static final String WEBM = "video/webm";
+    private static final String MATROSKA = "video/x-matroska";
+    // ISO base media files start with an atom: its size, then its type. Files in the format's QuickTime origin may
+    // start with the movie atoms instead of a file type atom.
+    private static final int ATOM_TYPE_OFFSET = 4;
+    private static final int MAJOR_BRAND_OFFSET = 8;
+    private static final int FOUR_CC_LENGTH = 4;
+    private static final String FILE_TYPE_ATOM = "ftyp";
+    private static final List<String> QUICKTIME_ATOMS = List.of("moov", "mdat", "wide", "pnot");
+    private static final String QUICKTIME = "video/quicktime";
+    private static final String MP4 = "video/mp4";
+    private static final Map<String, String> MAJOR_BRANDS = Map.of("qt  ", QUICKTIME,
+                                                                   "M4V ", "video/x-m4v",
+                                                                   "M4A ", "audio/mp4",
+                                                                   "heic", "image/heic",
+                                                                   "mif1", "image/heif",
+                                                                   "avif", "image/avif");
+    private static final byte[] ZIP_LOCAL_FILE_HEADER = bytes('P', 'K', 0x03, 0x04);
+    private static final int ZIP_LOCAL_HEADER_LENGTH = 30;
+    private static final int ZIP_FLAGS_OFFSET = 6;
+    private static final int ZIP_METHOD_OFFSET = 8;
+    private static final int ZIP_COMPRESSED_SIZE_OFFSET = 18;
+    private static final int ZIP_NAME_LENGTH_OFFSET = 26;
+    private static final int ZIP_EXTRA_LENGTH_OFFSET = 28;
+    private static final int ZIP_DATA_DESCRIPTOR_FLAG = 0x08;
+    private static final int ZIP_STORED = 0;
+    private static final int ZIP_DEFLATED = 8;
+    private static final int NO_NEXT_ENTRY = -1;
+    private static final String ODF_MIMETYPE_ENTRY = "mimetype";
+    private static final String OOXML_CONTENT_TYPES_ENTRY = "[Content_Types].xml";
+    private static final int MAX_CONTENT_TYPES_LENGTH = 64 * 1024;
+    private static final Pattern OOXML_MAIN_PART = Pattern.compile(
+        "ContentType=\"(application/vnd\\.openxmlformats-officedocument\\.\\w+\\.\\w+)\\.main\\+xml\"");
+    private static final Pattern MEDIA_TYPE = Pattern.compile("[\\w.+-]+/[\\w.+-]+");
+
+    /**
+     * Identify the type of an input.
+     *
+     * @param head the first bytes of the input, up to SNIFF_LENGTH of them.
+     * @return the media type, or empty if the bytes match none of the known signatures.
+     */
+    public Optional<String> sniff(byte[] head) {
+        var signature = SIGNATURES.stream().filter(candidate -> candidate.matches(head)).findFirst();
+        if (signature.isPresent()) {
+            return Optional.of(signature.get().getMediaType());
+        }
+        if (startsWith(head, ZIP_LOCAL_FILE_HEADER, 0)) {
+            return sniffZipDocument(head);
+        }
+        if (startsWith(head, BITMAP, 0)) {
+            return isBitmap(head) ? Optional.of(BMP) : Optional.empty();
+        }
+        if (startsWith(head, RIFF, 0)) {
+            return Optional.ofNullable(RIFF_FORM_TYPES.get(fourCharacterCode(head, RIFF_FORM_TYPE_OFFSET)));
+        }
+        if (startsWith(head, EBML, 0)) {
+            return Optional.of(indexOf(head, WEBM_DOC_TYPE, head.length) >= 0 ? WEBM : MATROSKA);
+        }
+        return sniffMediaFile(head).or(() -> sniffPdf(head));
+    }
+
+    private static boolean isBitmap(byte[] head) {
+        if (head.length < BITMAP_FILE_HEADER_LENGTH + BITMAP_INFO_HEADER_SIZE_LENGTH) {
+            return false;
+        }
+        var buffer = ByteBuffer.wrap(head).order(ByteOrder.LITTLE_ENDIAN);
+        var fileSize = Integer.toUnsignedLong(buffer.getInt(BITMAP_FILE_SIZE_OFFSET));
+        var pixelOffset = Integer.toUnsignedLong(buffer.getInt(BITMAP_PIXEL_OFFSET_OFFSET));
+        var infoHeaderSize = buffer.getInt(BITMAP_FILE_HEADER_LENGTH);
+        return buffer.getInt(BITMAP_RESERVED_OFFSET) == 0
+               && BITMAP_INFO_HEADER_SIZES.contains(infoHeaderSize)
+               && pixelOffset >= BITMAP_FILE_HEADER_LENGTH + infoHeaderSize
+               && pixelOffset <= fileSize;
+    }
+
+    private static Optional<String> sniffMediaFile(byte[] head) {
+        var atomType = fourCharacterCode(head, ATOM_TYPE_OFFSET);
+        if (FILE_TYPE_ATOM.equals(atomType)) {
+            return Optional.of(MAJOR_BRANDS.getOrDefault(fourCharacterCode(head, MAJOR_BRAND_OFFSET), MP4));
+        }
+        return QUICKTIME_ATOMS.contains(atomType) ? Optional.of(QUICKTIME) : Optional.empty();
+    }
+
+    private static Optional<String> sniffPdf(byte[] head) {
+        return indexOf(head, PDF_HEADER, PDF_HEADER_SEARCH_LENGTH) >= 0 ? Optional.of(PDF) : Optional.empty();
+    }
+
+    // Walks the local headers in the head of the file, up to the first entry whose size is only known from the data
+    // descriptor after it.
+    private static Optional<String> sniffZipDocument(byte[] head) {
+        var buffer = ByteBuffer.wrap(head).order(ByteOrder.LITTLE_ENDIAN);
+        var offset = 0;
+        while (offset != NO_NEXT_ENTRY
+               && offset + ZIP_LOCAL_HEADER_LENGTH <= head.length
+               && startsWith(head, ZIP_LOCAL_FILE_HEADER, offset)) {
+            var mediaType = sniffZipEntry(head, buffer, offset);
+            if (mediaType.isPresent()) {
+                return mediaType;
+            }
+            offset = findNextZipEntry(buffer, offset);
+        }
+        return Optional.empty();
+    }
+
+    private static Optional<String> sniffZipEntry(byte[] head, ByteBuffer buffer, int offset) {
+        var dataStart = findZipEntryData(buffer, offset);
+        if (dataStart > head.length) {
+            return Optional.empty();
+        }
+        var nameLength = Short.toUnsignedInt(buffer.getShort(offset + ZIP_NAME_LENGTH_OFFSET));
+        var name = new String(head, offset + ZIP_LOCAL_HEADER_LENGTH, nameLength, StandardCharsets.UTF_8);
+        var method = Short.toUnsignedInt(buffer.getShort(offset + ZIP_METHOD_OFFSET));
+        // Without the size, inflating stops by itself at the end of the deflated data.
+        var dataEnd = hasDataDescriptor(buffer, offset)
+                          ? head.length
+                          : (int) Math.min(head.length, dataStart + readCompressedSize(buffer, offset));
+        var data = Arrays.copyOfRange(head, dataStart, dataEnd);
+        if (ODF_MIMETYPE_ENTRY.equals(name) && method == ZIP_STORED) {
+            var mediaType = new String(data, StandardCharsets.US_ASCII).trim();
+            return MEDIA_TYPE.matcher(mediaType).matches() ? Optional.of(mediaType) : Optional.empty();
+        }
+        if (OOXML_CONTENT_TYPES_ENTRY.equals(name) && method == ZIP_DEFLATED) {
+            var mainPart = OOXML_MAIN_PART.matcher(inflatePartially(data));
+            return mainPart.find() ? Optional.of(mainPart.group(1)) : Optional.empty();
+        }
+        return Optional.empty();
+    }
+
+    private static int findNextZipEntry(ByteBuffer buffer, int offset) {
+        if (hasDataDescriptor(buffer, offset)) {
+            return NO_NEXT_ENTRY;
+        }
+        return (int) Math.min(buffer.capacity(), findZipEntryData(buffer, offset) + readCompressedSize(buffer, offset));
+    }
+
+    private static int findZipEntryData(ByteBuffer buffer, int offset) {
+        return offset + ZIP_LOCAL_HEADER_LENGTH
+               + Short.toUnsignedInt(buffer.getShort(offset + ZIP_NAME_LENGTH_OFFSET))
+               + Short.toUnsignedInt(buffer.getShort(offset + ZIP_EXTRA_LENGTH_OFFSET));
+    }
+
+    private static long readCompressedSize(ByteBuffer buffer, int offset) {
+        return Integer.toUnsignedLong(buffer.getInt(offset + ZIP_COMPRESSED_SIZE_OFFSET));
+    }
+
+    private static boolean hasDataDescriptor(ByteBuffer buffer, int offset) {
+        return (Short.toUnsignedInt(buffer.getShort(offset + ZIP_FLAGS_OFFSET)) & ZIP_DATA_DESCRIPTOR_FLAG) != 0;
+    }
+
+    // Inflates as much as the available bytes allow, the main part is usually declared in the first few hundred.
+    private static String inflatePartially(byte[] data) {
+        var inflater = new Inflater(true);
+        try {
+            inflater.setInput(data);
+            var output = new byte[MAX_CONTENT_TYPES_LENGTH];
+            var length = 0;
+            var inflated = -1;
+            while (length < output.length && inflated != 0) {
+                inflated = inflater.inflate(output, length, output.length - length);
+                length += inflated;
+            }
+            return new String(output, 0, length, StandardCharsets.UTF_8);
+        } catch (DataFormatException e) {
+            return "";
+        } finally {
+            inflater.end();
+        }
+    }
+
+    private static String fourCharacterCode(byte[] head, int offset) {
+        return head.length >= offset + FOUR_CC_LENGTH
+                   ? new String(head, offset, FOUR_CC_LENGTH, StandardCharsets.ISO_8859_1)
+                   : "";
+    }
+
+    private static int indexOf(byte[] head, byte[] pattern, int searchLength) {
+        var lastStart = Math.min(head.length, searchLength) - pattern.length;
+        for (var start = 0; start <= lastStart; start++) {
+            if (startsWith(head, pattern, start)) {
+                return start;
+            }
+        }
+        return -1;
+    }
+
+    private static boolean startsWith(byte[] head, byte[] prefix, int offset) {
+        if (head.length < offset + prefix.length) {
+            return false;
+        }
+        return Arrays.equals(head, offset, offset + prefix.length, prefix, 0, prefix.length);
+    }
+
+    private static byte[] ascii(String text) {
+        return text.getBytes(StandardCharsets.US_ASCII);
+    }
+
+    private static byte[] bytes(int... values) {
+        var bytes = new byte[values.length];
+        for (var i = 0; i < values.length; i++) {
+            bytes[i] = (byte) values[i];
+        }
+        return bytes;
+    }
+
+    /**
+     * Bytes a file of a media type starts with.
+     */
+    private static final class Signature {
+
+        private final byte[] magic;
+        private final String mediaType;
+
+        Signature(byte[] magic, String mediaType) {
+            this.magic = magic;
+            this.mediaType = mediaType;
+        }
+
+        boolean matches(byte[] head) {
+            return startsWith(head, magic, 0);
+        }
+
+        String getMediaType() {
+            return mediaType;
+        }
+    }
+}
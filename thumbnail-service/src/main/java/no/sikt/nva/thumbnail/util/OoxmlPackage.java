@@ -0,0 +1,249 @@
+package no.sikt.nva.thumbnail.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+/**
+ * Reads single parts of an Office Open XML package, the ZIP container of DOCX, XLSX and PPTX files. Parts are found
+ * through the relationships of the package and its parts, and XML parts are streamed, so what is kept in memory is up
+ * to the caller and not given by the size of the part.
+ */
+public class OoxmlPackage implements AutoCloseable {
+
+    public static final String PACKAGE_ROOT = "";
+    public static final String ID_ATTRIBUTE = "Id";
+    public static final String TYPE_ATTRIBUTE = "Type";
+    private static final String RELATIONSHIP_ELEMENT = "Relationship";
+    private static final String TARGET_ATTRIBUTE = "Target";
+    private static final String TARGET_MODE_ATTRIBUTE = "TargetMode";
+    private static final String EXTERNAL_TARGET_MODE = "External";
+    private static final String RELATIONSHIPS_DIRECTORY = "_rels/";
+    private static final String RELATIONSHIPS_SUFFIX = ".rels";
+    private static final String PART_NAME_SEPARATOR = "/";
+    private static final String NO_NAMESPACE = null;
+    private final ZipFile zipFile;
+    private final XMLInputFactory xmlInputFactory;
+
+    /**
+     * Open a package.
+     *
+     * @param input DOCX, XLSX or PPTX file.
+     * @throws IOException If the file cannot be read or is not a ZIP file.
+     */
+    public OoxmlPackage(File input) throws IOException {
+        this.zipFile = new ZipFile(input);
+        this.xmlInputFactory = XMLInputFactory.newFactory();
+        // The parts come from an uploaded file, so nothing outside of it may be resolved.
+        xmlInputFactory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        xmlInputFactory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+    }
+
+    /**
+     * Find the part the first internal relationship with a given attribute value points to, for instance the
+     * relationship of a given type or with a given id.
+     *
+     * @param sourcePart name of the part owning the relationships, or PACKAGE_ROOT for the package relationships.
+     * @param attribute  attribute of the relationship to match, ID_ATTRIBUTE or TYPE_ATTRIBUTE.
+     * @param value      value the attribute must have.
+     * @return the name of the target part, or empty if there is no such relationship.
+     * @throws IOException        If the package cannot be read.
+     * @throws XMLStreamException If the relationships are malformed.
+     */
+    public Optional<String> findRelationshipTarget(String sourcePart, String attribute, String value)
+        throws IOException, XMLStreamException {
+        return readPart(relationshipsPartOf(sourcePart), reader -> findTarget(reader, attribute, value))
+                   .flatMap(target -> resolve(sourcePart, target));
+    }
+
+    /**
+     * Read all relationships of a part.
+     *
+     * @param sourcePart name of the part owning the relationships, or PACKAGE_ROOT for the package relationships.
+     * @return the relationships in the order they are listed, empty if the part has none.
+     * @throws IOException        If the package cannot be read.
+     * @throws XMLStreamException If the relationships are malformed.
+     */
+    public List<Relationship> readRelationships(String sourcePart) throws IOException, XMLStreamException {
+        return readPart(relationshipsPartOf(sourcePart), reader -> parseRelationships(reader, sourcePart))
+                   .orElse(List.of());
+    }
+
+    /**
+     * Get the name of the part holding the relationships of a part.
+     *
+     * @param sourcePart name of the part owning the relationships, or PACKAGE_ROOT for the package relationships.
+     * @return the name of the relationships part.
+     */
+    public static String relationshipsPartOf(String sourcePart) {
+        var sourceDirectory = directoryOf(sourcePart);
+        return sourceDirectory + RELATIONSHIPS_DIRECTORY + sourcePart.substring(sourceDirectory.length())
+               + RELATIONSHIPS_SUFFIX;
+    }
+
+    /**
+     * Stream an XML part.
+     *
+     * @param partName   name of the part.
+     * @param partReader reads what the caller needs from the part.
+     * @param <T>        type of the result.
+     * @return the result of the part reader, or empty if the package has no such part.
+     * @throws IOException        If the package cannot be read.
+     * @throws XMLStreamException If the part is malformed.
+     */
+    public <T> Optional<T> readPart(String partName, PartReader<T> partReader) throws IOException, XMLStreamException {
+        var part = getPart(partName);
+        if (part.isEmpty()) {
+            return Optional.empty();
+        }
+        try (var stream = zipFile.getInputStream(part.get())) {
+            var reader = xmlInputFactory.createXMLStreamReader(stream);
+            try {
+                return Optional.ofNullable(partReader.read(reader));
+            } finally {
+                reader.close();
+            }
+        }
+    }
+
+    public Optional<ZipEntry> getPart(String partName) {
+        return Optional.ofNullable(zipFile.getEntry(partName));
+    }
+
+    public InputStream openPart(ZipEntry part) throws IOException {
+        return zipFile.getInputStream(part);
+    }
+
+    @Override
+    public void close() throws IOException {
+        zipFile.close();
+    }
+
+    private static String findTarget(XMLStreamReader reader, String attribute, String value)
+        throws XMLStreamException {
+        while (reader.hasNext()) {
+            if (reader.next() == XMLStreamConstants.START_ELEMENT
+                && RELATIONSHIP_ELEMENT.equals(reader.getLocalName())
+                && value.equals(reader.getAttributeValue(NO_NAMESPACE, attribute))
+                && !EXTERNAL_TARGET_MODE.equals(reader.getAttributeValue(NO_NAMESPACE, TARGET_MODE_ATTRIBUTE))) {
+                return reader.getAttributeValue(NO_NAMESPACE, TARGET_ATTRIBUTE);
+            }
+        }
+        return null;
+    }
+
+    private static List<Relationship> parseRelationships(XMLStreamReader reader, String sourcePart)
+        throws XMLStreamException {
+        var relationships = new ArrayList<Relationship>();
+        while (reader.hasNext()) {
+            if (reader.next() == XMLStreamConstants.START_ELEMENT
+                && RELATIONSHIP_ELEMENT.equals(reader.getLocalName())) {
+                var target = reader.getAttributeValue(NO_NAMESPACE, TARGET_ATTRIBUTE);
+                var external = EXTERNAL_TARGET_MODE.equals(reader.getAttributeValue(NO_NAMESPACE,
+                                                                                     TARGET_MODE_ATTRIBUTE));
+                var targetPart = external || Objects.isNull(target)
+                                     ? Optional.<String>empty()
+                                     : resolve(sourcePart, target);
+                relationships.add(new Relationship(reader.getAttributeValue(NO_NAMESPACE, ID_ATTRIBUTE),
+                                                   reader.getAttributeValue(NO_NAMESPACE, TYPE_ATTRIBUTE),
+                                                   target, external, targetPart.orElse(null)));
+            }
+        }
+        return relationships;
+    }
+
+    private static String directoryOf(String partName) {
+        return partName.substring(0, partName.lastIndexOf(PART_NAME_SEPARATOR) + 1);
+    }
+
+    // Targets are URIs relative to the directory of the source part, or to the package root if they start with "/".
+    private static Optional<String> resolve(String sourcePart, String target) {
+        try {
+            var partName = URI.create(PART_NAME_SEPARATOR + directoryOf(sourcePart)).resolve(target).getPath();
+            return Optional.ofNullable(partName)
+                       .filter(name -> name.startsWith(PART_NAME_SEPARATOR))
+                       .map(name -> name.substring(PART_NAME_SEPARATOR.length()));
+        } catch (IllegalArgumentException e) {
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * A relationship from a part, or from the package, to another part or to an external resource.
+     */
+    public static final class Relationship {
+
+        private final String id;
+        private final String type;
+        private final String target;
+        private final boolean external;
+        private final String targetPart;
+
+        private Relationship(String id, String type, String target, boolean external, String targetPart) {
+            this.id = id;
+            this.type = type;
+            this.target = target;
+            this.external = external;
+            this.targetPart = targetPart;
+        }
+
+        public String getId() {
+            return id;
+        }
+
+        public String getType() {
+            return type;
+        }
+
+        /**
+         * Get the target as written in the relationships part.
+         *
+         * @return the target URI, relative to the source part unless the relationship is external.
+         */
+        public String getTarget() {
+            return target;
+        }
+
+        public boolean isExternal() {
+            return external;
+        }
+
+        /**
+         * Get the name of the part the relationship points to.
+         *
+         * @return the part name, or empty for external relationships and targets that are not valid URIs.
+         */
+        public Optional<String> getTargetPart() {
+            return Optional.ofNullable(targetPart);
+        }
+    }
+
+    /**
+     * Reads what is needed from a streamed XML part.
+     *
+     * @param <T> type of the result.
+     */
+    @FunctionalInterface
+    public interface PartReader<T> {
+
+        /**
+         * Read from the part.
+         *
+         * @param reader reader positioned at the start of the part.
+         * @return the result, or null if there is none.
+         * @throws XMLStreamException If the part is malformed.
+         */
+        T read(XMLStreamReader reader) throws XMLStreamException;
+    }
+}
@@ -0,0 +1,46 @@
+package no.sikt.nva.thumbnail.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Optional;
+import java.util.zip.ZipException;
+import javax.xml.stream.XMLStreamException;
+
+/**
+ * Extracts the preview image Word, Excel and PowerPoint can save in Office Open XML packages. The preview part is
+ * found through the package relationships, so only the relationships and the preview are read from the ZIP
+ * container, never the document itself.
+ */
+public class OoxmlPreviewExtractor {
+
+    public static final String PACKAGE_RELATIONSHIPS_ENTRY = "_rels/.rels";
+    public static final String THUMBNAIL_RELATIONSHIP_TYPE =
+        "http://schemas.openxmlformats.org/package/2006/relationships/metadata/thumbnail";
+    public static final int MAX_PREVIEW_BYTES = 4 * 1024 * 1024;
+
+    /**
+     * Read the preview of an Office Open XML package.
+     *
+     * @param input DOCX, XLSX or PPTX file.
+     * @return the encoded preview, which can be a JPEG, PNG, WMF or EMF image, or empty if the package has no
+     *     preview or is malformed.
+     * @throws IOException If the file cannot be read.
+     */
+    public Optional<byte[]> extract(File input) throws IOException {
+        try (var ooxmlPackage = new OoxmlPackage(input)) {
+            var preview = ooxmlPackage.findRelationshipTarget(OoxmlPackage.PACKAGE_ROOT,
+                                                              OoxmlPackage.TYPE_ATTRIBUTE,
+                                                              THUMBNAIL_RELATIONSHIP_TYPE)
+                              .flatMap(ooxmlPackage::getPart);
+            if (preview.isEmpty() || preview.get().getSize() > MAX_PREVIEW_BYTES) {
+                return Optional.empty();
+            }
+            try (var stream = ooxmlPackage.openPart(preview.get())) {
+                var bytes = stream.readNBytes(MAX_PREVIEW_BYTES + 1);
+                return bytes.length > MAX_PREVIEW_BYTES ? Optional.empty() : Optional.of(bytes);
+            }
+        } catch (ZipException | XMLStreamException e) {
+            return Optional.empty();
+        }
+    }
+}
@@ -0,0 +1,89 @@
+package no.sikt.nva.thumbnail.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Optional;
+import javax.imageio.ImageIO;
+
+/**
+ * Image formats thumbnails can be written in.
+ */
+public enum OutputFormat {
+    PNG("png", "image/png", new byte[]{(byte) 0x89, 'P', 'N', 'G'}),
+    JPEG("jpeg", "image/jpeg", new byte[]{(byte) 0xFF, (byte) 0xD8, (byte) 0xFF}),
+    WEBP("webp", "image/webp", new byte[]{'R', 'I', 'F', 'F'});
+
+    public static final String UNKNOWN_FORMAT_MESSAGE = "Unknown output format: %s";
+    private static final byte[] WEBP_FORM_TYPE = {'W', 'E', 'B', 'P'};
+    private static final int WEBP_FORM_TYPE_OFFSET = 8;
+    private static final int HEADER_LENGTH = WEBP_FORM_TYPE_OFFSET + WEBP_FORM_TYPE.length;
+    private final String formatName;
+    private final String mimeType;
+    private final byte[] signature;
+
+    OutputFormat(String formatName, String mimeType, byte[] signature) {
+        this.formatName = formatName;
+        this.mimeType = mimeType;
+        this.signature = signature;
+    }
+
+    /**
+     * Look up a format by name, ignoring case.
+     *
+     * @param name format name, for instance "jpeg".
+     * @return the format.
+     */
+    public static OutputFormat fromName(String name) {
+        return Arrays.stream(values())
+                   .filter(format -> format.formatName.equals(name.toLowerCase(Locale.ROOT)))
+                   .findFirst()
+                   .orElseThrow(() -> new IllegalArgumentException(String.format(UNKNOWN_FORMAT_MESSAGE, name)));
+    }
+
+    /**
+     * Identify the format of a written thumbnail from its first bytes.
+     *
+     * @param file thumbnail file.
+     * @return the format, or empty if the file is not in one of the output formats.
+     * @throws IOException If the file cannot be read.
+     */
+    public static Optional<OutputFormat> detect(File file) throws IOException {
+        try (InputStream inputStream = Files.newInputStream(file.toPath())) {
+            var header = inputStream.readNBytes(HEADER_LENGTH);
+            return Arrays.stream(values()).filter(format -> format.matches(header)).findFirst();
+        }
+    }
+
+    public String getFormatName() {
+        return formatName;
+    }
+
+    public String getMimeType() {
+        return mimeType;
+    }
+
+    /**
+     * Check whether an ImageIO plugin that can write this format is installed.
+     *
+     * @return true if thumbnails can be written in this format.
+     */
+    public boolean hasWriter() {
+        return ImageIO.getImageWritersByFormatName(formatName).hasNext();
+    }
+
+    private boolean matches(byte[] header) {
+        if (header.length < HEADER_LENGTH || !startsWith(header, signature, 0)) {
+            return false;
+        }
+        // RIFF is a generic container, the form type tells WebP apart from WAV and AVI.
+        return this != WEBP || startsWith(header, WEBP_FORM_TYPE, WEBP_FORM_TYPE_OFFSET);
+    }
+
+    private static boolean startsWith(byte[] header, byte[] prefix, int offset) {
+        return Arrays.equals(header, offset, offset + prefix.length, prefix, 0, prefix.length);
+    }
+}
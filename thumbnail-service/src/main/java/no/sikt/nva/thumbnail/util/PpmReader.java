@@ -0,0 +1,104 @@
+package no.sikt.nva.thumbnail.util;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Reads binary PPM (P6) images, the format ffmpeg writes to a pipe with the ppm codec. Frames are read one at a
+ * time, so several frames written back to back can be read from the same stream.
+ */
+public class PpmReader {
+
+    public static final String NOT_A_PPM_IMAGE_MESSAGE = "Not a binary PPM image";
+    public static final String UNSUPPORTED_MAX_VALUE_MESSAGE = "Only 8-bit PPM images are supported, max value: %d";
+    private static final int END_OF_STREAM = -1;
+    private static final char MAGIC_NUMBER_PREFIX = 'P';
+    private static final char BINARY_PIXMAP = '6';
+    private static final char COMMENT = '#';
+    private static final char LINE_FEED = '\n';
+    private static final int MAX_8_BIT_VALUE = 255;
+    private static final int MAX_DIGITS = 9;
+    private static final int DECIMAL_RADIX = 10;
+    private static final int BYTES_PER_PIXEL = 3;
+    private static final int RED_SHIFT = 16;
+    private static final int GREEN_SHIFT = 8;
+    private static final int CHANNEL_MASK = 0xFF;
+
+    /**
+     * Read the next image of a stream.
+     *
+     * @param inputStream stream positioned at the start of an image or at its end.
+     * @return the image, or null if the stream has no more images.
+     * @throws IOException If the stream cannot be read, or does not hold a complete binary PPM image.
+     */
+    public BufferedImage read(InputStream inputStream) throws IOException {
+        var first = inputStream.read();
+        if (first == END_OF_STREAM) {
+            return null;
+        }
+        if (first != MAGIC_NUMBER_PREFIX || inputStream.read() != BINARY_PIXMAP) {
+            throw new IOException(NOT_A_PPM_IMAGE_MESSAGE);
+        }
+        var width = readHeaderValue(inputStream);
+        var height = readHeaderValue(inputStream);
+        var maxValue = readHeaderValue(inputStream);
+        if (maxValue != MAX_8_BIT_VALUE) {
+            throw new IOException(String.format(UNSUPPORTED_MAX_VALUE_MESSAGE, maxValue));
+        }
+        return readPixels(inputStream, width, height);
+    }
+
+    // Header values are decimal numbers separated by whitespace and comments, the last one by a single whitespace.
+    private static int readHeaderValue(InputStream inputStream) throws IOException {
+        var next = skipWhitespaceAndComments(inputStream);
+        var value = 0;
+        var digits = 0;
+        while (Character.isDigit(next) && digits < MAX_DIGITS) {
+            value = value * DECIMAL_RADIX + Character.digit(next, DECIMAL_RADIX);
+            digits++;
+            next = inputStream.read();
+        }
+        if (digits == 0 || !Character.isWhitespace(next)) {
+            throw new IOException(NOT_A_PPM_IMAGE_MESSAGE);
+        }
+        return value;
+    }
+
+    private static int skipWhitespaceAndComments(InputStream inputStream) throws IOException {
+        var next = inputStream.read();
+        while (Character.isWhitespace(next) || next == COMMENT) {
+            if (next == COMMENT) {
+                while (next != LINE_FEED && next != END_OF_STREAM) {
+                    next = inputStream.read();
+                }
+            }
+            next = inputStream.read();
+        }
+        return next;
+    }
+
+    private static BufferedImage readPixels(InputStream inputStream, int width, int height) throws IOException {
+        if (width == 0 || height == 0) {
+            throw new IOException(NOT_A_PPM_IMAGE_MESSAGE);
+        }
+        var image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        var pixels = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+        var row = new byte[width * BYTES_PER_PIXEL];
+        for (var y = 0; y < height; y++) {
+            if (inputStream.readNBytes(row, 0, row.length) < row.length) {
+                throw new EOFException(NOT_A_PPM_IMAGE_MESSAGE);
+            }
+            var offset = y * width;
+            for (var x = 0; x < width; x++) {
+                var i = x * BYTES_PER_PIXEL;
+                pixels[offset + x] = (row[i] & CHANNEL_MASK) << RED_SHIFT
+                                     | (row[i + 1] & CHANNEL_MASK) << GREEN_SHIFT
+                                     | row[i + 2] & CHANNEL_MASK;
+            }
+        }
+        return image;
+    }
+}
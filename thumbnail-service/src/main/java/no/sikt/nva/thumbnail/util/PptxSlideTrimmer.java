@@ -0,0 +1,293 @@
+package no.sikt.nva.thumbnail.util;
+
+import static no.sikt.nva.thumbnail.util.OoxmlPackage.ID_ATTRIBUTE;
+import static no.sikt.nva.thumbnail.util.OoxmlPackage.PACKAGE_ROOT;
+import static no.sikt.nva.thumbnail.util.OoxmlPackage.TYPE_ATTRIBUTE;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Queue;
+import java.util.Set;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+import javax.xml.namespace.QName;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.stream.events.StartElement;
+import no.sikt.nva.thumbnail.util.OoxmlPackage.Relationship;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Copies the parts of a PPTX presentation that are needed to draw its first slide into a new package: the first
+ * slide, the layout it uses, the slide masters and themes, and the images they show. Other slides and layouts,
+ * notes, comments, audio, video and embedded objects are left out, so a renderer opening the copy never loads them,
+ * however large the presentation is.
+ */
+public class PptxSlideTrimmer {
+
+    public static final String NOT_A_PRESENTATION_MESSAGE = "Could not find the first slide of %s";
+    public static final String PARTS_COPIED_LOG_MESSAGE = "Copied %d parts of %s, leaving out %d relationships";
+    private static final Logger logger = LoggerFactory.getLogger(PptxSlideTrimmer.class);
+    private static final String RELATIONSHIP_TYPES =
+        "http://schemas.openxmlformats.org/officeDocument/2006/relationships/";
+    private static final String OFFICE_DOCUMENT_TYPE = RELATIONSHIP_TYPES + "officeDocument";
+    private static final String SLIDE_TYPE = RELATIONSHIP_TYPES + "slide";
+    private static final String SLIDE_LAYOUT_TYPE = RELATIONSHIP_TYPES + "slideLayout";
+    private static final String SLIDE_MASTER_TYPE = RELATIONSHIP_TYPES + "slideMaster";
+    private static final Set<String> SKIPPED_TYPES = Set.of(
+        RELATIONSHIP_TYPES + "notesSlide",
+        RELATIONSHIP_TYPES + "notesMaster",
+        RELATIONSHIP_TYPES + "handoutMaster",
+        RELATIONSHIP_TYPES + "comments",
+        RELATIONSHIP_TYPES + "commentAuthors",
+        RELATIONSHIP_TYPES + "audio",
+        RELATIONSHIP_TYPES + "video",
+        RELATIONSHIP_TYPES + "oleObject",
+        RELATIONSHIP_TYPES + "package",
+        "http://schemas.microsoft.com/office/2007/relationships/media",
+        "http://schemas.microsoft.com/office/2018/10/relationships/comments",
+        "http://schemas.microsoft.com/office/2018/10/relationships/authors",
+        OoxmlPreviewExtractor.THUMBNAIL_RELATIONSHIP_TYPE);
+    private static final String CONTENT_TYPES_PART = "[Content_Types].xml";
+    private static final String RELATIONSHIPS_NAMESPACE =
+        "http://schemas.openxmlformats.org/package/2006/relationships";
+    private static final String OFFICE_RELATIONSHIPS_NAMESPACE =
+        "http://schemas.openxmlformats.org/officeDocument/2006/relationships";
+    private static final String RELATIONSHIPS_ELEMENT = "Relationships";
+    private static final String RELATIONSHIP_ELEMENT = "Relationship";
+    private static final String TARGET_ATTRIBUTE = "Target";
+    private static final String TARGET_MODE_ATTRIBUTE = "TargetMode";
+    private static final String EXTERNAL_TARGET_MODE = "External";
+    private static final String SLIDE_ID_ELEMENT = "sldId";
+    private static final String ID_REFERENCE_ATTRIBUTE = "id";
+    private static final QName RELATIONSHIP_REFERENCE = new QName(OFFICE_RELATIONSHIPS_NAMESPACE,
+                                                                  ID_REFERENCE_ATTRIBUTE);
+    private static final String XML_VERSION = "1.0";
+    private static final String ENCODING = StandardCharsets.UTF_8.name();
+    private final XMLInputFactory xmlInputFactory = XMLInputFactory.newFactory();
+    private final XMLOutputFactory xmlOutputFactory = XMLOutputFactory.newFactory();
+
+    /**
+     * Copy the first slide of a presentation, and what it needs to be drawn, into a new package.
+     *
+     * @param input  PPTX presentation.
+     * @param output file the new package is written to.
+     * @throws IOException If the presentation cannot be read or has no slides, or if the output cannot be written.
+     */
+    public void copyFirstSlide(File input, File output) throws IOException {
+        try (var ooxmlPackage = new OoxmlPackage(input);
+            var zip = new ZipOutputStream(Files.newOutputStream(output.toPath()))) {
+            // The copy is read once and deleted, and most of its size is already compressed images.
+            zip.setLevel(Deflater.BEST_SPEED);
+            var presentation = ooxmlPackage.findRelationshipTarget(PACKAGE_ROOT, TYPE_ATTRIBUTE, OFFICE_DOCUMENT_TYPE)
+                                   .orElseThrow(() -> notAPresentation(input));
+            var firstSlide = findFirstSlide(ooxmlPackage, presentation).orElseThrow(() -> notAPresentation(input));
+            var selection = new PartSelection(ooxmlPackage, presentation, firstSlide);
+            copyPart(ooxmlPackage, CONTENT_TYPES_PART, zip);
+
+            var leftOutCount = 0;
+            while (selection.hasNextPart()) {
+                var part = selection.nextPart();
+                var leftOut = new HashSet<String>();
+                var relationships = selection.selectRelationships(part, leftOut);
+                if (selection.isListing(part) && !leftOut.isEmpty()) {
+                    copyPartWithout(ooxmlPackage, part, leftOut, zip);
+                } else if (!PACKAGE_ROOT.equals(part)) {
+                    copyPart(ooxmlPackage, part, zip);
+                }
+                writeRelationships(part, relationships, zip);
+                leftOutCount += leftOut.size();
+            }
+            logger.debug(String.format(PARTS_COPIED_LOG_MESSAGE, selection.getPartCount(), input.getName(),
+                                       leftOutCount));
+        } catch (XMLStreamException e) {
+            throw new IOException(String.format(NOT_A_PRESENTATION_MESSAGE, input.getName()), e);
+        }
+    }
+
+    private static IOException notAPresentation(File input) {
+        return new IOException(String.format(NOT_A_PRESENTATION_MESSAGE, input.getName()));
+    }
+
+    // The first slide is the first one in the slide list of the presentation, whatever its part is called.
+    private static Optional<String> findFirstSlide(OoxmlPackage ooxmlPackage, String presentation)
+        throws IOException, XMLStreamException {
+        var slideId = ooxmlPackage.readPart(presentation, PptxSlideTrimmer::findFirstSlideId);
+        return slideId.isPresent()
+                   ? ooxmlPackage.findRelationshipTarget(presentation, ID_ATTRIBUTE, slideId.get())
+                   : Optional.empty();
+    }
+
+    private static String findFirstSlideId(XMLStreamReader reader) throws XMLStreamException {
+        while (reader.hasNext()) {
+            if (reader.next() == XMLStreamConstants.START_ELEMENT && SLIDE_ID_ELEMENT.equals(reader.getLocalName())) {
+                return reader.getAttributeValue(OFFICE_RELATIONSHIPS_NAMESPACE, ID_REFERENCE_ATTRIBUTE);
+            }
+        }
+        return null;
+    }
+
+    private static void copyPart(OoxmlPackage ooxmlPackage, String partName, ZipOutputStream zip)
+        throws IOException {
+        var part = ooxmlPackage.getPart(partName);
+        if (part.isPresent()) {
+            zip.putNextEntry(new ZipEntry(partName));
+            try (var stream = ooxmlPackage.openPart(part.get())) {
+                stream.transferTo(zip);
+            }
+            zip.closeEntry();
+        }
+    }
+
+    // The presentation lists every slide and the masters list every layout by relationship id, the entries whose
+    // relationships were left out must go as well.
+    private void copyPartWithout(OoxmlPackage ooxmlPackage, String partName, Set<String> leftOut,
+                                 ZipOutputStream zip) throws IOException, XMLStreamException {
+        zip.putNextEntry(new ZipEntry(partName));
+        ooxmlPackage.readPart(partName, reader -> copyEventsWithout(reader, leftOut, zip));
+        zip.closeEntry();
+    }
+
+    private Boolean copyEventsWithout(XMLStreamReader reader, Set<String> leftOut, ZipOutputStream zip)
+        throws XMLStreamException {
+        var events = xmlInputFactory.createXMLEventReader(reader);
+        var writer = xmlOutputFactory.createXMLEventWriter(zip, ENCODING);
+        var skippedDepth = 0;
+        while (events.hasNext()) {
+            var event = events.nextEvent();
+            if (skippedDepth > 0 && event.isStartElement()) {
+                skippedDepth++;
+            } else if (skippedDepth > 0 && event.isEndElement()) {
+                skippedDepth--;
+            } else if (skippedDepth == 0 && event.isStartElement() && isLeftOut(event.asStartElement(), leftOut)) {
+                skippedDepth = 1;
+            } else if (skippedDepth == 0) {
+                writer.add(event);
+            }
+        }
+        writer.flush();
+        return Boolean.TRUE;
+    }
+
+    private static boolean isLeftOut(StartElement element, Set<String> leftOut) {
+        var reference = element.getAttributeByName(RELATIONSHIP_REFERENCE);
+        return Objects.nonNull(reference) && leftOut.contains(reference.getValue());
+    }
+
+    private void writeRelationships(String part, List<Relationship> relationships, ZipOutputStream zip)
+        throws IOException, XMLStreamException {
+        if (relationships.isEmpty()) {
+            return;
+        }
+        zip.putNextEntry(new ZipEntry(OoxmlPackage.relationshipsPartOf(part)));
+        var writer = xmlOutputFactory.createXMLStreamWriter(zip, ENCODING);
+        writer.writeStartDocument(ENCODING, XML_VERSION);
+        writer.writeStartElement(RELATIONSHIPS_ELEMENT);
+        writer.writeDefaultNamespace(RELATIONSHIPS_NAMESPACE);
+        for (var relationship : relationships) {
+            writer.writeEmptyElement(RELATIONSHIP_ELEMENT);
+            writer.writeAttribute(ID_ATTRIBUTE, relationship.getId());
+            writer.writeAttribute(TYPE_ATTRIBUTE, relationship.getType());
+            writer.writeAttribute(TARGET_ATTRIBUTE, relationship.getTarget());
+            if (relationship.isExternal()) {
+                writer.writeAttribute(TARGET_MODE_ATTRIBUTE, EXTERNAL_TARGET_MODE);
+            }
+        }
+        writer.writeEndElement();
+        writer.writeEndDocument();
+        writer.flush();
+        zip.closeEntry();
+    }
+
+    /**
+     * Walks the relationships from the package root, following only those the first slide needs. Every part is
+     * returned once, however many parts refer to it.
+     */
+    private static final class PartSelection {
+
+        private final OoxmlPackage ooxmlPackage;
+        private final String firstSlide;
+        private final Optional<String> layout;
+        private final Queue<String> parts = new ArrayDeque<>(List.of(PACKAGE_ROOT));
+        private final Set<String> selectedParts = new HashSet<>(parts);
+        private final Set<String> listingParts = new HashSet<>();
+
+        private PartSelection(OoxmlPackage ooxmlPackage, String presentation, String firstSlide)
+            throws IOException, XMLStreamException {
+            this.ooxmlPackage = ooxmlPackage;
+            this.firstSlide = firstSlide;
+            this.layout = ooxmlPackage.findRelationshipTarget(firstSlide, TYPE_ATTRIBUTE, SLIDE_LAYOUT_TYPE);
+            listingParts.add(presentation);
+        }
+
+        private boolean hasNextPart() {
+            return !parts.isEmpty();
+        }
+
+        private String nextPart() {
+            return parts.remove();
+        }
+
+        private int getPartCount() {
+            return selectedParts.size();
+        }
+
+        // The presentation and the masters list the slides and layouts they have relationships to.
+        private boolean isListing(String part) {
+            return listingParts.contains(part);
+        }
+
+        private List<Relationship> selectRelationships(String part, Set<String> leftOut)
+            throws IOException, XMLStreamException {
+            var relationships = new ArrayList<Relationship>();
+            for (var relationship : ooxmlPackage.readRelationships(part)) {
+                if (relationship.isExternal() || follow(relationship)) {
+                    relationships.add(relationship);
+                } else {
+                    leftOut.add(relationship.getId());
+                }
+            }
+            return relationships;
+        }
+
+        private boolean follow(Relationship relationship) {
+            var target = relationship.getTargetPart().filter(name -> ooxmlPackage.getPart(name).isPresent());
+            if (target.isEmpty() || !isNeeded(relationship.getType(), target.get())) {
+                return false;
+            }
+            if (selectedParts.add(target.get())) {
+                parts.add(target.get());
+            }
+            if (SLIDE_MASTER_TYPE.equals(relationship.getType())) {
+                listingParts.add(target.get());
+            }
+            return true;
+        }
+
+        // Slides link to other slides with slide relationships too, and masters list every layout that uses them.
+        private boolean isNeeded(String type, String target) {
+            if (SKIPPED_TYPES.contains(type)) {
+                return false;
+            }
+            if (SLIDE_TYPE.equals(type)) {
+                return firstSlide.equals(target);
+            }
+            if (SLIDE_LAYOUT_TYPE.equals(type)) {
+                return layout.map(target::equals).orElse(false);
+            }
+            return true;
+        }
+    }
+}
@@ -0,0 +1,279 @@
+package no.sikt.nva.thumbnail.util;
+
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.regex.Pattern;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import java.util.zip.ZipException;
+import nva.commons.core.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Reads single entries of a ZIP archive behind a URL, typically a presigned S3 URL, with HTTP range requests. The end
+ * of the archive is fetched first, which holds the end of central directory record and usually the whole central
+ * directory. The entry is looked up there, and only its local header and data are fetched. An embedded preview is
+ * thereby read with two or three small requests, however large the archive is.
+ */
+public class RemoteZipReader {
+
+    public static final String NOT_A_ZIP_ARCHIVE_MESSAGE = "No end of central directory record found";
+    public static final String UNSUPPORTED_ARCHIVE_MESSAGE = "Unsupported ZIP archive: %s";
+    public static final String RANGE_NOT_SUPPORTED_MESSAGE = "Range request for %s answered with status %d";
+    public static final String RANGE_READ_LOG_MESSAGE = "Read %d of %d bytes of %s with %d range requests";
+    // Large enough for any stored preview, small enough that a corrupt size cannot exhaust the heap.
+    public static final int MAX_ENTRY_BYTES = 16 * 1024 * 1024;
+    private static final Logger logger = LoggerFactory.getLogger(RemoteZipReader.class);
+    private static final int END_OF_CENTRAL_DIRECTORY_SIGNATURE = 0x06054b50;
+    private static final int CENTRAL_DIRECTORY_SIGNATURE = 0x02014b50;
+    private static final int LOCAL_HEADER_SIGNATURE = 0x04034b50;
+    private static final int END_OF_CENTRAL_DIRECTORY_BYTES = 22;
+    private static final int DIRECTORY_LENGTH_OFFSET = 12;
+    private static final int DIRECTORY_START_OFFSET = 16;
+    private static final int MAX_COMMENT_BYTES = 0xFFFF;
+    private static final int CENTRAL_DIRECTORY_HEADER_BYTES = 46;
+    private static final int FLAGS_OFFSET = 8;
+    private static final int METHOD_OFFSET = 10;
+    private static final int COMPRESSED_SIZE_OFFSET = 20;
+    private static final int UNCOMPRESSED_SIZE_OFFSET = 24;
+    private static final int NAME_LENGTH_OFFSET = 28;
+    private static final int EXTRA_LENGTH_OFFSET = 30;
+    private static final int COMMENT_LENGTH_OFFSET = 32;
+    private static final int LOCAL_HEADER_OFFSET_OFFSET = 42;
+    private static final int LOCAL_HEADER_BYTES = 30;
+    private static final int LOCAL_NAME_LENGTH_OFFSET = 26;
+    private static final int LOCAL_EXTRA_LENGTH_OFFSET = 28;
+    // Local headers may carry other extra fields than the central directory, fetched in the same request.
+    private static final int LOCAL_EXTRA_FIELD_ALLOWANCE = 256;
+    private static final long ZIP64_MARKER = 0xFFFF_FFFFL;
+    private static final int ENCRYPTED_FLAG = 1;
+    private static final int STORED = 0;
+    private static final int DEFLATED = 8;
+    private static final long UNSIGNED_INT_MASK = 0xFFFF_FFFFL;
+    private static final int UNSIGNED_SHORT_MASK = 0xFFFF;
+    private static final int PARTIAL_CONTENT = 206;
+    private static final int CONNECT_TIMEOUT_MILLISECONDS = 10_000;
+    private static final int READ_TIMEOUT_MILLISECONDS = 30_000;
+    private static final Pattern CONTENT_RANGE_PATTERN = Pattern.compile("bytes \\d+-\\d+/(\\d+)");
+    private static final int TOTAL_LENGTH_GROUP = 1;
+    private final URL url;
+    private long archiveLength;
+    private long bytesRead;
+    private int requestCount;
+    private ByteBuffer tail;
+    private ByteBuffer centralDirectory;
+
+    public RemoteZipReader(URL url) {
+        this.url = url;
+    }
+
+    /**
+     * Read and decompress an entry of the archive.
+     *
+     * @param entryName full name of the entry, for instance "Thumbnails/thumbnail.png".
+     * @return the content of the entry, or empty if the archive has no such entry.
+     * @throws ZipException If the archive is not a ZIP archive, or uses features this reader does not support.
+     * @throws IOException  If the URL cannot be read.
+     */
+    public Optional<byte[]> readEntry(String entryName) throws IOException {
+        if (Objects.isNull(centralDirectory)) {
+            centralDirectory = readCentralDirectory();
+        }
+        var entry = findEntry(centralDirectory, entryName);
+        if (entry.isEmpty()) {
+            return Optional.empty();
+        }
+        var content = readEntryData(entry.get());
+        logger.debug(String.format(RANGE_READ_LOG_MESSAGE, bytesRead, archiveLength, url.getPath(), requestCount));
+        return Optional.of(content);
+    }
+
+    // The central directory is kept, so reading further entries costs one request each.
+    private ByteBuffer readCentralDirectory() throws IOException {
+        tail = fetchTail(END_OF_CENTRAL_DIRECTORY_BYTES + MAX_COMMENT_BYTES);
+        var endRecord = findEndOfCentralDirectory(tail);
+        var directoryLength = readUnsignedInt(tail, endRecord + DIRECTORY_LENGTH_OFFSET);
+        var directoryStart = readUnsignedInt(tail, endRecord + DIRECTORY_START_OFFSET);
+        if (directoryLength == ZIP64_MARKER || directoryStart == ZIP64_MARKER) {
+            throw new ZipException(String.format(UNSUPPORTED_ARCHIVE_MESSAGE, "ZIP64"));
+        }
+        return read(directoryStart, checkedLength(directoryLength));
+    }
+
+    private static int findEndOfCentralDirectory(ByteBuffer tail) throws ZipException {
+        for (var position = tail.capacity() - END_OF_CENTRAL_DIRECTORY_BYTES; position >= 0; position--) {
+            if (tail.getInt(position) == END_OF_CENTRAL_DIRECTORY_SIGNATURE) {
+                return position;
+            }
+        }
+        throw new ZipException(NOT_A_ZIP_ARCHIVE_MESSAGE);
+    }
+
+    private static Optional<CentralDirectoryEntry> findEntry(ByteBuffer directory, String entryName)
+        throws ZipException {
+        var wanted = entryName.getBytes(StandardCharsets.UTF_8);
+        var position = 0;
+        while (position + CENTRAL_DIRECTORY_HEADER_BYTES <= directory.capacity()
+               && directory.getInt(position) == CENTRAL_DIRECTORY_SIGNATURE) {
+            var nameLength = readUnsignedShort(directory, position + NAME_LENGTH_OFFSET);
+            var extraLength = readUnsignedShort(directory, position + EXTRA_LENGTH_OFFSET);
+            var commentLength = readUnsignedShort(directory, position + COMMENT_LENGTH_OFFSET);
+            var nameStart = position + CENTRAL_DIRECTORY_HEADER_BYTES;
+            if (nameStart + nameLength > directory.capacity()) {
+                throw new ZipException(String.format(UNSUPPORTED_ARCHIVE_MESSAGE, "truncated central directory"));
+            }
+            if (nameLength == wanted.length && hasName(directory, nameStart, wanted)) {
+                return Optional.of(new CentralDirectoryEntry(directory, position));
+            }
+            position = nameStart + nameLength + extraLength + commentLength;
+        }
+        return Optional.empty();
+    }
+
+    private static boolean hasName(ByteBuffer directory, int nameStart, byte[] wanted) {
+        var start = directory.arrayOffset() + nameStart;
+        return Arrays.equals(directory.array(), start, start + wanted.length, wanted, 0, wanted.length);
+    }
+
+    private byte[] readEntryData(CentralDirectoryEntry entry) throws IOException {
+        if ((entry.flags & ENCRYPTED_FLAG) != 0) {
+            throw new ZipException(String.format(UNSUPPORTED_ARCHIVE_MESSAGE, "encrypted entry"));
+        }
+        if (entry.compressedSize == ZIP64_MARKER || entry.localHeaderOffset == ZIP64_MARKER) {
+            throw new ZipException(String.format(UNSUPPORTED_ARCHIVE_MESSAGE, "ZIP64"));
+        }
+        var compressedSize = checkedLength(entry.compressedSize);
+        var uncompressedSize = checkedLength(entry.uncompressedSize);
+        var headerAllowance = LOCAL_HEADER_BYTES + entry.nameLength + entry.extraLength + LOCAL_EXTRA_FIELD_ALLOWANCE;
+        var requested = Math.min(headerAllowance + compressedSize, archiveLength - entry.localHeaderOffset);
+        var local = read(entry.localHeaderOffset, (int) requested);
+        if (local.getInt(0) != LOCAL_HEADER_SIGNATURE) {
+            throw new ZipException(String.format(UNSUPPORTED_ARCHIVE_MESSAGE, "missing local header"));
+        }
+        var dataStart = LOCAL_HEADER_BYTES
+                        + readUnsignedShort(local, LOCAL_NAME_LENGTH_OFFSET)
+                        + readUnsignedShort(local, LOCAL_EXTRA_LENGTH_OFFSET);
+        var data = dataStart + compressedSize <= local.capacity()
+                       ? slice(local, dataStart, compressedSize)
+                       : read(entry.localHeaderOffset + dataStart, compressedSize);
+        return decompress(entry.method, data, uncompressedSize);
+    }
+
+    private static byte[] decompress(int method, ByteBuffer data, int uncompressedSize) throws ZipException {
+        var compressed = Arrays.copyOfRange(data.array(), data.arrayOffset(), data.arrayOffset() + data.capacity());
+        if (method == STORED) {
+            return compressed;
+        }
+        if (method != DEFLATED) {
+            throw new ZipException(String.format(UNSUPPORTED_ARCHIVE_MESSAGE, "compression method " + method));
+        }
+        var inflater = new Inflater(true);
+        try {
+            inflater.setInput(compressed);
+            var content = new byte[uncompressedSize];
+            var inflated = inflater.inflate(content);
+            if (inflated != uncompressedSize || !inflater.finished()) {
+                throw new ZipException(String.format(UNSUPPORTED_ARCHIVE_MESSAGE, "corrupt deflate stream"));
+            }
+            return content;
+        } catch (DataFormatException e) {
+            throw new ZipException(String.format(UNSUPPORTED_ARCHIVE_MESSAGE, e.getMessage()));
+        } finally {
+            inflater.end();
+        }
+    }
+
+    private static int checkedLength(long length) throws ZipException {
+        if (length > MAX_ENTRY_BYTES) {
+            throw new ZipException(String.format(UNSUPPORTED_ARCHIVE_MESSAGE, "entry of " + length + " bytes"));
+        }
+        return (int) length;
+    }
+
+    private static ByteBuffer slice(ByteBuffer buffer, int offset, int length) throws ZipException {
+        if (offset + length > buffer.capacity()) {
+            throw new ZipException(String.format(UNSUPPORTED_ARCHIVE_MESSAGE, "entry outside archive"));
+        }
+        return ByteBuffer.wrap(buffer.array(), buffer.arrayOffset() + offset, length)
+                   .slice()
+                   .order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    private static long readUnsignedInt(ByteBuffer buffer, int position) {
+        return buffer.getInt(position) & UNSIGNED_INT_MASK;
+    }
+
+    private static int readUnsignedShort(ByteBuffer buffer, int position) {
+        return buffer.getShort(position) & UNSIGNED_SHORT_MASK;
+    }
+
+    // Small archives are entirely inside the fetched tail, and the central directory usually is.
+    private ByteBuffer read(long offset, int length) throws IOException {
+        var tailStart = archiveLength - tail.capacity();
+        return offset >= tailStart
+                   ? slice(tail, (int) (offset - tailStart), length)
+                   : fetch(offset, length);
+    }
+
+    // A suffix range needs no prior knowledge of the length, which is learnt from the Content-Range header.
+    private ByteBuffer fetchTail(int length) throws IOException {
+        return request("bytes=-" + length);
+    }
+
+    private ByteBuffer fetch(long offset, int length) throws IOException {
+        return request("bytes=" + offset + "-" + (offset + length - 1));
+    }
+
+    private ByteBuffer request(String range) throws IOException {
+        var connection = (HttpURLConnection) url.openConnection();
+        connection.setConnectTimeout(CONNECT_TIMEOUT_MILLISECONDS);
+        connection.setReadTimeout(READ_TIMEOUT_MILLISECONDS);
+        connection.setRequestProperty("Range", range);
+        var contentRange = Objects.requireNonNullElse(connection.getHeaderField("Content-Range"),
+                                                      StringUtils.EMPTY_STRING);
+        var matcher = CONTENT_RANGE_PATTERN.matcher(contentRange);
+        if (connection.getResponseCode() != PARTIAL_CONTENT || !matcher.matches()) {
+            // A server ignoring the range would send the whole archive, which is what this reader avoids.
+            connection.disconnect();
+            throw new IOException(String.format(RANGE_NOT_SUPPORTED_MESSAGE, url.getPath(),
+                                                connection.getResponseCode()));
+        }
+        archiveLength = Long.parseLong(matcher.group(TOTAL_LENGTH_GROUP));
+        // Reading the body to its end and closing it lets the next request reuse the connection.
+        try (var body = connection.getInputStream()) {
+            var bytes = body.readAllBytes();
+            bytesRead += bytes.length;
+            requestCount++;
+            return ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN);
+        }
+    }
+
+    private static final class CentralDirectoryEntry {
+
+        private final int flags;
+        private final int method;
+        private final long compressedSize;
+        private final long uncompressedSize;
+        private final int nameLength;
+        private final int extraLength;
+        private final long localHeaderOffset;
+
+        private CentralDirectoryEntry(ByteBuffer directory, int position) {
+            this.flags = readUnsignedShort(directory, position + FLAGS_OFFSET);
+            this.method = readUnsignedShort(directory, position + METHOD_OFFSET);
+            this.compressedSize = readUnsignedInt(directory, position + COMPRESSED_SIZE_OFFSET);
+            this.uncompressedSize = readUnsignedInt(directory, position + UNCOMPRESSED_SIZE_OFFSET);
+            this.nameLength = readUnsignedShort(directory, position + NAME_LENGTH_OFFSET);
+            this.extraLength = readUnsignedShort(directory, position + EXTRA_LENGTH_OFFSET);
+            this.localHeaderOffset = readUnsignedInt(directory, position + LOCAL_HEADER_OFFSET_OFFSET);
+        }
+    }
+}
@@ -0,0 +1,138 @@
+package no.sikt.nva.thumbnail.util;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+/**
+ * Hands out isolated working directories under a common root and keeps the disk usage of all of them within a
+ * quota. Lambda keeps /tmp between invocations of a warm container, so every job must delete its directory when it
+ * is done instead of relying on deleteOnExit().
+ */
+public class ScratchSpace {
+
+    public static final String DEFAULT_ROOT = "/tmp/thumbnailer";
+    // Lambda provides 512 MB of /tmp by default, leave some headroom for the runtime and libraries.
+    public static final long DEFAULT_QUOTA_BYTES = 480L * 1024 * 1024;
+    public static final String QUOTA_EXCEEDED_MESSAGE =
+        "Scratch space quota exceeded: %d bytes requested, %d of %d bytes already reserved";
+    public static final String INVALID_QUOTA_MESSAGE = "Scratch space quota must be positive: %d bytes";
+    private static final String WORKSPACE_PREFIX = "job-";
+    private final Path root;
+    private final long quotaBytes;
+    private final AtomicLong reservedBytes;
+
+    public ScratchSpace(Path root, long quotaBytes) {
+        if (quotaBytes <= 0) {
+            throw new IllegalArgumentException(String.format(INVALID_QUOTA_MESSAGE, quotaBytes));
+        }
+        this.root = root;
+        this.quotaBytes = quotaBytes;
+        this.reservedBytes = new AtomicLong();
+    }
+
+    /**
+     * Create a new, empty workspace. The workspace directory and everything in it is deleted when it is closed.
+     *
+     * @return a workspace owned by the caller.
+     * @throws IOException If the directory cannot be created.
+     */
+    public ScratchWorkspace createWorkspace() throws IOException {
+        Files.createDirectories(root);
+        return new ScratchWorkspace(this, Files.createTempDirectory(root, WORKSPACE_PREFIX));
+    }
+
+    /**
+     * Delete workspaces left behind by earlier invocations, for instance after a timeout. Other entries under the
+     * root, such as the thumbnail cache, are left alone.
+     *
+     * @throws IOException If a file cannot be deleted.
+     */
+    public void deleteStaleWorkspaces() throws IOException {
+        if (Files.isDirectory(root)) {
+            try (Stream<Path> workspaces = Files.list(root)) {
+                for (var workspace : (Iterable<Path>) workspaces::iterator) {
+                    if (isWorkspace(workspace)) {
+                        deleteRecursively(workspace);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Get the number of bytes currently stored on disk by all workspaces.
+     *
+     * @return bytes in use.
+     * @throws IOException If the directory tree cannot be read.
+     */
+    public long getBytesInUse() throws IOException {
+        if (!Files.isDirectory(root)) {
+            return 0;
+        }
+        long bytesInUse = 0;
+        try (Stream<Path> entries = Files.list(root)) {
+            for (var entry : (Iterable<Path>) entries::iterator) {
+                if (isWorkspace(entry)) {
+                    bytesInUse += sizeOf(entry);
+                }
+            }
+        }
+        return bytesInUse;
+    }
+
+    public long getReservedBytes() {
+        return reservedBytes.get();
+    }
+
+    public long getQuotaBytes() {
+        return quotaBytes;
+    }
+
+    public Path getRoot() {
+        return root;
+    }
+
+    /* default */ void reserve(long bytes) throws IOException {
+        long current;
+        do {
+            current = reservedBytes.get();
+            if (current + bytes > quotaBytes) {
+                throw new IOException(String.format(QUOTA_EXCEEDED_MESSAGE, bytes, current, quotaBytes));
+            }
+        } while (!reservedBytes.compareAndSet(current, current + bytes));
+    }
+
+    /* default */ void release(long bytes) {
+        reservedBytes.addAndGet(-bytes);
+    }
+
+    private static boolean isWorkspace(Path entry) {
+        return entry.getFileName().toString().startsWith(WORKSPACE_PREFIX);
+    }
+
+    /* default */ static long sizeOf(Path directory) throws IOException {
+        if (!Files.exists(directory)) {
+            return 0;
+        }
+        try (Stream<Path> paths = Files.walk(directory)) {
+            return paths.filter(Files::isRegularFile)
+                       .mapToLong(path -> path.toFile().length())
+                       .sum();
+        }
+    }
+
+    /* default */ static void deleteRecursively(Path path) throws IOException {
+        if (!Files.exists(path)) {
+            return;
+        }
+        try (Stream<Path> paths = Files.walk(path)) {
+            for (var file : (Iterable<Path>) paths.sorted(Comparator.reverseOrder())::iterator) {
+                Files.deleteIfExists(file);
+            }
+        }
+    }
+}
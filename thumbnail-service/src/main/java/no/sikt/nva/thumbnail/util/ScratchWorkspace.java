@@ -0,0 +1,69 @@
+package no.sikt.nva.thumbnail.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.regex.Pattern;
+
+/**
+ * A working directory owned by a single job. Closing the workspace deletes the directory and releases the disk
+ * space reserved through it.
+ */
+public class ScratchWorkspace implements AutoCloseable {
+
+    public static final String INVALID_FILE_NAME_MESSAGE = "Not a valid file name in a workspace: %s";
+    private static final Pattern PATH_SEPARATORS = Pattern.compile("[/\\\\]");
+    private static final String REPLACEMENT = "_";
+    private final ScratchSpace scratchSpace;
+    private final Path directory;
+    private long reservedBytes;
+
+    /* default */ ScratchWorkspace(ScratchSpace scratchSpace, Path directory) {
+        this.scratchSpace = scratchSpace;
+        this.directory = directory;
+    }
+
+    /**
+     * Get a file inside this workspace. Path separators in the name are replaced, so names taken from untrusted
+     * input cannot escape the workspace.
+     *
+     * @param name file name.
+     * @return file in the workspace directory.
+     */
+    public File newFile(String name) {
+        var file = directory.resolve(PATH_SEPARATORS.matcher(name).replaceAll(REPLACEMENT)).normalize();
+        if (!directory.equals(file.getParent())) {
+            throw new IllegalArgumentException(String.format(INVALID_FILE_NAME_MESSAGE, name));
+        }
+        return file.toFile();
+    }
+
+    /**
+     * Reserve disk space for files about to be written to this workspace.
+     *
+     * @param bytes number of bytes expected to be written.
+     * @throws IOException If the reservation would exceed the quota of the scratch space.
+     */
+    public void reserve(long bytes) throws IOException {
+        scratchSpace.reserve(bytes);
+        reservedBytes += bytes;
+    }
+
+    public long getBytesInUse() throws IOException {
+        return ScratchSpace.sizeOf(directory);
+    }
+
+    public Path getDirectory() {
+        return directory;
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            ScratchSpace.deleteRecursively(directory);
+        } finally {
+            scratchSpace.release(reservedBytes);
+            reservedBytes = 0;
+        }
+    }
+}
@@ -0,0 +1,206 @@
+package no.sikt.nva.thumbnail.util;
+
+import java.io.PrintStream;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Collects what one job spent its time on: the duration of every stage, the bytes moved, the size of the source and
+ * the engine and MIME type that explain them. The result is written as a single line of JSON in the CloudWatch
+ * Embedded Metric Format, from which CloudWatch extracts the metrics without any API call, while the line itself
+ * stays readable in the logs and in tests.
+ *
+ * <p>The metrics of a job are bound to the thread running it, so the thumbnailers record their stages through
+ * {@link #current()} instead of having a recorder passed through every call. Outside a job, what is recorded is
+ * discarded.
+ */
+public final class StageMetrics {
+
+    public static final String NAMESPACE = "NvaThumbnailService";
+    public static final String ENGINE_DIMENSION = "Engine";
+    public static final String NO_ENGINE = "None";
+    public static final String MILLISECONDS = "Milliseconds";
+    public static final String BYTES = "Bytes";
+    public static final String COUNT = "Count";
+    public static final String NO_UNIT = "None";
+    public static final String SOURCE_BYTES = "SourceBytes";
+    public static final String DOWNLOAD_TIME = "DownloadTime";
+    public static final String DOWNLOADED_BYTES = "DownloadedBytes";
+    public static final String GENERATE_TIME = "GenerateTime";
+    public static final String RENDER_TIME = "RenderTime";
+    public static final String PROBE_TIME = "ProbeTime";
+    public static final String FFMPEG_TIME = "FFmpegTime";
+    public static final String SOURCE_WIDTH = "SourceWidth";
+    public static final String SOURCE_HEIGHT = "SourceHeight";
+    public static final String RENDERED_WIDTH = "RenderedWidth";
+    public static final String RENDERED_HEIGHT = "RenderedHeight";
+    public static final String RESIZE_TIME = "ResizeTime";
+    public static final String ENCODE_TIME = "EncodeTime";
+    public static final String UPLOAD_TIME = "UploadTime";
+    public static final String UPLOADED_BYTES = "UploadedBytes";
+    public static final String TOTAL_TIME = "TotalTime";
+    public static final String OBJECT_KEY_PROPERTY = "ObjectKey";
+    public static final String MIME_TYPE_PROPERTY = "MimeType";
+    public static final String THUMBNAIL_SOURCE_PROPERTY = "ThumbnailSource";
+    public static final String STATUS_PROPERTY = "Status";
+    private static final ThreadLocal<StageMetrics> CURRENT = new ThreadLocal<>();
+    private static final double NANOS_PER_MILLI = 1_000_000.0;
+    private static final String DECIMAL_FORMAT = "%.3f";
+    private static final String UNICODE_ESCAPE_FORMAT = "\\u%04x";
+    private static final char FIRST_PRINTABLE = ' ';
+    private final Map<String, Double> values = new LinkedHashMap<>();
+    private final Map<String, String> units = new LinkedHashMap<>();
+    private final Map<String, String> properties = new LinkedHashMap<>();
+    private String engine = NO_ENGINE;
+
+    private StageMetrics() {
+    }
+
+    /**
+     * Start collecting the metrics of a job run by the current thread.
+     *
+     * @return the metrics of the job, which the thumbnailers record to as well.
+     */
+    public static StageMetrics start() {
+        var metrics = new StageMetrics();
+        CURRENT.set(metrics);
+        return metrics;
+    }
+
+    /**
+     * Get the metrics of the job run by the current thread.
+     *
+     * @return metrics of the current job, or metrics nobody will read if no job was started.
+     */
+    public static StageMetrics current() {
+        return Optional.ofNullable(CURRENT.get()).orElseGet(StageMetrics::new);
+    }
+
+    /**
+     * Add the time elapsed since the given start to a duration metric. Stages that run more than once per job, such
+     * as resizing for every thumbnail size, add up.
+     *
+     * @param name       metric name.
+     * @param startNanos value of System.nanoTime() when the stage started.
+     */
+    public void addDurationSince(String name, long startNanos) {
+        add(name, (System.nanoTime() - startNanos) / NANOS_PER_MILLI, MILLISECONDS);
+    }
+
+    /**
+     * Add a value to a metric.
+     *
+     * @param name  metric name.
+     * @param value value to add.
+     * @param unit  CloudWatch unit of the metric.
+     */
+    public void add(String name, double value, String unit) {
+        values.merge(name, value, Double::sum);
+        units.put(name, unit);
+    }
+
+    /**
+     * Set a metric, replacing any earlier value.
+     *
+     * @param name  metric name.
+     * @param value value of the metric.
+     * @param unit  CloudWatch unit of the metric.
+     */
+    public void set(String name, double value, String unit) {
+        values.put(name, value);
+        units.put(name, unit);
+    }
+
+    /**
+     * Set a property, which is kept in the log line for searching but is not a metric.
+     *
+     * @param name  property name.
+     * @param value property value.
+     */
+    public void setProperty(String name, String value) {
+        properties.put(name, value);
+    }
+
+    public void setEngine(String engine) {
+        this.engine = engine;
+    }
+
+    public Optional<Double> getValue(String name) {
+        return Optional.ofNullable(values.get(name));
+    }
+
+    /**
+     * Write the metrics as one line and stop collecting them on this thread.
+     *
+     * @param output stream the line is written to, standard output on Lambda.
+     */
+    public void finish(PrintStream output) {
+        if (this.equals(CURRENT.get())) {
+            CURRENT.remove();
+        }
+        output.println(toEmfLine(System.currentTimeMillis()));
+    }
+
+    /**
+     * Format the metrics in the CloudWatch Embedded Metric Format, with the engine as the only dimension.
+     *
+     * @param timestamp milliseconds since the epoch.
+     * @return a line of JSON.
+     */
+    public String toEmfLine(long timestamp) {
+        var line = new StringBuilder(256);
+        line.append("{\"_aws\":{\"Timestamp\":").append(timestamp)
+            .append(",\"CloudWatchMetrics\":[{\"Namespace\":");
+        appendString(line, NAMESPACE);
+        line.append(",\"Dimensions\":[[");
+        appendString(line, ENGINE_DIMENSION);
+        line.append("]],\"Metrics\":[");
+        var separator = "";
+        for (var unit : units.entrySet()) {
+            line.append(separator).append("{\"Name\":");
+            appendString(line, unit.getKey());
+            line.append(",\"Unit\":");
+            appendString(line, unit.getValue());
+            line.append('}');
+            separator = ",";
+        }
+        line.append("]}]},");
+        appendString(line, ENGINE_DIMENSION);
+        line.append(':');
+        appendString(line, engine);
+        for (var value : values.entrySet()) {
+            line.append(',');
+            appendString(line, value.getKey());
+            line.append(':').append(formatNumber(value.getValue()));
+        }
+        for (var property : properties.entrySet()) {
+            line.append(',');
+            appendString(line, property.getKey());
+            line.append(':');
+            appendString(line, property.getValue());
+        }
+        return line.append('}').toString();
+    }
+
+    private static String formatNumber(double value) {
+        return value == Math.rint(value)
+                   ? Long.toString((long) value)
+                   : String.format(Locale.ROOT, DECIMAL_FORMAT, value);
+    }
+
+    private static void appendString(StringBuilder line, String value) {
+        line.append('"');
+        for (var character : String.valueOf(value).toCharArray()) {
+            if (character == '"' || character == '\\') {
+                line.append('\\').append(character);
+            } else if (character < FIRST_PRINTABLE) {
+                line.append(String.format(Locale.ROOT, UNICODE_ESCAPE_FORMAT, (int) character));
+            } else {
+                line.append(character);
+            }
+        }
+        line.append('"');
+    }
+}
@@ -0,0 +1,66 @@
+package no.sikt.nva.thumbnail.util;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Copies a stream to disk through a fixed-size buffer, so heap usage does not depend on the size of the source.
+ */
+public class StreamingDownloader {
+
+    public static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+    private static final int END_OF_STREAM = -1;
+    private static final int START_OF_BUFFER = 0;
+    private final int bufferSize;
+
+    public StreamingDownloader() {
+        this(DEFAULT_BUFFER_SIZE);
+    }
+
+    public StreamingDownloader(int bufferSize) {
+        if (bufferSize <= 0) {
+            throw new IllegalArgumentException("Buffer size must be positive, was " + bufferSize);
+        }
+        this.bufferSize = bufferSize;
+    }
+
+    /**
+     * Write the content of the input stream to the destination, replacing any existing file.
+     *
+     * @param inputStream stream to read from. The stream is not closed.
+     * @param destination file to write to.
+     * @return number of bytes written.
+     * @throws IOException If the stream cannot be read or the file cannot be written.
+     */
+    public long download(InputStream inputStream, Path destination) throws IOException {
+        var buffer = new byte[bufferSize];
+        long bytesTransferred = 0;
+        try (var fileChannel = FileChannel.open(destination,
+                                                StandardOpenOption.CREATE,
+                                                StandardOpenOption.WRITE,
+                                                StandardOpenOption.TRUNCATE_EXISTING)) {
+            int bytesRead = inputStream.read(buffer);
+            while (bytesRead != END_OF_STREAM) {
+                bytesTransferred += writeFully(fileChannel, ByteBuffer.wrap(buffer, START_OF_BUFFER, bytesRead));
+                bytesRead = inputStream.read(buffer);
+            }
+        }
+        return bytesTransferred;
+    }
+
+    public int getBufferSize() {
+        return bufferSize;
+    }
+
+    private static long writeFully(FileChannel fileChannel, ByteBuffer byteBuffer) throws IOException {
+        long written = 0;
+        while (byteBuffer.hasRemaining()) {
+            written += fileChannel.write(byteBuffer);
+        }
+        return written;
+    }
+}
@@ -0,0 +1,77 @@
+package no.sikt.nva.thumbnail.util;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.FileImageInputStream;
+
+/**
+ * Decodes raster images at a reduced resolution chosen from the thumbnail size. The image dimensions are read from
+ * the header first, and the reader then skips source pixels, so decode time and heap usage shrink with the square
+ * of the subsampling factor.
+ */
+public class SubsamplingImageDecoder {
+
+    // Keep twice the thumbnail resolution so the final scaling step still has pixels to average.
+    public static final int OVERSAMPLING_FACTOR = 2;
+    private static final int FIRST_IMAGE_INDEX = 0;
+    private static final int NO_SUBSAMPLING = 1;
+    private static final int NO_OFFSET = 0;
+
+    /**
+     * Decode the first image in a file.
+     *
+     * @param input        image file.
+     * @param targetWidth  thumbnail width in pixels.
+     * @param targetHeight thumbnail height in pixels.
+     * @return the decoded image, or null if no installed ImageReader understands the file.
+     * @throws IOException If the file cannot be read or decoded.
+     */
+    public BufferedImage decode(File input, int targetWidth, int targetHeight) throws IOException {
+        // Reading straight from the file avoids the temporary disk cache ImageIO sets up for plain streams.
+        try (var imageInputStream = new FileImageInputStream(input)) {
+            var readers = ImageIO.getImageReaders(imageInputStream);
+            if (!readers.hasNext()) {
+                return null;
+            }
+            var reader = readers.next();
+            try {
+                reader.setInput(imageInputStream, true, true);
+                return read(reader, targetWidth, targetHeight);
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    /**
+     * Calculate the largest subsampling factor that still leaves at least OVERSAMPLING_FACTOR times the thumbnail
+     * size in the fitting dimension.
+     *
+     * @param imageWidth   width of the source image in pixels.
+     * @param imageHeight  height of the source image in pixels.
+     * @param targetWidth  thumbnail width in pixels.
+     * @param targetHeight thumbnail height in pixels.
+     * @return the number of source pixels to advance per decoded pixel, at least 1.
+     */
+    public static int calculateSubsampling(int imageWidth, int imageHeight, int targetWidth, int targetHeight) {
+        if (targetWidth <= 0 || targetHeight <= 0) {
+            return NO_SUBSAMPLING;
+        }
+        var horizontalFactor = imageWidth / (targetWidth * OVERSAMPLING_FACTOR);
+        var verticalFactor = imageHeight / (targetHeight * OVERSAMPLING_FACTOR);
+        return Math.max(NO_SUBSAMPLING, Math.min(horizontalFactor, verticalFactor));
+    }
+
+    private static BufferedImage read(ImageReader reader, int targetWidth, int targetHeight) throws IOException {
+        var subsampling = calculateSubsampling(reader.getWidth(FIRST_IMAGE_INDEX),
+                                               reader.getHeight(FIRST_IMAGE_INDEX),
+                                               targetWidth,
+                                               targetHeight);
+        var readParam = reader.getDefaultReadParam();
+        readParam.setSourceSubsampling(subsampling, subsampling, NO_OFFSET, NO_OFFSET);
+        return reader.read(FIRST_IMAGE_INDEX, readParam);
+    }
+}
@@ -0,0 +1,188 @@
+package no.sikt.nva.thumbnail.util;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Keeps recently made thumbnails on local disk for the lifetime of a warm container, so retries and repeated events
+ * for the same input do not have to download and render it again. An entry holds all thumbnails of an input along
+ * with the metadata they were uploaded with, and is read and evicted as a whole, least recently used first once the
+ * total size would exceed the byte budget. Lambda keeps /tmp between invocations but not between containers, so
+ * whatever a previous container left in the directory is deleted when the cache is created.
+ */
+public class ThumbnailCache {
+
+    // Thumbnails are tens of kilobytes, so this holds a few hundred to a few thousand of them.
+    public static final long DEFAULT_BUDGET_BYTES = 32L * 1024 * 1024;
+    public static final String NOT_CACHED_LOG_MESSAGE = "Could not cache %s: %s";
+    private static final Logger logger = LoggerFactory.getLogger(ThumbnailCache.class);
+    private static final String NOT_DELETED_LOG_MESSAGE = "Could not delete %s: %s";
+    private static final String ENTRY_FILE_NAME_TEMPLATE = "entry-%d";
+    private static final boolean ACCESS_ORDER = true;
+    private static final int INITIAL_CAPACITY = 16;
+    private static final float LOAD_FACTOR = 0.75f;
+    private final Path directory;
+    private final long budgetBytes;
+    private final Object lock = new Object();
+    private final Map<String, Entry> entries = new LinkedHashMap<>(INITIAL_CAPACITY, LOAD_FACTOR, ACCESS_ORDER);
+    private final AtomicLong entryCount = new AtomicLong();
+    private final AtomicLong hitCount = new AtomicLong();
+    private final AtomicLong missCount = new AtomicLong();
+    private long bytesInUse;
+
+    /**
+     * Create an empty cache in the given directory.
+     *
+     * @param directory   directory the cached files are kept in. Anything already in it is deleted.
+     * @param budgetBytes maximum total size of the cached files. A budget of zero disables the cache.
+     * @throws IOException If the directory cannot be emptied or created.
+     */
+    public ThumbnailCache(Path directory, long budgetBytes) throws IOException {
+        this.directory = directory;
+        this.budgetBytes = budgetBytes;
+        ScratchSpace.deleteRecursively(directory);
+        Files.createDirectories(directory);
+    }
+
+    /**
+     * Copy the cached files of a key to their destinations. Nothing is copied unless the entry holds a file for
+     * every destination, and every call counts as exactly one hit or one miss.
+     *
+     * @param key          key the files were cached under.
+     * @param destinations file to write for each name the files were cached under, replacing any existing file.
+     * @return the metadata cached with the files if all of them were written, empty otherwise.
+     * @throws IOException If a file cannot be copied.
+     */
+    public Optional<Map<String, String>> read(String key, Map<String, Path> destinations) throws IOException {
+        synchronized (lock) {
+            var entry = entries.get(key);
+            if (Objects.isNull(entry) || !entry.getFiles().keySet().containsAll(destinations.keySet())) {
+                missCount.incrementAndGet();
+                return Optional.empty();
+            }
+            hitCount.incrementAndGet();
+            // Copied while holding the lock, so a concurrent write cannot evict the files half way.
+            for (var destination : destinations.entrySet()) {
+                Files.copy(entry.getFiles().get(destination.getKey()), destination.getValue(),
+                           StandardCopyOption.REPLACE_EXISTING);
+            }
+            return Optional.of(entry.getMetadata());
+        }
+    }
+
+    /**
+     * Keep a copy of the files under the given key, replacing whatever was cached under it and evicting the least
+     * recently used entries to stay within the budget. Files that cannot be cached are logged and skipped, the cache
+     * is only an optimization.
+     *
+     * @param key      key to cache the files under.
+     * @param files    files to copy into the cache, by the name they are read back with.
+     * @param metadata metadata to return along with the files.
+     */
+    public void write(String key, Map<String, Path> files, Map<String, String> metadata) {
+        var paths = new LinkedHashMap<String, Path>();
+        try {
+            var size = 0L;
+            for (var file : files.values()) {
+                size += Files.size(file);
+            }
+            if (size > budgetBytes) {
+                return;
+            }
+            for (var file : files.entrySet()) {
+                var path = directory.resolve(String.format(ENTRY_FILE_NAME_TEMPLATE, entryCount.incrementAndGet()));
+                Files.copy(file.getValue(), path, StandardCopyOption.REPLACE_EXISTING);
+                paths.put(file.getKey(), path);
+            }
+            synchronized (lock) {
+                evict(entries.remove(key));
+                while (bytesInUse + size > budgetBytes) {
+                    evict(removeEldest());
+                }
+                entries.put(key, new Entry(paths, Map.copyOf(metadata), size));
+                bytesInUse += size;
+            }
+        } catch (IOException e) {
+            logger.warn(String.format(NOT_CACHED_LOG_MESSAGE, key, e.getMessage()));
+            deleteQuietly(paths.values());
+        }
+    }
+
+    public long getHitCount() {
+        return hitCount.get();
+    }
+
+    public long getMissCount() {
+        return missCount.get();
+    }
+
+    public long getBytesInUse() {
+        synchronized (lock) {
+            return bytesInUse;
+        }
+    }
+
+    public long getBudgetBytes() {
+        return budgetBytes;
+    }
+
+    private Entry removeEldest() {
+        var eldest = entries.entrySet().iterator().next();
+        entries.remove(eldest.getKey());
+        return eldest.getValue();
+    }
+
+    private void evict(Entry entry) throws IOException {
+        if (Objects.nonNull(entry)) {
+            bytesInUse -= entry.getSize();
+            for (var path : entry.getFiles().values()) {
+                Files.deleteIfExists(path);
+            }
+        }
+    }
+
+    private static void deleteQuietly(Collection<Path> paths) {
+        for (var path : paths) {
+            try {
+                Files.deleteIfExists(path);
+            } catch (IOException e) {
+                logger.warn(String.format(NOT_DELETED_LOG_MESSAGE, path, e.getMessage()));
+            }
+        }
+    }
+
+    private static final class Entry {
+
+        private final Map<String, Path> files;
+        private final Map<String, String> metadata;
+        private final long size;
+
+        private Entry(Map<String, Path> files, Map<String, String> metadata, long size) {
+            this.files = files;
+            this.metadata = metadata;
+            this.size = size;
+        }
+
+        public Map<String, Path> getFiles() {
+            return files;
+        }
+
+        public Map<String, String> getMetadata() {
+            return metadata;
+        }
+
+        public long getSize() {
+            return size;
+        }
+    }
+}
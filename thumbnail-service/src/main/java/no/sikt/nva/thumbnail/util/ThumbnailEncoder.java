@@ -0,0 +1,223 @@
+package no.sikt.nva.thumbnail.util;
+
+import java.awt.Color;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Objects;
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.stream.FileImageOutputStream;
+import nva.commons.core.Environment;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Writes thumbnails in the output format that suits their content. Photographs and video frames are written in a
+ * lossy format, documents, drawings and screenshots, which are mostly flat background, as PNG.
+ */
+public class ThumbnailEncoder {
+
+    public static final String AUTOMATIC_FORMAT = "auto";
+    public static final int DEFAULT_QUALITY = 80;
+    public static final String INVALID_QUALITY_MESSAGE = "Quality must be between 1 and 100, was %d";
+    public static final String NO_WRITER_LOG_MESSAGE = "No image writer installed for %s, using %s";
+    private static final Logger logger = LoggerFactory.getLogger(ThumbnailEncoder.class);
+    private static final String FORMAT_ENVIRONMENT_FIELD = "THUMBNAIL_FORMAT";
+    private static final String QUALITY_ENVIRONMENT_FIELD = "THUMBNAIL_QUALITY";
+    private static final int MIN_QUALITY = 1;
+    private static final int MAX_QUALITY = 100;
+    private static final float PERCENT = 100f;
+    private static final String LOSSLESS = "lossless";
+    private static final String LOSSY = "lossy";
+    private static final String[] NO_COMPRESSION_TYPES = {};
+    private static final int MAX_SAMPLES_PER_DIMENSION = 64;
+    // Colours are compared with five bits per channel, so noise and anti-aliasing do not count as new colours.
+    private static final int COLOUR_BITS = 15;
+    private static final int RED_SHIFT = 9;
+    private static final int GREEN_SHIFT = 6;
+    private static final int BLUE_SHIFT = 3;
+    private static final int RED_MASK = 0x7C00;
+    private static final int GREEN_MASK = 0x03E0;
+    private static final int BLUE_MASK = 0x001F;
+    private static final int MIN_DISTINCT_COLOURS_DIVISOR = 8;
+    private static final int DOMINANT_COLOUR_DIVISOR = 2;
+    private static final int LEFT = 0;
+    private static final int TOP = 0;
+    private final OutputFormat photoFormat;
+    private final OutputFormat documentFormat;
+    private final float quality;
+
+    /**
+     * Creates an encoder writing JPEG for photographic content and PNG for everything else.
+     */
+    public ThumbnailEncoder() {
+        this(OutputFormat.JPEG, OutputFormat.PNG, DEFAULT_QUALITY);
+    }
+
+    /**
+     * Creates an encoder with a format for each kind of content. A format without an installed ImageIO writer is
+     * replaced by JPEG for photographic content and PNG for documents.
+     *
+     * @param photoFormat    format of photographs and video frames.
+     * @param documentFormat format of documents and other mostly flat images.
+     * @param quality        quality of lossy formats, from 1 to 100.
+     */
+    public ThumbnailEncoder(OutputFormat photoFormat, OutputFormat documentFormat, int quality) {
+        if (quality < MIN_QUALITY || quality > MAX_QUALITY) {
+            throw new IllegalArgumentException(String.format(INVALID_QUALITY_MESSAGE, quality));
+        }
+        this.photoFormat = withWriter(photoFormat, OutputFormat.JPEG);
+        this.documentFormat = withWriter(documentFormat, OutputFormat.PNG);
+        this.quality = quality / PERCENT;
+    }
+
+    /**
+     * Creates an encoder from the environment. THUMBNAIL_FORMAT is "auto" (the default), "png", "jpeg" or "webp",
+     * where a fixed format is used for all content, but WebP is lossless for documents. THUMBNAIL_QUALITY is the
+     * quality of lossy formats, from 1 to 100.
+     *
+     * @return the configured encoder.
+     */
+    public static ThumbnailEncoder fromEnvironment() {
+        var environment = new Environment();
+        var format = environment.readEnvOpt(FORMAT_ENVIRONMENT_FIELD).orElse(AUTOMATIC_FORMAT);
+        var quality = environment.readEnvOpt(QUALITY_ENVIRONMENT_FIELD)
+                          .map(Integer::parseInt)
+                          .orElse(DEFAULT_QUALITY);
+        return forFormat(format, quality);
+    }
+
+    /**
+     * Creates an encoder for a configured format name.
+     *
+     * @param format  "auto", or the name of an output format used for all content.
+     * @param quality quality of lossy formats, from 1 to 100.
+     * @return the encoder.
+     */
+    public static ThumbnailEncoder forFormat(String format, int quality) {
+        if (AUTOMATIC_FORMAT.equals(format.toLowerCase(Locale.ROOT))) {
+            return new ThumbnailEncoder(OutputFormat.JPEG, OutputFormat.PNG, quality);
+        }
+        var outputFormat = OutputFormat.fromName(format);
+        return new ThumbnailEncoder(outputFormat, outputFormat, quality);
+    }
+
+    /**
+     * Decide whether an image looks like a photograph. A sample grid of pixels is inspected: photographs have many
+     * distinct colours and no colour covering half the image, while rendered documents are dominated by their
+     * background.
+     *
+     * @param image image to inspect.
+     * @return true if a lossy format suits the image.
+     */
+    public static boolean isPhotographic(BufferedImage image) {
+        var stepX = Math.max(1, image.getWidth() / MAX_SAMPLES_PER_DIMENSION);
+        var stepY = Math.max(1, image.getHeight() / MAX_SAMPLES_PER_DIMENSION);
+        var colourCounts = new int[1 << COLOUR_BITS];
+        var samples = 0;
+        var distinctColours = 0;
+        var dominantColourCount = 0;
+        for (var y = stepY / 2; y < image.getHeight(); y += stepY) {
+            for (var x = stepX / 2; x < image.getWidth(); x += stepX) {
+                var colour = quantize(image.getRGB(x, y));
+                if (colourCounts[colour] == 0) {
+                    distinctColours++;
+                }
+                colourCounts[colour]++;
+                dominantColourCount = Math.max(dominantColourCount, colourCounts[colour]);
+                samples++;
+            }
+        }
+        return distinctColours * MIN_DISTINCT_COLOURS_DIVISOR >= samples
+               && dominantColourCount * DOMINANT_COLOUR_DIVISOR < samples;
+    }
+
+    /**
+     * Write an image in the format chosen from its content.
+     *
+     * @param image  image to write.
+     * @param output file the image is written to.
+     * @return the format the image was written in.
+     * @throws IOException If the file cannot be written.
+     */
+    public OutputFormat write(BufferedImage image, File output) throws IOException {
+        return write(image, image, output);
+    }
+
+    /**
+     * Write an image in the format chosen from part of it, typically a scaled image before padding was added around
+     * it. Lossy formats use the quality of this encoder, WebP is written lossless for documents.
+     *
+     * @param image   image to write.
+     * @param content part of the image the format is chosen from.
+     * @param output  file the image is written to.
+     * @return the format the image was written in.
+     * @throws IOException If the file cannot be written.
+     */
+    public OutputFormat write(BufferedImage image, BufferedImage content, File output) throws IOException {
+        var photographic = isPhotographic(content);
+        var format = photographic ? photoFormat : documentFormat;
+        var writer = ImageIO.getImageWritersByFormatName(format.getFormatName()).next();
+        var writeParam = writer.getDefaultWriteParam();
+        configureCompression(writeParam, photographic);
+        var encodable = format == OutputFormat.JPEG ? withoutAlpha(image) : image;
+        // The output stream does not truncate, so a previously written file must not be left behind.
+        Files.deleteIfExists(output.toPath());
+        try (var imageOutputStream = new FileImageOutputStream(output)) {
+            writer.setOutput(imageOutputStream);
+            writer.write(null, new IIOImage(encodable, null, null), writeParam);
+        } finally {
+            writer.dispose();
+        }
+        return format;
+    }
+
+    private static OutputFormat withWriter(OutputFormat format, OutputFormat fallback) {
+        if (format.hasWriter()) {
+            return format;
+        }
+        logger.warn(String.format(NO_WRITER_LOG_MESSAGE, format, fallback));
+        return fallback;
+    }
+
+    private static int quantize(int rgb) {
+        return rgb >> RED_SHIFT & RED_MASK | rgb >> GREEN_SHIFT & GREEN_MASK | rgb >> BLUE_SHIFT & BLUE_MASK;
+    }
+
+    private void configureCompression(ImageWriteParam writeParam, boolean photographic) {
+        if (!writeParam.canWriteCompressed()) {
+            return;
+        }
+        writeParam.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+        // WebP plugins offer a lossy and a lossless compression type, JPEG and PNG only one.
+        var wanted = photographic ? LOSSY : LOSSLESS;
+        var compressionType = Arrays.stream(Objects.requireNonNullElse(writeParam.getCompressionTypes(),
+                                                                       NO_COMPRESSION_TYPES))
+                                  .filter(type -> type.toLowerCase(Locale.ROOT).equals(wanted))
+                                  .findFirst();
+        compressionType.ifPresent(writeParam::setCompressionType);
+        if (!writeParam.isCompressionLossless()) {
+            writeParam.setCompressionQuality(quality);
+        } else if (compressionType.isEmpty()) {
+            // PNG keeps the default deflate settings of its writer.
+            writeParam.setCompressionMode(ImageWriteParam.MODE_DEFAULT);
+        }
+    }
+
+    // JPEG has no alpha channel, so transparent areas are put on the same white background as the padding.
+    private static BufferedImage withoutAlpha(BufferedImage image) {
+        if (!image.getColorModel().hasAlpha()) {
+            return image;
+        }
+        var opaque = new BufferedImage(image.getWidth(), image.getHeight(), BufferedImage.TYPE_INT_RGB);
+        var graphics = opaque.createGraphics();
+        graphics.drawImage(image, LEFT, TOP, Color.WHITE, null);
+        graphics.dispose();
+        return opaque;
+    }
+}
@@ -0,0 +1,242 @@
+package no.sikt.nva.thumbnail.util;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+/**
+ * Number formats of the cell styles of an XLSX workbook, as far as they change what a number looks like in a
+ * thumbnail. Dates, times and percentages are stored as plain numbers and only the style of the cell tells them apart,
+ * so without it a date shows as a day count like 45123 and a percentage as a fraction like 0.25. Other formats, such
+ * as currencies and thousands separators, depend on the locale of the reader and are left to the general number
+ * display.
+ */
+public class XlsxCellStyles {
+
+    public static final String STYLES_RELATIONSHIP_TYPE =
+        "http://schemas.openxmlformats.org/officeDocument/2006/relationships/styles";
+    public static final DateTimeFormatter DATE_FORMAT = DateTimeFormatter.ISO_LOCAL_DATE;
+    public static final DateTimeFormatter DATE_TIME_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm");
+    public static final DateTimeFormatter TIME_FORMAT = DateTimeFormatter.ofPattern("HH:mm:ss");
+    private static final String NUMBER_FORMAT_ELEMENT = "numFmt";
+    private static final String CELL_FORMATS_ELEMENT = "cellXfs";
+    private static final String CELL_FORMAT_ELEMENT = "xf";
+    private static final String NUMBER_FORMAT_ID_ATTRIBUTE = "numFmtId";
+    private static final String FORMAT_CODE_ATTRIBUTE = "formatCode";
+    private static final String NO_NAMESPACE = null;
+    private static final String PERCENT_SUFFIX = "%";
+    private static final int BEFORE_FIRST = -1;
+    private static final int NOT_A_NUMBER_FORMAT = -1;
+    private static final long SECONDS_PER_DAY = 24L * 60 * 60;
+    private static final BigDecimal HUNDRED = BigDecimal.valueOf(100);
+    // Day 1 is 1900-01-01, but day 60 is the 29th of February 1900, a day that did not exist and that Excel counts
+    // to stay compatible with Lotus 1-2-3. Workbooks using the 1904 date system are rare and not told apart.
+    private static final LocalDateTime EPOCH_BEFORE_MISSING_DAY = LocalDateTime.of(1899, 12, 31, 0, 0);
+    private static final LocalDateTime EPOCH_AFTER_MISSING_DAY = LocalDateTime.of(1899, 12, 30, 0, 0);
+    private static final int FIRST_DAY_AFTER_MISSING_DAY = 61;
+    private static final BigDecimal FIRST_DAY_AFTER_LAST_DATE = BigDecimal.valueOf(2_958_466);
+    // Built-in formats are referred to by id only, the codes are those of the en-US locale.
+    private static final Map<Integer, String> BUILT_IN_FORMAT_CODES = Map.ofEntries(
+        Map.entry(9, "0%"),
+        Map.entry(10, "0.00%"),
+        Map.entry(14, "m/d/yyyy"),
+        Map.entry(15, "d-mmm-yy"),
+        Map.entry(16, "d-mmm"),
+        Map.entry(17, "mmm-yy"),
+        Map.entry(18, "h:mm AM/PM"),
+        Map.entry(19, "h:mm:ss AM/PM"),
+        Map.entry(20, "h:mm"),
+        Map.entry(21, "h:mm:ss"),
+        Map.entry(22, "m/d/yyyy h:mm"),
+        Map.entry(45, "mm:ss"),
+        Map.entry(46, "[h]:mm:ss"),
+        Map.entry(47, "mm:ss.0"));
+
+    private final Map<Integer, Display> displays;
+
+    private XlsxCellStyles(Map<Integer, Display> displays) {
+        this.displays = displays;
+    }
+
+    /**
+     * Read the number formats of cell styles from the styles part. The cell styles are stored in the order of their
+     * index, so reading stops after the highest index needed.
+     *
+     * @param reader  reader positioned at the start of the styles part.
+     * @param indices indices of the cell styles to read.
+     * @return the number formats of the cell styles.
+     * @throws XMLStreamException If the styles part is not well-formed.
+     */
+    public static XlsxCellStyles read(XMLStreamReader reader, Set<Integer> indices) throws XMLStreamException {
+        var customFormatCodes = new HashMap<Integer, String>();
+        var displays = new HashMap<Integer, Display>();
+        var lastIndex = Collections.max(indices);
+        var index = BEFORE_FIRST;
+        var inCellFormats = false;
+        while (index < lastIndex && reader.hasNext()) {
+            var event = reader.next();
+            if (event == XMLStreamConstants.START_ELEMENT && NUMBER_FORMAT_ELEMENT.equals(reader.getLocalName())) {
+                customFormatCodes.put(readNumberFormatId(reader),
+                                      reader.getAttributeValue(NO_NAMESPACE, FORMAT_CODE_ATTRIBUTE));
+            } else if (event == XMLStreamConstants.START_ELEMENT
+                       && CELL_FORMATS_ELEMENT.equals(reader.getLocalName())) {
+                inCellFormats = true;
+            } else if (event == XMLStreamConstants.END_ELEMENT
+                       && CELL_FORMATS_ELEMENT.equals(reader.getLocalName())) {
+                break;
+            } else if (inCellFormats && event == XMLStreamConstants.START_ELEMENT
+                       && CELL_FORMAT_ELEMENT.equals(reader.getLocalName())) {
+                index++;
+                var formatId = readNumberFormatId(reader);
+                var formatCode = customFormatCodes.getOrDefault(formatId, BUILT_IN_FORMAT_CODES.get(formatId));
+                if (indices.contains(index) && Objects.nonNull(formatCode)) {
+                    displays.put(index, Display.of(formatCode));
+                }
+            }
+        }
+        return new XlsxCellStyles(displays);
+    }
+
+    /**
+     * Styles for a workbook without a styles part, where every number is displayed as a general number.
+     *
+     * @return styles without number formats.
+     */
+    public static XlsxCellStyles none() {
+        return new XlsxCellStyles(Map.of());
+    }
+
+    /**
+     * Format a number the way a cell style displays it.
+     *
+     * @param style index of the cell style.
+     * @param value number as stored in the cell.
+     * @return the displayed text, or empty if the style displays the number as a general number.
+     */
+    public Optional<String> format(int style, String value) {
+        var display = displays.get(style);
+        if (Objects.isNull(display) || display.kind == Kind.GENERAL) {
+            return Optional.empty();
+        }
+        try {
+            var number = new BigDecimal(value);
+            return display.kind == Kind.PERCENT
+                       ? Optional.of(formatPercent(number, display.decimals))
+                       : formatDateTime(number, display.kind);
+        } catch (NumberFormatException | ArithmeticException e) {
+            return Optional.empty();
+        }
+    }
+
+    private static int readNumberFormatId(XMLStreamReader reader) {
+        try {
+            return Integer.parseInt(reader.getAttributeValue(NO_NAMESPACE, NUMBER_FORMAT_ID_ATTRIBUTE));
+        } catch (NumberFormatException e) {
+            return NOT_A_NUMBER_FORMAT;
+        }
+    }
+
+    private static String formatPercent(BigDecimal number, int decimals) {
+        return number.multiply(HUNDRED).setScale(decimals, RoundingMode.HALF_UP).toPlainString() + PERCENT_SUFFIX;
+    }
+
+    // Negative days and days after 9999-12-31 are shown as ##### by Excel, they are left to the general display here.
+    private static Optional<String> formatDateTime(BigDecimal number, Kind kind) {
+        if (number.signum() < 0 || number.compareTo(FIRST_DAY_AFTER_LAST_DATE) >= 0) {
+            return Optional.empty();
+        }
+        var seconds = number.multiply(BigDecimal.valueOf(SECONDS_PER_DAY)).setScale(0, RoundingMode.HALF_UP)
+                          .longValueExact();
+        var epoch = number.intValue() < FIRST_DAY_AFTER_MISSING_DAY ? EPOCH_BEFORE_MISSING_DAY
+                        : EPOCH_AFTER_MISSING_DAY;
+        var dateTime = epoch.plusSeconds(seconds);
+        switch (kind) {
+            case DATE:
+                return Optional.of(dateTime.toLocalDate().format(DATE_FORMAT));
+            case TIME:
+                return Optional.of(dateTime.toLocalTime().format(TIME_FORMAT));
+            default:
+                return Optional.of(dateTime.format(DATE_TIME_FORMAT));
+        }
+    }
+
+    private enum Kind {
+        GENERAL, PERCENT, DATE, TIME, DATE_TIME
+    }
+
+    private static final class Display {
+
+        private final Kind kind;
+        private final int decimals;
+
+        private Display(Kind kind, int decimals) {
+            this.kind = kind;
+            this.decimals = decimals;
+        }
+
+        // Only the first section of a format code applies to positive numbers. Quoted text, escaped characters and
+        // bracketed colors or locales are literal, while bracketed elapsed hours, minutes and seconds are a time.
+        private static Display of(String formatCode) {
+            var code = formatCode.toLowerCase(Locale.ROOT);
+            var hasDate = false;
+            var hasTime = false;
+            var hasMonthOrMinute = false;
+            var hasPercent = false;
+            var decimals = 0;
+            var afterDecimalPoint = false;
+            var position = 0;
+            while (position < code.length() && code.charAt(position) != ';') {
+                var character = code.charAt(position);
+                if (character == '"') {
+                    position = Math.max(code.indexOf('"', position + 1), position);
+                } else if (character == '\\' || character == '_' || character == '*') {
+                    position++;
+                } else if (character == '[') {
+                    var end = code.indexOf(']', position);
+                    var bracketed = end < 0 ? "" : code.substring(position + 1, end);
+                    hasTime |= bracketed.matches("h+|m+|s+");
+                    position = end < 0 ? code.length() : end;
+                } else if (character == 'y' || character == 'd') {
+                    hasDate = true;
+                } else if (character == 'h' || character == 's') {
+                    hasTime = true;
+                } else if (character == 'm') {
+                    hasMonthOrMinute = true;
+                } else if (character == '%') {
+                    hasPercent = true;
+                } else if (character == '.') {
+                    afterDecimalPoint = true;
+                } else if (afterDecimalPoint && (character == '0' || character == '#')) {
+                    decimals++;
+                }
+                position++;
+            }
+            return new Display(kindOf(hasDate, hasTime, hasMonthOrMinute, hasPercent), decimals);
+        }
+
+        // A lone m is a month, next to hours or seconds it is a minute.
+        private static Kind kindOf(boolean hasDate, boolean hasTime, boolean hasMonthOrMinute, boolean hasPercent) {
+            if (hasDate && hasTime) {
+                return Kind.DATE_TIME;
+            }
+            if (hasDate || hasMonthOrMinute && !hasTime) {
+                return Kind.DATE;
+            }
+            if (hasTime) {
+                return Kind.TIME;
+            }
+            return hasPercent ? Kind.PERCENT : Kind.GENERAL;
+        }
+    }
+}
@@ -0,0 +1,366 @@
+package no.sikt.nva.thumbnail.util;
+
+import static no.sikt.nva.thumbnail.util.OoxmlPackage.ID_ATTRIBUTE;
+import static no.sikt.nva.thumbnail.util.OoxmlPackage.PACKAGE_ROOT;
+import static no.sikt.nva.thumbnail.util.OoxmlPackage.TYPE_ATTRIBUTE;
+import java.io.File;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeSet;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+/**
+ * Streams the top left corner of the first worksheet of an XLSX workbook. The worksheet is parsed up to the first row
+ * below the window, and the shared strings up to the highest index used in the window, so time and memory are given
+ * by the size of the window and not by the size of the workbook. Numbers are displayed as the date, time or
+ * percentage their cell style formats them as, see {@link XlsxCellStyles}.
+ */
+public class XlsxSheetReader {
+
+    public static final String OFFICE_DOCUMENT_RELATIONSHIP_TYPE =
+        "http://schemas.openxmlformats.org/officeDocument/2006/relationships/officeDocument";
+    public static final String SHARED_STRINGS_RELATIONSHIP_TYPE =
+        "http://schemas.openxmlformats.org/officeDocument/2006/relationships/sharedStrings";
+    public static final String NOT_A_WORKBOOK_MESSAGE = "Could not find the first worksheet of %s";
+    // A cell can hold 32767 characters, far more than a thumbnail can show.
+    public static final int MAX_CELL_TEXT_LENGTH = 256;
+    private static final String RELATIONSHIPS_NAMESPACE =
+        "http://schemas.openxmlformats.org/officeDocument/2006/relationships";
+    private static final String NO_NAMESPACE = null;
+    private static final String SHEET_ELEMENT = "sheet";
+    private static final String SHEET_DATA_ELEMENT = "sheetData";
+    private static final String ROW_ELEMENT = "row";
+    private static final String CELL_ELEMENT = "c";
+    private static final String VALUE_ELEMENT = "v";
+    private static final String INLINE_STRING_ELEMENT = "is";
+    private static final String SHARED_STRING_ELEMENT = "si";
+    private static final String TEXT_ELEMENT = "t";
+    private static final String PHONETIC_RUN_ELEMENT = "rPh";
+    private static final String ID_REFERENCE_ATTRIBUTE = "id";
+    private static final String REFERENCE_ATTRIBUTE = "r";
+    private static final String CELL_TYPE_ATTRIBUTE = "t";
+    private static final String CELL_STYLE_ATTRIBUTE = "s";
+    private static final String SHARED_STRING_TYPE = "s";
+    private static final String BOOLEAN_TYPE = "b";
+    private static final String NUMBER_TYPE = "n";
+    private static final String TRUE_VALUE = "1";
+    private static final String TRUE_TEXT = "TRUE";
+    private static final String FALSE_TEXT = "FALSE";
+    private static final MathContext DISPLAYED_PRECISION = new MathContext(10);
+    private static final int NOT_SHARED = -1;
+    private static final int NOT_STYLED = -1;
+    private static final int BEFORE_FIRST = -1;
+    private static final char FIRST_COLUMN_LETTER = 'A';
+    private static final char LAST_COLUMN_LETTER = 'Z';
+    private static final int COLUMN_LETTERS = 26;
+
+    /**
+     * Read the cells of the first worksheet in a window starting at cell A1.
+     *
+     * @param input   XLSX workbook.
+     * @param rows    number of rows in the window.
+     * @param columns number of columns in the window.
+     * @return the displayed text of the cells by row and column, null for empty cells.
+     * @throws IOException If the workbook cannot be read or has no worksheet.
+     */
+    public String[][] read(File input, int rows, int columns) throws IOException {
+        try (var ooxmlPackage = new OoxmlPackage(input)) {
+            var workbook = ooxmlPackage.findRelationshipTarget(PACKAGE_ROOT, TYPE_ATTRIBUTE,
+                                                               OFFICE_DOCUMENT_RELATIONSHIP_TYPE)
+                               .orElseThrow(() -> notAWorkbook(input));
+            var sheet = findFirstSheet(ooxmlPackage, workbook).orElseThrow(() -> notAWorkbook(input));
+            var window = ooxmlPackage.readPart(sheet, new CellWindow(rows, columns)::readCells)
+                             .orElseThrow(() -> notAWorkbook(input));
+            var sharedStringIndices = window.getSharedStringIndices();
+            if (!sharedStringIndices.isEmpty()) {
+                readSharedStrings(ooxmlPackage, workbook, sharedStringIndices).ifPresent(window::setSharedStrings);
+            }
+            var styleIndices = window.getStyleIndices();
+            if (!styleIndices.isEmpty()) {
+                window.setCellStyles(readCellStyles(ooxmlPackage, workbook, styleIndices));
+            }
+            return window.getCells();
+        } catch (XMLStreamException e) {
+            throw new IOException(String.format(NOT_A_WORKBOOK_MESSAGE, input.getName()), e);
+        }
+    }
+
+    private static IOException notAWorkbook(File input) {
+        return new IOException(String.format(NOT_A_WORKBOOK_MESSAGE, input.getName()));
+    }
+
+    private static Optional<String> findFirstSheet(OoxmlPackage ooxmlPackage, String workbook)
+        throws IOException, XMLStreamException {
+        var sheetId = ooxmlPackage.readPart(workbook, XlsxSheetReader::findFirstSheetId);
+        return sheetId.isPresent()
+                   ? ooxmlPackage.findRelationshipTarget(workbook, ID_ATTRIBUTE, sheetId.get())
+                   : Optional.empty();
+    }
+
+    private static Optional<Map<Integer, String>> readSharedStrings(OoxmlPackage ooxmlPackage, String workbook,
+                                                                     Set<Integer> indices)
+        throws IOException, XMLStreamException {
+        var sharedStrings = ooxmlPackage.findRelationshipTarget(workbook, TYPE_ATTRIBUTE,
+                                                                SHARED_STRINGS_RELATIONSHIP_TYPE);
+        return sharedStrings.isPresent()
+                   ? ooxmlPackage.readPart(sharedStrings.get(), reader -> collectSharedStrings(reader, indices))
+                   : Optional.empty();
+    }
+
+    private static XlsxCellStyles readCellStyles(OoxmlPackage ooxmlPackage, String workbook, Set<Integer> indices)
+        throws IOException, XMLStreamException {
+        var styles = ooxmlPackage.findRelationshipTarget(workbook, TYPE_ATTRIBUTE,
+                                                         XlsxCellStyles.STYLES_RELATIONSHIP_TYPE);
+        return styles.isPresent()
+                   ? ooxmlPackage.readPart(styles.get(), reader -> XlsxCellStyles.read(reader, indices))
+                         .orElseGet(XlsxCellStyles::none)
+                   : XlsxCellStyles.none();
+    }
+
+    private static String findFirstSheetId(XMLStreamReader reader) throws XMLStreamException {
+        while (reader.hasNext()) {
+            if (reader.next() == XMLStreamConstants.START_ELEMENT && SHEET_ELEMENT.equals(reader.getLocalName())) {
+                return reader.getAttributeValue(RELATIONSHIPS_NAMESPACE, ID_REFERENCE_ATTRIBUTE);
+            }
+        }
+        return null;
+    }
+
+    // Shared strings are stored in the order of their index, so reading stops after the highest index needed.
+    private static Map<Integer, String> collectSharedStrings(XMLStreamReader reader, Set<Integer> indices)
+        throws XMLStreamException {
+        var strings = new HashMap<Integer, String>();
+        var lastIndex = Collections.max(indices);
+        var index = BEFORE_FIRST;
+        while (index < lastIndex && reader.hasNext()) {
+            if (reader.next() == XMLStreamConstants.START_ELEMENT
+                && SHARED_STRING_ELEMENT.equals(reader.getLocalName())) {
+                index++;
+                var text = readText(reader, SHARED_STRING_ELEMENT);
+                if (indices.contains(index)) {
+                    strings.put(index, text);
+                }
+            }
+        }
+        return strings;
+    }
+
+    // Rich text is split into runs, and phonetic runs hold a reading aid that is not displayed in the cell.
+    private static String readText(XMLStreamReader reader, String element) throws XMLStreamException {
+        var text = new StringBuilder();
+        var phoneticDepth = 0;
+        while (reader.hasNext()) {
+            var event = reader.next();
+            if (event == XMLStreamConstants.START_ELEMENT && PHONETIC_RUN_ELEMENT.equals(reader.getLocalName())) {
+                phoneticDepth++;
+            } else if (event == XMLStreamConstants.END_ELEMENT
+                       && PHONETIC_RUN_ELEMENT.equals(reader.getLocalName())) {
+                phoneticDepth--;
+            } else if (event == XMLStreamConstants.START_ELEMENT && TEXT_ELEMENT.equals(reader.getLocalName())
+                       && phoneticDepth == 0) {
+                text.append(reader.getElementText());
+            } else if (event == XMLStreamConstants.END_ELEMENT && element.equals(reader.getLocalName())) {
+                break;
+            }
+        }
+        return clip(text.toString());
+    }
+
+    private static String clip(String text) {
+        return text.length() > MAX_CELL_TEXT_LENGTH ? text.substring(0, MAX_CELL_TEXT_LENGTH) : text;
+    }
+
+    // Rows and cells may leave out their reference, they then follow the previous row or cell.
+    private static int parseRowIndex(String reference, int next) {
+        return Objects.isNull(reference) ? next : parseInteger(reference, next + 1) - 1;
+    }
+
+    private static int parseColumnIndex(String reference, int next) {
+        if (Objects.isNull(reference)) {
+            return next;
+        }
+        var column = 0;
+        var position = 0;
+        while (position < reference.length() && reference.charAt(position) >= FIRST_COLUMN_LETTER
+               && reference.charAt(position) <= LAST_COLUMN_LETTER) {
+            column = column * COLUMN_LETTERS + reference.charAt(position) - FIRST_COLUMN_LETTER + 1;
+            position++;
+        }
+        return position == 0 ? next : column - 1;
+    }
+
+    private static int parseInteger(String value, int fallback) {
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            return fallback;
+        }
+    }
+
+    private static boolean isNumber(String type) {
+        return Objects.isNull(type) || NUMBER_TYPE.equals(type);
+    }
+
+    private static String formatValue(String type, String value) {
+        if (BOOLEAN_TYPE.equals(type)) {
+            return TRUE_VALUE.equals(value) ? TRUE_TEXT : FALSE_TEXT;
+        }
+        if (isNumber(type)) {
+            return formatNumber(value);
+        }
+        return clip(value);
+    }
+
+    // Numbers are stored with up to 17 significant digits, which would not fit a cell.
+    private static String formatNumber(String value) {
+        try {
+            return new BigDecimal(value).round(DISPLAYED_PRECISION).stripTrailingZeros().toPlainString();
+        } catch (NumberFormatException e) {
+            return clip(value);
+        }
+    }
+
+    private static final class CellWindow {
+
+        private final String[][] cells;
+        private final int[][] sharedStrings;
+        private final int[][] styles;
+        private final String[][] numbers;
+
+        private CellWindow(int rows, int columns) {
+            this.cells = new String[rows][columns];
+            this.sharedStrings = new int[rows][columns];
+            this.styles = new int[rows][columns];
+            this.numbers = new String[rows][columns];
+            for (var row = 0; row < rows; row++) {
+                Arrays.fill(sharedStrings[row], NOT_SHARED);
+                Arrays.fill(styles[row], NOT_STYLED);
+            }
+        }
+
+        private String[][] getCells() {
+            return cells;
+        }
+
+        // Rows are stored in ascending order, so the rest of the worksheet is skipped once a row is below the window.
+        private CellWindow readCells(XMLStreamReader reader) throws XMLStreamException {
+            var row = BEFORE_FIRST;
+            var column = BEFORE_FIRST;
+            while (reader.hasNext()) {
+                var event = reader.next();
+                if (event == XMLStreamConstants.END_ELEMENT && SHEET_DATA_ELEMENT.equals(reader.getLocalName())) {
+                    break;
+                }
+                if (event == XMLStreamConstants.START_ELEMENT && ROW_ELEMENT.equals(reader.getLocalName())) {
+                    row = parseRowIndex(reader.getAttributeValue(NO_NAMESPACE, REFERENCE_ATTRIBUTE), row + 1);
+                    column = BEFORE_FIRST;
+                    if (row >= cells.length) {
+                        break;
+                    }
+                } else if (event == XMLStreamConstants.START_ELEMENT && CELL_ELEMENT.equals(reader.getLocalName())) {
+                    column = parseColumnIndex(reader.getAttributeValue(NO_NAMESPACE, REFERENCE_ATTRIBUTE),
+                                              column + 1);
+                    readCell(reader, row, column);
+                }
+            }
+            return this;
+        }
+
+        private void readCell(XMLStreamReader reader, int row, int column) throws XMLStreamException {
+            var type = reader.getAttributeValue(NO_NAMESPACE, CELL_TYPE_ATTRIBUTE);
+            var style = reader.getAttributeValue(NO_NAMESPACE, CELL_STYLE_ATTRIBUTE);
+            String value = null;
+            while (reader.hasNext()) {
+                var event = reader.next();
+                if (event == XMLStreamConstants.END_ELEMENT && CELL_ELEMENT.equals(reader.getLocalName())) {
+                    break;
+                }
+                if (event == XMLStreamConstants.START_ELEMENT && VALUE_ELEMENT.equals(reader.getLocalName())) {
+                    value = reader.getElementText();
+                } else if (event == XMLStreamConstants.START_ELEMENT
+                           && INLINE_STRING_ELEMENT.equals(reader.getLocalName())) {
+                    value = readText(reader, INLINE_STRING_ELEMENT);
+                }
+            }
+            if (Objects.nonNull(value) && isInWindow(row, column)) {
+                store(row, column, type, value);
+                if (isNumber(type) && Objects.nonNull(style)) {
+                    styles[row][column] = Math.max(NOT_STYLED, parseInteger(style, NOT_STYLED));
+                    numbers[row][column] = value;
+                }
+            }
+        }
+
+        private void store(int row, int column, String type, String value) {
+            if (SHARED_STRING_TYPE.equals(type)) {
+                sharedStrings[row][column] = Math.max(NOT_SHARED, parseInteger(value, NOT_SHARED));
+            } else {
+                cells[row][column] = formatValue(type, value);
+            }
+        }
+
+        // Only numbers are formatted by their style, the style of text and booleans only changes fonts and colors.
+        private Set<Integer> getStyleIndices() {
+            var indices = new TreeSet<Integer>();
+            for (var row : styles) {
+                for (var index : row) {
+                    if (index != NOT_STYLED) {
+                        indices.add(index);
+                    }
+                }
+            }
+            return indices;
+        }
+
+        private void setCellStyles(XlsxCellStyles cellStyles) {
+            for (var row = 0; row < cells.length; row++) {
+                for (var column = 0; column < cells[row].length; column++) {
+                    var style = styles[row][column];
+                    if (style != NOT_STYLED) {
+                        var formatted = cellStyles.format(style, numbers[row][column]);
+                        if (formatted.isPresent()) {
+                            cells[row][column] = formatted.get();
+                        }
+                    }
+                }
+            }
+        }
+
+        private boolean isInWindow(int row, int column) {
+            return row >= 0 && row < cells.length && column >= 0 && column < cells[row].length;
+        }
+
+        private Set<Integer> getSharedStringIndices() {
+            var indices = new TreeSet<Integer>();
+            for (var row : sharedStrings) {
+                for (var index : row) {
+                    if (index != NOT_SHARED) {
+                        indices.add(index);
+                    }
+                }
+            }
+            return indices;
+        }
+
+        private void setSharedStrings(Map<Integer, String> strings) {
+            for (var row = 0; row < cells.length; row++) {
+                for (var column = 0; column < cells[row].length; column++) {
+                    var index = sharedStrings[row][column];
+                    if (index != NOT_SHARED) {
+                        cells[row][column] = strings.get(index);
+                    }
+                }
+            }
+        }
+    }
+}
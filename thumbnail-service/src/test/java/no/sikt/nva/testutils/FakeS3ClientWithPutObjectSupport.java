@@ -1,7 +1,18 @@
 package no.sikt.nva.testutils;
 
-import java.io.InputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
 import no.unit.nva.stubs.FakeS3Client;
+import nva.commons.core.Environment;
 import nva.commons.core.ioutils.IoUtils;
 import software.amazon.awssdk.awscore.exception.AwsServiceException;
 import software.amazon.awssdk.core.ResponseInputStream;
@@ -10,25 +21,37 @@ import software.amazon.awssdk.core.sync.RequestBody;
 import software.amazon.awssdk.http.AbortableInputStream;
 import software.amazon.awssdk.regions.Region;
 import software.amazon.awssdk.services.s3.S3Utilities;
+import software.amazon.awssdk.services.s3.model.CopyObjectRequest;
+import software.amazon.awssdk.services.s3.model.CopyObjectResponse;
 import software.amazon.awssdk.services.s3.model.GetObjectRequest;
 import software.amazon.awssdk.services.s3.model.GetObjectResponse;
+import software.amazon.awssdk.services.s3.model.HeadObjectRequest;
+import software.amazon.awssdk.services.s3.model.HeadObjectResponse;
+import software.amazon.awssdk.services.s3.model.NoSuchKeyException;
 import software.amazon.awssdk.services.s3.model.PutObjectRequest;
 import software.amazon.awssdk.services.s3.model.PutObjectResponse;
+import software.amazon.awssdk.services.s3.model.S3Exception;
 
 public class FakeS3ClientWithPutObjectSupport extends FakeS3Client {
 
     public static final String PATH_DELIMITER = "/";
     private static final String CONTENT_DISPOSITION = "filename=\"%s\"";
+    private static final String CONTENT_INDEX_BUCKET = new Environment().readEnv("CONTENT_INDEX_BUCKET");
     private final String mimeType;
-    private final InputStream getObjectStream;
+    private final String resourcePath;
     private final boolean shouldHaveContentDisposition;
     private final String filename;
+    private final List<PutObjectRequest> putObjectRequests = new CopyOnWriteArrayList<>();
+    private final List<PutObjectRequest> indexPutRequests = new CopyOnWriteArrayList<>();
+    private final List<CopyObjectRequest> copyObjectRequests = new CopyOnWriteArrayList<>();
+    private final Map<String, HeadObjectResponse> storedObjects = new ConcurrentHashMap<>();
+    private final AtomicInteger getObjectCount = new AtomicInteger();
 
     public FakeS3ClientWithPutObjectSupport(String filename, String path, String mimeType,
                                             Boolean shouldHaveContentDisposition) {
         super();
         this.mimeType = mimeType;
-        this.getObjectStream = IoUtils.inputStreamFromResources(path + PATH_DELIMITER + filename);
+        this.resourcePath = path + PATH_DELIMITER + filename;
         this.shouldHaveContentDisposition = shouldHaveContentDisposition;
         this.filename = filename;
     }
@@ -39,22 +62,49 @@ public class FakeS3ClientWithPutObjectSupport extends FakeS3Client {
 
     @Override
     public ResponseInputStream getObject(GetObjectRequest getObjectRequest) {
+        getObjectCount.incrementAndGet();
         return shouldHaveContentDisposition
                    ? new ResponseInputStream<>(
             GetObjectResponse
                 .builder()
                 .contentDisposition(generateContentDisposition())
                 .contentType(mimeType)
+                .contentLength(resourceLength())
                 .build(),
             AbortableInputStream
-                .create(getObjectStream))
+                .create(IoUtils.inputStreamFromResources(resourcePath)))
                    : new ResponseInputStream<>(
                        GetObjectResponse
                            .builder()
                            .contentType(mimeType)
+                           .contentLength(resourceLength())
                            .build(),
                        AbortableInputStream.create(
-                           getObjectStream));
+                           IoUtils.inputStreamFromResources(resourcePath)));
+    }
+
+    @Override
+    public HeadObjectResponse headObject(HeadObjectRequest headObjectRequest) {
+        return Optional.ofNullable(storedObjects.get(storedObjectKey(headObjectRequest.bucket(),
+                                                                     headObjectRequest.key())))
+                   .orElseGet(() -> HeadObjectResponse.builder().contentType(mimeType).build());
+    }
+
+    @Override
+    public CopyObjectResponse copyObject(CopyObjectRequest copyObjectRequest) {
+        var source = storedObjects.get(storedObjectKey(copyObjectRequest.sourceBucket(),
+                                                       copyObjectRequest.sourceKey()));
+        if (Objects.isNull(source)) {
+            throw NoSuchKeyException.builder().statusCode(404).message("The specified key does not exist.").build();
+        }
+        if (Objects.nonNull(copyObjectRequest.copySourceIfMatch())
+            && !copyObjectRequest.copySourceIfMatch().equals(source.eTag())) {
+            throw S3Exception.builder().statusCode(412).message("Precondition Failed").build();
+        }
+        copyObjectRequests.add(copyObjectRequest);
+        store(copyObjectRequest.destinationBucket(), copyObjectRequest.destinationKey(),
+              copyObjectRequest.contentType(), copyObjectRequest.metadata());
+        return CopyObjectResponse.builder().build();
     }
 
     @Override
@@ -65,9 +115,42 @@ public class FakeS3ClientWithPutObjectSupport extends FakeS3Client {
     @Override
     public PutObjectResponse putObject(PutObjectRequest putObjectRequest, RequestBody requestBody)
         throws AwsServiceException, SdkClientException {
+        if (CONTENT_INDEX_BUCKET.equals(putObjectRequest.bucket())) {
+            indexPutRequests.add(putObjectRequest);
+        } else {
+            putObjectRequests.add(putObjectRequest);
+        }
+        store(putObjectRequest.bucket(), putObjectRequest.key(), putObjectRequest.contentType(),
+              putObjectRequest.metadata());
         return PutObjectResponse.builder().build();
     }
 
+    public List<String> getPutObjectKeys() {
+        return putObjectRequests.stream().map(PutObjectRequest::key).collect(Collectors.toList());
+    }
+
+    public List<Map<String, String>> getPutObjectMetadata() {
+        return putObjectRequests.stream().map(PutObjectRequest::metadata).collect(Collectors.toList());
+    }
+
+    public List<String> getCopyObjectKeys() {
+        return copyObjectRequests.stream().map(CopyObjectRequest::destinationKey).collect(Collectors.toList());
+    }
+
+    public List<String> getIndexedContentHashes() {
+        return indexPutRequests.stream()
+                   .map(PutObjectRequest::key)
+                   .collect(Collectors.toList());
+    }
+
+    public int getGetObjectCount() {
+        return getObjectCount.get();
+    }
+
+    public List<String> getPutObjectContentTypes() {
+        return putObjectRequests.stream().map(PutObjectRequest::contentType).collect(Collectors.toList());
+    }
+
     @Override
     public String serviceName() {
         return null;
@@ -78,6 +161,27 @@ public class FakeS3ClientWithPutObjectSupport extends FakeS3Client {
 
     }
 
+    // Later reads of written objects see what was written, with a new ETag for every write.
+    private void store(String bucket, String key, String contentType, Map<String, String> metadata) {
+        storedObjects.put(storedObjectKey(bucket, key), HeadObjectResponse.builder()
+                                                            .contentType(contentType)
+                                                            .metadata(metadata)
+                                                            .eTag(UUID.randomUUID().toString())
+                                                            .build());
+    }
+
+    private long resourceLength() {
+        try (var resource = IoUtils.inputStreamFromResources(resourcePath)) {
+            return resource.readAllBytes().length;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static String storedObjectKey(String bucket, String key) {
+        return bucket + PATH_DELIMITER + key;
+    }
+
     private String generateContentDisposition() {
         return String.format(CONTENT_DISPOSITION, filename);
     }
@@ -0,0 +1,135 @@
+package no.sikt.nva.testutils;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+
+/**
+ * Stands in for S3 by serving a single file over HTTP, answering range requests the way S3 does for presigned GET
+ * URLs. The range headers received are recorded, so tests can check how the file was read.
+ */
+public class RangeHttpServer implements AutoCloseable {
+
+    private static final Pattern RANGE_PATTERN = Pattern.compile("bytes=(\\d*)-(\\d*)");
+    private static final String HTTP = "http";
+    private static final String ROOT_CONTEXT = "/";
+    private static final String HEAD_METHOD = "HEAD";
+    private static final int ANY_FREE_PORT = 0;
+    private static final int DEFAULT_BACKLOG = 0;
+    private static final int STOP_IMMEDIATELY = 0;
+    private static final int NO_BODY = -1;
+    private static final int OK = 200;
+    private static final int PARTIAL_CONTENT = 206;
+    private static final int RANGE_NOT_SATISFIABLE = 416;
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private final Path file;
+    private final HttpServer server;
+    private final List<String> rangeHeaders = new CopyOnWriteArrayList<>();
+    private final AtomicLong bytesServed = new AtomicLong();
+
+    /**
+     * Starts serving a file on a free port of the loopback interface.
+     *
+     * @param file file served for every path.
+     * @throws IOException If the server cannot be started.
+     */
+    public RangeHttpServer(Path file) throws IOException {
+        this.file = file;
+        this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), ANY_FREE_PORT),
+                                        DEFAULT_BACKLOG);
+        server.createContext(ROOT_CONTEXT, this::handle);
+        server.start();
+    }
+
+    public URL getUrl(String path) throws IOException {
+        var address = server.getAddress();
+        return new URL(HTTP, address.getHostString(), address.getPort(), path);
+    }
+
+    public List<String> getRangeHeaders() {
+        return List.copyOf(rangeHeaders);
+    }
+
+    public long getBytesServed() {
+        return bytesServed.get();
+    }
+
+    @Override
+    public void close() {
+        server.stop(STOP_IMMEDIATELY);
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try {
+            var length = Files.size(file);
+            var start = 0L;
+            var end = length - 1;
+            var status = OK;
+            var range = exchange.getRequestHeaders().getFirst("Range");
+            exchange.getResponseHeaders().add("Accept-Ranges", "bytes");
+            if (Objects.nonNull(range)) {
+                rangeHeaders.add(range);
+                var matcher = RANGE_PATTERN.matcher(range);
+                if (!matcher.matches() || !isSatisfiable(matcher.group(1), matcher.group(2), length)) {
+                    exchange.getResponseHeaders().add("Content-Range", "bytes */" + length);
+                    exchange.sendResponseHeaders(RANGE_NOT_SATISFIABLE, NO_BODY);
+                    return;
+                }
+                if (matcher.group(1).isEmpty()) {
+                    // A suffix range asks for the last bytes, as ZIP readers do to find the central directory.
+                    start = Math.max(0, length - Long.parseLong(matcher.group(2)));
+                } else {
+                    start = Long.parseLong(matcher.group(1));
+                    end = matcher.group(2).isEmpty() ? end : Math.min(end, Long.parseLong(matcher.group(2)));
+                }
+                status = PARTIAL_CONTENT;
+                exchange.getResponseHeaders().add("Content-Range", "bytes " + start + "-" + end + "/" + length);
+            }
+            if (HEAD_METHOD.equals(exchange.getRequestMethod())) {
+                exchange.getResponseHeaders().add("Content-Length", String.valueOf(end - start + 1));
+                exchange.sendResponseHeaders(status, NO_BODY);
+                return;
+            }
+            exchange.sendResponseHeaders(status, end - start + 1);
+            writeRange(exchange.getResponseBody(), start, end);
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private static boolean isSatisfiable(String first, String last, long length) {
+        if (first.isEmpty()) {
+            return !last.isEmpty() && Long.parseLong(last) > 0 && length > 0;
+        }
+        return Long.parseLong(first) < length;
+    }
+
+    private void writeRange(OutputStream body, long start, long end) {
+        var buffer = ByteBuffer.allocate(BUFFER_SIZE);
+        try (var channel = FileChannel.open(file)) {
+            var position = start;
+            while (position <= end) {
+                buffer.clear().limit((int) Math.min(BUFFER_SIZE, end - position + 1));
+                var read = channel.read(buffer, position);
+                body.write(buffer.array(), 0, read);
+                bytesServed.addAndGet(read);
+                position += read;
+            }
+        } catch (IOException e) {
+            // The client closes the connection when it has read what it needs, as ffmpeg does before seeking.
+        }
+    }
+}
@@ -1,25 +1,37 @@
 package no.sikt.nva.testutils.thumbnailer;
 
-import java.io.File;
 import java.io.IOException;
-import java.nio.file.Files;
+import java.net.URISyntaxException;
+import java.nio.file.Path;
 import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
 import javax.annotation.Nonnull;
 import net.bramp.ffmpeg.FFmpeg;
-import net.bramp.ffmpeg.builder.FFmpegBuilder;
 import net.bramp.ffmpeg.info.Codec;
 import net.bramp.ffmpeg.info.Format;
-import net.bramp.ffmpeg.progress.ProgressListener;
-import nva.commons.core.ioutils.IoUtils;
 
+/**
+ * Stands in for the ffmpeg executable by writing a prepared PPM frame to standard output.
+ */
 public class FakeFFmpeg extends FFmpeg {
 
-    public static final String JPEG_FILE = "images/pug.jpeg";
-    private final String temporaryFilename;
+    public static final String FRAME_FILE = "videos/frame.ppm";
+    private final List<List<String>> invocations = new CopyOnWriteArrayList<>();
+    private final List<String> command;
 
-    public FakeFFmpeg(String temporaryFilename) throws IOException {
+    public FakeFFmpeg() throws IOException {
+        this(List.of("cat", resourcePath(FRAME_FILE)));
+    }
+
+    /**
+     * Creates a fake running the given command in place of ffmpeg.
+     *
+     * @param command command whose standard output is read as ffmpeg's output.
+     * @throws IOException never.
+     */
+    public FakeFFmpeg(List<String> command) throws IOException {
         super();
-        this.temporaryFilename = temporaryFilename;
+        this.command = command;
     }
 
     @Override
@@ -40,18 +52,9 @@ public class FakeFFmpeg extends FFmpeg {
     }
 
     @Override
-    public void run(List<String> arguments) {
-        writeToPartiallyProsessedFile();
-    }
-
-    @Override
-    public void run(FFmpegBuilder ffmpegBuilder) {
-        run(List.of());
-    }
-
-    @Override
-    public void run(FFmpegBuilder ffmpegBuilder, ProgressListener listener) {
-        run(List.of());
+    public List<String> path(List<String> arguments) {
+        invocations.add(arguments);
+        return command;
     }
 
     @Nonnull
@@ -60,13 +63,15 @@ public class FakeFFmpeg extends FFmpeg {
         return "4.0";
     }
 
-    private void writeToPartiallyProsessedFile() {
-        File partiallyProsessed = new File(temporaryFilename);
-        try (var fileOutputStream = Files.newOutputStream(partiallyProsessed.toPath());
-            var mockFile = IoUtils.inputStreamFromResources(JPEG_FILE)) {
-            fileOutputStream.write(mockFile.readAllBytes());
-        } catch (Exception e) {
-            throw new RuntimeException(e);
+    public List<List<String>> getInvocations() {
+        return List.copyOf(invocations);
+    }
+
+    private static String resourcePath(String resource) {
+        try {
+            return Path.of(FakeFFmpeg.class.getClassLoader().getResource(resource).toURI()).toString();
+        } catch (URISyntaxException e) {
+            throw new IllegalStateException(e);
         }
     }
 }
@@ -1,16 +1,60 @@
 package no.sikt.nva.testutils.thumbnailer;
 
 import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
 import net.bramp.ffmpeg.FFprobe;
+import net.bramp.ffmpeg.probe.FFmpegFormat;
+import net.bramp.ffmpeg.probe.FFmpegProbeResult;
+import net.bramp.ffmpeg.probe.FFmpegStream;
+import net.bramp.ffmpeg.probe.FFmpegStream.CodecType;
 
 public class FakeFFprobe extends FFprobe {
 
+    public static final double DEFAULT_DURATION = 10.0;
+    private final FFmpegProbeResult probeResult;
+    private final List<String> probedPaths = new CopyOnWriteArrayList<>();
+
     public FakeFFprobe() throws IOException {
+        this(createProbeResult(DEFAULT_DURATION, CodecType.VIDEO));
+    }
+
+    public FakeFFprobe(FFmpegProbeResult probeResult) throws IOException {
         super();
+        this.probeResult = probeResult;
+    }
+
+    /**
+     * Create a probe result for a file with a single stream.
+     *
+     * @param duration  duration in seconds reported for the file.
+     * @param codecType type of the stream.
+     * @return the probe result.
+     */
+    public static FFmpegProbeResult createProbeResult(double duration, CodecType codecType) {
+        var format = new FFmpegFormat();
+        format.duration = duration;
+        var stream = new FFmpegStream();
+        stream.codec_type = codecType;
+        stream.duration = duration;
+        var result = new FFmpegProbeResult();
+        result.format = format;
+        result.streams = List.of(stream);
+        return result;
     }
 
     @Override
     public boolean isFFprobe() {
         return true;
     }
+
+    @Override
+    public FFmpegProbeResult probe(String mediaPath) {
+        probedPaths.add(mediaPath);
+        return probeResult;
+    }
+
+    public List<String> getProbedPaths() {
+        return List.copyOf(probedPaths);
+    }
 }
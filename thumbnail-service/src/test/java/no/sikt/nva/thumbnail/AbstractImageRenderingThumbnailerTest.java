@@ -0,0 +1,134 @@
+package no.sikt.nva.thumbnail;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import java.awt.Color;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import javax.imageio.ImageIO;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class AbstractImageRenderingThumbnailerTest {
+
+    private static final int RENDERED_WIDTH = 2000;
+    private static final int RENDERED_HEIGHT = 1500;
+    private static final Color PAGE_COLOR = Color.BLUE;
+    // Scaling may blend the outermost pixels of the page with the background.
+    private static final int EDGE_MARGIN = 2;
+
+    @TempDir
+    Path temporaryDirectory;
+
+    @Test
+    void shouldRenderOnceAtLargestSizeWhenGeneratingSeveralSizes() throws IOException, ThumbnailerException {
+        var thumbnailer = new RecordingThumbnailer(new BufferedImage(RENDERED_WIDTH, RENDERED_HEIGHT,
+                                                                     BufferedImage.TYPE_INT_RGB));
+        var outputs = new LinkedHashMap<ThumbnailSize, File>();
+        outputs.put(ThumbnailSize.parse("small:160x120"), temporaryDirectory.resolve("small.png").toFile());
+        outputs.put(ThumbnailSize.parse("large:1200x900"), temporaryDirectory.resolve("large.png").toFile());
+        outputs.put(ThumbnailSize.DEFAULT, temporaryDirectory.resolve("default.png").toFile());
+
+        thumbnailer.generateThumbnails(new File("input"), outputs, null);
+
+        assertThat(thumbnailer.renderRequests, contains("1200x900"));
+        for (var output : outputs.entrySet()) {
+            var thumbnail = ImageIO.read(output.getValue());
+            assertThat(thumbnail.getWidth(), is(equalTo(output.getKey().getWidth())));
+            assertThat(thumbnail.getHeight(), is(equalTo(output.getKey().getHeight())));
+        }
+    }
+
+    @Test
+    void shouldNotEnlargeAnySizeWhenSizesHaveDifferentAspectRatios() throws IOException, ThumbnailerException {
+        var thumbnailer = new PortraitPageThumbnailer();
+        var banner = ThumbnailSize.parse("banner:1200x200");
+        var square = ThumbnailSize.parse("square:400x400");
+        var outputs = new LinkedHashMap<ThumbnailSize, File>();
+        outputs.put(banner, temporaryDirectory.resolve("banner.png").toFile());
+        outputs.put(square, temporaryDirectory.resolve("square.png").toFile());
+
+        thumbnailer.generateThumbnails(new File("input"), outputs, null);
+
+        assertThat(thumbnailer.renderRequests, contains("1200x400"));
+        // The page is twice as high as it is wide, so it fills the square from top to bottom.
+        var squareThumbnail = ImageIO.read(outputs.get(square));
+        var middle = square.getWidth() / 2;
+        assertThat(squareThumbnail.getRGB(middle, EDGE_MARGIN), is(equalTo(PAGE_COLOR.getRGB())));
+        assertThat(squareThumbnail.getRGB(middle, square.getHeight() - 1 - EDGE_MARGIN),
+                   is(equalTo(PAGE_COLOR.getRGB())));
+        var bannerThumbnail = ImageIO.read(outputs.get(banner));
+        assertThat(bannerThumbnail.getRGB(banner.getWidth() / 2, banner.getHeight() / 2),
+                   is(equalTo(PAGE_COLOR.getRGB())));
+    }
+
+    @Test
+    void shouldWriteThumbnailOfCurrentSizeWhenGeneratingSingleThumbnail() throws IOException, ThumbnailerException {
+        var thumbnailer = new RecordingThumbnailer(new BufferedImage(RENDERED_WIDTH, RENDERED_HEIGHT,
+                                                                     BufferedImage.TYPE_INT_RGB));
+        var output = temporaryDirectory.resolve("thumbnail.png").toFile();
+
+        thumbnailer.generateThumbnail(new File("input"), output);
+
+        assertThat(thumbnailer.renderRequests, contains(ThumbnailSize.DEFAULT.toString()));
+        assertThat(ImageIO.read(output).getWidth(), is(equalTo(ThumbnailSize.DEFAULT.getWidth())));
+    }
+
+    @Test
+    void shouldThrowExceptionWhenNothingWasRendered() {
+        var thumbnailer = new RecordingThumbnailer(null);
+        var output = temporaryDirectory.resolve("thumbnail.png").toFile();
+
+        assertThrows(ThumbnailerException.class, () -> thumbnailer.generateThumbnail(new File("input"), output));
+    }
+
+    private static class PortraitPageThumbnailer extends RecordingThumbnailer {
+
+        PortraitPageThumbnailer() {
+            super(null);
+        }
+
+        // Renders a page twice as high as it is wide, as large as fits the requested box.
+        @Override
+        public BufferedImage renderImage(File input, int targetWidth, int targetHeight) {
+            super.renderImage(input, targetWidth, targetHeight);
+            var width = Math.min(targetWidth, targetHeight / 2);
+            var page = new BufferedImage(width, 2 * width, BufferedImage.TYPE_INT_RGB);
+            var graphics = page.createGraphics();
+            graphics.setColor(PAGE_COLOR);
+            graphics.fillRect(0, 0, page.getWidth(), page.getHeight());
+            graphics.dispose();
+            return page;
+        }
+    }
+
+    private static class RecordingThumbnailer extends AbstractImageRenderingThumbnailer {
+
+        private final BufferedImage renderedImage;
+        private final List<String> renderRequests = new ArrayList<>();
+
+        RecordingThumbnailer(BufferedImage renderedImage) {
+            super();
+            this.renderedImage = renderedImage;
+        }
+
+        @Override
+        public BufferedImage renderImage(File input, int targetWidth, int targetHeight) {
+            renderRequests.add(targetWidth + "x" + targetHeight);
+            return renderedImage;
+        }
+
+        @Override
+        public List<String> getAcceptedMimeTypes() {
+            return List.of();
+        }
+    }
+}
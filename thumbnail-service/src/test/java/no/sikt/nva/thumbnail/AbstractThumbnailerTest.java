@@ -0,0 +1,138 @@
+package no.sikt.nva.thumbnail;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import java.io.File;
+import java.io.IOException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class AbstractThumbnailerTest {
+
+    private static final String SOME_URL = "https://example.org/input";
+    private static final int SOME_WIDTH = 640;
+    private static final int SOME_HEIGHT = 480;
+
+    @TempDir
+    Path temporaryDirectory;
+
+    @Test
+    void shouldGenerateEverySizeOneAtATimeWhenThumbnailerOnlyGeneratesSingleThumbnails()
+        throws IOException, ThumbnailerException {
+        var thumbnailer = new SingleSizeThumbnailer();
+        var outputs = createOutputs();
+
+        thumbnailer.generateThumbnails(new File("input"), outputs, null);
+
+        assertThat(thumbnailer.generatedSizes, contains("400x300", "160x120"));
+        assertWrittenSizes(outputs);
+    }
+
+    @Test
+    void shouldKeepCurrentSizeOfThumbnailerWhenGeneratingSeveralSizes() throws IOException, ThumbnailerException {
+        var thumbnailer = new SingleSizeThumbnailer();
+        thumbnailer.setImageSize(SOME_WIDTH, SOME_HEIGHT);
+
+        thumbnailer.generateThumbnails(new File("input"), createOutputs(), null);
+
+        assertThat(thumbnailer.getCurrentImageWidth(), is(equalTo(SOME_WIDTH)));
+        assertThat(thumbnailer.getCurrentImageHeight(), is(equalTo(SOME_HEIGHT)));
+    }
+
+    @Test
+    void shouldGenerateThumbnailOfCurrentSizeWhenGeneratingSingleThumbnail() throws IOException, ThumbnailerException {
+        var thumbnailer = new SingleSizeThumbnailer();
+        thumbnailer.setImageSize(SOME_WIDTH, SOME_HEIGHT);
+        var output = temporaryDirectory.resolve("thumbnail").toFile();
+
+        thumbnailer.generateThumbnail(new File("input"), output);
+
+        assertThat(thumbnailer.generatedSizes, contains(SOME_WIDTH + "x" + SOME_HEIGHT));
+    }
+
+    @Test
+    void shouldGenerateEverySizeOneAtATimeFromUrlWhenThumbnailerOnlyGeneratesSingleThumbnails()
+        throws IOException, ThumbnailerException {
+        var thumbnailer = new SingleSizeThumbnailer();
+        var outputs = createOutputs();
+
+        thumbnailer.generateThumbnails(new URL(SOME_URL), outputs, null);
+
+        assertThat(thumbnailer.generatedSizes, contains("400x300", "160x120"));
+        assertWrittenSizes(outputs);
+    }
+
+    @Test
+    void shouldThrowExceptionWhenThumbnailerGeneratesNoThumbnails() {
+        var thumbnailer = new IncapableThumbnailer();
+        var outputs = createOutputs();
+
+        assertThrows(ThumbnailerException.class,
+                     () -> thumbnailer.generateThumbnails(new File("input"), outputs, null));
+        assertThrows(ThumbnailerException.class,
+                     () -> thumbnailer.generateThumbnails(new URL(SOME_URL), outputs, null));
+    }
+
+    private Map<ThumbnailSize, File> createOutputs() {
+        var outputs = new LinkedHashMap<ThumbnailSize, File>();
+        outputs.put(ThumbnailSize.DEFAULT, temporaryDirectory.resolve("default").toFile());
+        outputs.put(ThumbnailSize.parse("small:160x120"), temporaryDirectory.resolve("small").toFile());
+        return outputs;
+    }
+
+    private static void assertWrittenSizes(Map<ThumbnailSize, File> outputs) throws IOException {
+        for (var output : outputs.entrySet()) {
+            var size = output.getKey();
+            assertThat(Files.readString(output.getValue().toPath()),
+                       is(equalTo(size.getWidth() + "x" + size.getHeight())));
+        }
+    }
+
+    // Writes the size it was asked for instead of an image.
+    private static class SingleSizeThumbnailer extends AbstractThumbnailer {
+
+        private final List<String> generatedSizes = new ArrayList<>();
+
+        @Override
+        protected void generateThumbnail(File input, File output, String mimeType, ThumbnailSize size)
+            throws IOException {
+            write(output, size);
+        }
+
+        @Override
+        protected void generateThumbnail(URL input, File output, String mimeType, ThumbnailSize size)
+            throws IOException {
+            write(output, size);
+        }
+
+        private void write(File output, ThumbnailSize size) throws IOException {
+            var dimensions = size.getWidth() + "x" + size.getHeight();
+            generatedSizes.add(dimensions);
+            Files.writeString(output.toPath(), dimensions, StandardCharsets.UTF_8);
+        }
+
+        @Override
+        public List<String> getAcceptedMimeTypes() {
+            return List.of();
+        }
+    }
+
+    private static class IncapableThumbnailer extends AbstractThumbnailer {
+
+        @Override
+        public List<String> getAcceptedMimeTypes() {
+            return List.of();
+        }
+    }
+}
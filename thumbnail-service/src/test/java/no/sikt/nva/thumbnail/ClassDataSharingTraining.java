@@ -0,0 +1,84 @@
+package no.sikt.nva.thumbnail;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.stream.Collectors;
+import no.sikt.nva.testutils.thumbnailer.FakeFFmpeg;
+import no.sikt.nva.testutils.thumbnailer.FakeFFprobe;
+import no.sikt.nva.thumbnail.thumbnailer.ThumbnailerInitializer;
+import no.sikt.nva.thumbnail.util.ThumbnailEncoder;
+
+/**
+ * Training run for the class data sharing archive: thumbnails every file of a sample corpus once, so the JVM records
+ * the classes a container loads while serving its first requests. Run it through
+ * {@code ./gradlew :thumbnail-service:cdsArchive}, which passes the test resources as the corpus.
+ */
+public final class ClassDataSharingTraining {
+
+    private static final Map<String, String> MIME_TYPES_BY_EXTENSION = Map.ofEntries(
+        Map.entry("png", "image/png"),
+        Map.entry("jpeg", "image/jpeg"),
+        Map.entry("tiff", "image/tiff"),
+        Map.entry("pdf", "application/pdf"),
+        Map.entry("doc", "application/msword"),
+        Map.entry("docx", "application/vnd.openxmlformats-officedocument.wordprocessingml.document"),
+        Map.entry("xls", "application/vnd.ms-excel"),
+        Map.entry("xlsx", "application/vnd.openxmlformats-officedocument.spreadsheetml.sheet"),
+        Map.entry("pptx", "application/vnd.openxmlformats-officedocument.presentationml.presentation"),
+        Map.entry("odt", "application/vnd.oasis.opendocument.text"),
+        Map.entry("ods", "application/vnd.oasis.opendocument.spreadsheet"),
+        Map.entry("odp", "application/vnd.oasis.opendocument.presentation"),
+        Map.entry("odg", "application/vnd.oasis.opendocument.graphics"));
+    private static final String DEFAULT_CORPUS = "src/test/resources";
+    private static final char EXTENSION_SEPARATOR = '.';
+
+    private ClassDataSharingTraining() {
+    }
+
+    public static void main(String... args) throws IOException {
+        var corpus = Path.of(args.length > 0 ? args[0] : DEFAULT_CORPUS);
+        var thumbnailerManager = new ThumbnailerManager(new ThumbnailerInitializer.Builder()
+                                                            .withFFmpeg(new FakeFFmpeg())
+                                                            .withFFprobe(new FakeFFprobe())
+                                                            .withThumbnailEncoder(new ThumbnailEncoder())
+                                                            .build());
+        var outputDirectory = Files.createTempDirectory("cds-training");
+        var count = 0;
+        for (var input : listCorpus(corpus)) {
+            var mimeType = mimeTypeOf(input);
+            if (mimeType.isPresent()) {
+                var output = outputDirectory.resolve("thumbnail-" + count++).toFile();
+                thumbnail(thumbnailerManager, input, output, mimeType.get());
+            }
+        }
+        System.out.printf(Locale.ROOT, "Thumbnailed %d files of %s%n", count, corpus);
+    }
+
+    private static List<Path> listCorpus(Path corpus) throws IOException {
+        try (var files = Files.walk(corpus)) {
+            return files.filter(Files::isRegularFile).sorted().collect(Collectors.toList());
+        }
+    }
+
+    private static Optional<String> mimeTypeOf(Path input) {
+        var fileName = input.getFileName().toString();
+        var extension = fileName.substring(fileName.lastIndexOf(EXTENSION_SEPARATOR) + 1);
+        return Optional.ofNullable(MIME_TYPES_BY_EXTENSION.get(extension.toLowerCase(Locale.ROOT)));
+    }
+
+    // A file the service would reject still trains the classes loaded on the way to rejecting it.
+    private static void thumbnail(ThumbnailerManager thumbnailerManager, Path input, File output,
+                                  String mimeType) {
+        try {
+            thumbnailerManager.generateThumbnails(input.toFile(), Map.of(ThumbnailSize.DEFAULT, output), mimeType);
+        } catch (IOException | ThumbnailerException | RuntimeException e) {
+            System.out.printf(Locale.ROOT, "Could not thumbnail %s: %s%n", input, e.getMessage());
+        }
+    }
+}
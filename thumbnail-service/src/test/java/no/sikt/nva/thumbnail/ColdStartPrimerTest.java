@@ -0,0 +1,62 @@
+package no.sikt.nva.thumbnail;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.containsString;
+import java.util.List;
+import no.sikt.nva.testutils.FakeS3ClientWithPutObjectSupport;
+import nva.commons.logutils.LogUtils;
+import org.junit.jupiter.api.Test;
+import software.amazon.awssdk.services.s3.model.HeadObjectRequest;
+import software.amazon.awssdk.services.s3.model.HeadObjectResponse;
+import software.amazon.awssdk.services.s3.model.S3Exception;
+
+class ColdStartPrimerTest {
+
+    private static final String THUMBNAIL_BUCKET = "dlr-nva-thumbnails";
+    private static final String PNG_MIME_TYPE = "image/png";
+    private static final List<String> EVERY_STEP = List.of(ColdStartPrimer.IMAGE_IO_STEP,
+                                                           ColdStartPrimer.PDFBOX_STEP,
+                                                           ColdStartPrimer.S3_CLIENT_STEP);
+
+    @Test
+    void shouldPrimeEveryStepAndLogHowLongItTook() {
+        var appender = LogUtils.getTestingAppenderForRootLogger();
+        var s3Client = new FakeS3ClientWithPutObjectSupport("tiny.png", "images", PNG_MIME_TYPE);
+
+        var primedSteps = new ColdStartPrimer(s3Client, THUMBNAIL_BUCKET).prime();
+
+        assertThat(primedSteps, contains(EVERY_STEP.toArray()));
+        assertThat(appender.getMessages(), containsString("Primed " + ColdStartPrimer.PDFBOX_STEP));
+    }
+
+    @Test
+    void shouldCountS3ClientAsPrimedWhenPrimingObjectIsNotAccessible() {
+        var s3Client = new FakeS3ClientWithPutObjectSupport("tiny.png", "images", PNG_MIME_TYPE) {
+            @Override
+            public HeadObjectResponse headObject(HeadObjectRequest headObjectRequest) {
+                throw S3Exception.builder().statusCode(403).message("Access Denied").build();
+            }
+        };
+
+        var primedSteps = new ColdStartPrimer(s3Client, THUMBNAIL_BUCKET).prime();
+
+        assertThat(primedSteps, contains(EVERY_STEP.toArray()));
+    }
+
+    @Test
+    void shouldLogWarningAndContinueWhenPrimingStepFails() {
+        var appender = LogUtils.getTestingAppenderForRootLogger();
+        var s3Client = new FakeS3ClientWithPutObjectSupport("tiny.png", "images", PNG_MIME_TYPE) {
+            @Override
+            public HeadObjectResponse headObject(HeadObjectRequest headObjectRequest) {
+                throw new IllegalStateException("Connection pool shut down");
+            }
+        };
+
+        var primedSteps = new ColdStartPrimer(s3Client, THUMBNAIL_BUCKET).prime();
+
+        assertThat(primedSteps, contains(ColdStartPrimer.IMAGE_IO_STEP, ColdStartPrimer.PDFBOX_STEP));
+        assertThat(appender.getMessages(), containsString("Connection pool shut down"));
+    }
+}
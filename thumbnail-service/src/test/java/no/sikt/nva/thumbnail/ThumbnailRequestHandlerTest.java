@@ -1,10 +1,21 @@
 package no.sikt.nva.thumbnail;
 
 import static no.sikt.nva.handler.ThumbnailRequestHandler.COULD_NOT_CREATE_THUMBNAIL_LOG_MESSAGE;
+import static no.sikt.nva.handler.ThumbnailRequestHandler.OUTPUT_RESERVE_BYTES;
 import static no.unit.nva.testutils.RandomDataGenerator.randomString;
+import static nva.commons.core.JsonUtils.dtoObjectMapper;
 import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.hamcrest.Matchers.empty;
 import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.everyItem;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.hasKey;
+import static org.hamcrest.Matchers.hasSize;
 import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.startsWith;
 import static org.hamcrest.core.StringContains.containsString;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.mockito.Mockito.mock;
@@ -17,21 +28,37 @@ import com.amazonaws.services.lambda.runtime.events.models.s3.S3EventNotificatio
 import com.amazonaws.services.lambda.runtime.events.models.s3.S3EventNotification.S3EventNotificationRecord;
 import com.amazonaws.services.lambda.runtime.events.models.s3.S3EventNotification.S3ObjectEntity;
 import com.amazonaws.services.lambda.runtime.events.models.s3.S3EventNotification.UserIdentityEntity;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.PrintStream;
+import java.math.BigInteger;
 import java.net.MalformedURLException;
 import java.net.URI;
+import java.net.URISyntaxException;
 import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.time.Instant;
+import java.util.ArrayList;
 import java.util.List;
-import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
 import no.sikt.nva.handler.ThumbnailRequestHandler;
+import no.sikt.nva.handler.ThumbnailResult;
+import no.sikt.nva.handler.ThumbnailResult.Status;
 import no.sikt.nva.testutils.FakeS3ClientThrowingExceptionOnGetObject;
 import no.sikt.nva.testutils.FakeS3ClientThrowingExceptionOnPutObject;
 import no.sikt.nva.testutils.FakeS3ClientWithPutObjectSupport;
+import no.sikt.nva.testutils.RangeHttpServer;
 import no.sikt.nva.testutils.thumbnailer.FakeFFmpeg;
 import no.sikt.nva.testutils.thumbnailer.FakeFFprobe;
 import no.sikt.nva.thumbnail.thumbnailer.ThumbnailerInitializer;
 import no.sikt.nva.thumbnail.util.MediaType;
+import no.sikt.nva.thumbnail.util.ScratchSpace;
+import no.sikt.nva.thumbnail.util.StageMetrics;
 import no.unit.nva.s3.S3Driver;
 import nva.commons.core.ioutils.IoUtils;
 import nva.commons.core.paths.UnixPath;
@@ -40,7 +67,18 @@ import nva.commons.logutils.LogUtils;
 import nva.commons.logutils.TestAppender;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import software.amazon.awssdk.auth.credentials.AwsBasicCredentials;
+import software.amazon.awssdk.auth.credentials.StaticCredentialsProvider;
+import software.amazon.awssdk.core.ResponseInputStream;
+import software.amazon.awssdk.core.exception.SdkClientException;
+import software.amazon.awssdk.core.sync.RequestBody;
 import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.s3.S3Configuration;
+import software.amazon.awssdk.services.s3.model.GetObjectRequest;
+import software.amazon.awssdk.services.s3.model.PutObjectRequest;
+import software.amazon.awssdk.services.s3.model.PutObjectResponse;
+import software.amazon.awssdk.services.s3.presigner.S3Presigner;
 
 class ThumbnailRequestHandlerTest {
 
@@ -82,6 +120,11 @@ class ThumbnailRequestHandlerTest {
     private static final String MOVIE_PATH = "videos";
     private static final String PDF_FILENAME = "wireframe.pdf";
     private static final String PDF_MIMETYPE = "application/pdf";
+    private static final int SOME_WORKER_COUNT = 2;
+    private static final long LARGE_FILE_SIZE = 4L * 1024 * 1024 * 1024;
+    private static final long NO_OBJECT_SIZE = 0L;
+    private static final String MP4_MIME_TYPE = "video/mp4";
+    private static final String ROOT_PATH = "/";
     private TestAppender appender;
 
     private ThumbnailerInitializer thumbnailerInitializer;
@@ -89,10 +132,8 @@ class ThumbnailRequestHandlerTest {
     @BeforeEach
     public void init() throws IOException {
         this.appender = LogUtils.getTestingAppenderForRootLogger();
-        var temporaryFilename = String.format("/tmp/%s.png", UUID.randomUUID());
         this.thumbnailerInitializer = new ThumbnailerInitializer.Builder()
-                                          .withPartiallyProcessedFilename(temporaryFilename)
-                                          .withFFmpeg(new FakeFFmpeg(temporaryFilename))
+                                          .withFFmpeg(new FakeFFmpeg())
                                           .withFFprobe(new FakeFFprobe())
                                           .build();
     }
@@ -173,9 +214,429 @@ class ThumbnailRequestHandlerTest {
                                  shouldHaveContentDisposition);
     }
 
+    @Test
+    void shouldCreateThumbnailForEveryRecordInEvent() throws IOException {
+        var s3Paths = List.of(randomS3Path(), randomS3Path(), randomS3Path());
+        var s3Client = new FakeS3ClientWithPutObjectSupport(JPEG_FILE, IMAGES_PATH, JPEG_MIME_TYPE);
+        var handler = new ThumbnailRequestHandler(s3Client, thumbnailerInitializer, SOME_WORKER_COUNT);
+
+        var results = handler.handleRequest(createS3Event(s3Paths), CONTEXT);
+
+        assertThat(extractObjectKeys(results), is(equalTo(toStrings(s3Paths))));
+        assertThat(extractStatuses(results), everyItem(is(Status.SUCCESS)));
+        assertThat(results.get(2).getThumbnailUrl(), is(equalTo(craftExpectedURL(s3Paths.get(2)))));
+    }
+
+    @Test
+    void shouldProcessRemainingRecordsAndReportFailingRecordWhenOneRecordFails() {
+        var failingPath = randomS3Path();
+        var s3Paths = List.of(randomS3Path(), failingPath, randomS3Path());
+        var expectedMessage = randomString();
+        var s3Client = new FakeS3ClientWithPutObjectSupport(JPEG_FILE, IMAGES_PATH, JPEG_MIME_TYPE) {
+            @Override
+            public ResponseInputStream getObject(GetObjectRequest getObjectRequest) {
+                if (failingPath.toString().equals(getObjectRequest.key())) {
+                    throw new RuntimeException(expectedMessage);
+                }
+                return super.getObject(getObjectRequest);
+            }
+        };
+        var handler = new ThumbnailRequestHandler(s3Client, thumbnailerInitializer, SOME_WORKER_COUNT);
+        var s3Event = createS3Event(s3Paths);
+
+        var exception = assertThrows(RuntimeException.class, () -> handler.handleRequest(s3Event, CONTEXT));
+
+        assertThat(exception.getMessage(), containsString(failingPath.toString()));
+        assertThat(exception.getMessage(), containsString(expectedMessage));
+        assertThat(exception.getMessage(), not(containsString(s3Paths.get(0).toString())));
+    }
+
+    @Test
+    void shouldDeleteWorkspacesWhenRecordsHaveBeenProcessed(@TempDir Path scratchDirectory) throws IOException {
+        var scratchSpace = new ScratchSpace(scratchDirectory, ScratchSpace.DEFAULT_QUOTA_BYTES);
+        var s3Client = new FakeS3ClientWithPutObjectSupport(JPEG_FILE, IMAGES_PATH, JPEG_MIME_TYPE);
+        var handler = new ThumbnailRequestHandler(s3Client, thumbnailerInitializer, SOME_WORKER_COUNT,
+                                                  scratchSpace);
+
+        handler.handleRequest(createS3Event(List.of(randomS3Path(), randomS3Path())), CONTEXT);
+
+        assertThat(scratchSpace.getBytesInUse(), is(equalTo(0L)));
+        assertThat(scratchSpace.getReservedBytes(), is(equalTo(0L)));
+    }
+
+    @Test
+    void shouldThrowExceptionWhenInputFileDoesNotFitInScratchSpace(@TempDir Path scratchDirectory) {
+        var scratchSpace = new ScratchSpace(scratchDirectory, OUTPUT_RESERVE_BYTES + SOME_FILE_SIZE - 1);
+        var s3Client = new FakeS3ClientWithPutObjectSupport(JPEG_FILE, IMAGES_PATH, JPEG_MIME_TYPE);
+        var handler = new ThumbnailRequestHandler(s3Client, thumbnailerInitializer, SOME_WORKER_COUNT,
+                                                  scratchSpace);
+        var s3Event = createS3Event(List.of(randomS3Path()));
+
+        var exception = assertThrows(RuntimeException.class, () -> handler.handleRequest(s3Event, CONTEXT));
+
+        assertThat(exception.getMessage(), containsString("quota exceeded"));
+    }
+
+    @Test
+    void shouldReserveContentLengthWhenEventHasNoObjectSize(@TempDir Path scratchDirectory) {
+        var scratchSpace = new ScratchSpace(scratchDirectory, OUTPUT_RESERVE_BYTES);
+        var s3Client = new FakeS3ClientWithPutObjectSupport(JPEG_FILE, IMAGES_PATH, JPEG_MIME_TYPE);
+        var handler = new ThumbnailRequestHandler(s3Client, thumbnailerInitializer, SOME_WORKER_COUNT,
+                                                  scratchSpace);
+        var s3Event = createS3Event(randomS3Path(), NO_OBJECT_SIZE);
+
+        var exception = assertThrows(RuntimeException.class, () -> handler.handleRequest(s3Event, CONTEXT));
+
+        assertThat(exception.getMessage(), containsString("quota exceeded"));
+        assertThat(scratchSpace.getReservedBytes(), is(equalTo(0L)));
+    }
+
+    @Test
+    void shouldUploadOneThumbnailPerConfiguredSize(@TempDir Path scratchDirectory) throws IOException {
+        var s3Path = randomS3Path();
+        var smallSize = ThumbnailSize.parse("small:160x120");
+        var scratchSpace = new ScratchSpace(scratchDirectory, ScratchSpace.DEFAULT_QUOTA_BYTES);
+        var s3Client = new FakeS3ClientWithPutObjectSupport(JPEG_FILE, IMAGES_PATH, JPEG_MIME_TYPE);
+        var handler = new ThumbnailRequestHandler(s3Client, thumbnailerInitializer, SOME_WORKER_COUNT,
+                                                  scratchSpace, List.of(ThumbnailSize.DEFAULT, smallSize));
+
+        var results = handler.handleRequest(createS3Event(List.of(s3Path)), CONTEXT);
+
+        var smallThumbnailPath = UnixPath.of(smallSize.getName(), s3Path.toString());
+        assertThat(s3Client.getPutObjectKeys(),
+                   containsInAnyOrder(s3Path.toString(), smallThumbnailPath.toString()));
+        assertThat(results.get(0).getThumbnailUrls(),
+                   contains(craftExpectedURL(s3Path), craftExpectedURL(smallThumbnailPath)));
+    }
+
+    @Test
+    void shouldRecordSourceETagInThumbnailMetadata() {
+        var s3Client = new FakeS3ClientWithPutObjectSupport(JPEG_FILE, IMAGES_PATH, JPEG_MIME_TYPE);
+        var handler = new ThumbnailRequestHandler(s3Client, thumbnailerInitializer);
+        var s3Event = createS3Event(List.of(randomS3Path()));
+
+        handler.handleRequest(s3Event, CONTEXT);
+
+        var sourceObject = s3Event.getRecords().get(0).getS3().getObject();
+        var metadata = s3Client.getPutObjectMetadata().get(0);
+        assertThat(metadata.get("source-etag"), is(equalTo(sourceObject.geteTag())));
+        assertThat(metadata.get("source-version-id"), is(equalTo(sourceObject.getVersionId())));
+    }
+
+    @Test
+    void shouldSkipDuplicateDeliveryOfAlreadyThumbnailedContent() throws MalformedURLException {
+        var s3Path = randomS3Path();
+        var s3Client = new FakeS3ClientWithPutObjectSupport(JPEG_FILE, IMAGES_PATH, JPEG_MIME_TYPE);
+        var handler = new ThumbnailRequestHandler(s3Client, thumbnailerInitializer);
+        var s3Event = createS3Event(List.of(s3Path));
+        handler.handleRequest(s3Event, CONTEXT);
+
+        var results = handler.handleRequest(s3Event, CONTEXT);
+
+        assertThat(extractStatuses(results), contains(Status.UNCHANGED));
+        assertThat(results.get(0).getThumbnailUrls(), contains(craftExpectedURL(s3Path)));
+        assertThat(s3Client.getGetObjectCount(), is(equalTo(1)));
+        assertThat(s3Client.getPutObjectKeys(), hasSize(1));
+    }
+
+    @Test
+    void shouldRegenerateThumbnailWhenSourceContentChanged() {
+        var s3Path = randomS3Path();
+        var s3Client = new FakeS3ClientWithPutObjectSupport(JPEG_FILE, IMAGES_PATH, JPEG_MIME_TYPE);
+        var handler = new ThumbnailRequestHandler(s3Client, thumbnailerInitializer);
+        handler.handleRequest(createS3Event(List.of(s3Path)), CONTEXT);
+
+        var results = handler.handleRequest(createS3Event(List.of(s3Path)), CONTEXT);
+
+        assertThat(extractStatuses(results), contains(Status.SUCCESS));
+        assertThat(s3Client.getGetObjectCount(), is(equalTo(2)));
+    }
+
+    @Test
+    void shouldIndexThumbnailsBySha256OfInputContent() throws IOException, NoSuchAlgorithmException {
+        var s3Client = new FakeS3ClientWithPutObjectSupport(JPEG_FILE, IMAGES_PATH, JPEG_MIME_TYPE);
+        var handler = new ThumbnailRequestHandler(s3Client, thumbnailerInitializer);
+
+        handler.handleRequest(createS3Event(List.of(randomS3Path())), CONTEXT);
+
+        assertThat(s3Client.getIndexedContentHashes(), contains(sha256OfResource(IMAGES_PATH, JPEG_FILE)));
+    }
+
+    @Test
+    void shouldCopyThumbnailsOfKnownContentInsteadOfRenderingItAgain() throws MalformedURLException {
+        var firstPath = randomS3Path();
+        var secondPath = randomS3Path();
+        var s3Client = new FakeS3ClientWithPutObjectSupport(JPEG_FILE, IMAGES_PATH, JPEG_MIME_TYPE);
+        var handler = new ThumbnailRequestHandler(s3Client, thumbnailerInitializer);
+        handler.handleRequest(createS3Event(List.of(firstPath)), CONTEXT);
+
+        var results = handler.handleRequest(createS3Event(List.of(secondPath)), CONTEXT);
+
+        assertThat(extractStatuses(results), contains(Status.SUCCESS));
+        assertThat(results.get(0).getThumbnailUrls(), contains(craftExpectedURL(secondPath)));
+        assertThat(s3Client.getCopyObjectKeys(), contains(secondPath.toString()));
+        assertThat(s3Client.getPutObjectKeys(), contains(firstPath.toString()));
+        assertThat(appender.getMessages(), containsString("Copied thumbnails of " + secondPath));
+    }
+
+    @Test
+    void shouldRenderKnownContentAgainWhenEarlierThumbnailsLackRequestedSize(@TempDir Path scratchDirectory) {
+        var firstPath = randomS3Path();
+        var secondPath = randomS3Path();
+        var smallSize = ThumbnailSize.parse("small:160x120");
+        var scratchSpace = new ScratchSpace(scratchDirectory, ScratchSpace.DEFAULT_QUOTA_BYTES);
+        var s3Client = new FakeS3ClientWithPutObjectSupport(JPEG_FILE, IMAGES_PATH, JPEG_MIME_TYPE);
+        new ThumbnailRequestHandler(s3Client, thumbnailerInitializer)
+            .handleRequest(createS3Event(List.of(firstPath)), CONTEXT);
+        var handler = new ThumbnailRequestHandler(s3Client, thumbnailerInitializer, SOME_WORKER_COUNT,
+                                                  scratchSpace, List.of(ThumbnailSize.DEFAULT, smallSize));
+
+        handler.handleRequest(createS3Event(List.of(secondPath)), CONTEXT);
+
+        var smallThumbnailPath = UnixPath.of(smallSize.getName(), secondPath.toString());
+        assertThat(s3Client.getPutObjectKeys(), containsInAnyOrder(firstPath.toString(), secondPath.toString(),
+                                                                   smallThumbnailPath.toString()));
+    }
+
+    @Test
+    void shouldUploadCachedThumbnailWhenRetryingAfterFailedUpload() {
+        var failedUploads = new AtomicInteger();
+        var s3Client = new FakeS3ClientWithPutObjectSupport(JPEG_FILE, IMAGES_PATH, JPEG_MIME_TYPE) {
+            @Override
+            public PutObjectResponse putObject(PutObjectRequest putObjectRequest, RequestBody requestBody) {
+                if (failedUploads.getAndIncrement() == 0) {
+                    throw SdkClientException.create("Unable to execute HTTP request");
+                }
+                return super.putObject(putObjectRequest, requestBody);
+            }
+        };
+        var handler = new ThumbnailRequestHandler(s3Client, thumbnailerInitializer);
+        var s3Event = createS3Event(List.of(randomS3Path()));
+        assertThrows(RuntimeException.class, () -> handler.handleRequest(s3Event, CONTEXT));
+
+        var results = handler.handleRequest(s3Event, CONTEXT);
+
+        assertThat(extractStatuses(results), contains(Status.SUCCESS));
+        assertThat(s3Client.getGetObjectCount(), is(equalTo(1)));
+        assertThat(s3Client.getPutObjectContentTypes(), contains(JPEG_MIME_TYPE));
+        assertThat(appender.getMessages(), containsString("Thumbnail cache: 1 hits"));
+    }
+
+    @Test
+    void shouldCopyThumbnailsUploadedFromCacheForLaterCopiesOfSameContent() throws MalformedURLException {
+        var firstPath = randomS3Path();
+        var secondPath = randomS3Path();
+        var failedUploads = new AtomicInteger();
+        var s3Client = new FakeS3ClientWithPutObjectSupport(JPEG_FILE, IMAGES_PATH, JPEG_MIME_TYPE) {
+            @Override
+            public PutObjectResponse putObject(PutObjectRequest putObjectRequest, RequestBody requestBody) {
+                if (failedUploads.getAndIncrement() == 0) {
+                    throw SdkClientException.create("Unable to execute HTTP request");
+                }
+                return super.putObject(putObjectRequest, requestBody);
+            }
+        };
+        var handler = new ThumbnailRequestHandler(s3Client, thumbnailerInitializer);
+        var s3Event = createS3Event(List.of(firstPath));
+        assertThrows(RuntimeException.class, () -> handler.handleRequest(s3Event, CONTEXT));
+        handler.handleRequest(s3Event, CONTEXT);
+
+        var results = handler.handleRequest(createS3Event(List.of(secondPath)), CONTEXT);
+
+        assertThat(extractStatuses(results), contains(Status.SUCCESS));
+        assertThat(results.get(0).getThumbnailUrls(), contains(craftExpectedURL(secondPath)));
+        assertThat(s3Client.getCopyObjectKeys(), contains(secondPath.toString()));
+        assertThat(s3Client.getPutObjectKeys(), contains(firstPath.toString()));
+        assertThat(s3Client.getPutObjectMetadata().get(0), hasKey("content-sha256"));
+    }
+
+    @Test
+    void shouldWriteStageMetricsOfEveryRecordToStandardOutput() throws JsonProcessingException {
+        var s3Client = new FakeS3ClientWithPutObjectSupport(PDF_FILENAME, DOCUMENTS_PATH, PDF_MIMETYPE);
+        var handler = new ThumbnailRequestHandler(s3Client, thumbnailerInitializer);
+        var output = new ByteArrayOutputStream();
+        var standardOutput = System.out;
+        System.setOut(new PrintStream(output, true, StandardCharsets.UTF_8));
+        try {
+            handler.handleRequest(createS3Event(List.of(randomS3Path())), CONTEXT);
+        } finally {
+            System.setOut(standardOutput);
+        }
+
+        var metricsLine = output.toString(StandardCharsets.UTF_8).lines()
+                              .filter(line -> line.startsWith("{\"_aws\""))
+                              .findFirst()
+                              .orElseThrow();
+        var metrics = dtoObjectMapper.readTree(metricsLine);
+        assertThat(metrics.get(StageMetrics.ENGINE_DIMENSION).asText(), is(equalTo("PdfThumbnailer")));
+        assertThat(metrics.get(StageMetrics.MIME_TYPE_PROPERTY).asText(), is(equalTo(PDF_MIMETYPE)));
+        assertThat(metrics.get(StageMetrics.STATUS_PROPERTY).asText(), is(equalTo(Status.SUCCESS.name())));
+        assertThat(metrics.get(StageMetrics.THUMBNAIL_SOURCE_PROPERTY).asText(), is(equalTo("Render")));
+        assertThat(metrics.get(StageMetrics.DOWNLOADED_BYTES).asLong(), is(greaterThan(0L)));
+        assertThat(metrics.get(StageMetrics.UPLOADED_BYTES).asLong(), is(greaterThan(0L)));
+        assertThat(metrics.get(StageMetrics.SOURCE_WIDTH).asDouble(), is(greaterThan(0.0)));
+        for (var stage : List.of(StageMetrics.DOWNLOAD_TIME, StageMetrics.GENERATE_TIME, StageMetrics.RENDER_TIME,
+                                 StageMetrics.ENCODE_TIME, StageMetrics.UPLOAD_TIME, StageMetrics.TOTAL_TIME)) {
+            assertThat(stage, metrics.has(stage), is(true));
+        }
+    }
+
+    @Test
+    void shouldStorePhotographicThumbnailAsJpeg() {
+        var s3Client = new FakeS3ClientWithPutObjectSupport(JPEG_FILE, IMAGES_PATH, JPEG_MIME_TYPE);
+        var handler = new ThumbnailRequestHandler(s3Client, thumbnailerInitializer);
+
+        handler.handleRequest(createS3Event(List.of(randomS3Path())), CONTEXT);
+
+        assertThat(s3Client.getPutObjectContentTypes(), contains(JPEG_MIME_TYPE));
+    }
+
+    @Test
+    void shouldStoreDocumentThumbnailAsPng() {
+        var s3Client = new FakeS3ClientWithPutObjectSupport(OPEN_OFFICE_TEXT_FILE, DOCUMENTS_PATH, OOT_MIME_TYPE);
+        var handler = new ThumbnailRequestHandler(s3Client, thumbnailerInitializer);
+
+        handler.handleRequest(createS3Event(List.of(randomS3Path())), CONTEXT);
+
+        assertThat(s3Client.getPutObjectContentTypes(), contains(PNG_MIME_TYPE));
+    }
+
+    @Test
+    void shouldLetFFmpegReadLargeVideoFromPresignedUrlInsteadOfDownloadingIt(@TempDir Path scratchDirectory)
+        throws IOException {
+        var ffmpeg = new FakeFFmpeg();
+        var ffprobe = new FakeFFprobe();
+        var initializer = new ThumbnailerInitializer.Builder().withFFmpeg(ffmpeg).withFFprobe(ffprobe).build();
+        var scratchSpace = new ScratchSpace(scratchDirectory, OUTPUT_RESERVE_BYTES);
+        var s3Client = new FakeS3ClientWithPutObjectSupport(QUICK_TIME_MOVIE_FILENAME, MOVIE_PATH, MP4_MIME_TYPE);
+        var handler = new ThumbnailRequestHandler(s3Client, initializer, SOME_WORKER_COUNT, scratchSpace,
+                                                  List.of(ThumbnailSize.DEFAULT), createPresigner());
+        var s3Path = randomS3Path();
+
+        handler.handleRequest(createS3Event(s3Path, LARGE_FILE_SIZE), CONTEXT);
+
+        var input = ffprobe.getProbedPaths().get(0);
+        var arguments = ffmpeg.getInvocations().get(0);
+        // Only the head of the video is read, to check its type.
+        assertThat(s3Client.getGetObjectCount(), is(equalTo(1)));
+        assertThat(input, containsString(s3Path.toString()));
+        assertThat(input, containsString("X-Amz-Signature="));
+        assertThat(arguments.get(arguments.indexOf("-i") + 1), is(equalTo(input)));
+        assertThat(s3Client.getPutObjectKeys(), contains(s3Path.toString()));
+    }
+
+    @Test
+    void shouldDownloadLargeInputWhenThumbnailerCannotReadUrls(@TempDir Path scratchDirectory) {
+        var scratchSpace = new ScratchSpace(scratchDirectory, LARGE_FILE_SIZE + OUTPUT_RESERVE_BYTES);
+        var s3Client = new FakeS3ClientWithPutObjectSupport(JPEG_FILE, IMAGES_PATH, JPEG_MIME_TYPE);
+        var handler = new ThumbnailRequestHandler(s3Client, thumbnailerInitializer, SOME_WORKER_COUNT,
+                                                  scratchSpace, List.of(ThumbnailSize.DEFAULT), createPresigner());
+
+        handler.handleRequest(createS3Event(randomS3Path(), LARGE_FILE_SIZE), CONTEXT);
+
+        assertThat(s3Client.getGetObjectCount(), is(equalTo(1)));
+        assertThat(s3Client.getPutObjectContentTypes(), contains(JPEG_MIME_TYPE));
+    }
+
+    @Test
+    void shouldReadPreviewOfLargeOpenOfficeDocumentWithRangeRequests(@TempDir Path scratchDirectory)
+        throws IOException, URISyntaxException {
+        var resource = UnixPath.of(DOCUMENTS_PATH, OPEN_OFFICE_TEXT_FILE).toString();
+        var document = Path.of(getClass().getClassLoader().getResource(resource).toURI());
+        var scratchSpace = new ScratchSpace(scratchDirectory, OUTPUT_RESERVE_BYTES);
+        var s3Client = new FakeS3ClientWithPutObjectSupport(OPEN_OFFICE_TEXT_FILE, DOCUMENTS_PATH, OOT_MIME_TYPE);
+        try (var server = new RangeHttpServer(document)) {
+            var handler = new ThumbnailRequestHandler(s3Client, thumbnailerInitializer, SOME_WORKER_COUNT,
+                                                      scratchSpace, List.of(ThumbnailSize.DEFAULT),
+                                                      createPresigner(server.getUrl(ROOT_PATH).toURI()));
+
+            handler.handleRequest(createS3Event(randomS3Path(), LARGE_FILE_SIZE), CONTEXT);
+
+            assertThat(s3Client.getGetObjectCount(), is(equalTo(1)));
+            // The document is smaller than the tail read to find the central directory.
+            assertThat(server.getRangeHeaders(), contains(startsWith("bytes=-")));
+            assertThat(s3Client.getPutObjectContentTypes(), contains(PNG_MIME_TYPE));
+        }
+    }
+
     /*
         OpenOffice documents:
      */
+    @Test
+    void shouldCreateThumbnailFromPdfStoredAsOctetStream() throws IOException {
+        var shouldHaveContentDisposition = false;
+        assertThumbnailGenerated(DOCUMENTS_PATH, PDF_FILENAME, APPLICATION_OCTET_STREAM_MIME_TYPE,
+                                 shouldHaveContentDisposition);
+        assertThat(appender.getMessages(), containsString(PDF_MIMETYPE));
+    }
+
+    @Test
+    void shouldCreateThumbnailFromImageStoredWithWrongType() throws IOException {
+        var shouldHaveContentDisposition = true;
+        assertThumbnailGenerated(IMAGES_PATH, JPEG_FILE, PDF_MIMETYPE, shouldHaveContentDisposition);
+    }
+
+    @Test
+    void shouldReadHeadOfLargeInputWhenDeclaredTypeIsNotSupported(@TempDir Path scratchDirectory) {
+        var scratchSpace = new ScratchSpace(scratchDirectory, LARGE_FILE_SIZE + OUTPUT_RESERVE_BYTES);
+        var ranges = new ArrayList<String>();
+        var s3Client = new FakeS3ClientWithPutObjectSupport(PDF_FILENAME, DOCUMENTS_PATH,
+                                                            APPLICATION_OCTET_STREAM_MIME_TYPE) {
+            @Override
+            public ResponseInputStream getObject(GetObjectRequest getObjectRequest) {
+                ranges.add(getObjectRequest.range());
+                return super.getObject(getObjectRequest);
+            }
+        };
+        var handler = new ThumbnailRequestHandler(s3Client, thumbnailerInitializer, SOME_WORKER_COUNT,
+                                                  scratchSpace, List.of(ThumbnailSize.DEFAULT), createPresigner());
+
+        var results = handler.handleRequest(createS3Event(randomS3Path(), LARGE_FILE_SIZE), CONTEXT);
+
+        assertThat(extractStatuses(results), contains(Status.SUCCESS));
+        assertThat(ranges, contains("bytes=0-8191", null));
+    }
+
+    @Test
+    void shouldDownloadLargeInputWhenContentContradictsDeclaredType(@TempDir Path scratchDirectory) {
+        var ffprobe = new FakeFFprobe();
+        var initializer = new ThumbnailerInitializer.Builder().withFFmpeg(new FakeFFmpeg()).withFFprobe(ffprobe)
+                              .build();
+        var scratchSpace = new ScratchSpace(scratchDirectory, LARGE_FILE_SIZE + OUTPUT_RESERVE_BYTES);
+        var ranges = new ArrayList<String>();
+        var s3Client = new FakeS3ClientWithPutObjectSupport(JPEG_FILE, IMAGES_PATH, MP4_MIME_TYPE) {
+            @Override
+            public ResponseInputStream getObject(GetObjectRequest getObjectRequest) {
+                ranges.add(getObjectRequest.range());
+                return super.getObject(getObjectRequest);
+            }
+        };
+        var handler = new ThumbnailRequestHandler(s3Client, initializer, SOME_WORKER_COUNT, scratchSpace,
+                                                  List.of(ThumbnailSize.DEFAULT), createPresigner());
+
+        var results = handler.handleRequest(createS3Event(randomS3Path(), LARGE_FILE_SIZE), CONTEXT);
+
+        assertThat(extractStatuses(results), contains(Status.SUCCESS));
+        assertThat(ranges, contains("bytes=0-8191", null));
+        assertThat(ffprobe.getProbedPaths(), is(empty()));
+    }
+
+    @Test
+    void shouldRejectLargeInputOfUnknownTypeWithoutDownloadingIt(@TempDir Path scratchDirectory) {
+        var scratchSpace = new ScratchSpace(scratchDirectory, OUTPUT_RESERVE_BYTES);
+        var s3Client = new FakeS3ClientWithPutObjectSupport(BINARY_FILE, UNSUPPORTED_FILES_PATH,
+                                                            APPLICATION_OCTET_STREAM_MIME_TYPE);
+        var handler = new ThumbnailRequestHandler(s3Client, thumbnailerInitializer, SOME_WORKER_COUNT,
+                                                  scratchSpace, List.of(ThumbnailSize.DEFAULT), createPresigner());
+        var s3Event = createS3Event(randomS3Path(), LARGE_FILE_SIZE);
+
+        var exception = assertThrows(RuntimeException.class, () -> handler.handleRequest(s3Event, CONTEXT));
+
+        assertThat(exception.getMessage(), containsString("Not supported mimetype"));
+        assertThat(s3Client.getGetObjectCount(), is(equalTo(1)));
+        assertThat(scratchSpace.getReservedBytes(), is(equalTo(0L)));
+    }
+
     @Test
     void shouldThrowExceptionWhenOpenOfficeDocumentIsNotZip() throws IOException {
         var s3Client = new FakeS3ClientWithPutObjectSupport(OPEN_OFFICE_TEXT_NOT_ZIP_FILE,
@@ -308,9 +769,18 @@ class ThumbnailRequestHandlerTest {
                                                             shouldHaveContentDisposition);
         var s3Event = createNewFileUploadEvent(UnixPath.of(folderName, fileName), s3Client, s3Path);
         var handler = new ThumbnailRequestHandler(s3Client, thumbnailerInitializer);
-        var thumbnailUrl = handler.handleRequest(s3Event, CONTEXT);
+        var results = handler.handleRequest(s3Event, CONTEXT);
 
-        assertThat(thumbnailUrl, is(equalTo(expectedThumbnailURL)));
+        assertThat(extractStatuses(results), contains(Status.SUCCESS));
+        assertThat(results.get(0).getThumbnailUrl(), is(equalTo(expectedThumbnailURL)));
+    }
+
+    private static String sha256OfResource(String path, String filename)
+        throws IOException, NoSuchAlgorithmException {
+        try (var inputStream = IoUtils.inputStreamFromResources(UnixPath.of(path, filename).toString())) {
+            var digest = MessageDigest.getInstance("SHA-256").digest(inputStream.readAllBytes());
+            return String.format("%064x", new BigInteger(1, digest));
+        }
     }
 
     private URL craftExpectedURL(UnixPath s3Path) throws MalformedURLException {
@@ -342,26 +812,75 @@ class ThumbnailRequestHandlerTest {
     }
 
     private S3Event createS3Event(String expectedObjectKey) {
-        var eventNotification = new S3EventNotificationRecord(randomString(),
-                                                              randomString(),
-                                                              randomString(),
-                                                              randomDate(),
-                                                              randomString(),
-                                                              EMPTY_REQUEST_PARAMETERS,
-                                                              EMPTY_RESPONSE_ELEMENTS,
-                                                              createS3Entity(expectedObjectKey),
-                                                              EMPTY_USER_IDENTITY);
-        return new S3Event(List.of(eventNotification));
-    }
-
-    private S3Entity createS3Entity(String expectedObjectKey) {
+        return new S3Event(List.of(createEventRecord(expectedObjectKey)));
+    }
+
+    private S3Event createS3Event(List<UnixPath> objectKeys) {
+        return new S3Event(objectKeys.stream()
+                               .map(UnixPath::toString)
+                               .map(this::createEventRecord)
+                               .collect(Collectors.toList()));
+    }
+
+    private S3Event createS3Event(UnixPath objectKey, long objectSize) {
+        return new S3Event(List.of(createEventRecord(objectKey.toString(), objectSize)));
+    }
+
+    private S3EventNotificationRecord createEventRecord(String expectedObjectKey) {
+        return createEventRecord(expectedObjectKey, SOME_FILE_SIZE);
+    }
+
+    private S3EventNotificationRecord createEventRecord(String expectedObjectKey, long objectSize) {
+        return new S3EventNotificationRecord(randomString(),
+                                             randomString(),
+                                             randomString(),
+                                             randomDate(),
+                                             randomString(),
+                                             EMPTY_REQUEST_PARAMETERS,
+                                             EMPTY_RESPONSE_ELEMENTS,
+                                             createS3Entity(expectedObjectKey, objectSize),
+                                             EMPTY_USER_IDENTITY);
+    }
+
+    private S3Entity createS3Entity(String expectedObjectKey, long objectSize) {
         var bucket = new S3BucketEntity(randomString(), EMPTY_USER_IDENTITY, randomString());
-        var object = new S3ObjectEntity(expectedObjectKey, SOME_FILE_SIZE, randomString(), randomString(),
+        var object = new S3ObjectEntity(expectedObjectKey, objectSize, randomString(), randomString(),
                                         randomString());
         var schemaVersion = randomString();
         return new S3Entity(randomString(), bucket, object, schemaVersion);
     }
 
+    private S3Presigner createPresigner() {
+        return S3Presigner.builder()
+                   .region(Region.EU_WEST_1)
+                   .credentialsProvider(StaticCredentialsProvider.create(
+                       AwsBasicCredentials.create(randomString(), randomString())))
+                   .build();
+    }
+
+    // Path style addressing, so every presigned URL points at the server standing in for S3.
+    private S3Presigner createPresigner(URI endpoint) {
+        return S3Presigner.builder()
+                   .region(Region.EU_WEST_1)
+                   .endpointOverride(endpoint)
+                   .serviceConfiguration(S3Configuration.builder().pathStyleAccessEnabled(true).build())
+                   .credentialsProvider(StaticCredentialsProvider.create(
+                       AwsBasicCredentials.create(randomString(), randomString())))
+                   .build();
+    }
+
+    private List<String> extractObjectKeys(List<ThumbnailResult> results) {
+        return results.stream().map(ThumbnailResult::getObjectKey).collect(Collectors.toList());
+    }
+
+    private List<Status> extractStatuses(List<ThumbnailResult> results) {
+        return results.stream().map(ThumbnailResult::getStatus).collect(Collectors.toList());
+    }
+
+    private List<String> toStrings(List<UnixPath> paths) {
+        return paths.stream().map(UnixPath::toString).collect(Collectors.toList());
+    }
+
     private String randomDate() {
         return Instant.now().toString();
     }
@@ -0,0 +1,85 @@
+package no.sikt.nva.thumbnail;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import java.util.ArrayList;
+import java.util.stream.Collectors;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+class ThumbnailSizeTest {
+
+    @Test
+    void shouldParseListOfNamedAndUnnamedSizes() {
+        var sizes = ThumbnailSize.parseList("400x300, small:160x120,large-2x:1200x900");
+
+        assertThat(sizes.stream().map(ThumbnailSize::toString).collect(Collectors.toList()),
+                   contains("400x300", "small:160x120", "large-2x:1200x900"));
+        assertThat(sizes.get(0).isNamed(), is(false));
+        assertThat(sizes.get(1).getName(), is(equalTo("small")));
+        assertThat(sizes.get(1).getWidth(), is(equalTo(160)));
+        assertThat(sizes.get(1).getHeight(), is(equalTo(120)));
+    }
+
+    @Test
+    void shouldOrderSizesFromLargestToSmallest() {
+        var sizes = new ArrayList<>(ThumbnailSize.parseList("small:160x120,400x300,large:1200x900"));
+
+        sizes.sort(ThumbnailSize.LARGEST_FIRST);
+
+        assertThat(sizes.stream().map(ThumbnailSize::toString).collect(Collectors.toList()),
+                   contains("large:1200x900", "400x300", "small:160x120"));
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"", "400", "400x", "small:", "small 160x120", "a/b:160x120", "0x300", "400x0"})
+    void shouldRejectInvalidSizes(String size) {
+        assertThrows(IllegalArgumentException.class, () -> ThumbnailSize.parse(size));
+    }
+
+    @Test
+    void shouldRejectReservedName() {
+        var exception = assertThrows(IllegalArgumentException.class,
+                                     () -> ThumbnailSize.parse("content-index:160x120"));
+
+        assertThat(exception.getMessage(), containsString("reserved"));
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"400x300,400x300", "400x300,200x150", "small:160x120, small:80x60"})
+    void shouldRejectSizesSharingName(String sizes) {
+        var exception = assertThrows(IllegalArgumentException.class, () -> ThumbnailSize.parseList(sizes));
+
+        assertThat(exception.getMessage(), containsString("more than once"));
+    }
+
+    @Test
+    void shouldFindBoxEverySizeFitsIn() {
+        var sizes = ThumbnailSize.parseList("banner:1200x200,square:400x400");
+
+        var boundingBox = ThumbnailSize.boundingBox(sizes);
+
+        assertThat(boundingBox, is(equalTo(ThumbnailSize.parse("1200x400"))));
+        assertThat(boundingBox.contains(sizes.get(0)), is(true));
+        assertThat(boundingBox.contains(sizes.get(1)), is(true));
+        assertThat(sizes.get(0).contains(sizes.get(1)), is(false));
+    }
+
+    @Test
+    void shouldCompareSizesByNameAndDimensions() {
+        var size = ThumbnailSize.parse("small:160x120");
+
+        assertThat(size, is(equalTo(ThumbnailSize.parse("small:160x120"))));
+        assertThat(size.hashCode(), is(equalTo(ThumbnailSize.parse("small:160x120").hashCode())));
+        assertThat(size, is(not(equalTo(ThumbnailSize.parse("160x120")))));
+        assertThat(size, is(not(equalTo(ThumbnailSize.parse("small:160x90")))));
+        assertThat(size, is(not(equalTo(ThumbnailSize.parse("small:120x120")))));
+        assertThat(size, is(not(equalTo((Object) size.toString()))));
+    }
+}
@@ -0,0 +1,128 @@
+package no.sikt.nva.thumbnail;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.hasEntry;
+import static org.hamcrest.Matchers.is;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import no.sikt.nva.testutils.thumbnailer.FakeFFmpeg;
+import no.sikt.nva.testutils.thumbnailer.FakeFFprobe;
+import no.sikt.nva.thumbnail.ThumbnailerManager.Registration;
+import no.sikt.nva.thumbnail.thumbnailer.FFMpegThumbnailer;
+import no.sikt.nva.thumbnail.thumbnailer.MsOfficeThumbnailer;
+import no.sikt.nva.thumbnail.thumbnailer.NativeImageThumbnailer;
+import no.sikt.nva.thumbnail.thumbnailer.OpenOfficeThumbnailer;
+import no.sikt.nva.thumbnail.thumbnailer.PdfThumbnailer;
+import no.sikt.nva.thumbnail.thumbnailer.ThumbnailerInitializer;
+import no.sikt.nva.thumbnail.util.ThumbnailEncoder;
+import org.junit.jupiter.api.Test;
+
+class ThumbnailerManagerTest {
+
+    private static final String PDF_MIME_TYPE = "application/pdf";
+    private static final String ODT_MIME_TYPE = "application/vnd.oasis.opendocument.text";
+    private static final String UNKNOWN_MIME_TYPE = "application/x-unknown";
+    private static final String OCTET_STREAM_MIME_TYPE = "application/octet-stream";
+    private static final String PDF_HEAD = "%PDF-1.7\n";
+
+    @Test
+    void shouldRouteEveryAcceptedMimeTypeOfDefaultThumbnailers() throws IOException {
+        var thumbnailerManager = new ThumbnailerManager(new ThumbnailerInitializer.Builder()
+                                                            .withFFmpeg(new FakeFFmpeg())
+                                                            .withFFprobe(new FakeFFprobe())
+                                                            .build());
+
+        var routingTable = thumbnailerManager.getRoutingTable();
+
+        assertThat(routingTable, hasEntry("image/jpeg", NativeImageThumbnailer.class.getSimpleName()));
+        assertThat(routingTable, hasEntry("video/mp4", FFMpegThumbnailer.class.getSimpleName()));
+        assertThat(routingTable, hasEntry(PDF_MIME_TYPE, PdfThumbnailer.class.getSimpleName()));
+        assertThat(routingTable, hasEntry("application/msword", MsOfficeThumbnailer.class.getSimpleName()));
+        assertThat(routingTable, hasEntry(ODT_MIME_TYPE, OpenOfficeThumbnailer.class.getSimpleName()));
+        assertThat(thumbnailerManager.supportsUrlInput("video/mp4"), is(true));
+        assertThat(thumbnailerManager.supportsUrlInput(PDF_MIME_TYPE), is(false));
+    }
+
+    @Test
+    void shouldCreateThumbnailerOnceWhenFirstInputOfItsTypeArrives() {
+        var pdfThumbnailers = new AtomicInteger();
+        var openOfficeThumbnailers = new AtomicInteger();
+        var thumbnailerManager = new ThumbnailerManager(
+            List.of(new Registration(PdfThumbnailer.class, List.of(PDF_MIME_TYPE), () -> {
+                        pdfThumbnailers.incrementAndGet();
+                        return new PdfThumbnailer();
+                    }),
+                    new Registration(OpenOfficeThumbnailer.class, List.of(ODT_MIME_TYPE), () -> {
+                        openOfficeThumbnailers.incrementAndGet();
+                        return new OpenOfficeThumbnailer();
+                    })),
+            new ThumbnailEncoder());
+
+        thumbnailerManager.getRoutingTable();
+        thumbnailerManager.getAcceptedMimeTypes();
+        assertThat(pdfThumbnailers.get(), is(equalTo(0)));
+
+        thumbnailerManager.supportsUrlInput(PDF_MIME_TYPE);
+        thumbnailerManager.supportsUrlInput(PDF_MIME_TYPE);
+
+        assertThat(pdfThumbnailers.get(), is(equalTo(1)));
+        assertThat(openOfficeThumbnailers.get(), is(equalTo(0)));
+    }
+
+    @Test
+    void shouldRouteMimeTypeToFirstThumbnailerAcceptingIt() {
+        var thumbnailerManager = new ThumbnailerManager(
+            List.of(new Registration(PdfThumbnailer.class, List.of(PDF_MIME_TYPE), PdfThumbnailer::new),
+                    new Registration(OpenOfficeThumbnailer.class, List.of(ODT_MIME_TYPE, PDF_MIME_TYPE),
+                                     OpenOfficeThumbnailer::new)),
+            new ThumbnailEncoder());
+
+        assertThat(thumbnailerManager.getRoutingTable(), hasEntry(PDF_MIME_TYPE, "PdfThumbnailer"));
+        assertThat(thumbnailerManager.getAcceptedMimeTypes(), contains(PDF_MIME_TYPE, ODT_MIME_TYPE));
+    }
+
+    @Test
+    void shouldRouteInputByContentWhenDeclaredTypeDisagrees() {
+        var thumbnailerManager = new ThumbnailerManager(
+            List.of(new Registration(PdfThumbnailer.class, List.of(PDF_MIME_TYPE), PdfThumbnailer::new)),
+            new ThumbnailEncoder());
+        var head = PDF_HEAD.getBytes(StandardCharsets.US_ASCII);
+
+        assertThat(thumbnailerManager.resolveMimeType(OCTET_STREAM_MIME_TYPE, head), is(equalTo(PDF_MIME_TYPE)));
+        assertThat(thumbnailerManager.resolveMimeType(null, head), is(equalTo(PDF_MIME_TYPE)));
+        assertThat(thumbnailerManager.supports(PDF_MIME_TYPE), is(true));
+    }
+
+    @Test
+    void shouldKeepDeclaredTypeWhenContentIsNotIdentifiedOrNotSupported() {
+        var thumbnailerManager = new ThumbnailerManager(
+            List.of(new Registration(OpenOfficeThumbnailer.class, List.of(ODT_MIME_TYPE), OpenOfficeThumbnailer::new)),
+            new ThumbnailEncoder());
+
+        var unknownContent = new byte[]{1, 2, 3};
+        var pdfContent = PDF_HEAD.getBytes(StandardCharsets.US_ASCII);
+
+        assertThat(thumbnailerManager.resolveMimeType(ODT_MIME_TYPE, unknownContent), is(equalTo(ODT_MIME_TYPE)));
+        assertThat(thumbnailerManager.resolveMimeType(ODT_MIME_TYPE, pdfContent), is(equalTo(ODT_MIME_TYPE)));
+        assertThat(thumbnailerManager.supports(PDF_MIME_TYPE), is(false));
+    }
+
+    @Test
+    void shouldThrowExceptionWhenNoThumbnailerAcceptsMimeType() {
+        var thumbnailerManager = new ThumbnailerManager(List.of(), new ThumbnailEncoder());
+        var input = new File("input");
+
+        assertThrows(ThumbnailerException.class,
+                     () -> thumbnailerManager.generateThumbnails(input, Map.of(), UNKNOWN_MIME_TYPE));
+        assertThrows(ThumbnailerException.class,
+                     () -> thumbnailerManager.generateThumbnails(input.toURI().toURL(), Map.of(), null));
+        assertThat(thumbnailerManager.supportsUrlInput(UNKNOWN_MIME_TYPE), is(false));
+    }
+}
@@ -0,0 +1,326 @@
+package no.sikt.nva.thumbnail.thumbnailer;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.hasItem;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThan;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.nullValue;
+import static org.hamcrest.Matchers.startsWith;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+import java.io.File;
+import java.io.IOException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.List;
+import javax.imageio.ImageIO;
+import net.bramp.ffmpeg.FFmpeg;
+import net.bramp.ffmpeg.FFprobe;
+import net.bramp.ffmpeg.probe.FFmpegProbeResult;
+import net.bramp.ffmpeg.probe.FFmpegStream.CodecType;
+import no.sikt.nva.testutils.RangeHttpServer;
+import no.sikt.nva.testutils.thumbnailer.FakeFFmpeg;
+import no.sikt.nva.testutils.thumbnailer.FakeFFprobe;
+import no.sikt.nva.thumbnail.ThumbnailerException;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+
+class FFMpegThumbnailerTest {
+
+    private static final int TARGET_WIDTH = 400;
+    private static final int TARGET_HEIGHT = 300;
+    private static final int FRAME_WIDTH = 194;
+    private static final int FRAME_HEIGHT = 259;
+    private static final String VIDEO_FILE = "video.mp4";
+    private static final double SOME_SEEK_POSITION = 1.5;
+    private static final int FRAME_SIDE = 8;
+    private static final int RGB_MASK = 0xFFFFFF;
+    private static final int DARK_GREY = 0x101010;
+    private static final int LIGHT_GREY = 0xC0C0C0;
+    private static final int WHITE = 0xFFFFFF;
+    private static final String PRESIGNED_URL =
+        "https://input-bucket.s3.eu-west-1.amazonaws.com/video.mp4?X-Amz-Signature=abc123";
+    private static final String TEST_VIDEO_SOURCE = "testsrc=duration=20:size=640x360:rate=25";
+    private static final Duration SHORT_TIMEOUT = Duration.ofMillis(500);
+
+    @TempDir
+    Path temporaryDirectory;
+
+    @Test
+    void shouldReadFrameFromFFmpegOutputPipe() throws IOException {
+        var ffmpeg = new FakeFFmpeg();
+
+        var frame = createThumbnailer(ffmpeg).renderImage(videoFile(), TARGET_WIDTH, TARGET_HEIGHT);
+
+        assertThat(frame.getWidth(), is(equalTo(FRAME_WIDTH)));
+        assertThat(frame.getHeight(), is(equalTo(FRAME_HEIGHT)));
+        assertThat(ffmpeg.getInvocations().size(), is(equalTo(1)));
+    }
+
+    @Test
+    void shouldSeekInInputAndScaleInFilterGraph() {
+        var arguments = FFMpegThumbnailer.createArguments(VIDEO_FILE, SOME_SEEK_POSITION, TARGET_WIDTH,
+                                                          TARGET_HEIGHT);
+
+        assertThat(arguments.indexOf("-ss"), is(lessThan(arguments.indexOf("-i"))));
+        assertThat(arguments.get(arguments.indexOf("-ss") + 1), is(equalTo("1.500")));
+        assertThat(arguments.get(arguments.indexOf("-vf") + 1), containsString("min(iw,400)':'min(ih,300)'"));
+        assertThat(arguments, hasItem("image2pipe"));
+        assertThat(arguments.get(arguments.size() - 1), is(equalTo("-")));
+    }
+
+    @Test
+    void shouldDecodeOnlyKeyframesAndKeepKeyframeBeforeSeekPosition() {
+        var arguments = FFMpegThumbnailer.createArguments(VIDEO_FILE, SOME_SEEK_POSITION, TARGET_WIDTH,
+                                                          TARGET_HEIGHT);
+
+        assertThat(arguments.get(arguments.indexOf("-skip_frame") + 1), is(equalTo("nokey")));
+        assertThat(arguments.indexOf("-skip_frame"), is(lessThan(arguments.indexOf("-i"))));
+        assertThat(arguments.indexOf("-noaccurate_seek"), is(lessThan(arguments.indexOf("-i"))));
+        assertThat(arguments.get(arguments.indexOf("-frames:v") + 1),
+                   is(equalTo(String.valueOf(FFMpegThumbnailer.CANDIDATE_KEYFRAMES))));
+    }
+
+    @ParameterizedTest
+    @CsvSource({"2.0,0.200", "0.4,0.040", "7200.0,720.000", "0.0,0.000"})
+    void shouldSeekRelativeToDurationReportedByProbe(double duration, String expectedSeekPosition)
+        throws IOException {
+        var ffmpeg = new FakeFFmpeg();
+        var ffprobe = new FakeFFprobe(FakeFFprobe.createProbeResult(duration, CodecType.VIDEO));
+
+        createThumbnailer(ffmpeg, ffprobe).renderImage(videoFile(), TARGET_WIDTH, TARGET_HEIGHT);
+
+        var arguments = ffmpeg.getInvocations().get(0);
+        assertThat(arguments.get(arguments.indexOf("-ss") + 1), is(equalTo(expectedSeekPosition)));
+    }
+
+    @Test
+    void shouldUseStreamDurationWhenFormatHasNoDuration() throws IOException {
+        var ffmpeg = new FakeFFmpeg();
+        var probeResult = FakeFFprobe.createProbeResult(20.0, CodecType.VIDEO);
+        probeResult.format = null;
+
+        createThumbnailer(ffmpeg, new FakeFFprobe(probeResult)).renderImage(videoFile(), TARGET_WIDTH,
+                                                                             TARGET_HEIGHT);
+
+        var arguments = ffmpeg.getInvocations().get(0);
+        assertThat(arguments.get(arguments.indexOf("-ss") + 1), is(equalTo("2.000")));
+    }
+
+    @Test
+    void shouldNotRunFFmpegWhenFileHasNoVideoStream() throws IOException {
+        var ffmpeg = new FakeFFmpeg();
+        var ffprobe = new FakeFFprobe(FakeFFprobe.createProbeResult(FakeFFprobe.DEFAULT_DURATION, CodecType.AUDIO));
+
+        var frame = createThumbnailer(ffmpeg, ffprobe).renderImage(videoFile(), TARGET_WIDTH, TARGET_HEIGHT);
+
+        assertThat(frame, is(nullValue()));
+        assertThat(ffmpeg.getInvocations(), is(empty()));
+    }
+
+    @Test
+    void shouldChooseFirstKeyframeThatIsNotDark() throws IOException {
+        var darkFrame = writeFrame("dark.ppm", DARK_GREY);
+        var brightFrame = writeFrame("bright.ppm", LIGHT_GREY);
+        var whiteFrame = writeFrame("white.ppm", WHITE);
+        var ffmpeg = new FakeFFmpeg(List.of("cat", darkFrame, brightFrame, whiteFrame));
+
+        var frame = createThumbnailer(ffmpeg).renderImage(videoFile(), TARGET_WIDTH, TARGET_HEIGHT);
+
+        assertThat(frame.getRGB(0, 0) & RGB_MASK, is(equalTo(LIGHT_GREY)));
+    }
+
+    @Test
+    void shouldReadHttpInputWithRangeRequestsOverOneConnection() {
+        var arguments = FFMpegThumbnailer.createArguments(PRESIGNED_URL, SOME_SEEK_POSITION, TARGET_WIDTH,
+                                                          TARGET_HEIGHT);
+
+        assertThat(arguments.get(arguments.indexOf("-seekable") + 1), is(equalTo("1")));
+        assertThat(arguments.get(arguments.indexOf("-multiple_requests") + 1), is(equalTo("1")));
+        assertThat(arguments.indexOf("-seekable"), is(lessThan(arguments.indexOf("-i"))));
+    }
+
+    @Test
+    void shouldNotPassHttpOptionsForLocalFiles() {
+        var arguments = FFMpegThumbnailer.createArguments(VIDEO_FILE, SOME_SEEK_POSITION, TARGET_WIDTH,
+                                                          TARGET_HEIGHT);
+
+        assertThat(arguments, not(hasItem("-seekable")));
+    }
+
+    @Test
+    void shouldGenerateThumbnailFromUrlWithoutWritingInputToDisk() throws IOException, ThumbnailerException {
+        var ffmpeg = new FakeFFmpeg();
+        var ffprobe = new FakeFFprobe();
+        var output = temporaryDirectory.resolve("thumbnail").toFile();
+        var thumbnailer = createThumbnailer(ffmpeg, ffprobe);
+
+        assertThat(thumbnailer.supportsUrlInput(), is(true));
+        thumbnailer.generateThumbnail(new URL(PRESIGNED_URL), output);
+
+        var arguments = ffmpeg.getInvocations().get(0);
+        assertThat(ffprobe.getProbedPaths(), contains(PRESIGNED_URL));
+        assertThat(arguments.get(arguments.indexOf("-i") + 1), is(equalTo(PRESIGNED_URL)));
+        assertThat(ImageIO.read(output).getWidth(), is(equalTo(TARGET_WIDTH)));
+        assertThat(temporaryDirectory.toFile().list(), is(equalTo(new String[]{output.getName()})));
+    }
+
+    @Test
+    void shouldReadVideoServedOverHttpWithRangeRequests() throws IOException, ThumbnailerException {
+        assumeTrue(isFFmpegInstalled(), "ffmpeg and ffprobe are not installed");
+        var video = createTestVideo();
+        var output = temporaryDirectory.resolve("thumbnail").toFile();
+        var thumbnailer = new FFMpegThumbnailer(new ThumbnailerInitializer.Builder()
+                                                    .withFFmpeg(new FFmpeg())
+                                                    .withFFprobe(new FFprobe())
+                                                    .build());
+
+        try (var server = new RangeHttpServer(video)) {
+            thumbnailer.generateThumbnail(server.getUrl("/" + VIDEO_FILE), output);
+
+            assertThat(ImageIO.read(output).getWidth(), is(equalTo(TARGET_WIDTH)));
+            assertThat(server.getRangeHeaders(), hasItem(not(startsWith("bytes=0-"))));
+        }
+    }
+
+    @Test
+    void shouldReportFFmpegErrorOutputWhenFFmpegFails() throws IOException {
+        var ffmpeg = new FakeFFmpeg(List.of("sh", "-c", "echo Invalid data found >&2; exit 1"));
+        var thumbnailer = createThumbnailer(ffmpeg);
+        var input = videoFile();
+
+        var exception = assertThrows(IOException.class,
+                                     () -> thumbnailer.renderImage(input, TARGET_WIDTH, TARGET_HEIGHT));
+
+        assertThat(exception.getMessage(), containsString("Invalid data found"));
+    }
+
+    @Test
+    void shouldKillFFmpegAndFailWhenItRunsLongerThanTimeout() throws IOException {
+        var thumbnailer = createThumbnailer(new FakeFFmpeg(List.of("sleep", "60")), new FakeFFprobe(),
+                                            SHORT_TIMEOUT);
+        var input = videoFile();
+
+        var startTime = System.nanoTime();
+        var exception = assertThrows(IOException.class,
+                                     () -> thumbnailer.renderImage(input, TARGET_WIDTH, TARGET_HEIGHT));
+
+        assertThat(exception.getMessage(), containsString("ffmpeg did not finish"));
+        assertThat(Duration.ofNanos(System.nanoTime() - startTime), is(lessThan(Duration.ofSeconds(30))));
+    }
+
+    @Test
+    void shouldFailWhenFFprobeRunsLongerThanTimeout() throws IOException {
+        var ffmpeg = new FakeFFmpeg();
+        var ffprobe = new FakeFFprobe() {
+            @Override
+            public FFmpegProbeResult probe(String mediaPath) {
+                try {
+                    Thread.sleep(Duration.ofSeconds(60).toMillis());
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return super.probe(mediaPath);
+            }
+        };
+        var thumbnailer = createThumbnailer(ffmpeg, ffprobe, SHORT_TIMEOUT);
+        var input = videoFile();
+
+        var exception = assertThrows(IOException.class,
+                                     () -> thumbnailer.renderImage(input, TARGET_WIDTH, TARGET_HEIGHT));
+
+        assertThat(exception.getMessage(), containsString("ffprobe did not finish"));
+        assertThat(ffmpeg.getInvocations(), is(empty()));
+    }
+
+    @Test
+    void shouldThrowExceptionWhenFFmpegWritesNoFrame() throws IOException {
+        var thumbnailer = createThumbnailer(new FakeFFmpeg(List.of("true")));
+        var input = videoFile();
+        var output = temporaryDirectory.resolve("thumbnail").toFile();
+
+        assertThrows(ThumbnailerException.class, () -> thumbnailer.generateThumbnail(input, output));
+    }
+
+    @Test
+    void shouldDeleteErrorLogWhenFrameHasBeenRead() throws IOException {
+        createThumbnailer(new FakeFFmpeg()).renderImage(videoFile(), TARGET_WIDTH, TARGET_HEIGHT);
+
+        assertThat(temporaryDirectory.toFile().list(), is(equalTo(new String[]{VIDEO_FILE})));
+    }
+
+    private FFMpegThumbnailer createThumbnailer(FakeFFmpeg ffmpeg) throws IOException {
+        return createThumbnailer(ffmpeg, new FakeFFprobe());
+    }
+
+    private FFMpegThumbnailer createThumbnailer(FakeFFmpeg ffmpeg, FakeFFprobe ffprobe) {
+        return createThumbnailer(ffmpeg, ffprobe, ThumbnailerInitializer.DEFAULT_PROCESS_TIMEOUT);
+    }
+
+    private FFMpegThumbnailer createThumbnailer(FakeFFmpeg ffmpeg, FakeFFprobe ffprobe, Duration processTimeout) {
+        return new FFMpegThumbnailer(new ThumbnailerInitializer.Builder()
+                                         .withFFmpeg(ffmpeg)
+                                         .withFFprobe(ffprobe)
+                                         .withProcessTimeout(processTimeout)
+                                         .build());
+    }
+
+    private static boolean isFFmpegInstalled() {
+        try {
+            return new FFmpeg().isFFmpeg() && new FFprobe().isFFprobe();
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    // A video with a keyframe every second and the index at the start, like most uploaded MP4 files.
+    private Path createTestVideo() throws IOException {
+        var video = temporaryDirectory.resolve(VIDEO_FILE);
+        var process = new ProcessBuilder("ffmpeg", "-nostdin", "-loglevel", "error",
+                                         "-f", "lavfi", "-i", TEST_VIDEO_SOURCE,
+                                         "-c:v", "mpeg4", "-g", "25", "-movflags", "+faststart",
+                                         video.toString())
+                          .inheritIO()
+                          .start();
+        try {
+            assertThat(process.waitFor(), is(equalTo(0)));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException(e);
+        }
+        return video;
+    }
+
+    private String writeFrame(String fileName, int rgb) throws IOException {
+        var frame = temporaryDirectory.resolve(fileName);
+        var header = String.format("P6\n%d %d\n255\n", FRAME_SIDE, FRAME_SIDE).getBytes(StandardCharsets.US_ASCII);
+        var pixels = new byte[FRAME_SIDE * FRAME_SIDE * 3];
+        for (var i = 0; i < pixels.length; i += 3) {
+            pixels[i] = (byte) (rgb >> 16);
+            pixels[i + 1] = (byte) (rgb >> 8);
+            pixels[i + 2] = (byte) rgb;
+        }
+        Files.write(frame, header);
+        Files.write(frame, pixels, StandardOpenOption.APPEND);
+        return frame.toString();
+    }
+
+    private File videoFile() throws IOException {
+        var file = temporaryDirectory.resolve(VIDEO_FILE).toFile();
+        if (!file.exists() && !file.createNewFile()) {
+            throw new IOException("Could not create " + file);
+        }
+        return file;
+    }
+}
@@ -0,0 +1,163 @@
+package no.sikt.nva.thumbnail.thumbnailer;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.notNullValue;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import javax.imageio.ImageIO;
+import no.sikt.nva.thumbnail.RenderPath;
+import no.sikt.nva.thumbnail.ThumbnailSize;
+import no.sikt.nva.thumbnail.ThumbnailerException;
+import no.sikt.nva.thumbnail.util.MediaType;
+import no.sikt.nva.thumbnail.util.PptxSlideTrimmer;
+import nva.commons.core.ioutils.IoUtils;
+import nva.commons.logutils.LogUtils;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class MsOfficeThumbnailerTest {
+
+    private static final String DOCUMENTS_PATH = "documents/";
+    private static final String WORD_DOCX_FILE = "word-document.docx";
+    private static final String DOCX_MIME_TYPE = MediaType.APPLICATION_OPEN_XML_OFFICE_WORD_DOC.getValue();
+    private static final String EXCEL_XLSX_FILE = "excel-document.xlsx";
+    private static final String XLSX_MIME_TYPE = MediaType.APPLICATION_OPEN_XML_OFFICE_SPREADSHEET_SHEET.getValue();
+    private static final String POWERPOINT_PPTX_FILE = "powerpoint-presentation.pptx";
+    private static final String PPTX_MIME_TYPE =
+        MediaType.APPLICATION_OPEN_XML_OFFICE_PRESENTATION_PRESENTATION.getValue();
+    private static final double NO_PREVIEW_UPSCALE = 1.0;
+
+    @TempDir
+    Path temporaryDirectory;
+
+    @Test
+    void shouldWriteEverySizeWhenGeneratingSeveralThumbnails() throws IOException, ThumbnailerException {
+        var input = copyResource(WORD_DOCX_FILE);
+        var outputs = new LinkedHashMap<ThumbnailSize, File>();
+        outputs.put(ThumbnailSize.DEFAULT, temporaryDirectory.resolve("default.png").toFile());
+        outputs.put(ThumbnailSize.parse("small:160x120"), temporaryDirectory.resolve("small.png").toFile());
+
+        new MsOfficeThumbnailer().generateThumbnails(input, outputs, DOCX_MIME_TYPE);
+
+        for (var output : outputs.entrySet()) {
+            var thumbnail = ImageIO.read(output.getValue());
+            assertThat(thumbnail.getWidth(), is(lessThanOrEqualTo(output.getKey().getWidth())));
+            assertThat(thumbnail.getHeight(), is(lessThanOrEqualTo(output.getKey().getHeight())));
+        }
+    }
+
+    @Test
+    void shouldWriteThumbnailOfCurrentSizeWhenGeneratingSingleThumbnail() throws IOException, ThumbnailerException {
+        var input = copyResource(WORD_DOCX_FILE);
+        var output = temporaryDirectory.resolve("thumbnail.png").toFile();
+
+        new MsOfficeThumbnailer().generateThumbnail(input, output, DOCX_MIME_TYPE);
+
+        assertThat(ImageIO.read(output), is(notNullValue()));
+    }
+
+    @Test
+    void shouldUseEmbeddedPreviewWhenDocumentHasOne() throws IOException, ThumbnailerException {
+        var appender = LogUtils.getTestingAppenderForRootLogger();
+        var input = copyResource(POWERPOINT_PPTX_FILE);
+        var output = temporaryDirectory.resolve("thumbnail.png").toFile();
+
+        // The preview of the presentation is 256x144, as Office saves them, and the size is the default one.
+        new MsOfficeThumbnailer().generateThumbnail(input, output, PPTX_MIME_TYPE);
+
+        assertThat(ImageIO.read(output), is(notNullValue()));
+        assertThat(appender.getMessages(), containsString(RenderPath.EMBEDDED_THUMBNAIL.name()));
+        assertThat(appender.getMessages(), not(containsString(RenderPath.FULL_RENDER.name())));
+    }
+
+    @Test
+    void shouldRenderOnlySizesEmbeddedPreviewIsTooSmallFor() throws IOException, ThumbnailerException {
+        var appender = LogUtils.getTestingAppenderForRootLogger();
+        var input = copyResource(POWERPOINT_PPTX_FILE);
+        var largeSize = ThumbnailSize.parse("large:1200x900");
+        var outputs = new LinkedHashMap<ThumbnailSize, File>();
+        outputs.put(ThumbnailSize.DEFAULT, temporaryDirectory.resolve("default.png").toFile());
+        outputs.put(largeSize, temporaryDirectory.resolve("large.png").toFile());
+
+        new MsOfficeThumbnailer().generateThumbnails(input, outputs, PPTX_MIME_TYPE);
+
+        assertThat(ImageIO.read(outputs.get(ThumbnailSize.DEFAULT)), is(notNullValue()));
+        assertThat(ImageIO.read(outputs.get(largeSize)), is(notNullValue()));
+        assertThat(appender.getMessages(), containsString(RenderPath.EMBEDDED_THUMBNAIL.name()));
+        assertThat(appender.getMessages(), containsString(RenderPath.FULL_RENDER.name()));
+    }
+
+    @Test
+    void shouldRenderDocumentWhenEmbeddedPreviewMayNotBeEnlarged() throws IOException, ThumbnailerException {
+        var appender = LogUtils.getTestingAppenderForRootLogger();
+        var input = copyResource(POWERPOINT_PPTX_FILE);
+        var output = temporaryDirectory.resolve("thumbnail.png").toFile();
+
+        new MsOfficeThumbnailer(NO_PREVIEW_UPSCALE).generateThumbnail(input, output, PPTX_MIME_TYPE);
+
+        assertThat(ImageIO.read(output), is(notNullValue()));
+        assertThat(appender.getMessages(), containsString(RenderPath.FULL_RENDER.name()));
+        assertThat(appender.getMessages(), not(containsString(RenderPath.EMBEDDED_THUMBNAIL.name())));
+    }
+
+    @Test
+    void shouldRenderDocumentWhenItHasNoEmbeddedPreview() throws IOException, ThumbnailerException {
+        var appender = LogUtils.getTestingAppenderForRootLogger();
+        var input = copyResource(WORD_DOCX_FILE);
+        var output = temporaryDirectory.resolve("thumbnail.png").toFile();
+
+        new MsOfficeThumbnailer().generateThumbnail(input, output, DOCX_MIME_TYPE);
+
+        assertThat(appender.getMessages(), containsString(RenderPath.FULL_RENDER.name()));
+    }
+
+    @Test
+    void shouldRenderFirstWorksheetOfWorkbookAtEverySize() throws IOException, ThumbnailerException {
+        var input = copyResource(EXCEL_XLSX_FILE);
+        var outputs = new LinkedHashMap<ThumbnailSize, File>();
+        outputs.put(ThumbnailSize.DEFAULT, temporaryDirectory.resolve("default.png").toFile());
+        outputs.put(ThumbnailSize.parse("small:160x120"), temporaryDirectory.resolve("small.png").toFile());
+
+        new MsOfficeThumbnailer().generateThumbnails(input, outputs, XLSX_MIME_TYPE);
+
+        for (var output : outputs.entrySet()) {
+            var thumbnail = ImageIO.read(output.getValue());
+            assertThat(thumbnail.getWidth(), is(equalTo(output.getKey().getWidth())));
+            assertThat(thumbnail.getHeight(), is(equalTo(output.getKey().getHeight())));
+        }
+    }
+
+    @Test
+    void shouldRenderFirstSlideWhenPresentationHasNoEmbeddedPreview() throws IOException, ThumbnailerException {
+        var appender = LogUtils.getTestingAppenderForRootLogger();
+        var presentation = copyResource(POWERPOINT_PPTX_FILE);
+        // The copy holding the first slide leaves out the preview of the presentation.
+        var input = temporaryDirectory.resolve("without-preview.pptx").toFile();
+        new PptxSlideTrimmer().copyFirstSlide(presentation, input);
+        var output = temporaryDirectory.resolve("thumbnail.png").toFile();
+
+        new MsOfficeThumbnailer().generateThumbnail(input, output, PPTX_MIME_TYPE);
+
+        assertThat(ImageIO.read(output), is(notNullValue()));
+        assertThat(appender.getMessages(), containsString(RenderPath.FULL_RENDER.name()));
+        try (var files = Files.list(temporaryDirectory)) {
+            assertThat(files.count(), is(equalTo(3L)));
+        }
+    }
+
+    private File copyResource(String fileName) throws IOException {
+        var file = temporaryDirectory.resolve(fileName);
+        try (var inputStream = IoUtils.inputStreamFromResources(DOCUMENTS_PATH + fileName)) {
+            Files.copy(inputStream, file);
+        }
+        return file.toFile();
+    }
+}
@@ -0,0 +1,66 @@
+package no.sikt.nva.thumbnail.thumbnailer;
+
+import static no.sikt.nva.thumbnail.ThumbnailerConstants.THUMBNAIL_DEFAULT_HEIGHT;
+import static no.sikt.nva.thumbnail.ThumbnailerConstants.THUMBNAIL_DEFAULT_WIDTH;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import no.sikt.nva.thumbnail.RenderPath;
+import nva.commons.core.ioutils.IoUtils;
+import nva.commons.logutils.LogUtils;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class NativeImageThumbnailerTest {
+
+    private static final String IMAGES_PATH = "images/";
+    private static final String PHOTO_WITH_PREVIEW = "photo-with-exif-preview.jpeg";
+    private static final String PHOTO_WITH_SMALL_PREVIEW = "photo-with-small-exif-preview.jpeg";
+    private static final int PREVIEW_WIDTH = 400;
+    private static final int PREVIEW_HEIGHT = 300;
+    // The 1600x1200 photo is decoded with a subsampling factor of 2.
+    private static final int SUBSAMPLED_PHOTO_WIDTH = 800;
+    private static final int SUBSAMPLED_PHOTO_HEIGHT = 600;
+
+    @TempDir
+    Path temporaryDirectory;
+
+    @Test
+    void shouldUseEmbeddedPreviewWhenItIsLargeEnough() throws IOException {
+        var appender = LogUtils.getTestingAppenderForRootLogger();
+        var input = copyResource(PHOTO_WITH_PREVIEW);
+
+        var image = new NativeImageThumbnailer().renderImage(input, THUMBNAIL_DEFAULT_WIDTH,
+                                                             THUMBNAIL_DEFAULT_HEIGHT);
+
+        assertThat(image.getWidth(), is(equalTo(PREVIEW_WIDTH)));
+        assertThat(image.getHeight(), is(equalTo(PREVIEW_HEIGHT)));
+        assertThat(appender.getMessages(), containsString(RenderPath.EMBEDDED_THUMBNAIL.name()));
+    }
+
+    @Test
+    void shouldDecodeImageWhenEmbeddedPreviewIsTooSmall() throws IOException {
+        var appender = LogUtils.getTestingAppenderForRootLogger();
+        var input = copyResource(PHOTO_WITH_SMALL_PREVIEW);
+
+        var image = new NativeImageThumbnailer().renderImage(input, THUMBNAIL_DEFAULT_WIDTH,
+                                                             THUMBNAIL_DEFAULT_HEIGHT);
+
+        assertThat(image.getWidth(), is(equalTo(SUBSAMPLED_PHOTO_WIDTH)));
+        assertThat(image.getHeight(), is(equalTo(SUBSAMPLED_PHOTO_HEIGHT)));
+        assertThat(appender.getMessages(), containsString(RenderPath.FULL_RENDER.name()));
+    }
+
+    private File copyResource(String fileName) throws IOException {
+        var file = temporaryDirectory.resolve(fileName);
+        try (var inputStream = IoUtils.inputStreamFromResources(IMAGES_PATH + fileName)) {
+            Files.copy(inputStream, file);
+        }
+        return file.toFile();
+    }
+}
@@ -0,0 +1,132 @@
+package no.sikt.nva.thumbnail.thumbnailer;
+
+import static no.sikt.nva.thumbnail.AbstractImageRenderingThumbnailer.isLargeEnough;
+import static no.sikt.nva.thumbnail.ThumbnailerConstants.THUMBNAIL_DEFAULT_HEIGHT;
+import static no.sikt.nva.thumbnail.ThumbnailerConstants.THUMBNAIL_DEFAULT_WIDTH;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.closeTo;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import no.sikt.nva.thumbnail.RenderPath;
+import nva.commons.core.ioutils.IoUtils;
+import nva.commons.logutils.LogUtils;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class PdfThumbnailerTest {
+
+    private static final float A4_WIDTH = 595f;
+    private static final float A4_HEIGHT = 842f;
+    private static final float A0_WIDTH = 2384f;
+    private static final float A0_HEIGHT = 3370f;
+    private static final float BUSINESS_CARD_WIDTH = 45f;
+    private static final float BUSINESS_CARD_HEIGHT = 25f;
+    private static final int NO_ROTATION = 0;
+    private static final int QUARTER_TURN = 90;
+    private static final int NEGATIVE_QUARTER_TURN = -90;
+    private static final double TOLERANCE = 0.001;
+    private static final double ONE_PIXEL = 1.0;
+    private static final String DOCUMENTS_PATH = "documents/";
+    private static final String PDF_WITH_PAGE_THUMBNAIL = "pdf-with-page-thumbnail.pdf";
+    private static final String PDF_WITH_SMALL_PAGE_THUMBNAIL = "pdf-with-small-page-thumbnail.pdf";
+    private static final int EMBEDDED_THUMBNAIL_WIDTH = 300;
+    private static final int EMBEDDED_THUMBNAIL_HEIGHT = 424;
+
+    @TempDir
+    Path temporaryDirectory;
+
+    @Test
+    void shouldUseEmbeddedPageThumbnailWhenItIsLargeEnough() throws IOException {
+        var appender = LogUtils.getTestingAppenderForRootLogger();
+        var input = copyResourceToTemporaryDirectory(PDF_WITH_PAGE_THUMBNAIL);
+
+        var image = new PdfThumbnailer().renderImage(input, THUMBNAIL_DEFAULT_WIDTH, THUMBNAIL_DEFAULT_HEIGHT);
+
+        assertThat(image.getWidth(), is(equalTo(EMBEDDED_THUMBNAIL_WIDTH)));
+        assertThat(image.getHeight(), is(equalTo(EMBEDDED_THUMBNAIL_HEIGHT)));
+        assertThat(appender.getMessages(), containsString(RenderPath.EMBEDDED_THUMBNAIL.name()));
+    }
+
+    @Test
+    void shouldRenderPageWhenEmbeddedPageThumbnailIsTooSmall() throws IOException {
+        var appender = LogUtils.getTestingAppenderForRootLogger();
+        var input = copyResourceToTemporaryDirectory(PDF_WITH_SMALL_PAGE_THUMBNAIL);
+
+        var image = new PdfThumbnailer().renderImage(input, THUMBNAIL_DEFAULT_WIDTH, THUMBNAIL_DEFAULT_HEIGHT);
+
+        var expectedHeight = THUMBNAIL_DEFAULT_HEIGHT * PdfThumbnailer.OVERSAMPLING_FACTOR;
+        assertThat((double) image.getHeight(), is(closeTo(expectedHeight, ONE_PIXEL)));
+        assertThat(appender.getMessages(), containsString(RenderPath.FULL_RENDER.name()));
+    }
+
+    @Test
+    void shouldAcceptEmbeddedThumbnailThatFillsTargetInOneDimension() {
+        assertThat(isLargeEnough(EMBEDDED_THUMBNAIL_WIDTH, EMBEDDED_THUMBNAIL_HEIGHT,
+                                 THUMBNAIL_DEFAULT_WIDTH, THUMBNAIL_DEFAULT_HEIGHT), is(true));
+        assertThat(isLargeEnough(THUMBNAIL_DEFAULT_WIDTH - 1, THUMBNAIL_DEFAULT_HEIGHT - 1,
+                                 THUMBNAIL_DEFAULT_WIDTH, THUMBNAIL_DEFAULT_HEIGHT), is(false));
+    }
+
+    @Test
+    void shouldRenderPageAtOversampledThumbnailSize() {
+        var scale = PdfThumbnailer.calculateRenderScale(A4_WIDTH, A4_HEIGHT, NO_ROTATION,
+                                                        THUMBNAIL_DEFAULT_WIDTH, THUMBNAIL_DEFAULT_HEIGHT);
+
+        var renderedHeight = A4_HEIGHT * scale;
+        assertThat((double) renderedHeight,
+                   is(closeTo(THUMBNAIL_DEFAULT_HEIGHT * PdfThumbnailer.OVERSAMPLING_FACTOR, TOLERANCE)));
+    }
+
+    @Test
+    void shouldRenderLargePagesToTheSameSizeAsSmallPages() {
+        var a4Scale = PdfThumbnailer.calculateRenderScale(A4_WIDTH, A4_HEIGHT, NO_ROTATION,
+                                                          THUMBNAIL_DEFAULT_WIDTH, THUMBNAIL_DEFAULT_HEIGHT);
+        var a0Scale = PdfThumbnailer.calculateRenderScale(A0_WIDTH, A0_HEIGHT, NO_ROTATION,
+                                                          THUMBNAIL_DEFAULT_WIDTH, THUMBNAIL_DEFAULT_HEIGHT);
+
+        assertThat((double) (A0_HEIGHT * a0Scale), is(closeTo(A4_HEIGHT * a4Scale, TOLERANCE)));
+    }
+
+    @Test
+    void shouldSwapPageDimensionsWhenPageIsRotated() {
+        var rotated = PdfThumbnailer.calculateRenderScale(A4_WIDTH, A4_HEIGHT, QUARTER_TURN,
+                                                          THUMBNAIL_DEFAULT_WIDTH, THUMBNAIL_DEFAULT_HEIGHT);
+        var landscape = PdfThumbnailer.calculateRenderScale(A4_HEIGHT, A4_WIDTH, NO_ROTATION,
+                                                            THUMBNAIL_DEFAULT_WIDTH, THUMBNAIL_DEFAULT_HEIGHT);
+        var negativeRotation = PdfThumbnailer.calculateRenderScale(A4_WIDTH, A4_HEIGHT, NEGATIVE_QUARTER_TURN,
+                                                                   THUMBNAIL_DEFAULT_WIDTH,
+                                                                   THUMBNAIL_DEFAULT_HEIGHT);
+
+        assertThat(rotated, is(equalTo(landscape)));
+        assertThat(negativeRotation, is(equalTo(landscape)));
+    }
+
+    @Test
+    void shouldLimitScaleForTinyPages() {
+        var scale = PdfThumbnailer.calculateRenderScale(BUSINESS_CARD_WIDTH, BUSINESS_CARD_HEIGHT, NO_ROTATION,
+                                                        THUMBNAIL_DEFAULT_WIDTH, THUMBNAIL_DEFAULT_HEIGHT);
+
+        assertThat(scale, is(equalTo(PdfThumbnailer.MAX_SCALE)));
+    }
+
+    @Test
+    void shouldUseFallbackScaleWhenPageBoxIsEmpty() {
+        var scale = PdfThumbnailer.calculateRenderScale(0f, A4_HEIGHT, NO_ROTATION,
+                                                        THUMBNAIL_DEFAULT_WIDTH, THUMBNAIL_DEFAULT_HEIGHT);
+
+        assertThat(scale, is(equalTo(PdfThumbnailer.FALLBACK_SCALE)));
+    }
+
+    private File copyResourceToTemporaryDirectory(String fileName) throws IOException {
+        var file = temporaryDirectory.resolve(fileName);
+        try (var inputStream = IoUtils.inputStreamFromResources(DOCUMENTS_PATH + fileName)) {
+            Files.copy(inputStream, file);
+        }
+        return file.toFile();
+    }
+}
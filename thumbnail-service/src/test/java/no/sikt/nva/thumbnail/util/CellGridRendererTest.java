@@ -0,0 +1,62 @@
+package no.sikt.nva.thumbnail.util;
+
+import static no.sikt.nva.thumbnail.util.CellGridRenderer.COLUMN_WIDTH;
+import static no.sikt.nva.thumbnail.util.CellGridRenderer.ROW_HEIGHT;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import java.awt.Color;
+import java.awt.image.BufferedImage;
+import org.junit.jupiter.api.Test;
+
+class CellGridRendererTest {
+
+    private static final int WHITE = Color.WHITE.getRGB();
+    private static final int DARK = 0x80;
+    private static final int CHANNEL_MASK = 0xFF;
+
+    @Test
+    void shouldCountPartlyVisibleCellsWhenFillingImage() {
+        assertThat(CellGridRenderer.columnsToFill(COLUMN_WIDTH), is(equalTo(1)));
+        assertThat(CellGridRenderer.columnsToFill(COLUMN_WIDTH + 1), is(equalTo(2)));
+        assertThat(CellGridRenderer.rowsToFill(ROW_HEIGHT * 3), is(equalTo(3)));
+        assertThat(CellGridRenderer.rowsToFill(ROW_HEIGHT * 3 + 1), is(equalTo(4)));
+    }
+
+    @Test
+    void shouldDrawTextOfCellsOnWhiteGrid() {
+        var cells = new String[][]{{"MMMM", null}, {null, null}};
+
+        var image = new CellGridRenderer().render(cells, 2 * COLUMN_WIDTH, 2 * ROW_HEIGHT);
+
+        assertThat(hasDarkPixel(image, 0, 0, COLUMN_WIDTH, ROW_HEIGHT), is(true));
+        assertThat(hasDarkPixel(image, 0, ROW_HEIGHT, 2 * COLUMN_WIDTH, ROW_HEIGHT), is(false));
+        assertThat(image.getRGB(COLUMN_WIDTH / 2, ROW_HEIGHT - 1), is(not(WHITE)));
+        assertThat(image.getRGB(COLUMN_WIDTH / 2, ROW_HEIGHT + ROW_HEIGHT / 2), is(equalTo(WHITE)));
+    }
+
+    @Test
+    void shouldLetTextRunOnIntoEmptyCellsOnly() {
+        var longText = "MMMMMMMMMMMMMMMMMMMMMMMMMMMMMMMMMMMMMMMMMMMMMMMM";
+        var runningOn = new String[][]{{longText, null, null}};
+        var stopped = new String[][]{{longText, "", null}};
+
+        var runningOnImage = new CellGridRenderer().render(runningOn, 3 * COLUMN_WIDTH, ROW_HEIGHT);
+        var stoppedImage = new CellGridRenderer().render(stopped, 3 * COLUMN_WIDTH, ROW_HEIGHT);
+
+        assertThat(hasDarkPixel(runningOnImage, 2 * COLUMN_WIDTH, 0, COLUMN_WIDTH, ROW_HEIGHT), is(true));
+        assertThat(hasDarkPixel(stoppedImage, COLUMN_WIDTH, 0, 2 * COLUMN_WIDTH, ROW_HEIGHT), is(false));
+    }
+
+    private static boolean hasDarkPixel(BufferedImage image, int left, int top, int width, int height) {
+        for (var y = top; y < top + height; y++) {
+            for (var x = left; x < left + width; x++) {
+                if ((image.getRGB(x, y) & CHANNEL_MASK) < DARK) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,67 @@
+package no.sikt.nva.thumbnail.util;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Optional;
+import javax.imageio.ImageIO;
+import nva.commons.core.ioutils.IoUtils;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+class ExifThumbnailExtractorTest {
+
+    private static final String IMAGES_PATH = "images/";
+    private static final String TIFF_WITH_PREVIEW = "scan-with-exif-preview.tiff";
+    private static final int PREVIEW_WIDTH = 400;
+    private static final int PREVIEW_HEIGHT = 300;
+
+    @TempDir
+    Path temporaryDirectory;
+
+    @ParameterizedTest
+    @ValueSource(strings = {"photo-with-exif-preview.jpeg", "photo-with-jfif-preview.jpeg",
+        TIFF_WITH_PREVIEW})
+    void shouldExtractEmbeddedPreviewWhenFileHasOne(String fileName) throws IOException {
+        var input = copyResource(IMAGES_PATH + fileName);
+
+        var preview = new ExifThumbnailExtractor().extract(input).orElseThrow();
+
+        var image = ImageIO.read(new ByteArrayInputStream(preview));
+        assertThat(image.getWidth(), is(equalTo(PREVIEW_WIDTH)));
+        assertThat(image.getHeight(), is(equalTo(PREVIEW_HEIGHT)));
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"images/pug.jpeg", "images/correct-size.png", "images/tiny.png",
+        "unsupported_files/octet-stream-not-supported.bin"})
+    void shouldReturnEmptyWhenFileHasNoEmbeddedPreview(String resource) throws IOException {
+        var input = copyResource(resource);
+
+        assertThat(new ExifThumbnailExtractor().extract(input), is(equalTo(Optional.empty())));
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = {1, 3, 100})
+    void shouldReturnEmptyWhenMetadataIsTruncated(int length) throws IOException {
+        var complete = Files.readAllBytes(copyResource(IMAGES_PATH + TIFF_WITH_PREVIEW).toPath());
+        var truncated = Files.write(temporaryDirectory.resolve("truncated.tiff"), Arrays.copyOf(complete, length));
+
+        assertThat(new ExifThumbnailExtractor().extract(truncated.toFile()), is(equalTo(Optional.empty())));
+    }
+
+    private File copyResource(String resource) throws IOException {
+        var file = temporaryDirectory.resolve(Path.of(resource).getFileName());
+        try (var inputStream = IoUtils.inputStreamFromResources(resource)) {
+            Files.copy(inputStream, file);
+        }
+        return file.toFile();
+    }
+}
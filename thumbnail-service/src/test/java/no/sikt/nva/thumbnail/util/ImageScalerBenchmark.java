@@ -0,0 +1,61 @@
+package no.sikt.nva.thumbnail.util;
+
+import java.awt.Color;
+import java.awt.GradientPaint;
+import java.awt.image.BufferedImage;
+import java.util.Locale;
+import no.sikt.nva.thumbnail.util.ImageScaler.Algorithm;
+
+/**
+ * Compares the scaling algorithms, including the Java2D baseline, on a synthetic photo-sized image. Run it with
+ * {@code ./gradlew :thumbnail-service:scalerBenchmark}, optionally passing the source size and source image type as
+ * {@code --args="4000 3000 TYPE_3BYTE_BGR"}.
+ */
+public final class ImageScalerBenchmark {
+
+    private static final int DEFAULT_SOURCE_WIDTH = 4000;
+    private static final int DEFAULT_SOURCE_HEIGHT = 3000;
+    private static final String DEFAULT_SOURCE_TYPE = "TYPE_3BYTE_BGR";
+    private static final int TARGET_WIDTH = 400;
+    private static final int TARGET_HEIGHT = 300;
+    private static final int WARMUP_ITERATIONS = 5;
+    private static final int MEASURED_ITERATIONS = 20;
+    private static final double NANOS_PER_MILLI = 1_000_000.0;
+
+    private ImageScalerBenchmark() {
+    }
+
+    public static void main(String... args) throws ReflectiveOperationException {
+        var width = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_SOURCE_WIDTH;
+        var height = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_SOURCE_HEIGHT;
+        var typeName = args.length > 2 ? args[2] : DEFAULT_SOURCE_TYPE;
+        var source = createSource(width, height, BufferedImage.class.getField(typeName).getInt(null));
+        System.out.printf(Locale.ROOT, "Scaling %dx%d %s to %dx%d%n", width, height, typeName, TARGET_WIDTH,
+                          TARGET_HEIGHT);
+        for (var algorithm : Algorithm.values()) {
+            var scaler = new ImageScaler(algorithm);
+            for (var i = 0; i < WARMUP_ITERATIONS; i++) {
+                scaler.scale(source, TARGET_WIDTH, TARGET_HEIGHT);
+            }
+            var start = System.nanoTime();
+            for (var i = 0; i < MEASURED_ITERATIONS; i++) {
+                scaler.scale(source, TARGET_WIDTH, TARGET_HEIGHT);
+            }
+            var millis = (System.nanoTime() - start) / NANOS_PER_MILLI / MEASURED_ITERATIONS;
+            System.out.printf(Locale.ROOT, "%-20s %8.2f ms/op%n", algorithm, millis);
+        }
+    }
+
+    private static BufferedImage createSource(int width, int height, int type) {
+        var image = new BufferedImage(width, height, type);
+        var graphics = image.createGraphics();
+        graphics.setPaint(new GradientPaint(0, 0, Color.ORANGE, width, height, Color.BLUE));
+        graphics.fillRect(0, 0, width, height);
+        graphics.setColor(Color.BLACK);
+        for (var x = 0; x < width; x += 3) {
+            graphics.drawLine(x, 0, x, height);
+        }
+        graphics.dispose();
+        return image;
+    }
+}
@@ -0,0 +1,114 @@
+package no.sikt.nva.thumbnail.util;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.both;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import java.awt.image.BufferedImage;
+import no.sikt.nva.thumbnail.util.ImageScaler.Algorithm;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+import org.junit.jupiter.params.provider.EnumSource.Mode;
+
+class ImageScalerTest {
+
+    private static final int SOURCE_WIDTH = 1000;
+    private static final int SOURCE_HEIGHT = 800;
+    // A ratio that is not an integer, so a point-sampling scaler hits the checkerboard pattern unevenly.
+    private static final int TARGET_WIDTH = 117;
+    private static final int TARGET_HEIGHT = 93;
+    private static final int WHITE = 0xFFFFFF;
+    private static final int BLACK = 0x000000;
+    private static final int OPAQUE_WHITE = 0xFFFF_FFFF;
+    private static final int TRANSPARENT = 0x0000_0000;
+    private static final int MIDDLE_GREY = 128;
+    private static final int GREY_TOLERANCE = 8;
+    private static final int CHANNEL_MASK = 0xFF;
+    private static final int ALPHA_SHIFT = 24;
+
+    @ParameterizedTest
+    @EnumSource(value = Algorithm.class, names = "JAVA2D_BILINEAR", mode = Mode.EXCLUDE)
+    void shouldAverageFineDetailInsteadOfAliasingWhenShrinkingByLargeRatio(Algorithm algorithm) {
+        var scaled = new ImageScaler(algorithm).scale(checkerboard(), TARGET_WIDTH, TARGET_HEIGHT);
+
+        for (var y = 0; y < TARGET_HEIGHT; y++) {
+            for (var x = 0; x < TARGET_WIDTH; x++) {
+                assertThat(scaled.getRGB(x, y) & CHANNEL_MASK,
+                           is(both(greaterThanOrEqualTo(MIDDLE_GREY - GREY_TOLERANCE))
+                                  .and(lessThanOrEqualTo(MIDDLE_GREY + GREY_TOLERANCE))));
+            }
+        }
+    }
+
+    @ParameterizedTest
+    @EnumSource(Algorithm.class)
+    void shouldReturnIntRgbImageWhenSourceHasNoAlpha(Algorithm algorithm) {
+        var scaled = new ImageScaler(algorithm).scale(checkerboard(), TARGET_WIDTH, TARGET_HEIGHT);
+
+        assertThat(scaled.getType(), is(equalTo(BufferedImage.TYPE_INT_RGB)));
+        assertThat(scaled.getWidth(), is(equalTo(TARGET_WIDTH)));
+        assertThat(scaled.getHeight(), is(equalTo(TARGET_HEIGHT)));
+    }
+
+    @ParameterizedTest
+    @EnumSource(Algorithm.class)
+    void shouldKeepColorOfOpaquePixelsNextToTransparentPixels(Algorithm algorithm) {
+        var scaled = new ImageScaler(algorithm).scale(halfTransparent(), TARGET_WIDTH, TARGET_HEIGHT);
+
+        assertThat(scaled.getType(), is(equalTo(BufferedImage.TYPE_INT_ARGB)));
+        assertThat(scaled.getRGB(0, 0), is(equalTo(TRANSPARENT)));
+        assertThat(scaled.getRGB(TARGET_WIDTH - 1, 0), is(equalTo(OPAQUE_WHITE)));
+        for (var x = 0; x < TARGET_WIDTH; x++) {
+            var pixel = scaled.getRGB(x, 0);
+            if (pixel >>> ALPHA_SHIFT != 0) {
+                assertThat(pixel & WHITE, is(equalTo(WHITE)));
+            }
+        }
+    }
+
+    @Test
+    void shouldReturnSourceWhenItAlreadyHasTheTargetSize() {
+        var source = checkerboard();
+
+        assertThat(new ImageScaler().scale(source, SOURCE_WIDTH, SOURCE_HEIGHT), is(sameInstance(source)));
+    }
+
+    @Test
+    void shouldThrowExceptionWhenTargetSizeIsNotPositive() {
+        var source = checkerboard();
+        var scaler = new ImageScaler();
+
+        assertThrows(IllegalArgumentException.class, () -> scaler.scale(source, 0, TARGET_HEIGHT));
+    }
+
+    @Test
+    void shouldUseAreaAveragingByDefault() {
+        assertThat(new ImageScaler().getAlgorithm(), is(equalTo(Algorithm.AREA_AVERAGING)));
+    }
+
+    // Decoded JPEGs usually come as TYPE_3BYTE_BGR, which is normalized before scaling.
+    private static BufferedImage checkerboard() {
+        var image = new BufferedImage(SOURCE_WIDTH, SOURCE_HEIGHT, BufferedImage.TYPE_3BYTE_BGR);
+        for (var y = 0; y < SOURCE_HEIGHT; y++) {
+            for (var x = 0; x < SOURCE_WIDTH; x++) {
+                image.setRGB(x, y, (x + y) % 2 == 0 ? WHITE : BLACK);
+            }
+        }
+        return image;
+    }
+
+    private static BufferedImage halfTransparent() {
+        var image = new BufferedImage(SOURCE_WIDTH, SOURCE_HEIGHT, BufferedImage.TYPE_INT_ARGB);
+        for (var y = 0; y < SOURCE_HEIGHT; y++) {
+            for (var x = 0; x < SOURCE_WIDTH; x++) {
+                image.setRGB(x, y, x < SOURCE_WIDTH / 2 ? TRANSPARENT : OPAQUE_WHITE);
+            }
+        }
+        return image;
+    }
+}
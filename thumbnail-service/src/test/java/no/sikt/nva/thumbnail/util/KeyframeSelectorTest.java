@@ -0,0 +1,68 @@
+package no.sikt.nva.thumbnail.util;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.closeTo;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.sameInstance;
+import java.awt.Color;
+import java.awt.image.BufferedImage;
+import java.util.List;
+import java.util.Optional;
+import org.junit.jupiter.api.Test;
+
+class KeyframeSelectorTest {
+
+    private static final int FRAME_WIDTH = 160;
+    private static final int FRAME_HEIGHT = 90;
+    private static final double MAX_LUMA = 255;
+    private static final double TOLERANCE = 1;
+
+    @Test
+    void shouldSelectFirstFrameThatIsNotDark() {
+        var black = frame(Color.BLACK);
+        var grey = frame(Color.GRAY);
+        var white = frame(Color.WHITE);
+
+        var selected = new KeyframeSelector().select(List.of(black, grey, white));
+
+        assertThat(selected.orElseThrow(), is(sameInstance(grey)));
+    }
+
+    @Test
+    void shouldSelectLeastDarkFrameWhenAllFramesAreDark() {
+        var black = frame(Color.BLACK);
+        var darkGrey = frame(new Color(0x20, 0x20, 0x20));
+        var darkBlue = frame(new Color(0, 0, 0x40));
+
+        var selected = new KeyframeSelector().select(List.of(black, darkGrey, darkBlue));
+
+        assertThat(selected.orElseThrow(), is(sameInstance(darkGrey)));
+    }
+
+    @Test
+    void shouldSelectNothingWhenThereAreNoCandidates() {
+        assertThat(new KeyframeSelector().select(List.of()), is(equalTo(Optional.empty())));
+    }
+
+    @Test
+    void shouldCalculateMeanLumaOfFrame() {
+        var halfWhite = frame(Color.BLACK);
+        var graphics = halfWhite.createGraphics();
+        graphics.setColor(Color.WHITE);
+        graphics.fillRect(0, 0, FRAME_WIDTH / 2, FRAME_HEIGHT);
+        graphics.dispose();
+
+        assertThat(KeyframeSelector.meanLuma(frame(Color.WHITE)), is(closeTo(MAX_LUMA, TOLERANCE)));
+        assertThat(KeyframeSelector.meanLuma(halfWhite), is(closeTo(MAX_LUMA / 2, TOLERANCE)));
+    }
+
+    private static BufferedImage frame(Color color) {
+        var frame = new BufferedImage(FRAME_WIDTH, FRAME_HEIGHT, BufferedImage.TYPE_INT_RGB);
+        var graphics = frame.createGraphics();
+        graphics.setColor(color);
+        graphics.fillRect(0, 0, FRAME_WIDTH, FRAME_HEIGHT);
+        graphics.dispose();
+        return frame;
+    }
+}
@@ -0,0 +1,117 @@
+package no.sikt.nva.thumbnail.util;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Optional;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+import javax.imageio.ImageIO;
+import nva.commons.core.ioutils.IoUtils;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+import org.junit.jupiter.params.provider.ValueSource;
+
+class MediaTypeSnifferTest {
+
+    private static final String CONTENT_TYPES =
+        "<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?>"
+        + "<Types xmlns=\"http://schemas.openxmlformats.org/package/2006/content-types\">"
+        + "<Default Extension=\"xml\" ContentType=\"application/xml\"/>"
+        + "<Override PartName=\"/word/document.xml\" ContentType=\"application/vnd.openxmlformats-officedocument"
+        + ".wordprocessingml.document.main+xml\"/></Types>";
+    private static final int SOME_BITMAP_WIDTH = 16;
+    private static final int SOME_BITMAP_HEIGHT = 8;
+
+    @ParameterizedTest
+    @CsvSource({"documents/wireframe.pdf, application/pdf",
+        "documents/open-office-text.odt, application/vnd.oasis.opendocument.text",
+        "documents/open-office-presentation.odp, application/vnd.oasis.opendocument.presentation",
+        "documents/word-document.docx, application/vnd.openxmlformats-officedocument.wordprocessingml.document",
+        "documents/excel-document.xlsx, application/vnd.openxmlformats-officedocument.spreadsheetml.sheet",
+        "documents/powerpoint-presentation.pptx, "
+        + "application/vnd.openxmlformats-officedocument.presentationml.presentation",
+        "images/pug.jpeg, image/jpeg",
+        "images/tiny.png, image/png",
+        "images/scan-with-exif-preview.tiff, image/tiff"})
+    void shouldIdentifyTypeFromFirstBytes(String resource, String expectedMediaType) throws IOException {
+        var head = readHead(resource);
+
+        assertThat(new MediaTypeSniffer().sniff(head), is(equalTo(Optional.of(expectedMediaType))));
+    }
+
+    @ParameterizedTest
+    @CsvSource({"'....ftypqt  ', video/quicktime",
+        "....ftypisom, video/mp4",
+        "....moov, video/quicktime",
+        "RIFF....AVI LIST, video/x-msvideo",
+        "OggS, video/ogg"})
+    void shouldIdentifyVideoContainers(String header, String expectedMediaType) {
+        var head = header.getBytes(StandardCharsets.ISO_8859_1);
+
+        assertThat(new MediaTypeSniffer().sniff(head), is(equalTo(Optional.of(expectedMediaType))));
+    }
+
+    @Test
+    void shouldTellWebmFromOtherMatroskaFiles() {
+        var webm = new byte[]{0x1A, 0x45, (byte) 0xDF, (byte) 0xA3, (byte) 0x42, (byte) 0x82, 'w', 'e', 'b', 'm'};
+        var matroska = new byte[]{0x1A, 0x45, (byte) 0xDF, (byte) 0xA3, (byte) 0x42, (byte) 0x82, 'm', 'k', 'v'};
+
+        assertThat(new MediaTypeSniffer().sniff(webm), is(equalTo(Optional.of("video/webm"))));
+        assertThat(new MediaTypeSniffer().sniff(matroska), is(equalTo(Optional.of("video/x-matroska"))));
+    }
+
+    @Test
+    void shouldReadContentTypesOfPackageWrittenWithDataDescriptors() throws IOException {
+        var output = new ByteArrayOutputStream();
+        try (var zip = new ZipOutputStream(output)) {
+            zip.putNextEntry(new ZipEntry("[Content_Types].xml"));
+            zip.write(CONTENT_TYPES.getBytes(StandardCharsets.UTF_8));
+            zip.closeEntry();
+        }
+
+        assertThat(new MediaTypeSniffer().sniff(output.toByteArray()),
+                   is(equalTo(Optional.of("application/vnd.openxmlformats-officedocument.wordprocessingml.document"))));
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"unsupported_files/octet-stream-not-supported.bin",
+        "unsupported_files/open-office-text-not-zip.odt", "documents/word-document.doc", "videos/frame.ppm"})
+    void shouldReturnEmptyWhenTypeCannotBeIdentified(String resource) throws IOException {
+        var head = readHead(resource);
+
+        assertThat(new MediaTypeSniffer().sniff(head), is(equalTo(Optional.empty())));
+    }
+
+    @Test
+    void shouldIdentifyBitmap() throws IOException {
+        var output = new ByteArrayOutputStream();
+        ImageIO.write(new BufferedImage(SOME_BITMAP_WIDTH, SOME_BITMAP_HEIGHT, BufferedImage.TYPE_INT_RGB), "bmp",
+                      output);
+
+        assertThat(new MediaTypeSniffer().sniff(output.toByteArray()), is(equalTo(Optional.of("image/bmp"))));
+    }
+
+    @Test
+    void shouldReturnEmptyForTextStartingLikeBitmap() {
+        var head = "BMW annual report, page 1 of 120".getBytes(StandardCharsets.US_ASCII);
+
+        assertThat(new MediaTypeSniffer().sniff(head), is(equalTo(Optional.empty())));
+    }
+
+    @Test
+    void shouldReturnEmptyForEmptyInput() {
+        assertThat(new MediaTypeSniffer().sniff(new byte[0]), is(equalTo(Optional.empty())));
+    }
+
+    private static byte[] readHead(String resource) throws IOException {
+        try (var inputStream = IoUtils.inputStreamFromResources(resource)) {
+            return inputStream.readNBytes(MediaTypeSniffer.SNIFF_LENGTH);
+        }
+    }
+}
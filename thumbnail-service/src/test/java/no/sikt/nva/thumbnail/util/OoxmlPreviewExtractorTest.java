@@ -0,0 +1,110 @@
+package no.sikt.nva.thumbnail.util;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Optional;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+import javax.imageio.ImageIO;
+import nva.commons.core.ioutils.IoUtils;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+class OoxmlPreviewExtractorTest {
+
+    private static final String DOCUMENTS_PATH = "documents/";
+    private static final String PRESENTATION_WITH_PREVIEW = "powerpoint-presentation.pptx";
+    private static final int PREVIEW_WIDTH = 256;
+    private static final int PREVIEW_HEIGHT = 144;
+    private static final String RELATIONSHIPS_TEMPLATE =
+        "<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?>"
+        + "<Relationships xmlns=\"http://schemas.openxmlformats.org/package/2006/relationships\">"
+        + "<Relationship Id=\"rId1\" Type=\"" + OoxmlPreviewExtractor.THUMBNAIL_RELATIONSHIP_TYPE + "\""
+        + " Target=\"%s\"%s/>"
+        + "</Relationships>";
+    private static final String PREVIEW_ENTRY = "docProps/thumbnail.jpeg";
+    private static final byte[] PREVIEW = {1, 2, 3};
+    private static final String INTERNAL = "";
+
+    @TempDir
+    Path temporaryDirectory;
+
+    @Test
+    void shouldExtractPreviewReferencedByPackageRelationships() throws IOException {
+        var input = copyResource(DOCUMENTS_PATH + PRESENTATION_WITH_PREVIEW);
+
+        var preview = new OoxmlPreviewExtractor().extract(input).orElseThrow();
+
+        var image = ImageIO.read(new ByteArrayInputStream(preview));
+        assertThat(image.getWidth(), is(equalTo(PREVIEW_WIDTH)));
+        assertThat(image.getHeight(), is(equalTo(PREVIEW_HEIGHT)));
+    }
+
+    @Test
+    void shouldResolveTargetRelativeToPackageRoot() throws IOException {
+        var input = createPackage(String.format(RELATIONSHIPS_TEMPLATE, "/" + PREVIEW_ENTRY, INTERNAL));
+
+        assertThat(new OoxmlPreviewExtractor().extract(input).orElseThrow(), is(equalTo(PREVIEW)));
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"documents/word-document.docx", "documents/excel-document.xlsx",
+        "documents/word-document.doc", "documents/open-office-text.odt"})
+    void shouldReturnEmptyWhenDocumentHasNoPreview(String resource) throws IOException {
+        var input = copyResource(resource);
+
+        assertThat(new OoxmlPreviewExtractor().extract(input), is(equalTo(Optional.empty())));
+    }
+
+    @Test
+    void shouldReturnEmptyWhenPreviewIsExternal() throws IOException {
+        var relationships = String.format(RELATIONSHIPS_TEMPLATE, PREVIEW_ENTRY, " TargetMode=\"External\"");
+        var input = createPackage(relationships);
+
+        assertThat(new OoxmlPreviewExtractor().extract(input), is(equalTo(Optional.empty())));
+    }
+
+    @Test
+    void shouldReturnEmptyWhenPreviewPartIsMissing() throws IOException {
+        var input = createPackage(String.format(RELATIONSHIPS_TEMPLATE, "docProps/missing.jpeg", INTERNAL));
+
+        assertThat(new OoxmlPreviewExtractor().extract(input), is(equalTo(Optional.empty())));
+    }
+
+    @Test
+    void shouldReturnEmptyWhenRelationshipsAreMalformed() throws IOException {
+        var input = createPackage("<Relationships><Relationship");
+
+        assertThat(new OoxmlPreviewExtractor().extract(input), is(equalTo(Optional.empty())));
+    }
+
+    private File createPackage(String relationships) throws IOException {
+        var file = temporaryDirectory.resolve("document.pptx");
+        try (var zip = new ZipOutputStream(Files.newOutputStream(file))) {
+            zip.putNextEntry(new ZipEntry(OoxmlPreviewExtractor.PACKAGE_RELATIONSHIPS_ENTRY));
+            zip.write(relationships.getBytes(StandardCharsets.UTF_8));
+            zip.closeEntry();
+            zip.putNextEntry(new ZipEntry(PREVIEW_ENTRY));
+            zip.write(PREVIEW);
+            zip.closeEntry();
+        }
+        return file.toFile();
+    }
+
+    private File copyResource(String resource) throws IOException {
+        var file = temporaryDirectory.resolve(Path.of(resource).getFileName());
+        try (var inputStream = IoUtils.inputStreamFromResources(resource)) {
+            Files.copy(inputStream, file);
+        }
+        return file.toFile();
+    }
+}
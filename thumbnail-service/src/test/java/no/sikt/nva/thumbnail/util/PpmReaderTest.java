@@ -0,0 +1,62 @@
+package no.sikt.nva.thumbnail.util;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+class PpmReaderTest {
+
+    private static final int RED = 0xFF0000;
+    private static final int BLUE = 0x0000FF;
+
+    @Test
+    void shouldReadFramesWrittenBackToBack() throws IOException {
+        var stream = new ByteArrayOutputStream();
+        stream.write(ppm("P6\n2 1\n255\n", new byte[]{(byte) 0xFF, 0, 0, 0, 0, (byte) 0xFF}));
+        stream.write(ppm("P6 1 1 255 ", new byte[]{0, 0, (byte) 0xFF}));
+        var inputStream = new ByteArrayInputStream(stream.toByteArray());
+        var reader = new PpmReader();
+
+        var first = reader.read(inputStream);
+        var second = reader.read(inputStream);
+
+        assertThat(first.getWidth(), is(equalTo(2)));
+        assertThat(first.getRGB(0, 0) & 0xFFFFFF, is(equalTo(RED)));
+        assertThat(first.getRGB(1, 0) & 0xFFFFFF, is(equalTo(BLUE)));
+        assertThat(second.getRGB(0, 0) & 0xFFFFFF, is(equalTo(BLUE)));
+        assertThat(reader.read(inputStream), is(nullValue()));
+    }
+
+    @Test
+    void shouldSkipCommentsInHeader() throws IOException {
+        var bytes = ppm("P6\n# written by ffmpeg\n1 1\n255\n", new byte[]{(byte) 0xFF, 0, 0});
+
+        var image = new PpmReader().read(new ByteArrayInputStream(bytes));
+
+        assertThat(image.getRGB(0, 0) & 0xFFFFFF, is(equalTo(RED)));
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"P5\n1 1\n255\n", "P6\n1 1\n65535\n", "P6\nx 1\n255\n", "P6\n0 1\n255\n", "P6\n2 2\n255\n"})
+    void shouldRejectUnsupportedOrTruncatedImages(String header) {
+        var inputStream = new ByteArrayInputStream(ppm(header, new byte[]{0, 0, 0}));
+
+        assertThrows(IOException.class, () -> new PpmReader().read(inputStream));
+    }
+
+    private static byte[] ppm(String header, byte[] pixels) {
+        var stream = new ByteArrayOutputStream();
+        stream.writeBytes(header.getBytes(StandardCharsets.US_ASCII));
+        stream.writeBytes(pixels);
+        return stream.toByteArray();
+    }
+}
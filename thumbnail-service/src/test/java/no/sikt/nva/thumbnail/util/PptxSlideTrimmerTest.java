@@ -0,0 +1,203 @@
+package no.sikt.nva.thumbnail.util;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.stream.Collectors;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+import nva.commons.core.ioutils.IoUtils;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class PptxSlideTrimmerTest {
+
+    private static final String RELATIONSHIP_TYPES =
+        "http://schemas.openxmlformats.org/officeDocument/2006/relationships/";
+    private static final String RELATIONSHIPS_TEMPLATE =
+        "<Relationships xmlns=\"http://schemas.openxmlformats.org/package/2006/relationships\">%s</Relationships>";
+    private static final String RELATIONSHIP_TEMPLATE = "<Relationship Id=\"%s\" Type=\"%s\" Target=\"%s\"/>";
+    private static final String PRESENTATION_TEMPLATE =
+        "<p:presentation xmlns:p=\"http://schemas.openxmlformats.org/presentationml/2006/main\""
+        + " xmlns:r=\"http://schemas.openxmlformats.org/officeDocument/2006/relationships\">%s</p:presentation>";
+    private static final String SLIDE_MASTER =
+        "<p:sldMaster xmlns:p=\"http://schemas.openxmlformats.org/presentationml/2006/main\""
+        + " xmlns:r=\"http://schemas.openxmlformats.org/officeDocument/2006/relationships\"><p:sldLayoutIdLst>"
+        + "<p:sldLayoutId id=\"2147483649\" r:id=\"rId1\"/><p:sldLayoutId id=\"2147483650\" r:id=\"rId2\"/>"
+        + "</p:sldLayoutIdLst></p:sldMaster>";
+    private static final String SLIDE = "<p:sld xmlns:p=\"http://schemas.openxmlformats.org/presentationml/2006/main\"/>";
+    private static final String LAYOUT_RELATIONSHIPS = relationships(
+        relationship("rId1", "slideMaster", "../slideMasters/slideMaster1.xml"));
+    // The first slide in the slide list is slide2.xml, the order of the part names does not matter.
+    private static final String SLIDE_LIST = "<p:sldMasterIdLst><p:sldMasterId r:id=\"rId1\"/></p:sldMasterIdLst>"
+                                             + "<p:notesMasterIdLst><p:notesMasterId r:id=\"rId4\"/>"
+                                             + "</p:notesMasterIdLst><p:sldIdLst>"
+                                             + "<p:sldId id=\"256\" r:id=\"rId3\"/>"
+                                             + "<p:sldId id=\"257\" r:id=\"rId2\"><p:extLst/></p:sldId>"
+                                             + "</p:sldIdLst>";
+
+    @TempDir
+    Path temporaryDirectory;
+
+    @Test
+    void shouldCopyOnlyPartsNeededToDrawFirstSlide() throws IOException {
+        var input = createPresentation(SLIDE_LIST);
+        var output = temporaryDirectory.resolve("first-slide.pptx").toFile();
+
+        new PptxSlideTrimmer().copyFirstSlide(input, output);
+
+        try (var zip = new ZipFile(output)) {
+            var parts = zip.stream().map(ZipEntry::getName).collect(Collectors.toList());
+            assertThat(parts, containsInAnyOrder("[Content_Types].xml",
+                                                 "_rels/.rels",
+                                                 "ppt/presentation.xml",
+                                                 "ppt/_rels/presentation.xml.rels",
+                                                 "ppt/slides/slide2.xml",
+                                                 "ppt/slides/_rels/slide2.xml.rels",
+                                                 "ppt/slideLayouts/slideLayout2.xml",
+                                                 "ppt/slideLayouts/_rels/slideLayout2.xml.rels",
+                                                 "ppt/slideMasters/slideMaster1.xml",
+                                                 "ppt/slideMasters/_rels/slideMaster1.xml.rels",
+                                                 "ppt/theme/theme1.xml",
+                                                 "ppt/media/image1.png"));
+        }
+    }
+
+    @Test
+    void shouldListOnlyCopiedSlidesAndLayouts() throws IOException {
+        var input = createPresentation(SLIDE_LIST);
+        var output = temporaryDirectory.resolve("first-slide.pptx").toFile();
+
+        new PptxSlideTrimmer().copyFirstSlide(input, output);
+
+        try (var zip = new ZipFile(output)) {
+            var presentation = readPart(zip, "ppt/presentation.xml");
+            assertThat(presentation, containsString("\"rId3\""));
+            assertThat(presentation, not(containsString("\"rId2\"")));
+            assertThat(presentation, not(containsString("notesMasterId ")));
+            var slideMaster = readPart(zip, "ppt/slideMasters/slideMaster1.xml");
+            assertThat(slideMaster, containsString("\"rId2\""));
+            assertThat(slideMaster, not(containsString("\"rId1\"")));
+            var slideRelationships = readPart(zip, "ppt/slides/_rels/slide2.xml.rels");
+            assertThat(slideRelationships, containsString("https://example.org"));
+            assertThat(slideRelationships, containsString("TargetMode=\"External\""));
+            assertThat(slideRelationships, not(containsString("video")));
+            assertThat(slideRelationships, not(containsString("slide1.xml")));
+        }
+    }
+
+    @Test
+    void shouldCopyPresentationThatOnlyHasOneSlide() throws IOException {
+        var input = copyResource("documents/powerpoint-presentation.pptx");
+        var output = temporaryDirectory.resolve("first-slide.pptx").toFile();
+
+        new PptxSlideTrimmer().copyFirstSlide(input, output);
+
+        try (var zip = new ZipFile(output)) {
+            assertThat(readPart(zip, "ppt/presentation.xml"), containsString("sldId "));
+            assertThat(readPart(zip, "_rels/.rels"), not(containsString("thumbnail")));
+        }
+    }
+
+    @Test
+    void shouldThrowExceptionWhenPresentationHasNoSlides() throws IOException {
+        var input = createPresentation("<p:sldIdLst/>");
+        var output = temporaryDirectory.resolve("first-slide.pptx").toFile();
+
+        assertThrows(IOException.class, () -> new PptxSlideTrimmer().copyFirstSlide(input, output));
+    }
+
+    @Test
+    void shouldThrowExceptionWhenInputIsNotPresentation() throws IOException {
+        var input = copyResource("documents/word-document.docx");
+        var output = temporaryDirectory.resolve("first-slide.pptx").toFile();
+
+        assertThrows(IOException.class, () -> new PptxSlideTrimmer().copyFirstSlide(input, output));
+    }
+
+    private File createPresentation(String slideList) throws IOException {
+        var file = temporaryDirectory.resolve("presentation.pptx");
+        try (var zip = new ZipOutputStream(Files.newOutputStream(file))) {
+            putEntry(zip, "[Content_Types].xml", "<Types/>");
+            putEntry(zip, "_rels/.rels", relationships(
+                relationship("rId1", "officeDocument", "ppt/presentation.xml")
+                + relationship("rId2", "metadata/thumbnail", "docProps/thumbnail.jpeg")));
+            putEntry(zip, "docProps/thumbnail.jpeg", "preview");
+            putEntry(zip, "ppt/presentation.xml", String.format(PRESENTATION_TEMPLATE, slideList));
+            putEntry(zip, "ppt/_rels/presentation.xml.rels", relationships(
+                relationship("rId1", "slideMaster", "slideMasters/slideMaster1.xml")
+                + relationship("rId2", "slide", "slides/slide1.xml")
+                + relationship("rId3", "slide", "/ppt/slides/slide2.xml")
+                + relationship("rId4", "notesMaster", "notesMasters/notesMaster1.xml")));
+            putEntry(zip, "ppt/notesMasters/notesMaster1.xml", "<notesMaster/>");
+            putEntry(zip, "ppt/slides/slide1.xml", SLIDE);
+            putEntry(zip, "ppt/slides/_rels/slide1.xml.rels", relationships(
+                relationship("rId1", "slideLayout", "../slideLayouts/slideLayout1.xml")
+                + relationship("rId2", "image", "../media/image2.png")));
+            putEntry(zip, "ppt/slides/slide2.xml", SLIDE);
+            putEntry(zip, "ppt/slides/_rels/slide2.xml.rels", relationships(
+                relationship("rId1", "slideLayout", "../slideLayouts/slideLayout2.xml")
+                + relationship("rId2", "image", "../media/image1.png")
+                + relationship("rId3", "video", "../media/video1.mp4")
+                + relationship("rId4", "notesSlide", "../notesSlides/notesSlide2.xml")
+                + relationship("rId5", "slide", "slide1.xml")
+                + "<Relationship Id=\"rId6\" Type=\"" + RELATIONSHIP_TYPES + "hyperlink\""
+                + " Target=\"https://example.org\" TargetMode=\"External\"/>"));
+            putEntry(zip, "ppt/notesSlides/notesSlide2.xml", "<notes/>");
+            putEntry(zip, "ppt/media/image1.png", "image1");
+            putEntry(zip, "ppt/media/image2.png", "image2");
+            putEntry(zip, "ppt/media/video1.mp4", "video1");
+            putEntry(zip, "ppt/slideLayouts/slideLayout1.xml", "<sldLayout/>");
+            putEntry(zip, "ppt/slideLayouts/_rels/slideLayout1.xml.rels", LAYOUT_RELATIONSHIPS);
+            putEntry(zip, "ppt/slideLayouts/slideLayout2.xml", "<sldLayout/>");
+            putEntry(zip, "ppt/slideLayouts/_rels/slideLayout2.xml.rels", LAYOUT_RELATIONSHIPS);
+            putEntry(zip, "ppt/slideMasters/slideMaster1.xml", SLIDE_MASTER);
+            putEntry(zip, "ppt/slideMasters/_rels/slideMaster1.xml.rels", relationships(
+                relationship("rId1", "slideLayout", "../slideLayouts/slideLayout1.xml")
+                + relationship("rId2", "slideLayout", "../slideLayouts/slideLayout2.xml")
+                + relationship("rId3", "theme", "../theme/theme1.xml")));
+            putEntry(zip, "ppt/theme/theme1.xml", "<theme/>");
+        }
+        return file.toFile();
+    }
+
+    private static String relationships(String relationships) {
+        return String.format(RELATIONSHIPS_TEMPLATE, relationships);
+    }
+
+    private static String relationship(String id, String type, String target) {
+        var fullType = type.startsWith("metadata/")
+                           ? "http://schemas.openxmlformats.org/package/2006/relationships/" + type
+                           : RELATIONSHIP_TYPES + type;
+        return String.format(RELATIONSHIP_TEMPLATE, id, fullType, target);
+    }
+
+    private static String readPart(ZipFile zip, String partName) throws IOException {
+        try (var stream = zip.getInputStream(zip.getEntry(partName))) {
+            return new String(stream.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+
+    private static void putEntry(ZipOutputStream zip, String name, String content) throws IOException {
+        zip.putNextEntry(new ZipEntry(name));
+        zip.write(content.getBytes(StandardCharsets.UTF_8));
+        zip.closeEntry();
+    }
+
+    private File copyResource(String resource) throws IOException {
+        var file = temporaryDirectory.resolve(Path.of(resource).getFileName());
+        try (var inputStream = IoUtils.inputStreamFromResources(resource)) {
+            Files.copy(inputStream, file);
+        }
+        return file.toFile();
+    }
+}
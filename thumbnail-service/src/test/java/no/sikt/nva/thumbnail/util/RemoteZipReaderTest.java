@@ -0,0 +1,156 @@
+package no.sikt.nva.thumbnail.util;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThan;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Optional;
+import java.util.Random;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+import java.util.zip.ZipOutputStream;
+import no.sikt.nva.testutils.RangeHttpServer;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class RemoteZipReaderTest {
+
+    private static final String THUMBNAIL_ENTRY = "Thumbnails/thumbnail.png";
+    private static final String MEDIA_ENTRY = "media/video.bin";
+    private static final String MIMETYPE_ENTRY = "mimetype";
+    private static final byte[] MIMETYPE = "application/vnd.oasis.opendocument.presentation"
+                                               .getBytes(StandardCharsets.US_ASCII);
+    private static final int THUMBNAIL_SIZE = 20 * 1024;
+    private static final int MEDIA_SIZE = 2 * 1024 * 1024;
+    private static final int MANY_ENTRIES = 3000;
+    private static final String SOME_PATH = "/document.odp";
+
+    @TempDir
+    Path temporaryDirectory;
+
+    @Test
+    void shouldFetchOnlyCentralDirectoryAndEntryOfLargeArchive() throws IOException {
+        var thumbnail = compressibleBytes(THUMBNAIL_SIZE);
+        var archive = createArchive(thumbnail, MANY_ENTRIES);
+
+        try (var server = new RangeHttpServer(archive)) {
+            var entry = new RemoteZipReader(server.getUrl(SOME_PATH)).readEntry(THUMBNAIL_ENTRY);
+
+            assertThat(entry.orElseThrow(), is(equalTo(thumbnail)));
+            assertThat(server.getBytesServed(), is(lessThan(Files.size(archive) / 4)));
+            assertThat(server.getRangeHeaders(), hasSize(3));
+        }
+    }
+
+    @Test
+    void shouldReadStoredEntry() throws IOException {
+        var archive = createArchive(compressibleBytes(THUMBNAIL_SIZE), 0);
+
+        try (var server = new RangeHttpServer(archive)) {
+            var entry = new RemoteZipReader(server.getUrl(SOME_PATH)).readEntry(MIMETYPE_ENTRY);
+
+            assertThat(entry.orElseThrow(), is(equalTo(MIMETYPE)));
+        }
+    }
+
+    @Test
+    void shouldReuseCentralDirectoryWhenReadingSeveralEntries() throws IOException {
+        var archive = createArchive(compressibleBytes(THUMBNAIL_SIZE), 0);
+
+        try (var server = new RangeHttpServer(archive)) {
+            var reader = new RemoteZipReader(server.getUrl(SOME_PATH));
+            reader.readEntry(THUMBNAIL_ENTRY);
+            var entry = reader.readEntry(MIMETYPE_ENTRY);
+
+            // The tail holds the central directory and the preview, the first entry of the archive is fetched.
+            assertThat(entry.orElseThrow(), is(equalTo(MIMETYPE)));
+            assertThat(server.getRangeHeaders(), hasSize(2));
+        }
+    }
+
+    @Test
+    void shouldReadSmallArchiveWithSingleRequest() throws IOException {
+        var path = Path.of(getClass().getClassLoader().getResource("documents/open-office-text.odt").getPath());
+
+        try (var server = new RangeHttpServer(path)) {
+            var entry = new RemoteZipReader(server.getUrl(SOME_PATH)).readEntry(THUMBNAIL_ENTRY);
+
+            assertThat(entry.isPresent(), is(true));
+            assertThat(server.getRangeHeaders(), hasSize(1));
+        }
+    }
+
+    @Test
+    void shouldReturnEmptyWhenArchiveHasNoSuchEntry() throws IOException {
+        var archive = createArchive(compressibleBytes(THUMBNAIL_SIZE), 0);
+
+        try (var server = new RangeHttpServer(archive)) {
+            var entry = new RemoteZipReader(server.getUrl(SOME_PATH)).readEntry("Thumbnails/missing.png");
+
+            assertThat(entry, is(equalTo(Optional.empty())));
+        }
+    }
+
+    @Test
+    void shouldThrowZipExceptionWhenInputIsNotZipArchive() throws IOException {
+        var notArchive = Files.write(temporaryDirectory.resolve("not-a-zip.odp"), compressibleBytes(THUMBNAIL_SIZE));
+
+        try (var server = new RangeHttpServer(notArchive)) {
+            var reader = new RemoteZipReader(server.getUrl(SOME_PATH));
+
+            assertThrows(ZipException.class, () -> reader.readEntry(THUMBNAIL_ENTRY));
+        }
+    }
+
+    // An uncompressed media file in front of the preview, and many small entries bloating the central directory.
+    private Path createArchive(byte[] thumbnail, int smallEntries) throws IOException {
+        var archive = temporaryDirectory.resolve("archive.odp");
+        try (var zip = new ZipOutputStream(Files.newOutputStream(archive))) {
+            putStoredEntry(zip, MIMETYPE_ENTRY, MIMETYPE);
+            putStoredEntry(zip, MEDIA_ENTRY, randomBytes(MEDIA_SIZE));
+            zip.putNextEntry(new ZipEntry(THUMBNAIL_ENTRY));
+            zip.write(thumbnail);
+            zip.closeEntry();
+            for (var i = 0; i < smallEntries; i++) {
+                zip.putNextEntry(new ZipEntry("Pictures/image-" + i + ".xml"));
+                zip.write(MIMETYPE);
+                zip.closeEntry();
+            }
+            zip.setComment("archive comment");
+        }
+        return archive;
+    }
+
+    private static void putStoredEntry(ZipOutputStream zip, String name, byte[] content) throws IOException {
+        var entry = new ZipEntry(name);
+        var crc = new CRC32();
+        crc.update(content);
+        entry.setMethod(ZipEntry.STORED);
+        entry.setSize(content.length);
+        entry.setCrc(crc.getValue());
+        zip.putNextEntry(entry);
+        zip.write(content);
+        zip.closeEntry();
+    }
+
+    private static byte[] compressibleBytes(int size) {
+        var bytes = new byte[size];
+        for (var i = 0; i < size; i++) {
+            bytes[i] = (byte) (i % 64);
+        }
+        return bytes;
+    }
+
+    private static byte[] randomBytes(int size) {
+        var bytes = new byte[size];
+        new Random().nextBytes(bytes);
+        return bytes;
+    }
+}
@@ -0,0 +1,114 @@
+package no.sikt.nva.thumbnail.util;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+class ScratchSpaceTest {
+
+    private static final long QUOTA_BYTES = 1000L;
+    private static final byte[] SOME_CONTENT = new byte[100];
+
+    @TempDir
+    Path temporaryDirectory;
+
+    private ScratchSpace scratchSpace;
+
+    @BeforeEach
+    void init() {
+        scratchSpace = new ScratchSpace(temporaryDirectory.resolve("scratch"), QUOTA_BYTES);
+    }
+
+    @Test
+    void shouldGiveEachWorkspaceItsOwnDirectory() throws IOException {
+        try (var first = scratchSpace.createWorkspace(); var second = scratchSpace.createWorkspace()) {
+            assertThat(first.getDirectory(), is(not(equalTo(second.getDirectory()))));
+            assertThat(first.getDirectory().getParent(), is(equalTo(scratchSpace.getRoot())));
+        }
+    }
+
+    @Test
+    void shouldDeleteWorkspaceAndReleaseReservationWhenClosed() throws IOException {
+        Path directory;
+        try (var workspace = scratchSpace.createWorkspace()) {
+            directory = workspace.getDirectory();
+            workspace.reserve(QUOTA_BYTES);
+            Files.write(workspace.newFile("input").toPath(), SOME_CONTENT);
+            assertThat(scratchSpace.getReservedBytes(), is(equalTo(QUOTA_BYTES)));
+        }
+        assertThat(Files.exists(directory), is(false));
+        assertThat(scratchSpace.getReservedBytes(), is(equalTo(0L)));
+    }
+
+    @Test
+    void shouldRejectReservationExceedingQuota() throws IOException {
+        try (var first = scratchSpace.createWorkspace(); var second = scratchSpace.createWorkspace()) {
+            first.reserve(QUOTA_BYTES - 1);
+            assertThrows(IOException.class, () -> second.reserve(2));
+            assertThat(scratchSpace.getQuotaBytes(), is(equalTo(QUOTA_BYTES)));
+        }
+    }
+
+    @Test
+    void shouldReportBytesInUse() throws IOException {
+        try (var workspace = scratchSpace.createWorkspace()) {
+            Files.write(workspace.newFile("first").toPath(), SOME_CONTENT);
+            Files.write(workspace.newFile("second").toPath(), SOME_CONTENT);
+            assertThat(workspace.getBytesInUse(), is(equalTo(2L * SOME_CONTENT.length)));
+            assertThat(scratchSpace.getBytesInUse(), is(equalTo(2L * SOME_CONTENT.length)));
+        }
+    }
+
+    @Test
+    void shouldKeepFilesInsideWorkspaceWhenNameContainsPathSeparators() throws IOException {
+        try (var workspace = scratchSpace.createWorkspace()) {
+            var file = workspace.newFile("../../etc/passwd");
+            assertThat(file.toPath().getParent(), is(equalTo(workspace.getDirectory())));
+            assertThrows(IllegalArgumentException.class, () -> workspace.newFile(".."));
+        }
+    }
+
+    @Test
+    void shouldDeleteStaleWorkspaces() throws IOException {
+        var workspace = scratchSpace.createWorkspace();
+        Files.write(workspace.newFile("left-behind").toPath(), SOME_CONTENT);
+
+        scratchSpace.deleteStaleWorkspaces();
+
+        assertThat(Files.exists(workspace.getDirectory()), is(false));
+        assertThat(scratchSpace.getBytesInUse(), is(equalTo(0L)));
+    }
+
+    @Test
+    void shouldKeepEntriesThatAreNotWorkspacesWhenDeletingStaleWorkspaces() throws IOException {
+        var cachedFile = Files.createDirectories(scratchSpace.getRoot().resolve("cache")).resolve("entry-1");
+        Files.write(cachedFile, SOME_CONTENT);
+        var workspace = scratchSpace.createWorkspace();
+
+        scratchSpace.deleteStaleWorkspaces();
+
+        assertThat(Files.exists(workspace.getDirectory()), is(false));
+        assertThat(Files.readAllBytes(cachedFile), is(equalTo(SOME_CONTENT)));
+    }
+
+    @ParameterizedTest
+    @ValueSource(longs = {0L, -1L})
+    void shouldRejectQuotaThatIsNotPositive(long quotaBytes) {
+        var root = temporaryDirectory.resolve("scratch");
+
+        var exception = assertThrows(IllegalArgumentException.class, () -> new ScratchSpace(root, quotaBytes));
+
+        assertThat(exception.getMessage(), containsString(String.valueOf(quotaBytes)));
+    }
+}
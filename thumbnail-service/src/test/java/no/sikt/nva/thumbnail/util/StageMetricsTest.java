@@ -0,0 +1,88 @@
+package no.sikt.nva.thumbnail.util;
+
+import static nva.commons.core.JsonUtils.dtoObjectMapper;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import org.junit.jupiter.api.Test;
+
+class StageMetricsTest {
+
+    private static final long SOME_TIMESTAMP = 1_700_000_000_000L;
+
+    @Test
+    void shouldFormatMetricsInEmbeddedMetricFormat() throws JsonProcessingException {
+        var metrics = StageMetrics.start();
+        metrics.set(StageMetrics.DOWNLOADED_BYTES, 2048, StageMetrics.BYTES);
+        metrics.setEngine("PdfThumbnailer");
+        metrics.setProperty(StageMetrics.MIME_TYPE_PROPERTY, "application/pdf");
+
+        var line = dtoObjectMapper.readTree(metrics.toEmfLine(SOME_TIMESTAMP));
+        metrics.finish(new PrintStream(new ByteArrayOutputStream(), true, StandardCharsets.UTF_8));
+
+        var directive = line.get("_aws").get("CloudWatchMetrics").get(0);
+        assertThat(line.get("_aws").get("Timestamp").asLong(), is(equalTo(SOME_TIMESTAMP)));
+        assertThat(directive.get("Namespace").asText(), is(equalTo(StageMetrics.NAMESPACE)));
+        assertThat(directive.get("Dimensions").get(0).get(0).asText(), is(equalTo(StageMetrics.ENGINE_DIMENSION)));
+        assertThat(directive.get("Metrics").get(0).get("Name").asText(), is(equalTo(StageMetrics.DOWNLOADED_BYTES)));
+        assertThat(directive.get("Metrics").get(0).get("Unit").asText(), is(equalTo(StageMetrics.BYTES)));
+        assertThat(line.get(StageMetrics.DOWNLOADED_BYTES).asLong(), is(equalTo(2048L)));
+        assertThat(line.get(StageMetrics.ENGINE_DIMENSION).asText(), is(equalTo("PdfThumbnailer")));
+        assertThat(line.get(StageMetrics.MIME_TYPE_PROPERTY).asText(), is(equalTo("application/pdf")));
+    }
+
+    @Test
+    void shouldAddUpDurationsOfRepeatedStage() {
+        var metrics = StageMetrics.start();
+        StageMetrics.current().add(StageMetrics.RESIZE_TIME, 1.5, StageMetrics.MILLISECONDS);
+        StageMetrics.current().add(StageMetrics.RESIZE_TIME, 2.25, StageMetrics.MILLISECONDS);
+
+        metrics.finish(new PrintStream(new ByteArrayOutputStream(), true, StandardCharsets.UTF_8));
+
+        assertThat(metrics.getValue(StageMetrics.RESIZE_TIME), is(equalTo(Optional.of(3.75))));
+    }
+
+    @Test
+    void shouldWriteOneLineAndStopCollectingWhenFinished() throws JsonProcessingException {
+        var output = new ByteArrayOutputStream();
+        var metrics = StageMetrics.start();
+        metrics.addDurationSince(StageMetrics.DOWNLOAD_TIME, System.nanoTime());
+
+        metrics.finish(new PrintStream(output, true, StandardCharsets.UTF_8));
+        StageMetrics.current().add(StageMetrics.UPLOAD_TIME, 1, StageMetrics.MILLISECONDS);
+
+        var lines = output.toString(StandardCharsets.UTF_8).lines().toArray(String[]::new);
+        assertThat(lines.length, is(equalTo(1)));
+        assertThat(metricNames(dtoObjectMapper.readTree(lines[0])), contains(StageMetrics.DOWNLOAD_TIME));
+        assertThat(metrics.getValue(StageMetrics.UPLOAD_TIME), is(equalTo(Optional.empty())));
+    }
+
+    @Test
+    void shouldEscapePropertiesThatAreNotPlainText() throws JsonProcessingException {
+        var metrics = StageMetrics.start();
+        var objectKey = "folder/\"quoted\" back\\slash\nnewline";
+        metrics.setProperty(StageMetrics.OBJECT_KEY_PROPERTY, objectKey);
+
+        var line = dtoObjectMapper.readTree(metrics.toEmfLine(SOME_TIMESTAMP));
+        metrics.finish(new PrintStream(new ByteArrayOutputStream(), true, StandardCharsets.UTF_8));
+
+        assertThat(line.get(StageMetrics.OBJECT_KEY_PROPERTY).asText(), is(equalTo(objectKey)));
+        assertThat(line.get(StageMetrics.ENGINE_DIMENSION).asText(), is(equalTo(StageMetrics.NO_ENGINE)));
+    }
+
+    private static List<String> metricNames(JsonNode line) {
+        var names = new ArrayList<String>();
+        line.get("_aws").get("CloudWatchMetrics").get(0).get("Metrics")
+            .forEach(metric -> names.add(metric.get("Name").asText()));
+        return names;
+    }
+}
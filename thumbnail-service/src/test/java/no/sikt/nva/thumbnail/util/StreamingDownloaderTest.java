@@ -0,0 +1,60 @@
+package no.sikt.nva.thumbnail.util;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class StreamingDownloaderTest {
+
+    private static final int BUFFER_SIZE_NOT_DIVIDING_CONTENT_SIZE = 7;
+    private static final int CONTENT_SIZE = 1000;
+
+    @TempDir
+    Path temporaryDirectory;
+
+    @Test
+    void shouldWriteEntireStreamToFileAndCountBytesWhenContentIsLargerThanBuffer() throws IOException {
+        var content = randomBytes();
+        var destination = temporaryDirectory.resolve("downloaded");
+        var downloader = new StreamingDownloader(BUFFER_SIZE_NOT_DIVIDING_CONTENT_SIZE);
+
+        var bytesTransferred = downloader.download(new ByteArrayInputStream(content), destination);
+
+        assertThat(bytesTransferred, is(equalTo((long) CONTENT_SIZE)));
+        assertThat(Files.readAllBytes(destination), is(equalTo(content)));
+    }
+
+    @Test
+    void shouldReplaceExistingFile() throws IOException {
+        var destination = Files.write(temporaryDirectory.resolve("existing"), randomBytes());
+        var content = new byte[]{1, 2, 3};
+
+        new StreamingDownloader().download(new ByteArrayInputStream(content), destination);
+
+        assertThat(Files.readAllBytes(destination), is(equalTo(content)));
+    }
+
+    @Test
+    void shouldRejectBufferSizeThatIsNotPositive() {
+        assertThrows(IllegalArgumentException.class, () -> new StreamingDownloader(0));
+    }
+
+    @Test
+    void shouldExposeConfiguredBufferSize() {
+        assertThat(new StreamingDownloader().getBufferSize(), is(equalTo(StreamingDownloader.DEFAULT_BUFFER_SIZE)));
+    }
+
+    private static byte[] randomBytes() {
+        var bytes = new byte[CONTENT_SIZE];
+        new Random().nextBytes(bytes);
+        return bytes;
+    }
+}
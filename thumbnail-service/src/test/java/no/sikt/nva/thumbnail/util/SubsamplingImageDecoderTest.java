@@ -0,0 +1,85 @@
+package no.sikt.nva.thumbnail.util;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import nva.commons.core.ioutils.IoUtils;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class SubsamplingImageDecoderTest {
+
+    private static final String JPEG_RESOURCE = "images/pug.jpeg";
+    private static final String BINARY_RESOURCE = "unsupported_files/octet-stream-not-supported.bin";
+    private static final int JPEG_WIDTH = 194;
+    private static final int JPEG_HEIGHT = 259;
+    private static final int SMALL_TARGET_WIDTH = 40;
+    private static final int SMALL_TARGET_HEIGHT = 30;
+    private static final int EXPECTED_SUBSAMPLING = 2;
+    private static final int LARGE_IMAGE_WIDTH = 9000;
+    private static final int LARGE_IMAGE_HEIGHT = 6000;
+    private static final int TARGET_WIDTH = 400;
+    private static final int TARGET_HEIGHT = 300;
+    private static final int NO_SUBSAMPLING = 1;
+
+    @TempDir
+    Path temporaryDirectory;
+
+    @Test
+    void shouldDecodeImageWithSubsamplingWhenImageIsMuchLargerThanTarget() throws IOException {
+        var input = copyResource(JPEG_RESOURCE);
+
+        var image = new SubsamplingImageDecoder().decode(input, SMALL_TARGET_WIDTH, SMALL_TARGET_HEIGHT);
+
+        assertThat(image.getWidth(), is(equalTo(ceilDiv(JPEG_WIDTH, EXPECTED_SUBSAMPLING))));
+        assertThat(image.getHeight(), is(equalTo(ceilDiv(JPEG_HEIGHT, EXPECTED_SUBSAMPLING))));
+    }
+
+    @Test
+    void shouldDecodeImageAtFullResolutionWhenImageIsSmallerThanTarget() throws IOException {
+        var input = copyResource(JPEG_RESOURCE);
+
+        var image = new SubsamplingImageDecoder().decode(input, TARGET_WIDTH, TARGET_HEIGHT);
+
+        assertThat(image.getWidth(), is(equalTo(JPEG_WIDTH)));
+        assertThat(image.getHeight(), is(equalTo(JPEG_HEIGHT)));
+    }
+
+    @Test
+    void shouldReturnNullWhenNoReaderUnderstandsTheFile() throws IOException {
+        var input = copyResource(BINARY_RESOURCE);
+
+        assertThat(new SubsamplingImageDecoder().decode(input, TARGET_WIDTH, TARGET_HEIGHT), is(nullValue()));
+    }
+
+    @Test
+    void shouldKeepTwiceTheTargetSizeInTheFittingDimension() {
+        var subsampling = SubsamplingImageDecoder.calculateSubsampling(LARGE_IMAGE_WIDTH, LARGE_IMAGE_HEIGHT,
+                                                                       TARGET_WIDTH, TARGET_HEIGHT);
+
+        assertThat(subsampling, is(equalTo(LARGE_IMAGE_HEIGHT / (TARGET_HEIGHT * 2))));
+    }
+
+    @Test
+    void shouldNotSubsampleWhenTargetSizeIsNotPositive() {
+        assertThat(SubsamplingImageDecoder.calculateSubsampling(LARGE_IMAGE_WIDTH, LARGE_IMAGE_HEIGHT, 0, 0),
+                   is(equalTo(NO_SUBSAMPLING)));
+    }
+
+    private static int ceilDiv(int dividend, int divisor) {
+        return (dividend + divisor - 1) / divisor;
+    }
+
+    private File copyResource(String resource) throws IOException {
+        var file = temporaryDirectory.resolve(Path.of(resource).getFileName());
+        try (var inputStream = IoUtils.inputStreamFromResources(resource)) {
+            Files.copy(inputStream, file);
+        }
+        return file.toFile();
+    }
+}
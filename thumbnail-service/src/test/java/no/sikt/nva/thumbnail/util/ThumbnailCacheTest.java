@@ -0,0 +1,137 @@
+package no.sikt.nva.thumbnail.util;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.Optional;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class ThumbnailCacheTest {
+
+    private static final int ENTRY_SIZE = 100;
+    private static final long BUDGET_BYTES = 2L * ENTRY_SIZE + ENTRY_SIZE / 2;
+    private static final Map<String, String> SOME_METADATA = Map.of("content-sha256", "abc");
+    private static final Map<String, String> NO_METADATA = Map.of();
+
+    @TempDir
+    Path temporaryDirectory;
+
+    private ThumbnailCache thumbnailCache;
+
+    @BeforeEach
+    void init() throws IOException {
+        thumbnailCache = new ThumbnailCache(temporaryDirectory.resolve("cache"), BUDGET_BYTES);
+    }
+
+    @Test
+    void shouldCopyCachedFilesAndReturnMetadataAndCountOneHit() throws IOException {
+        var large = new byte[]{1, 2, 3};
+        var small = new byte[]{4};
+        thumbnailCache.write("key", Map.of("large", writeFile("large", large), "small", writeFile("small", small)),
+                             SOME_METADATA);
+        var largeCopy = temporaryDirectory.resolve("large-copy");
+        var smallCopy = temporaryDirectory.resolve("small-copy");
+
+        var metadata = thumbnailCache.read("key", Map.of("large", largeCopy, "small", smallCopy));
+
+        assertThat(metadata, is(equalTo(Optional.of(SOME_METADATA))));
+        assertThat(Files.readAllBytes(largeCopy), is(equalTo(large)));
+        assertThat(Files.readAllBytes(smallCopy), is(equalTo(small)));
+        assertThat(thumbnailCache.getHitCount(), is(equalTo(1L)));
+        assertThat(thumbnailCache.getMissCount(), is(equalTo(0L)));
+    }
+
+    @Test
+    void shouldCountMissForUnknownKey() throws IOException {
+        var metadata = thumbnailCache.read("unknown", Map.of("large", temporaryDirectory.resolve("copy")));
+
+        assertThat(metadata, is(equalTo(Optional.empty())));
+        assertThat(thumbnailCache.getMissCount(), is(equalTo(1L)));
+    }
+
+    @Test
+    void shouldCopyNothingAndCountOneMissWhenEntryLacksRequestedFile() throws IOException {
+        thumbnailCache.write("key", Map.of("large", writeFile("large", new byte[]{1})), NO_METADATA);
+        var largeCopy = temporaryDirectory.resolve("large-copy");
+
+        var metadata = thumbnailCache.read("key", Map.of("large", largeCopy,
+                                                         "small", temporaryDirectory.resolve("small-copy")));
+
+        assertThat(metadata, is(equalTo(Optional.empty())));
+        assertThat(Files.exists(largeCopy), is(false));
+        assertThat(thumbnailCache.getHitCount(), is(equalTo(0L)));
+        assertThat(thumbnailCache.getMissCount(), is(equalTo(1L)));
+    }
+
+    @Test
+    void shouldEvictLeastRecentlyUsedEntryWhenBudgetIsExceeded() throws IOException {
+        var file = writeFile("thumbnail", new byte[ENTRY_SIZE]);
+        var destination = Map.of("large", temporaryDirectory.resolve("copy"));
+        thumbnailCache.write("first", Map.of("large", file), NO_METADATA);
+        thumbnailCache.write("second", Map.of("large", file), NO_METADATA);
+        thumbnailCache.read("first", destination);
+
+        thumbnailCache.write("third", Map.of("large", file), NO_METADATA);
+
+        assertThat(thumbnailCache.read("first", destination).isPresent(), is(true));
+        assertThat(thumbnailCache.read("second", destination).isPresent(), is(false));
+        assertThat(thumbnailCache.read("third", destination).isPresent(), is(true));
+        assertThat(thumbnailCache.getBytesInUse(), is(equalTo(2L * ENTRY_SIZE)));
+    }
+
+    @Test
+    void shouldEvictAllFilesOfEntryTogether() throws IOException {
+        var file = writeFile("thumbnail", new byte[ENTRY_SIZE]);
+        thumbnailCache.write("first", Map.of("large", file, "small", file), NO_METADATA);
+
+        thumbnailCache.write("second", Map.of("large", file), NO_METADATA);
+
+        assertThat(thumbnailCache.getBytesInUse(), is(equalTo((long) ENTRY_SIZE)));
+        assertThat(countCachedFiles(), is(equalTo(1L)));
+    }
+
+    @Test
+    void shouldReplaceEntryCachedUnderSameKey() throws IOException {
+        thumbnailCache.write("key", Map.of("large", writeFile("old", new byte[ENTRY_SIZE])), NO_METADATA);
+        thumbnailCache.write("key", Map.of("large", writeFile("new", new byte[]{1})), NO_METADATA);
+
+        assertThat(thumbnailCache.getBytesInUse(), is(equalTo(1L)));
+        assertThat(countCachedFiles(), is(equalTo(1L)));
+    }
+
+    @Test
+    void shouldSkipEntryLargerThanBudget() throws IOException {
+        thumbnailCache.write("key", Map.of("large", writeFile("thumbnail", new byte[(int) BUDGET_BYTES + 1])),
+                             NO_METADATA);
+
+        assertThat(thumbnailCache.read("key", Map.of("large", temporaryDirectory.resolve("copy"))).isPresent(),
+                   is(false));
+        assertThat(thumbnailCache.getBytesInUse(), is(equalTo(0L)));
+    }
+
+    @Test
+    void shouldDeleteFilesLeftByEarlierContainer() throws IOException {
+        thumbnailCache.write("key", Map.of("large", writeFile("thumbnail", new byte[ENTRY_SIZE])), NO_METADATA);
+
+        var newCache = new ThumbnailCache(temporaryDirectory.resolve("cache"), BUDGET_BYTES);
+
+        assertThat(countCachedFiles(), is(equalTo(0L)));
+        assertThat(newCache.getBudgetBytes(), is(equalTo(BUDGET_BYTES)));
+    }
+
+    private Path writeFile(String name, byte[] content) throws IOException {
+        return Files.write(temporaryDirectory.resolve(name), content);
+    }
+
+    private long countCachedFiles() throws IOException {
+        try (var files = Files.list(temporaryDirectory.resolve("cache"))) {
+            return files.count();
+        }
+    }
+}
@@ -0,0 +1,156 @@
+package no.sikt.nva.thumbnail.util;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThan;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assumptions.assumeFalse;
+import java.awt.Color;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Optional;
+import javax.imageio.ImageIO;
+import nva.commons.core.ioutils.IoUtils;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+class ThumbnailEncoderTest {
+
+    private static final String PHOTO = "images/pug.jpeg";
+    private static final int PAGE_WIDTH = 300;
+    private static final int PAGE_HEIGHT = 400;
+    private static final int LINE_SPACING = 12;
+    private static final int LOW_QUALITY = 10;
+    private static final int HIGH_QUALITY = 95;
+
+    @TempDir
+    Path temporaryDirectory;
+
+    @Test
+    void shouldWritePhotographAsJpeg() throws IOException {
+        var output = temporaryDirectory.resolve("photo").toFile();
+
+        var format = new ThumbnailEncoder().write(readPhoto(), output);
+
+        assertThat(format, is(equalTo(OutputFormat.JPEG)));
+        assertThat(OutputFormat.detect(output), is(equalTo(Optional.of(OutputFormat.JPEG))));
+    }
+
+    @Test
+    void shouldWriteDocumentAsPng() throws IOException {
+        var output = temporaryDirectory.resolve("document").toFile();
+
+        var format = new ThumbnailEncoder().write(createPage(), output);
+
+        assertThat(format, is(equalTo(OutputFormat.PNG)));
+        assertThat(OutputFormat.detect(output), is(equalTo(Optional.of(OutputFormat.PNG))));
+    }
+
+    @Test
+    void shouldChooseFormatFromContentWhenImageIsPadded() throws IOException {
+        var photo = readPhoto();
+        var padded = new BufferedImage(photo.getWidth() * 2, photo.getHeight(), BufferedImage.TYPE_INT_RGB);
+        var graphics = padded.createGraphics();
+        graphics.setColor(Color.WHITE);
+        graphics.fillRect(0, 0, padded.getWidth(), padded.getHeight());
+        graphics.drawImage(photo, 0, 0, null);
+        graphics.dispose();
+
+        var format = new ThumbnailEncoder().write(padded, photo, temporaryDirectory.resolve("padded").toFile());
+
+        assertThat(format, is(equalTo(OutputFormat.JPEG)));
+    }
+
+    @Test
+    void shouldUseSameFormatForAllContentWhenFormatIsFixed() throws IOException {
+        var format = ThumbnailEncoder.forFormat("PNG", ThumbnailEncoder.DEFAULT_QUALITY)
+                         .write(readPhoto(), temporaryDirectory.resolve("photo").toFile());
+
+        assertThat(format, is(equalTo(OutputFormat.PNG)));
+    }
+
+    @Test
+    void shouldWriteTransparentImageAsOpaqueJpeg() throws IOException {
+        var transparent = new BufferedImage(PAGE_WIDTH, PAGE_HEIGHT, BufferedImage.TYPE_INT_ARGB);
+        var output = temporaryDirectory.resolve("transparent").toFile();
+
+        ThumbnailEncoder.forFormat("jpeg", ThumbnailEncoder.DEFAULT_QUALITY).write(transparent, output);
+
+        var written = ImageIO.read(output);
+        assertThat(written.getColorModel().hasAlpha(), is(false));
+        assertThat(written.getRGB(0, 0), is(equalTo(Color.WHITE.getRGB())));
+    }
+
+    @Test
+    void shouldWriteSmallerFileWhenQualityIsLower() throws IOException {
+        var lowQuality = temporaryDirectory.resolve("low").toFile();
+        var highQuality = temporaryDirectory.resolve("high").toFile();
+
+        ThumbnailEncoder.forFormat("auto", LOW_QUALITY).write(readPhoto(), lowQuality);
+        ThumbnailEncoder.forFormat("auto", HIGH_QUALITY).write(readPhoto(), highQuality);
+
+        assertThat(lowQuality.length(), is(lessThan(highQuality.length())));
+    }
+
+    @Test
+    void shouldFallBackToJpegForPhotographsWhenNoWebpWriterIsInstalled() throws IOException {
+        assumeFalse(OutputFormat.WEBP.hasWriter());
+
+        var format = ThumbnailEncoder.forFormat("webp", ThumbnailEncoder.DEFAULT_QUALITY)
+                         .write(readPhoto(), temporaryDirectory.resolve("photo").toFile());
+
+        assertThat(format, is(equalTo(OutputFormat.JPEG)));
+    }
+
+    @Test
+    void shouldUseDefaultsWhenEnvironmentDoesNotConfigureFormat() throws IOException {
+        var format = ThumbnailEncoder.fromEnvironment().write(createPage(),
+                                                              temporaryDirectory.resolve("document").toFile());
+
+        assertThat(format, is(equalTo(OutputFormat.PNG)));
+    }
+
+    @Test
+    void shouldNotDetectFormatOfFileThatIsNotAnImage() throws IOException {
+        var file = temporaryDirectory.resolve("text");
+        Files.writeString(file, "RIFF....WAVEfmt ");
+
+        assertThat(OutputFormat.detect(file.toFile()), is(equalTo(Optional.empty())));
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = {0, 101})
+    void shouldRejectQualityOutsideRange(int quality) {
+        assertThrows(IllegalArgumentException.class, () -> ThumbnailEncoder.forFormat("auto", quality));
+    }
+
+    @Test
+    void shouldRejectUnknownFormat() {
+        assertThrows(IllegalArgumentException.class,
+                     () -> ThumbnailEncoder.forFormat("gif", ThumbnailEncoder.DEFAULT_QUALITY));
+    }
+
+    private static BufferedImage readPhoto() throws IOException {
+        try (var inputStream = IoUtils.inputStreamFromResources(PHOTO)) {
+            return ImageIO.read(inputStream);
+        }
+    }
+
+    private static BufferedImage createPage() {
+        var page = new BufferedImage(PAGE_WIDTH, PAGE_HEIGHT, BufferedImage.TYPE_INT_RGB);
+        var graphics = page.createGraphics();
+        graphics.setColor(Color.WHITE);
+        graphics.fillRect(0, 0, PAGE_WIDTH, PAGE_HEIGHT);
+        graphics.setColor(Color.BLACK);
+        for (var y = LINE_SPACING; y < PAGE_HEIGHT; y += LINE_SPACING) {
+            graphics.drawString("Lorem ipsum dolor sit amet, consectetur adipiscing elit", 0, y);
+        }
+        graphics.dispose();
+        return page;
+    }
+}
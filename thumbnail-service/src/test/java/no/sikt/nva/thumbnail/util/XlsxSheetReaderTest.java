@@ -0,0 +1,209 @@
+package no.sikt.nva.thumbnail.util;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.arrayContaining;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+import nva.commons.core.ioutils.IoUtils;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+class XlsxSheetReaderTest {
+
+    private static final String PACKAGE_RELATIONSHIPS =
+        "<Relationships xmlns=\"http://schemas.openxmlformats.org/package/2006/relationships\">"
+        + "<Relationship Id=\"rId1\" Type=\"" + XlsxSheetReader.OFFICE_DOCUMENT_RELATIONSHIP_TYPE + "\""
+        + " Target=\"xl/workbook.xml\"/></Relationships>";
+    private static final String WORKBOOK =
+        "<workbook xmlns=\"http://schemas.openxmlformats.org/spreadsheetml/2006/main\""
+        + " xmlns:r=\"http://schemas.openxmlformats.org/officeDocument/2006/relationships\"><sheets>"
+        + "<sheet name=\"First\" sheetId=\"1\" r:id=\"rId7\"/><sheet name=\"Second\" sheetId=\"2\" r:id=\"rId8\"/>"
+        + "</sheets></workbook>";
+    private static final String WORKBOOK_RELATIONSHIPS =
+        "<Relationships xmlns=\"http://schemas.openxmlformats.org/package/2006/relationships\">"
+        + "<Relationship Id=\"rId8\" Type=\"http://schemas.openxmlformats.org/officeDocument/2006/relationships/"
+        + "worksheet\" Target=\"worksheets/sheet2.xml\"/>"
+        + "<Relationship Id=\"rId7\" Type=\"http://schemas.openxmlformats.org/officeDocument/2006/relationships/"
+        + "worksheet\" Target=\"/xl/worksheets/sheet1.xml\"/>"
+        + "<Relationship Id=\"rId9\" Type=\"" + XlsxSheetReader.SHARED_STRINGS_RELATIONSHIP_TYPE + "\""
+        + " Target=\"sharedStrings.xml\"/>"
+        + "<Relationship Id=\"rId10\" Type=\"" + XlsxCellStyles.STYLES_RELATIONSHIP_TYPE + "\""
+        + " Target=\"styles.xml\"/></Relationships>";
+    private static final String SHEET_TEMPLATE =
+        "<worksheet xmlns=\"http://schemas.openxmlformats.org/spreadsheetml/2006/main\"><sheetData>%s"
+        + "</sheetData></worksheet>";
+    private static final String SHARED_STRINGS_TEMPLATE =
+        "<sst xmlns=\"http://schemas.openxmlformats.org/spreadsheetml/2006/main\">%s</sst>";
+    private static final String SHARED_STRINGS = String.format(SHARED_STRINGS_TEMPLATE,
+                                                               "<si><t>first</t></si>"
+                                                               + "<si><r><t>rich </t></r><r><t>text</t></r>"
+                                                               + "<rPh><t>reading aid</t></rPh></si>");
+    private static final String SECOND_SHEET = String.format(SHEET_TEMPLATE,
+                                                             "<row r=\"1\"><c r=\"A1\"><v>2</v></c></row>");
+    // Style 1 is a built-in date, 2 a built-in percentage, 3 a custom time, 4 a custom date with quoted text and 5 is
+    // a custom format with a color and literal text but no date.
+    private static final String STYLES =
+        "<styleSheet xmlns=\"http://schemas.openxmlformats.org/spreadsheetml/2006/main\">"
+        + "<numFmts count=\"3\"><numFmt numFmtId=\"164\" formatCode=\"hh:mm\"/>"
+        + "<numFmt numFmtId=\"165\" formatCode=\"&quot;day &quot;d mmmm yyyy\"/>"
+        + "<numFmt numFmtId=\"166\" formatCode=\"[Red]0.0&quot; days&quot;\"/></numFmts>"
+        + "<cellStyleXfs count=\"1\"><xf numFmtId=\"14\"/></cellStyleXfs>"
+        + "<cellXfs count=\"6\"><xf numFmtId=\"0\"/><xf numFmtId=\"14\"/><xf numFmtId=\"9\"/>"
+        + "<xf numFmtId=\"164\"/><xf numFmtId=\"165\"/><xf numFmtId=\"166\"/></cellXfs></styleSheet>";
+    // Anything after this is not well-formed, so a reader that does not stop in time fails.
+    private static final String MALFORMED_REST = "<row><c><v>1</v></row>";
+
+    @TempDir
+    Path temporaryDirectory;
+
+    @Test
+    void shouldReadCellsOfFirstWorksheet() throws IOException {
+        var input = copyResource("documents/excel-document.xlsx");
+
+        var cells = new XlsxSheetReader().read(input, 2, 2);
+
+        assertThat(cells[0], is(arrayContaining("Thumbnailer", null)));
+        assertThat(cells[1], is(arrayContaining(null, null)));
+    }
+
+    @Test
+    void shouldDisplayEveryCellType() throws IOException {
+        var row = "<row r=\"1\">"
+                  + "<c r=\"A1\" t=\"s\"><v>1</v></c>"
+                  + "<c r=\"B1\"><v>3.1415926535897931</v></c>"
+                  + "<c r=\"C1\" t=\"b\"><v>0</v></c>"
+                  + "<c r=\"D1\" t=\"inlineStr\"><is><t>inline</t></is></c>"
+                  + "<c r=\"E1\" t=\"str\"><f>A1</f><v>formula</v></c>"
+                  + "<c r=\"F1\" t=\"e\"><v>#DIV/0!</v></c>"
+                  + "<c r=\"G1\" t=\"n\"><v>1.50</v></c>"
+                  + "</row>";
+        var input = createWorkbook(String.format(SHEET_TEMPLATE, row), SHARED_STRINGS);
+
+        var cells = new XlsxSheetReader().read(input, 1, 7);
+
+        assertThat(cells[0], is(arrayContaining("rich text", "3.141592654", "FALSE", "inline", "formula",
+                                                "#DIV/0!", "1.5")));
+    }
+
+    @Test
+    void shouldDisplayNumbersAsTheirCellStyleFormatsThem() throws IOException {
+        var row = "<row r=\"1\">"
+                  + "<c r=\"A1\" s=\"1\"><v>45123</v></c>"
+                  + "<c r=\"B1\" s=\"2\"><v>0.256</v></c>"
+                  + "<c r=\"C1\" s=\"3\"><v>0.5</v></c>"
+                  + "<c r=\"D1\" s=\"4\"><v>45123.75</v></c>"
+                  + "<c r=\"E1\" s=\"5\"><v>2.5</v></c>"
+                  + "<c r=\"F1\" s=\"0\"><v>45123</v></c>"
+                  + "<c r=\"G1\" s=\"1\" t=\"s\"><v>0</v></c>"
+                  + "<c r=\"H1\" s=\"1\"><v>59</v></c>"
+                  + "</row>";
+        var input = createWorkbook(String.format(SHEET_TEMPLATE, row), SHARED_STRINGS, STYLES);
+
+        var cells = new XlsxSheetReader().read(input, 1, 8);
+
+        assertThat(cells[0], is(arrayContaining("2023-07-16", "26%", "12:00:00", "2023-07-16", "2.5", "45123",
+                                                "first", "1900-02-28")));
+    }
+
+    @Test
+    void shouldDisplayStyledNumbersAsGeneralNumbersWhenWorkbookHasNoStyles() throws IOException {
+        var row = "<row r=\"1\"><c r=\"A1\" s=\"1\"><v>45123</v></c></row>";
+        var input = createWorkbook(String.format(SHEET_TEMPLATE, row), SHARED_STRINGS);
+
+        var cells = new XlsxSheetReader().read(input, 1, 1);
+
+        assertThat(cells[0][0], is(equalTo("45123")));
+    }
+
+    @Test
+    void shouldPlaceCellsWithoutReferenceAfterPreviousCell() throws IOException {
+        var rows = "<row><c><v>1</v></c><c r=\"C1\"><v>2</v></c><c><v>3</v></c></row>"
+                   + "<row r=\"3\"><c><v>4</v></c></row>";
+        var input = createWorkbook(String.format(SHEET_TEMPLATE, rows), SHARED_STRINGS);
+
+        var cells = new XlsxSheetReader().read(input, 3, 4);
+
+        assertThat(cells[0], is(arrayContaining("1", null, "2", "3")));
+        assertThat(cells[1], is(arrayContaining(null, null, null, null)));
+        assertThat(cells[2], is(arrayContaining("4", null, null, null)));
+    }
+
+    @Test
+    void shouldStopReadingWorksheetAndSharedStringsAfterWindow() throws IOException {
+        var rows = "<row r=\"1\"><c r=\"A1\" t=\"s\"><v>0</v></c><c r=\"B1\"><v>1</v></c></row>"
+                   + "<row r=\"2\"><c r=\"A2\"><v>2</v></c></row>"
+                   + MALFORMED_REST;
+        var sharedStrings = "<sst xmlns=\"http://schemas.openxmlformats.org/spreadsheetml/2006/main\">"
+                            + "<si><t>first</t></si>" + MALFORMED_REST;
+        var input = createWorkbook(String.format(SHEET_TEMPLATE, rows), sharedStrings);
+
+        var cells = new XlsxSheetReader().read(input, 1, 1);
+
+        assertThat(cells[0][0], is(equalTo("first")));
+    }
+
+    @Test
+    void shouldLeaveSharedStringCellEmptyWhenWorkbookHasNoSharedStrings() throws IOException {
+        var row = "<row r=\"1\"><c r=\"A1\" t=\"s\"><v>0</v></c></row>";
+        var input = createWorkbook(String.format(SHEET_TEMPLATE, row), null);
+
+        var cells = new XlsxSheetReader().read(input, 1, 1);
+
+        assertThat(cells[0][0], is(nullValue()));
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"documents/word-document.docx", "documents/excel-document.xls"})
+    void shouldThrowExceptionWhenInputIsNotWorkbook(String resource) throws IOException {
+        var input = copyResource(resource);
+
+        assertThrows(IOException.class, () -> new XlsxSheetReader().read(input, 1, 1));
+    }
+
+    private File createWorkbook(String firstSheet, String sharedStrings) throws IOException {
+        return createWorkbook(firstSheet, sharedStrings, null);
+    }
+
+    private File createWorkbook(String firstSheet, String sharedStrings, String styles) throws IOException {
+        var file = temporaryDirectory.resolve("workbook.xlsx");
+        try (var zip = new ZipOutputStream(Files.newOutputStream(file))) {
+            putEntry(zip, "_rels/.rels", PACKAGE_RELATIONSHIPS);
+            putEntry(zip, "xl/workbook.xml", WORKBOOK);
+            putEntry(zip, "xl/_rels/workbook.xml.rels", WORKBOOK_RELATIONSHIPS);
+            putEntry(zip, "xl/worksheets/sheet1.xml", firstSheet);
+            putEntry(zip, "xl/worksheets/sheet2.xml", SECOND_SHEET);
+            if (sharedStrings != null) {
+                putEntry(zip, "xl/sharedStrings.xml", sharedStrings);
+            }
+            if (styles != null) {
+                putEntry(zip, "xl/styles.xml", styles);
+            }
+        }
+        return file.toFile();
+    }
+
+    private static void putEntry(ZipOutputStream zip, String name, String content) throws IOException {
+        zip.putNextEntry(new ZipEntry(name));
+        zip.write(content.getBytes(StandardCharsets.UTF_8));
+        zip.closeEntry();
+    }
+
+    private File copyResource(String resource) throws IOException {
+        var file = temporaryDirectory.resolve(Path.of(resource).getFileName());
+        try (var inputStream = IoUtils.inputStreamFromResources(resource)) {
+            Files.copy(inputStream, file);
+        }
+        return file.toFile();
+    }
+}